@@ -0,0 +1,134 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.event.EventListenerList;
+
+import org.drost.application.ApplicationEventBus.DeliveryMode;
+import org.drost.application.listeners.ApplicationAdapter;
+import org.drost.application.listeners.ApplicationEvent;
+import org.drost.application.listeners.ApplicationEventListener;
+import org.drost.application.listeners.ApplicationListener;
+
+/**
+ * Measures the dispatch throughput of the {@link ApplicationEventBus} and
+ * compares synchronous delivery to the fan-out of an
+ * {@link EventListenerList} that copies its listeners on every event. No
+ * application needs to be launched.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public class ApplicationEventBusBenchmark
+{
+	private static final int LISTENERS = 16;
+	
+	private static final int EVENTS = 2000000;
+	
+	private static final int ROUNDS = 5;
+	
+	private static volatile long sink = 0;
+	
+	
+	public static void main(String[] args) throws InterruptedException
+	{
+		final ApplicationEvent event = new ApplicationEvent(new Object(), ApplicationEvent.APPLICATION_UPDATED);
+		
+		EventListenerList list = new EventListenerList();
+		ApplicationEventBus bus = new ApplicationEventBus();
+		
+		for(int i = 0; i < LISTENERS; i++)
+		{
+			list.add(ApplicationListener.class, new ApplicationAdapter()
+			{
+				@Override
+				public void applicationUpdated(ApplicationEvent e)
+				{
+					sink++;
+				}
+			});
+			
+			bus.subscribe(new ApplicationEventListener()
+			{
+				@Override
+				public void applicationEvent(ApplicationEvent e)
+				{
+					sink++;
+				}
+			});
+		}
+		
+		for(int round = 1; round <= ROUNDS; round++)
+		{
+			long start = System.nanoTime();
+			for(int i = 0; i < EVENTS; i++)
+			{
+				for(ApplicationListener l : list.getListeners(ApplicationListener.class))
+					l.applicationUpdated(event);
+			}
+			report(round, "EventListenerList", start);
+			
+			start = System.nanoTime();
+			for(int i = 0; i < EVENTS; i++)
+				bus.publish(event);
+			report(round, "bus, synchronous", start);
+		}
+		
+		/*
+		 * Background delivery, one listener per core receiving every event
+		 * on its own ordered queue.
+		 */
+		ApplicationEventBus background = new ApplicationEventBus();
+		final int receivers = Runtime.getRuntime().availableProcessors();
+		final CountDownLatch done = new CountDownLatch(receivers);
+		
+		for(int i = 0; i < receivers; i++)
+		{
+			background.subscribe(new ApplicationEventListener()
+			{
+				int received = 0;
+				
+				@Override
+				public void applicationEvent(ApplicationEvent e)
+				{
+					if(++received == EVENTS)
+						done.countDown();
+				}
+			}, ApplicationEvent.ALL_EVENTS_MASK, DeliveryMode.BACKGROUND, ApplicationEventBus.DEFAULT_PRIORITY, ApplicationEventBus.DEFAULT_TIMEOUT);
+		}
+		
+		long start = System.nanoTime();
+		for(int i = 0; i < EVENTS; i++)
+			background.publish(event);
+		done.await();
+		report(1, "bus, background x" + receivers, start);
+		
+		background.shutdown();
+	}
+	
+	
+	private static void report(int round, String name, long start)
+	{
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("round %d %-22s %,12.0f events/s%n", round, name, EVENTS / seconds);
+	}
+}
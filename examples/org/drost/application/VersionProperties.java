@@ -0,0 +1,297 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Checks the ordering of {@link Version} on random versions: it must be
+ * reflexive, antisymmetric, transitive and consistent with
+ * {@link Version#hashCode()}, parsing the text of a version must return an
+ * equal one, and versions the Java runtime understands must be ordered like
+ * {@code Runtime.Version} orders them. The last check needs Java 9 or later
+ * and is skipped on Java 8. An optional argument sets the seed. Exits with
+ * a non-zero status if a check fails.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public class VersionProperties
+{
+	private static final int VERSIONS = 400;
+	
+	private static final int TRIPLES = 200000;
+	
+	private static final String[] IDENTIFIERS = { "0", "1", "2", "10", "01", "alpha", "beta", "rc", "x1" };
+	
+	private static int failures = 0;
+	
+	
+	public static void main(String[] args) throws Exception
+	{
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+		Random random = new Random(seed);
+		
+		System.out.println("seed " + seed);
+		
+		String[] texts = new String[VERSIONS];
+		Version[] versions = new Version[VERSIONS];
+		
+		for(int i = 0; i < VERSIONS; i++)
+		{
+			texts[i] = randomVersion(random);
+			versions[i] = Version.parse(texts[i]);
+		}
+		
+		int reflexive = 0;
+		int parsed = 0;
+		for(int i = 0; i < VERSIONS; i++)
+		{
+			if(versions[i].compareTo(versions[i]) != 0)
+				reflexive++;
+			if(!Version.parse(versions[i].toString()).equals(versions[i]))
+				parsed++;
+		}
+		expect("compareTo is reflexive", reflexive, null);
+		expect("parsing the text returns an equal version", parsed, null);
+		
+		int antisymmetric = 0;
+		int hashes = 0;
+		String example = null;
+		for(Version a : versions)
+		{
+			for(Version b : versions)
+			{
+				int c = a.compareTo(b);
+				
+				if(Integer.signum(c) != -Integer.signum(b.compareTo(a)))
+				{
+					antisymmetric++;
+					example = a + " " + b;
+				}
+				if(c == 0 && (a.hashCode() != b.hashCode() || !a.equals(b)))
+					hashes++;
+			}
+		}
+		expect("compareTo is antisymmetric", antisymmetric, example);
+		expect("equal versions have equal hash codes", hashes, null);
+		
+		int transitive = 0;
+		example = null;
+		for(int i = 0; i < TRIPLES; i++)
+		{
+			Version a = versions[random.nextInt(VERSIONS)];
+			Version b = versions[random.nextInt(VERSIONS)];
+			Version c = versions[random.nextInt(VERSIONS)];
+			
+			if(a.compareTo(b) <= 0 && b.compareTo(c) <= 0 && a.compareTo(c) > 0)
+			{
+				transitive++;
+				example = a + " " + b + " " + c;
+			}
+		}
+		
+		// A sorted array must be ordered between all pairs, not only neighbours
+		Version[] sorted = versions.clone();
+		Arrays.sort(sorted);
+		for(int i = 0; i < VERSIONS; i++)
+		{
+			for(int j = i + 1; j < VERSIONS; j++)
+			{
+				if(sorted[i].compareTo(sorted[j]) > 0)
+				{
+					transitive++;
+					example = sorted[i] + " " + sorted[j];
+				}
+			}
+		}
+		expect("compareTo is transitive", transitive, example);
+		
+		runtimeVersion(random);
+		
+		System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+		
+		if(failures > 0)
+			System.exit(1);
+	}
+	
+	
+	/**
+	 * Compares the order to {@code Runtime.Version}, which is looked up by
+	 * reflection, so the example compiles for Java 8. Only versions without
+	 * trailing zeros and with a single pre-release identifier of either
+	 * letters or digits are compared, as the runtime rejects the former and
+	 * compares mixed identifiers as text.
+	 */
+	private static void runtimeVersion(Random random) throws Exception
+	{
+		Class<?> type;
+		
+		try
+		{
+			type = Class.forName("java.lang.Runtime$Version");
+		}
+		catch(ClassNotFoundException e)
+		{
+			System.out.println("skipped agreement with Runtime.Version, it needs Java 9");
+			return;
+		}
+		
+		Method parse = type.getMethod("parse", String.class);
+		final Method compare = type.getMethod("compareToIgnoreOptional", type);
+		
+		String[] texts = new String[VERSIONS];
+		Object[] runtime = new Object[VERSIONS];
+		Version[] versions = new Version[VERSIONS];
+		
+		for(int i = 0; i < VERSIONS; i++)
+		{
+			texts[i] = randomRuntimeVersion(random);
+			runtime[i] = parse.invoke(null, texts[i]);
+			versions[i] = Version.parse(texts[i]);
+		}
+		
+		int disagreements = 0;
+		String example = null;
+		for(int i = 0; i < VERSIONS; i++)
+		{
+			for(int j = 0; j < VERSIONS; j++)
+			{
+				int expected = Integer.signum((Integer) compare.invoke(runtime[i], runtime[j]));
+				
+				if(Integer.signum(versions[i].compareTo(versions[j])) != expected)
+				{
+					disagreements++;
+					example = texts[i] + " " + texts[j];
+				}
+			}
+		}
+		expect("compareTo agrees with Runtime.Version", disagreements, example);
+		
+		// Sorting by either order must give the same sequence
+		Integer[] byRuntime = new Integer[VERSIONS];
+		for(int i = 0; i < VERSIONS; i++)
+			byRuntime[i] = i;
+		
+		final Object[] values = runtime;
+		Arrays.sort(byRuntime, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				try
+				{
+					return (Integer) compare.invoke(values[a], values[b]);
+				}
+				catch(ReflectiveOperationException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		
+		int unordered = 0;
+		for(int i = 1; i < VERSIONS; i++)
+		{
+			if(versions[byRuntime[i - 1]].compareTo(versions[byRuntime[i]]) > 0)
+				unordered++;
+		}
+		expect("sorting agrees with Runtime.Version", unordered, null);
+	}
+	
+	
+	/**
+	 * Returns a version with few and small components, so equal versions and
+	 * trailing zeros are frequent.
+	 */
+	private static String randomVersion(Random random)
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		if(random.nextInt(10) == 0)
+			builder.append('v');
+		
+		int count = 1 + random.nextInt(4);
+		for(int i = 0; i < count; i++)
+		{
+			if(i > 0)
+				builder.append(random.nextInt(10) == 0 ? '_' : '.');
+			builder.append(random.nextInt(4));
+		}
+		
+		if(random.nextBoolean())
+		{
+			builder.append('-');
+			
+			int identifiers = 1 + random.nextInt(3);
+			for(int i = 0; i < identifiers; i++)
+			{
+				if(i > 0)
+					builder.append('.');
+				builder.append(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)]);
+			}
+		}
+		
+		if(random.nextInt(3) == 0)
+			builder.append('+').append(random.nextInt(100));
+		
+		return builder.toString();
+	}
+	
+	
+	private static String randomRuntimeVersion(Random random)
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(1 + random.nextInt(20));
+		
+		int count = random.nextInt(4);
+		for(int i = 0; i < count; i++)
+			builder.append('.').append(i == count - 1 ? 1 + random.nextInt(3) : random.nextInt(4));
+		
+		switch(random.nextInt(4))
+		{
+			case 0:
+				builder.append('-').append(random.nextInt(12));
+				break;
+			case 1:
+				builder.append('-').append(random.nextBoolean() ? "ea" : "rc");
+				break;
+			default:
+				break;
+		}
+		
+		return builder.toString();
+	}
+	
+	
+	private static void expect(String name, int violations, String example)
+	{
+		if(violations == 0)
+			System.out.println("ok      " + name);
+		else
+			System.out.println("FAILED  " + name + ", " + violations + " violations" + (example == null ? "" : ", e.g. " + example));
+		
+		if(violations > 0)
+			failures++;
+	}
+}
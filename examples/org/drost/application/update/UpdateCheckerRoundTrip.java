@@ -0,0 +1,177 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the conditional requests of the {@link UpdateChecker} against a
+ * local server: the first check receives the manifest, the next one sends
+ * the entity tag back and is answered with {@code 304 Not Modified}, a
+ * changed manifest is fetched again and another channel is never served
+ * from the cache. Exits with a non-zero status if a check fails.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public class UpdateCheckerRoundTrip
+{
+	private static volatile String manifest = manifest("2.1.0", "2.2.0-beta.1");
+	
+	private static volatile String etag = "\"v1\"";
+	
+	private static volatile boolean gzip = false;
+	
+	private static volatile String lastIfNoneMatch = null;
+	
+	private static volatile int lastStatus = 0;
+	
+	private static int failures = 0;
+	
+	
+	public static void main(String[] args) throws IOException
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/update.properties", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				serve(exchange);
+			}
+		});
+		server.start();
+		
+		try
+		{
+			String address = "http://127.0.0.1:" + server.getAddress().getPort() + "/update.properties";
+			UpdateChecker checker = new UpdateChecker(address, null);
+			
+			UpdateInfo info = checker.check();
+			expect("first check is answered with 200", lastStatus == 200 && lastIfNoneMatch == null);
+			expect("first check is not marked as not modified", !info.isNotModified());
+			expect("first check reads the stable version", "2.1.0".equals(info.getVersion()));
+			
+			info = checker.check();
+			expect("second check sends the entity tag", "\"v1\"".equals(lastIfNoneMatch));
+			expect("second check is answered with 304", lastStatus == 304);
+			expect("second check is marked as not modified", info.isNotModified());
+			expect("second check keeps the cached version", "2.1.0".equals(info.getVersion()));
+			
+			manifest = manifest("2.1.1", "2.2.0-beta.2");
+			etag = "\"v2\"";
+			gzip = true;
+			
+			info = checker.check();
+			expect("changed manifest is answered with 200", lastStatus == 200);
+			expect("changed manifest is read compressed", "2.1.1".equals(info.getVersion()) && !info.isNotModified());
+			
+			info = checker.check();
+			expect("new entity tag is sent back", "\"v2\"".equals(lastIfNoneMatch) && lastStatus == 304);
+			
+			checker.setChannel("beta");
+			info = checker.check();
+			expect("another channel is not served from the cache", lastIfNoneMatch == null && lastStatus == 200);
+			expect("another channel reads its own version", "2.2.0-beta.2".equals(info.getVersion()));
+			
+			info = checker.check();
+			expect("the channel is cached after its first check", lastStatus == 304 && "2.2.0-beta.2".equals(info.getVersion()));
+		}
+		finally
+		{
+			server.stop(0);
+		}
+		
+		System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+		
+		if(failures > 0)
+			System.exit(1);
+	}
+	
+	
+	private static void serve(HttpExchange exchange) throws IOException
+	{
+		String tag = etag;
+		byte[] body = manifest.getBytes(StandardCharsets.ISO_8859_1);
+		
+		lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		exchange.getResponseHeaders().set("ETag", tag);
+		
+		if(tag.equals(lastIfNoneMatch))
+		{
+			lastStatus = 304;
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		
+		if(gzip && "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding")))
+		{
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (GZIPOutputStream out = new GZIPOutputStream(compressed))
+			{
+				out.write(body);
+			}
+			body = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		
+		lastStatus = 200;
+		exchange.sendResponseHeaders(200, body.length);
+		
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+	
+	
+	private static String manifest(String stable, String beta)
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("manifest.version=1\n");
+		builder.append("channels=stable,beta\n");
+		builder.append("stable.version=").append(stable).append('\n');
+		builder.append("stable.artifact.default.url=http://127.0.0.1/app-").append(stable).append(".jar\n");
+		builder.append("stable.history.").append(stable).append("=Notes\n");
+		builder.append("beta.version=").append(beta).append('\n');
+		builder.append("beta.artifact.default.url=http://127.0.0.1/app-").append(beta).append(".jar\n");
+		return builder.toString();
+	}
+	
+	
+	private static void expect(String name, boolean passed)
+	{
+		System.out.println((passed ? "ok      " : "FAILED  ") + name);
+		
+		if(!passed)
+			failures++;
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the {@link UpdateDownloader} against a local server that supports
+ * range requests: parallel ranges survive dropped connections, a cancelled
+ * download is resumed from its saved ranges by another downloader, a file
+ * that changed in between is downloaded from scratch and a wrong checksum
+ * leaves neither the target nor the partial file behind. Exits with a
+ * non-zero status if a check fails.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public class UpdateDownloaderResume
+{
+	private static final int SIZE = 3 << 20;
+	
+	private static final int CHUNK = 16 * 1024;
+	
+	private static volatile byte[] content = content(1);
+	
+	private static volatile String etag = "\"1\"";
+	
+	/**
+	 * The number of responses still to be closed early.
+	 */
+	private static final AtomicInteger drops = new AtomicInteger();
+	
+	private static volatile boolean throttled = false;
+	
+	/**
+	 * The first bytes of the range requests, -1 for requests of the whole
+	 * file.
+	 */
+	private static final List<Long> requests = new CopyOnWriteArrayList<>();
+	
+	private static final AtomicLong served = new AtomicLong();
+	
+	private static int failures = 0;
+	
+	
+	public static void main(String[] args) throws Exception
+	{
+		ExecutorService executor = Executors.newCachedThreadPool();
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/app.jar", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				serve(exchange);
+			}
+		});
+		server.start();
+		
+		File directory = Files.createTempDirectory("downloader").toFile();
+		
+		try
+		{
+			String address = "http://127.0.0.1:" + server.getAddress().getPort() + "/app.jar";
+			
+			parallel(address, new File(directory, "parallel.jar"));
+			resume(address, new File(directory, "resumed.jar"));
+			changed(address, new File(directory, "changed.jar"));
+			checksum(address, new File(directory, "corrupt.jar"));
+		}
+		finally
+		{
+			server.stop(0);
+			executor.shutdownNow();
+			
+			for(File f : directory.listFiles())
+				f.delete();
+			directory.delete();
+		}
+		
+		System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+		
+		if(failures > 0)
+			System.exit(1);
+	}
+	
+	
+	private static void parallel(String address, File target) throws IOException
+	{
+		requests.clear();
+		drops.set(2);
+		
+		UpdateDownloader downloader = new UpdateDownloader(address, target);
+		downloader.setParallelism(4, 1 << 20);
+		downloader.setChecksum(sha256(content));
+		downloader.download();
+		
+		int resumed = 0;
+		for(long start : requests)
+		{
+			if(start % (SIZE / 4) != 0)
+				resumed++;
+		}
+		
+		expect("parallel download matches the file", Arrays.equals(content, Files.readAllBytes(target.toPath())));
+		expect("parallel download requests four ranges", requests.size() >= 4 && !requests.contains(-1L));
+		expect("dropped ranges are continued where they stopped", resumed == 2);
+		expect("completed download removes its state", !new File(target.getPath() + ".part.state").exists());
+	}
+	
+	
+	private static void resume(String address, File target) throws Exception
+	{
+		File state = new File(target.getPath() + ".part.state");
+		
+		cancelHalfway(address, target);
+		
+		expect("cancelled download keeps its ranges", state.exists() && new File(target.getPath() + ".part").exists());
+		
+		requests.clear();
+		served.set(0);
+		
+		UpdateDownloader downloader = new UpdateDownloader(address, target);
+		downloader.setParallelism(2, 1 << 20);
+		downloader.setChecksum(sha256(content));
+		downloader.download();
+		
+		boolean continued = false;
+		for(long start : requests)
+		{
+			if(start > 0 && start != SIZE / 2)
+				continued = true;
+		}
+		
+		expect("resumed download matches the file", Arrays.equals(content, Files.readAllBytes(target.toPath())));
+		expect("resumed download continues its ranges", continued && !requests.contains(-1L));
+		expect("resumed download fetches the missing bytes only", served.get() < SIZE);
+		expect("resumed download removes its state", !state.exists());
+	}
+	
+	
+	private static void changed(String address, File target) throws Exception
+	{
+		cancelHalfway(address, target);
+		
+		content = content(2);
+		etag = "\"2\"";
+		requests.clear();
+		
+		UpdateDownloader downloader = new UpdateDownloader(address, target);
+		downloader.setParallelism(2, 1 << 20);
+		downloader.setChecksum(sha256(content));
+		downloader.download();
+		
+		expect("changed file is downloaded from scratch", requests.contains(0L) && requests.contains((long) SIZE / 2));
+		expect("changed file matches the new version", Arrays.equals(content, Files.readAllBytes(target.toPath())));
+	}
+	
+	
+	private static void checksum(String address, File target) throws IOException
+	{
+		byte[] other = content.clone();
+		other[0]++;
+		
+		UpdateDownloader downloader = new UpdateDownloader(address, target);
+		downloader.setParallelism(2, 1 << 20);
+		downloader.setChecksum(sha256(other));
+		
+		boolean rejected = false;
+		try
+		{
+			downloader.download();
+		}
+		catch(IOException e)
+		{
+			rejected = true;
+		}
+		
+		expect("wrong checksum fails the download", rejected);
+		expect("wrong checksum leaves no target", !target.exists());
+		expect("wrong checksum leaves no partial file", !new File(target.getPath() + ".part").exists()
+				&& !new File(target.getPath() + ".part.state").exists());
+	}
+	
+	
+	/**
+	 * Starts a slow download in two ranges and cancels it once about a third
+	 * of the file has been received.
+	 */
+	private static void cancelHalfway(String address, File target) throws Exception
+	{
+		UpdateDownloader downloader = new UpdateDownloader(address, target);
+		downloader.setParallelism(2, 1 << 20);
+		
+		throttled = true;
+		Future<File> future = downloader.start();
+		
+		while(downloader.getBytesReceived() < SIZE / 3 && !future.isDone())
+			Thread.sleep(5);
+		
+		downloader.cancel();
+		throttled = false;
+		
+		boolean cancelled = false;
+		try
+		{
+			future.get();
+		}
+		catch(ExecutionException e)
+		{
+			cancelled = e.getCause() instanceof IOException;
+		}
+		
+		expect("cancelled download fails with an IOException", cancelled);
+	}
+	
+	
+	private static void serve(HttpExchange exchange) throws IOException
+	{
+		byte[] body = content;
+		String tag = etag;
+		
+		exchange.getResponseHeaders().set("ETag", tag);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		
+		if("HEAD".equals(exchange.getRequestMethod()))
+		{
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		int start = 0;
+		int end = body.length - 1;
+		
+		if(range != null && (ifRange == null || ifRange.equals(tag)))
+		{
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(bounds[0]);
+			end = Integer.parseInt(bounds[1]);
+			
+			requests.add((long) start);
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+			exchange.sendResponseHeaders(206, end - start + 1);
+		}
+		else
+		{
+			requests.add(-1L);
+			exchange.sendResponseHeaders(200, body.length);
+		}
+		
+		// A dropped connection stops after a tenth of the range
+		int stop = drops.getAndDecrement() > 0 ? start + (end - start + 1) / 10 : end + 1;
+		
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			for(int i = start; i < stop; i += CHUNK)
+			{
+				int n = Math.min(CHUNK, stop - i);
+				out.write(body, i, n);
+				served.addAndGet(n);
+				
+				if(throttled)
+					sleep(5);
+			}
+		}
+		catch(IOException e)
+		{
+			// The client has cancelled the download
+		}
+	}
+	
+	
+	private static byte[] content(long seed)
+	{
+		byte[] bytes = new byte[SIZE];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+	
+	
+	private static String sha256(byte[] bytes)
+	{
+		try
+		{
+			StringBuilder builder = new StringBuilder();
+			for(byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+				builder.append(String.format("%02x", b & 0xFF));
+			return builder.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	private static void sleep(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	private static void expect(String name, boolean passed)
+	{
+		System.out.println((passed ? "ok      " : "FAILED  ") + name);
+		
+		if(!passed)
+			failures++;
+	}
+}
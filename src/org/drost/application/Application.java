@@ -28,22 +28,30 @@ import java.awt.event.AWTEventListener;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.lang.management.ManagementFactory;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import javax.swing.UIManager;
-import javax.swing.event.EventListenerList;
 
+import org.drost.application.conflict.ConflictManager;
 import org.drost.application.listeners.ApplicationAdapter;
 import org.drost.application.listeners.ApplicationEvent;
 import org.drost.application.listeners.ApplicationListener;
 import org.drost.application.plaf.rich.RichLookAndFeel;
+import org.drost.application.profiling.FlightRecorderSupport;
 import org.drost.application.suppliers.PropertiesSupport;
 import org.drost.application.ui.GUI;
+import org.drost.application.ui.HookedEventQueue;
+import org.drost.application.update.UpdateStage;
+import org.drost.application.update.UpdateStage.StagedUpdate;
 
 /**
  * A bundles of most common features related to a basic application.
@@ -136,10 +144,9 @@ public class Application // Implement 'Observable' or add event listener system
 	protected final String id;
 
 	/**
-	 * A list holding all the application listeners of type
-	 * {@code ApplicationListener}.
+	 * Delivers the application events to the listeners.
 	 */
-	private EventListenerList applicationListeners;
+	private final ApplicationEventBus eventBus = new ApplicationEventBus( );
 
 	/**
 	 * Temporary file that is created when ever the application is restarted.
@@ -153,9 +160,16 @@ public class Application // Implement 'Observable' or add event listener system
 	 */
 	private final static String RESTART_FILE_NAME = "restart-app";
 
-	private File		lockFile		= null;
-	private FileChannel	lockFileChannel	= null;
-	private FileLock	lock			= null;
+	/**
+	 * The lock file held while this is a single instance application.
+	 */
+	private InstanceLock instanceLock = null;
+	
+	/**
+	 * Receives the arguments of further launches while the instance is
+	 * locked.
+	 */
+	private SingleInstanceServer instanceServer = null;
 	
 	
 	private boolean createPropertyFileOnShutdown = false;
@@ -243,9 +257,6 @@ public class Application // Implement 'Observable' or add event listener system
 		{
 			id = ID;
 
-			// Initializes the application listeners list.
-			applicationListeners = new EventListenerList( );
-
 			restartFile = new File( localStorage.getDirectory( ) + File.separator + RESTART_FILE_NAME );
 		}
 
@@ -663,7 +674,7 @@ public class Application // Implement 'Observable' or add event listener system
 		instanceWrapper = null;
 		Substance.substance = null;
 		
-		applicationListeners = null;
+		eventBus.shutdown( );
 				
 	}
 
@@ -680,9 +691,7 @@ public class Application // Implement 'Observable' or add event listener system
 
 			if( get( ).isLocked( ) )
 				get( ).unlock( );
-			lockFile = null;
-			lockFileChannel = null;
-			lock = null;
+			instanceLock = null;
 
 			Substance.substance = null;
 			// substance = null;
@@ -698,34 +707,38 @@ public class Application // Implement 'Observable' or add event listener system
 	 * <p>
 	 * This method has a synchronized modifier due to it creates a temporary 
 	 * file to indicate a performed restart for the next application launch.
+	 * </p>
+	 * <p>
+	 * A new process is required to load updated classes. Otherwise
+	 * {@link #warmRestart(String...)} relaunches the application much faster.
+	 * </p>
+	 * <p>
+	 * A pending update of the {@link UpdateStage} is activated and the new
+	 * process uses its jars instead of the jar of the main class.
+	 * </p>
 	 * 
 	 * @param args
 	 *            The arguments for the application.
 	 */
 	public synchronized void restart( String... args )
 	{
-		StringBuilder command = new StringBuilder( );
-		command.append( System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java " );
-
-		for( String jvmArg : ManagementFactory.getRuntimeMXBean( ).getInputArguments( ) )
-		{
-			command.append( jvmArg + " " );
-		}
-
-		command.append( "-cp " ).append( ManagementFactory.getRuntimeMXBean( ).getClassPath( ) ).append( " " );
-		command.append( ApplicationProfiler.getProfiler( ).getMainClassName( ) ).append( " " );
+		List<String> command = new ArrayList<String>( );
+		command.add( System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java" );
+		command.addAll( ManagementFactory.getRuntimeMXBean( ).getInputArguments( ) );
+		command.add( "-cp" );
+		command.add( getRestartClassPath( ) );
+		command.add( ApplicationProfiler.getProfiler( ).getMainClassName( ) );
+		command.addAll( Arrays.asList( args ) );
+
+		// The new process must not wait for the lock of this one
+		if( isLocked( ) )
+			unlock( );
 
-		for( String arg : args )
-		{
-			command.append( arg ).append( " " );
-		}
-
-		// TODO Remove lock file before launching the new process!
 		try
 		{
 			// Creates a temporary file that indicates a restart
 			if( restartFile.createNewFile( ) )
-				Runtime.getRuntime( ).exec( command.toString( ) );
+				new ProcessBuilder( command ).inheritIO( ).start( );
 			else
 			{
 				restartFile.delete( );
@@ -741,19 +754,198 @@ public class Application // Implement 'Observable' or add event listener system
 	}
 
 
+	/**
+	 * Returns the class path of this process with the jar of the main class
+	 * replaced by the current staged update, if there is one.
+	 */
+	private String getRestartClassPath( )
+	{
+		String classPath = ManagementFactory.getRuntimeMXBean( ).getClassPath( );
+
+		if( localStorage == null )
+			return classPath;
+
+		try
+		{
+			StagedUpdate update = new UpdateStage( localStorage ).activate( );
+
+			if( update != null )
+			{
+				File jar = new File( ApplicationProfiler.getProfiler( ).getAbsolutJarPath( ) );
+
+				if( jar.isFile( ) )
+					classPath = update.replaceIn( classPath, jar );
+			}
+		}
+		catch ( IOException | ClassNotFoundException e )
+		{
+			// Restart the running version
+			e.printStackTrace( );
+		}
+		return classPath;
+	}
+
+
+	/**
+	 * Restarts the application within this virtual machine. The windows are
+	 * disposed, the background threads of the framework are stopped and the
+	 * application instance is {@link #reset() reset}. Then the main class is
+	 * loaded by a new class loader and its {@code main} method is invoked on
+	 * a new thread, so the application starts with fresh static state while
+	 * the classes of the Java runtime stay loaded and compiled.
+	 * <p>
+	 * The caller should return right after this method, the old application
+	 * instance must not be used anymore. Classes that have been updated on
+	 * disk require {@link #restart(String...)}.
+	 * </p>
+	 * 
+	 * @param args
+	 *            The arguments for the application.
+	 * @throws IllegalStateException
+	 *             If the main class cannot be determined or loaded.
+	 */
+	public synchronized void warmRestart( final String... args )
+	{
+		final String mainClassName = ApplicationProfiler.getProfiler( ).getMainClassName( );
+
+		String[] classPath = ManagementFactory.getRuntimeMXBean( ).getClassPath( ).split( File.pathSeparator );
+		URL[] urls = new URL[classPath.length];
+
+		try
+		{
+			for( int i = 0; i < classPath.length; i++ )
+				urls[i] = new File( classPath[i] ).toURI( ).toURL( );
+		}
+		catch ( MalformedURLException e )
+		{
+			throw new IllegalStateException( "Invalid class path.", e );
+		}
+
+		// Fire closing event
+		fireApplicationClosing( new ApplicationEvent( this, ApplicationEvent.APPLICATION_CLOSING ) );
+
+		if( createPropertyFileOnShutdown )
+			getSubstance( ).getPropertiesSupport( ).save( getLocalStorage( ) );
+
+		// Dispose all windows, the new instance creates its own
+		try
+		{
+			gui.runOnUIThreadAsynchroniously( new Runnable( )
+			{
+				@Override
+				public void run( )
+				{
+					for( Window w : Window.getWindows( ) )
+						w.dispose( );
+				}
+			} );
+		}
+		catch ( InvocationTargetException | InterruptedException e )
+		{
+			e.printStackTrace( );
+		}
+
+		ConflictManager.getConflictManager( ).shutdown( );
+		ApplicationProfiler.getProfiler( ).uninstallMonitors( );
+
+		// The new instance pushes the queue of its own class loader
+		HookedEventQueue.uninstall( );
+
+		reset( );
+		eventBus.shutdown( );
+
+		// The platform class loader, so no class of the application is shared
+		final ClassLoader loader = new URLClassLoader( urls, ClassLoader.getSystemClassLoader( ).getParent( ) );
+
+		try
+		{
+			restartFile.createNewFile( );
+
+			final Method main = Class.forName( mainClassName, false, loader ).getMethod( "main", String[].class );
+
+			// Look and feels are loaded by name on the event dispatch thread
+			gui.runOnUIThreadAsynchroniously( new Runnable( )
+			{
+				@Override
+				public void run( )
+				{
+					Thread.currentThread( ).setContextClassLoader( loader );
+				}
+			} );
+
+			Thread thread = new Thread( new Runnable( )
+			{
+				@Override
+				public void run( )
+				{
+					try
+					{
+						main.invoke( null, (Object) args );
+					}
+					catch ( InvocationTargetException e )
+					{
+						e.getCause( ).printStackTrace( );
+					}
+					catch ( IllegalAccessException e )
+					{
+						e.printStackTrace( );
+					}
+				}
+			}, "main" );
+			thread.setContextClassLoader( loader );
+			thread.start( );
+		}
+		catch ( IOException | ReflectiveOperationException | InterruptedException e )
+		{
+			throw new IllegalStateException( "Couldn't restart the application.", e );
+		}
+	}
+
+
 	/**
 	 * Locks this application and marks it as a single instance application.
 	 * This prevents multiple instantiations of this program by creating a
-	 * temporary lock file. The path of this file depends on the current
-	 * {@link LocalStorage}.
+	 * temporary lock file stamped with the process ID. The file is placed in
+	 * the {@link InstanceLock#getLockDirectory() lock directory} of the
+	 * current user, independent of the {@link LocalStorage}. A lock left
+	 * behind by a crashed instance is recovered.
 	 * 
 	 * @return {@code true} if the application instance has been locked,
 	 *         otherwise {@code false}.
 	 * @throws NullPointerException
 	 * @throws RuntimeException
+	 * 
+	 * @see #lockInstance(boolean, String[])
 	 */
-	@SuppressWarnings( "resource" )
 	public boolean lockInstance( boolean b )
+	{
+		return lockInstance( b, null );
+	}
+
+
+	/**
+	 * Locks this application like {@link #lockInstance(boolean)}. While
+	 * locked, the instance accepts the arguments of further launches through
+	 * a {@link SingleInstanceServer} and publishes them as
+	 * {@link org.drost.application.listeners.ActivationEvent}s on the event
+	 * bus.
+	 * <p>
+	 * If another instance already holds the lock and {@code args} is not
+	 * {@code null}, the arguments are handed over to that instance and this
+	 * virtual machine exits.
+	 * </p>
+	 * 
+	 * @param b
+	 *            Whether to lock or unlock the instance.
+	 * @param args
+	 *            The command line arguments of this launch, or {@code null}
+	 *            to fail if another instance is running.
+	 * @return {@code true} if the application instance has been locked or
+	 *         unlocked, otherwise {@code false}.
+	 * @throws NullPointerException
+	 * @throws RuntimeException
+	 */
+	public boolean lockInstance( boolean b, String[] args )
 	{
 		if(!b)
 		{
@@ -761,48 +953,33 @@ public class Application // Implement 'Observable' or add event listener system
 		}
 		else
 		{
+			if( isLocked( ) )
+				return true;
+			
 			try
 			{
-				if( localStorage != null )
-				{
-					// TODO Name the file similar to the process id and when
-					// launching a second instance check if that process really
-					// exists. This should avoid blocking a launch while the 
-					// previous one was not shut down properly.
-
-					// FIXME Place lock file outside the storage so that it is not
-					// moved when the storage is moved to another path. That way the
-					// second launch is still able to check against that file.
-					lockFile = new File( localStorage.getDirectory( ) + File.separator + "Application.lock" );
-
-					if( !lockFile.getParentFile( ).exists( ) )
-						lockFile.getParentFile( ).mkdirs( );
-				}
-				else
+				if( instanceLock == null )
+					instanceLock = new InstanceLock( id );
+
+				if( !instanceLock.acquire( ) )
 				{
-					throw new NullPointerException(
-							"Storage needs to be initialized before you can register an instance." );
+					if( args != null && SingleInstanceServer.handOff( instanceLock.getEndpointFile( ), args, SingleInstanceServer.DEFAULT_HANDOFF_TIMEOUT ) )
+						System.exit( 0 );
+					
+					throw new RuntimeException( "Only one instance of this program can be run at the same time." );
 				}
-
-				// TODO getAllProcesses() returns null! System.out.println(
-				// ProcessProfiler.isProcessRunning(ProcessProfiler.getProcessId())
-				// );
-
-				lockFileChannel = new RandomAccessFile( lockFile, "rw" ).getChannel( );
-
+				
+				instanceServer = new SingleInstanceServer( instanceLock.getEndpointFile( ), eventBus, this );
+				
 				try
 				{
-					lock = lockFileChannel.tryLock( );
+					instanceServer.start( );
 				}
-				catch ( OverlappingFileLockException e )
+				catch ( IOException e )
 				{
+					// Still locked, further launches fail as before
 					e.printStackTrace( );
-				}
-
-				if( lock == null )
-				{
-					lockFileChannel.close( );
-					throw new RuntimeException( "Only one instance of this program can be run at the same time." );
+					instanceServer = null;
 				}
 
 				Thread shutdown = new Thread( new Runnable( )
@@ -835,41 +1012,39 @@ public class Application // Implement 'Observable' or add event listener system
 	 */
 	public boolean isLocked( )
 	{
-		if( lockFile == null )
-			return false;
+		return instanceLock != null && instanceLock.isHeld( );
+	}
 
-		return ( lockFile.exists( ) && lock != null );
+	/**
+	 * Returns the lock file of this application, which exists once the
+	 * instance has been locked.
+	 * 
+	 * @return The lock or {@code null} if the instance has never been
+	 *         locked.
+	 */
+	public InstanceLock getInstanceLock( )
+	{
+		return instanceLock;
 	}
 
 	/**
 	 * Unlocks the single instance and enables multiple launches of the
 	 * application.
-	 * 
-	 * @throws IOException
 	 */
 	private boolean unlock( )
 	{
-		try
+		if( instanceServer != null )
 		{
-			if( lock != null )
-				lock.release( );
-
-			if( lockFileChannel != null )
-				lockFileChannel.close( );
-
-			if( lockFile != null )
-				lockFile.delete( );
-
-			fireApplicationUnlocked( new ApplicationEvent( get( ), ApplicationEvent.APPLICATION_UNLOCKED ) );
-			
-			return true;
-		}
-		catch ( IOException ignore )
-		{
-			// Nothing
+			instanceServer.stop( );
+			instanceServer = null;
 		}
+		
+		if( instanceLock != null )
+			instanceLock.release( );
 
-		return false;
+		fireApplicationUnlocked( new ApplicationEvent( get( ), ApplicationEvent.APPLICATION_UNLOCKED ) );
+		
+		return true;
 	}
 	
 	
@@ -945,79 +1120,78 @@ public class Application // Implement 'Observable' or add event listener system
 	//
 	//////////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Returns the bus delivering the events of this application. Listeners
+	 * subscribed to the bus directly may choose the thread they are invoked
+	 * on, their priority and the event types they receive.
+	 * 
+	 * @return The event bus.
+	 */
+	public ApplicationEventBus getEventBus( )
+	{
+		return eventBus;
+	}
+
 	public ApplicationListener[] getApplicationListeners( )
 	{
-		return applicationListeners.getListeners( ApplicationListener.class );
+		return eventBus.getApplicationListeners( );
 	}
 
+	/**
+	 * Adds a listener invoked synchronously on the thread firing the event.
+	 * 
+	 * @see ApplicationEventBus#subscribe(ApplicationListener, ApplicationEventBus.DeliveryMode, int, long)
+	 */
 	public void addApplicationListener( ApplicationListener listener )
 	{
-		applicationListeners.add( ApplicationListener.class, listener );
+		eventBus.subscribe( listener );
 	}
 
 	public void removeApplicationListener( ApplicationListener listener )
 	{
-		applicationListeners.remove( ApplicationListener.class, listener );
+		eventBus.unsubscribe( listener );
 	}
 
 	protected void fireApplicationLaunched( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "LAUNCHED" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationLaunched( e );
-		}
+		eventBus.publish( e );
 	}
 
 	protected void fireApplicationClosing( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "CLOSING" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationClosing( e );
-		}
+		eventBus.publishAndWait( e );
 	}
 
 	protected void fireApplicationUpdated( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "UPDATED" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationUpdated( e );
-		}
+		eventBus.publish( e );
 	}
 
 	protected void fireApplicationLocked( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "LOCKED" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationLocked( e );
-		}
+		eventBus.publish( e );
 	}
 
 	protected void fireApplicationUnlocked( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "UNLOCKED" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationUnlocked( e );
-		}
+		eventBus.publish( e );
 	}
 
 	protected void fireApplicationRestarted( ApplicationEvent e )
 	{
-		ApplicationListener[] listeners = applicationListeners.getListeners( ApplicationListener.class );
+		FlightRecorderSupport.commitLifecycle( id, "RESTARTED" );
 
-		for( ApplicationListener l : listeners )
-		{
-			l.applicationRestarted( e );
-		}
+		eventBus.publish( e );
 	}
 
 	/**
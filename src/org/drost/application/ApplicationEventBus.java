@@ -0,0 +1,553 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.drost.application.conflict.ConflictManager;
+import org.drost.application.listeners.ApplicationEvent;
+import org.drost.application.listeners.ApplicationEventListener;
+import org.drost.application.listeners.ApplicationListener;
+
+/**
+ * Delivers {@link ApplicationEvent}s to the subscribed listeners. Every
+ * subscription chooses the event types it receives, the thread it is invoked
+ * on, its priority and the time the publisher waits for it.
+ * <p>
+ * The subscriptions are held in an array sorted by descending priority that
+ * is replaced as a whole on every change, so publishing an event does not
+ * lock nor allocate anything for synchronous listeners. Listeners invoked on
+ * the event dispatch thread or a background thread receive the events in the
+ * order they have been published, but not necessarily before listeners of
+ * lower priority.
+ * </p>
+ * <p>
+ * Exceptions thrown by a listener are passed to the
+ * {@link org.drost.application.conflict.ExceptionPipeline} and do not keep
+ * the event from the other listeners.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Application#getEventBus()
+ */
+public class ApplicationEventBus
+{
+	/**
+	 * The thread a listener is invoked on.
+	 */
+	public enum DeliveryMode
+	{
+		/**
+		 * The listener is invoked on the publishing thread before
+		 * {@link ApplicationEventBus#publish(ApplicationEvent)} returns.
+		 */
+		SYNCHRONOUS,
+		
+		/**
+		 * The listener is invoked on the event dispatch thread.
+		 */
+		EVENT_DISPATCH_THREAD,
+		
+		/**
+		 * The listener is invoked on a background thread of the bus.
+		 */
+		BACKGROUND
+	}
+	
+	/**
+	 * The priority of listeners added without one.
+	 */
+	public static final int DEFAULT_PRIORITY = 0;
+	
+	/**
+	 * The default time in milliseconds
+	 * {@link #publishAndWait(ApplicationEvent)} waits for a listener.
+	 */
+	public static final long DEFAULT_TIMEOUT = 5000;
+	
+	/**
+	 * The name of the counter of listeners that exceeded their timeout.
+	 */
+	public static final String TIMEOUT_COUNTER = "application.events.timeouts";
+	
+	/**
+	 * The types an {@link ApplicationListener} declares methods for.
+	 */
+	private static final int LISTENER_EVENTS_MASK = ApplicationEvent.APPLICATION_LAUNCHED | ApplicationEvent.APPLICATION_CLOSING
+			| ApplicationEvent.APPLICATION_UPDATED | ApplicationEvent.APPLICATION_LOCKED | ApplicationEvent.APPLICATION_UNLOCKED
+			| ApplicationEvent.APPLICATION_RESTARTED;
+	
+	private static final Subscription[] EMPTY = new Subscription[0];
+	
+	private volatile Subscription[] subscriptions = EMPTY;
+	
+	private ExecutorService executor = null;
+	
+	
+	/**
+	 * Subscribes a listener to all events, invoked synchronously with the
+	 * default priority and timeout.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void subscribe(ApplicationEventListener listener)
+	{
+		subscribe(listener, ApplicationEvent.ALL_EVENTS_MASK, DeliveryMode.SYNCHRONOUS, DEFAULT_PRIORITY, DEFAULT_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Subscribes a listener. A listener subscribed twice is moved to the new
+	 * subscription.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 * @param eventMask
+	 *            The types of the events to receive, combined by bitwise or.
+	 * @param mode
+	 *            The thread the listener is invoked on.
+	 * @param priority
+	 *            Listeners with higher values receive an event first.
+	 * @param timeout
+	 *            The time in milliseconds
+	 *            {@link #publishAndWait(ApplicationEvent)} waits for the
+	 *            listener.
+	 */
+	public void subscribe(ApplicationEventListener listener, int eventMask, DeliveryMode mode, int priority, long timeout)
+	{
+		if(listener == null || mode == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		add(new Subscription(listener, listener, eventMask, mode, priority, timeout));
+	}
+	
+	
+	/**
+	 * Subscribes an application listener to all events, invoked synchronously
+	 * with the default priority and timeout.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void subscribe(ApplicationListener listener)
+	{
+		subscribe(listener, DeliveryMode.SYNCHRONOUS, DEFAULT_PRIORITY, DEFAULT_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Subscribes an application listener to the six event types it declares
+	 * methods for.
+	 * 
+	 * @see #subscribe(ApplicationEventListener, int, DeliveryMode, int, long)
+	 */
+	public void subscribe(ApplicationListener listener, DeliveryMode mode, int priority, long timeout)
+	{
+		if(listener == null || mode == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		add(new Subscription(listener, new ListenerAdapter(listener), LISTENER_EVENTS_MASK, mode, priority, timeout));
+	}
+	
+	
+	/**
+	 * Removes the subscription of the listener.
+	 * 
+	 * @param listener
+	 *            Either an {@link ApplicationEventListener} or an
+	 *            {@link ApplicationListener}.
+	 * @return Whether the listener has been subscribed.
+	 */
+	public synchronized boolean unsubscribe(EventListener listener)
+	{
+		Subscription[] current = subscriptions;
+		
+		for(int i = 0; i < current.length; i++)
+		{
+			if(current[i].listener == listener)
+			{
+				Subscription[] next = new Subscription[current.length - 1];
+				System.arraycopy(current, 0, next, 0, i);
+				System.arraycopy(current, i + 1, next, i, next.length - i);
+				
+				subscriptions = next;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Returns the subscribed application listeners in the order they are
+	 * invoked.
+	 */
+	public ApplicationListener[] getApplicationListeners()
+	{
+		List<ApplicationListener> listeners = new ArrayList<ApplicationListener>();
+		
+		for(Subscription s : subscriptions)
+		{
+			if(s.listener instanceof ApplicationListener)
+				listeners.add((ApplicationListener) s.listener);
+		}
+		
+		return listeners.toArray(new ApplicationListener[listeners.size()]);
+	}
+	
+	
+	/**
+	 * Returns the number of subscribed listeners.
+	 */
+	public int getListenerCount()
+	{
+		return subscriptions.length;
+	}
+	
+	
+	/**
+	 * Delivers the event to all listeners subscribed to its type without
+	 * waiting for the asynchronous ones.
+	 * 
+	 * @param e
+	 *            The event.
+	 */
+	public void publish(ApplicationEvent e)
+	{
+		for(Subscription s : subscriptions)
+		{
+			if((s.eventMask & e.getType()) != 0)
+				deliver(s, e, null);
+		}
+	}
+	
+	
+	/**
+	 * Delivers the event to all listeners subscribed to its type and waits
+	 * until every listener has returned or has exceeded its timeout, e.g.
+	 * while the application is closing. Synchronous listeners cannot be
+	 * interrupted, exceeding their timeout is only counted.
+	 * 
+	 * @param e
+	 *            The event.
+	 * @return {@code false} if at least one listener has exceeded its
+	 *         timeout.
+	 */
+	public boolean publishAndWait(ApplicationEvent e)
+	{
+		Subscription[] current = subscriptions;
+		
+		CountDownLatch[] latches = new CountDownLatch[current.length];
+		long[] deadlines = new long[current.length];
+		boolean completed = true;
+		
+		for(int i = 0; i < current.length; i++)
+		{
+			Subscription s = current[i];
+			
+			if((s.eventMask & e.getType()) == 0)
+				continue;
+			
+			long start = System.nanoTime();
+			deadlines[i] = start + TimeUnit.MILLISECONDS.toNanos(s.timeout);
+			
+			if(s.mode == DeliveryMode.SYNCHRONOUS)
+			{
+				deliver(s, e, null);
+				
+				if(System.nanoTime() - deadlines[i] > 0)
+					completed &= timedOut(s);
+			}
+			else
+			{
+				latches[i] = new CountDownLatch(1);
+				deliver(s, e, latches[i]);
+			}
+		}
+		
+		for(int i = 0; i < current.length; i++)
+		{
+			if(latches[i] == null)
+				continue;
+			
+			try
+			{
+				if(!latches[i].await(deadlines[i] - System.nanoTime(), TimeUnit.NANOSECONDS))
+					completed &= timedOut(current[i]);
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		
+		return completed;
+	}
+	
+	
+	/**
+	 * Stops the background threads after the queued events have been
+	 * delivered. The bus starts new threads if necessary.
+	 */
+	public synchronized void shutdown()
+	{
+		if(executor == null)
+			return;
+		
+		executor.shutdown();
+		executor = null;
+	}
+	
+	
+	private synchronized void add(Subscription subscription)
+	{
+		unsubscribe(subscription.listener);
+		
+		Subscription[] current = subscriptions;
+		
+		int index = 0;
+		while(index < current.length && current[index].priority >= subscription.priority)
+			index++;
+		
+		Subscription[] next = new Subscription[current.length + 1];
+		System.arraycopy(current, 0, next, 0, index);
+		next[index] = subscription;
+		System.arraycopy(current, index, next, index + 1, current.length - index);
+		
+		subscriptions = next;
+	}
+	
+	
+	private void deliver(final Subscription s, ApplicationEvent e, CountDownLatch latch)
+	{
+		switch(s.mode)
+		{
+			case SYNCHRONOUS:
+				invoke(s, e, latch);
+				break;
+				
+			case EVENT_DISPATCH_THREAD:
+				if(SwingUtilities.isEventDispatchThread())
+					invoke(s, e, latch);
+				else
+					SwingUtilities.invokeLater(new Delivery(s, e, latch));
+				break;
+				
+			case BACKGROUND:
+				s.queue.add(new Delivery(s, e, latch));
+				
+				if(s.draining.compareAndSet(false, true))
+				{
+					getExecutor().execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							drain(s);
+						}
+					});
+				}
+				break;
+		}
+	}
+	
+	
+	/*
+	 * Delivers the queued events of a background subscription one after the
+	 * other, so a listener is never invoked concurrently.
+	 */
+	private void drain(Subscription s)
+	{
+		do
+		{
+			Delivery delivery;
+			while((delivery = s.queue.poll()) != null)
+				delivery.run();
+			
+			s.draining.set(false);
+		}
+		while(!s.queue.isEmpty() && s.draining.compareAndSet(false, true));
+	}
+	
+	
+	private static void invoke(Subscription s, ApplicationEvent e, CountDownLatch latch)
+	{
+		try
+		{
+			s.target.applicationEvent(e);
+		}
+		catch(RuntimeException ex)
+		{
+			if(!ConflictManager.getConflictManager().getExceptionPipeline().submit(Thread.currentThread(), ex))
+				ex.printStackTrace();
+		}
+		finally
+		{
+			if(latch != null)
+				latch.countDown();
+		}
+	}
+	
+	
+	private static boolean timedOut(Subscription s)
+	{
+		ApplicationProfiler.getProfiler().getMetricRegistry().counter(TIMEOUT_COUNTER, "listener", s.listener.getClass().getName()).increment();
+		return false;
+	}
+	
+	
+	private synchronized ExecutorService getExecutor()
+	{
+		if(executor == null)
+		{
+			executor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Application-Event-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	
+	private static final class Subscription
+	{
+		/**
+		 * The listener as it has been subscribed.
+		 */
+		final EventListener listener;
+		
+		final ApplicationEventListener target;
+		
+		final int eventMask;
+		
+		final DeliveryMode mode;
+		
+		final int priority;
+		
+		final long timeout;
+		
+		/**
+		 * The pending events of a background subscription.
+		 */
+		final Queue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+		
+		final AtomicBoolean draining = new AtomicBoolean();
+		
+		Subscription(EventListener listener, ApplicationEventListener target, int eventMask, DeliveryMode mode, int priority, long timeout)
+		{
+			this.listener = listener;
+			this.target = target;
+			this.eventMask = eventMask;
+			this.mode = mode;
+			this.priority = priority;
+			this.timeout = Math.max(0, timeout);
+		}
+	}
+	
+	
+	private static final class Delivery implements Runnable
+	{
+		final Subscription subscription;
+		
+		final ApplicationEvent event;
+		
+		final CountDownLatch latch;
+		
+		Delivery(Subscription subscription, ApplicationEvent event, CountDownLatch latch)
+		{
+			this.subscription = subscription;
+			this.event = event;
+			this.latch = latch;
+		}
+		
+		@Override
+		public void run()
+		{
+			invoke(subscription, event, latch);
+		}
+	}
+	
+	
+	/*
+	 * Maps the event types to the methods of an application listener.
+	 */
+	private static final class ListenerAdapter implements ApplicationEventListener
+	{
+		final ApplicationListener listener;
+		
+		ListenerAdapter(ApplicationListener listener)
+		{
+			this.listener = listener;
+		}
+		
+		@Override
+		public void applicationEvent(ApplicationEvent e)
+		{
+			switch(e.getType())
+			{
+				case ApplicationEvent.APPLICATION_LAUNCHED:
+					listener.applicationLaunched(e);
+					break;
+				case ApplicationEvent.APPLICATION_CLOSING:
+					listener.applicationClosing(e);
+					break;
+				case ApplicationEvent.APPLICATION_UPDATED:
+					listener.applicationUpdated(e);
+					break;
+				case ApplicationEvent.APPLICATION_LOCKED:
+					listener.applicationLocked(e);
+					break;
+				case ApplicationEvent.APPLICATION_UNLOCKED:
+					listener.applicationUnlocked(e);
+					break;
+				case ApplicationEvent.APPLICATION_RESTARTED:
+					listener.applicationRestarted(e);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+}
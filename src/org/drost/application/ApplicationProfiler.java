@@ -29,11 +29,26 @@ import java.lang.management.RuntimeMXBean;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import javax.swing.filechooser.FileSystemView;
 
+import org.drost.application.profiling.ActivityMonitor;
+import org.drost.application.profiling.EventDispatchMonitor;
+import org.drost.application.profiling.FlightRecorderSupport;
+import org.drost.application.profiling.GarbageCollectionMonitor;
+import org.drost.application.profiling.MemoryPressureMonitor;
+import org.drost.application.profiling.MetricRegistry;
+import org.drost.application.profiling.MetricReporter;
+
 /**
  * @author kimschorat
  *
@@ -249,6 +264,37 @@ public class ApplicationProfiler
 	 * The startup time of the application.
 	 */
 	private final long applicationStartTime;
+	
+	/**
+	 * Measures the dispatch times of the event dispatch thread once it is
+	 * installed.
+	 */
+	private final EventDispatchMonitor eventDispatchMonitor = new EventDispatchMonitor( );
+	
+	/**
+	 * Holds the application defined metrics.
+	 */
+	private final MetricRegistry metricRegistry = new MetricRegistry( );
+	
+	/**
+	 * Writes the metrics to the local storage while started.
+	 */
+	private MetricReporter metricReporter = null;
+	
+	/**
+	 * Records garbage collections and allocations once it is installed.
+	 */
+	private final GarbageCollectionMonitor garbageCollectionMonitor = new GarbageCollectionMonitor( metricRegistry );
+	
+	/**
+	 * Detects memory pressure once it is installed.
+	 */
+	private final MemoryPressureMonitor memoryPressureMonitor = new MemoryPressureMonitor( );
+	
+	/**
+	 * Tracks the user input once it is installed.
+	 */
+	private final ActivityMonitor activityMonitor = new ActivityMonitor( );
 
 	/*
 	 * Creates a new instance with the current time stamp. Because it is a
@@ -303,6 +349,32 @@ public class ApplicationProfiler
 		return Long.parseLong( getProcess( ).split( "@" )[0] );
 	}
 
+	/**
+	 * Returns whether a process with the given ID is running. Requires Java 9
+	 * or later, on older versions every process is assumed to be alive.
+	 * 
+	 * @param pid
+	 *            The process ID.
+	 * @return {@code false} if the process does not exist or has terminated.
+	 */
+	public boolean isProcessAlive( long pid )
+	{
+		if( pid == getProcessID( ) )
+			return true;
+		
+		try
+		{
+			Class<?> type = Class.forName( "java.lang.ProcessHandle" );
+			Optional<?> handle = (Optional<?>) type.getMethod( "of", long.class ).invoke( null, pid );
+			
+			return handle.isPresent( ) && (Boolean) type.getMethod( "isAlive" ).invoke( handle.get( ) );
+		}
+		catch ( ReflectiveOperationException | SecurityException e )
+		{
+			return true;
+		}
+	}
+
 	public String getProcessName( )
 	{
 		return getProcess( ).split( "@" )[1];
@@ -344,9 +416,69 @@ public class ApplicationProfiler
 			if( entry.getKey( ).startsWith( "JAVA_MAIN_CLASS" ) )
 				return entry.getValue( );
 		}
+		
+		// Set by most virtual machines, the jar file when launched with -jar
+		String command = System.getProperty( "sun.java.command" );
+		
+		if( command != null && command.trim( ).length( ) > 0 )
+		{
+			command = command.trim( );
+			String main = findJar( command );
+			
+			if( main == null )
+			{
+				// A class name never contains spaces, but the arguments may
+				main = command.split( " " )[0];
+				
+				if( main.indexOf( '/' ) < 0 && main.indexOf( '\\' ) < 0 )
+					return main;
+			}
+			
+			try ( JarFile jar = new JarFile( main ) )
+			{
+				Manifest manifest = jar.getManifest( );
+				
+				if( manifest != null && manifest.getMainAttributes( ).getValue( Attributes.Name.MAIN_CLASS ) != null )
+					return manifest.getMainAttributes( ).getValue( Attributes.Name.MAIN_CLASS );
+			}
+			catch ( IOException ignore )
+			{
+				// Nothing
+			}
+		}
+		
 		throw new IllegalStateException( "Cannot determine main class in this application." );
 	}
 
+	/**
+	 * Returns the jar at the start of the command, which may contain spaces.
+	 * When launched with {@code -jar} the class path is exactly that jar.
+	 * Otherwise the leading words are joined until they name an existing jar
+	 * file.
+	 * 
+	 * @return The jar or {@code null} if the command starts with a class.
+	 */
+	private static String findJar( String command )
+	{
+		String classPath = System.getProperty( "java.class.path", "" );
+		
+		if( classPath.endsWith( ".jar" ) && !classPath.contains( File.pathSeparator ) && command.startsWith( classPath ) )
+			return classPath;
+		
+		int end = command.indexOf( ".jar" );
+		
+		while( end >= 0 )
+		{
+			String jar = command.substring( 0, end + 4 );
+			
+			if( ( end + 4 == command.length( ) || command.charAt( end + 4 ) == ' ' ) && new File( jar ).isFile( ) )
+				return jar;
+			
+			end = command.indexOf( ".jar", end + 4 );
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the class type containing the <code>main(String[])</code> method.
 	 * 
@@ -465,26 +597,314 @@ public class ApplicationProfiler
 	
 	
 	
+	// Event dispatch thread
+	
+	/**
+	 * Returns the monitor measuring the event dispatch thread. The monitor
+	 * needs to be installed to record any data, either directly or by
+	 * registering an
+	 * {@link org.drost.application.conflict.AbstractEventDispatchStallHandler}.
+	 * 
+	 * @return The event dispatch thread monitor.
+	 * 
+	 * @see EventDispatchMonitor#install()
+	 */
+	public EventDispatchMonitor getEventDispatchMonitor( )
+	{
+		return eventDispatchMonitor;
+	}
+	
+	/**
+	 * Returns the dispatch time of events on the event dispatch thread at
+	 * the given percentile, e.g. {@code 99.0}. The returned time value is
+	 * measured in milliseconds.
+	 * 
+	 * @param percentile
+	 *            The percentile between {@code 0.0} and {@code 100.0}.
+	 * @return
+	 */
+	public double getEventDispatchLatency( double percentile )
+	{
+		return eventDispatchMonitor.getLatencyHistogram( ).getValueAtPercentile( percentile ) / 1000000.0;
+	}
+	
+	/**
+	 * Returns the number of times the event dispatch thread has been blocked
+	 * for longer than the stall threshold.
+	 * 
+	 * @return
+	 */
+	public long getEventDispatchStallCount( )
+	{
+		return eventDispatchMonitor.getStallCount( );
+	}
+	
+	/**
+	 * Returns the monitor tracking the time of the last user input. Adding an
+	 * idle listener installs the monitor.
+	 * 
+	 * @return The activity monitor.
+	 * 
+	 * @see ActivityMonitor#addIdleListener(org.drost.application.listeners.IdleListener, long)
+	 */
+	public ActivityMonitor getActivityMonitor( )
+	{
+		return activityMonitor;
+	}
+	
+	
+	
+	// Garbage collection
+	
+	/**
+	 * Returns the monitor recording garbage collection pauses, promotion and
+	 * allocation rates. The monitor needs to be installed to record any
+	 * data.
+	 * 
+	 * @return The garbage collection monitor.
+	 * 
+	 * @see GarbageCollectionMonitor#install()
+	 */
+	public GarbageCollectionMonitor getGarbageCollectionMonitor( )
+	{
+		return garbageCollectionMonitor;
+	}
+	
+	/**
+	 * Returns the garbage collection pause time at the given percentile, e.g.
+	 * {@code 99.0}. The returned time value is measured in milliseconds.
+	 * 
+	 * @param percentile
+	 *            The percentile between {@code 0.0} and {@code 100.0}.
+	 * @return
+	 */
+	public double getGCPauseTime( double percentile )
+	{
+		return garbageCollectionMonitor.getPauseHistogram( ).getValueAtPercentile( percentile ) / 1000000.0;
+	}
+	
+	/**
+	 * Returns the allocation rate of all threads in bytes per second.
+	 * 
+	 * @return
+	 */
+	public double getAllocationRate( )
+	{
+		return garbageCollectionMonitor.getAllocationRate( );
+	}
+	
+	/**
+	 * Returns the monitor detecting memory pressure from the heap usage after
+	 * garbage collections. Adding a listener installs the monitor.
+	 * 
+	 * @return The memory pressure monitor.
+	 * 
+	 * @see MemoryPressureMonitor#addMemoryPressureListener(org.drost.application.listeners.MemoryPressureListener)
+	 */
+	public MemoryPressureMonitor getMemoryPressureMonitor( )
+	{
+		return memoryPressureMonitor;
+	}
+	
+	
+	
+	// Metrics
+	
+	/**
+	 * Returns the registry holding all counters, gauges, timers and
+	 * histograms of the application.
+	 * 
+	 * @return The metric registry.
+	 */
+	public MetricRegistry getMetricRegistry( )
+	{
+		return metricRegistry;
+	}
+	
+	/**
+	 * Starts writing the metrics of the registry to the given storage
+	 * periodically. A previously started reporter is stopped first.
+	 * 
+	 * @param storage
+	 *            The storage to write to, usually the one of the
+	 *            {@link Application}.
+	 * @param period
+	 *            The time between two reports.
+	 * @param unit
+	 *            The unit of the period.
+	 * @return The started reporter.
+	 * 
+	 * @see MetricReporter
+	 */
+	public synchronized MetricReporter startMetricReporter( LocalStorage storage, long period, TimeUnit unit )
+	{
+		stopMetricReporter( );
+		
+		metricReporter = new MetricReporter( metricRegistry, storage );
+		metricReporter.start( period, unit );
+		
+		return metricReporter;
+	}
+	
+	/**
+	 * Uninstalls all monitors and stops the metric reporter, e.g. before the
+	 * application is relaunched in the same virtual machine. The recorded
+	 * data is kept.
+	 */
+	public void uninstallMonitors( )
+	{
+		stopMetricReporter( );
+		
+		eventDispatchMonitor.uninstall( );
+		garbageCollectionMonitor.uninstall( );
+		memoryPressureMonitor.uninstall( );
+		activityMonitor.uninstall( );
+	}
+	
+	/**
+	 * Stops the periodic metric reporter and writes a final report.
+	 */
+	public synchronized void stopMetricReporter( )
+	{
+		if( metricReporter != null )
+		{
+			metricReporter.stop( );
+			metricReporter = null;
+		}
+	}
+	
+	
+	
+	// Flight Recorder
+	
+	/**
+	 * The directory, relative to the local storage, recordings are written
+	 * to.
+	 */
+	public static final String RECORDING_DIRECTORY = "recordings/";
+	
+	/**
+	 * Starts a Java Flight Recorder recording with the JDK {@code "default"}
+	 * configuration. Besides the JVM events it contains the framework events
+	 * emitted through {@link FlightRecorderSupport}.
+	 * 
+	 * @throws IllegalStateException
+	 *             If Flight Recorder is not available or a recording is
+	 *             already running.
+	 * @throws IOException
+	 *             If the configuration cannot be read.
+	 * 
+	 * @see #isRecordingSupported()
+	 */
+	public void startRecording( ) throws IOException
+	{
+		startRecording( "default" );
+	}
+	
+	/**
+	 * Starts a Java Flight Recorder recording.
+	 * 
+	 * @param configuration
+	 *            The name of a JDK configuration, either {@code "default"} or
+	 *            {@code "profile"}.
+	 * 
+	 * @see #startRecording()
+	 */
+	public void startRecording( String configuration ) throws IOException
+	{
+		FlightRecorderSupport.startRecording( getProcessName( ), configuration );
+	}
+	
+	public boolean isRecordingSupported( )
+	{
+		return FlightRecorderSupport.isAvailable( );
+	}
+	
+	public boolean isRecording( )
+	{
+		return FlightRecorderSupport.isRecording( );
+	}
+	
+	/**
+	 * Writes the data recorded so far into the {@value #RECORDING_DIRECTORY}
+	 * directory of the storage while the recording continues.
+	 * 
+	 * @param storage
+	 *            The storage to write to, usually the one of the
+	 *            {@link Application}.
+	 * @return The written file.
+	 * @throws IllegalStateException
+	 *             If no recording is running.
+	 */
+	public File dumpRecording( LocalStorage storage ) throws IOException
+	{
+		File file = createRecordingFile( storage );
+		FlightRecorderSupport.dumpRecording( file );
+		
+		return file;
+	}
+	
+	/**
+	 * Stops the recording and writes its data into the
+	 * {@value #RECORDING_DIRECTORY} directory of the storage.
+	 * 
+	 * @return The written file or {@code null} if no recording was running.
+	 */
+	public File stopRecording( LocalStorage storage ) throws IOException
+	{
+		if( !isRecording( ) )
+			return null;
+		
+		File file = createRecordingFile( storage );
+		FlightRecorderSupport.stopRecording( file );
+		
+		return file;
+	}
+	
+	private File createRecordingFile( LocalStorage storage ) throws IOException
+	{
+		File directory = new File( storage.getDirectory( ), RECORDING_DIRECTORY );
+		if( !directory.exists( ) && !storage.createDirectories( directory.getPath( ) ) )
+			throw new IOException( "Cannot create directory " + directory );
+		
+		String time = new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date( ) );
+		return new File( directory, "recording-" + time + ".jfr" );
+	}
+	
+	
+	
 	// Database connection
+	
+	/**
+	 * The name of the timer that database access code should record its
+	 * executions into.
+	 * 
+	 * @see #getMetricRegistry()
+	 */
+	public static final String DB_EXECUTION_TIMER = "db.execution";
 
 	/**
-	 * Wrapper method for DataBaseManager
+	 * Returns the average time of the executions recorded by the
+	 * {@value #DB_EXECUTION_TIMER} timer in milliseconds.
 	 * 
 	 * @return
 	 */
 	public int getDBAverageExecutionTime( )
 	{
-		return 0;
+		return (int) ( metricRegistry.timer( DB_EXECUTION_TIMER ).getHistogram( ).getMean( ) / 1000000.0 );
 	}
 
 	/**
-	 * Wrapper method for DataBaseManager
+	 * Returns the average number of executions recorded by the
+	 * {@value #DB_EXECUTION_TIMER} timer per minute since the application
+	 * has been launched.
 	 * 
 	 * @return
 	 */
 	public double getDBExecutionsPerMinute( )
 	{
-		return 0;
+		double minutes = Math.max( 1, getApplicationTotalTime( ) ) / 60000.0;
+		return metricRegistry.timer( DB_EXECUTION_TIMER ).getCount( ) / minutes;
 	}
 
 }
@@ -0,0 +1,415 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The lock file of a single instance application. The file is stamped with the
+ * process ID of its owner and placed in a directory of the current user
+ * outside the {@link LocalStorage}, so moving the storage does not release
+ * the lock.
+ * <p>
+ * The operating system releases a file lock when its process dies, so a lock
+ * file left behind by a crashed instance is simply locked and stamped again.
+ * A file that is still locked is never deleted, even if its stamp names a
+ * process that is no longer alive, because a new owner holds the lock before
+ * it writes its process ID. While the lock is held, acquiring it is retried
+ * with an exponential backoff, so an instance that is restarted does not fail
+ * because the previous process is still shutting down.
+ * </p>
+ * <p>
+ * The lock directory is only accessible by its owner where the file system
+ * supports it and is refused if it belongs to another user, who could
+ * otherwise plant an endpoint file and receive the arguments of further
+ * launches.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Application#lockInstance(boolean)
+ */
+public class InstanceLock
+{
+	/**
+	 * The default number of attempts to acquire the lock.
+	 */
+	public static final int DEFAULT_ATTEMPTS = 5;
+	
+	/**
+	 * The default time in milliseconds to wait after the first failed
+	 * attempt, doubled after every further one.
+	 */
+	public static final long DEFAULT_BACKOFF = 50;
+	
+	/**
+	 * Only a single byte behind the process ID is locked. Some systems forbid
+	 * reading a locked region, but other launches need to read the ID.
+	 */
+	private static final long LOCK_POSITION = 64;
+	
+	private final File file;
+	
+	private final File endpointFile;
+	
+	private FileChannel channel = null;
+	
+	private FileLock lock = null;
+	
+	
+	/**
+	 * Creates the lock of the application with the given ID in the
+	 * {@link #getLockDirectory() lock directory}.
+	 * 
+	 * @param id
+	 *            The ID of the application.
+	 */
+	public InstanceLock(String id)
+	{
+		this(getLockDirectory(), id);
+	}
+	
+	
+	public InstanceLock(File directory, String id)
+	{
+		this.file = new File(directory, id + ".lock");
+		this.endpointFile = new File(directory, id + ".instance");
+	}
+	
+	
+	/**
+	 * Returns the directory of the lock files of the current user. It lies in
+	 * the temporary directory, so stale locks do not survive a reboot. It is
+	 * created and checked when the lock is acquired.
+	 * 
+	 * @return The lock directory.
+	 */
+	public static File getLockDirectory()
+	{
+		return new File(System.getProperty("java.io.tmpdir"), "application-locks-" + System.getProperty("user.name"));
+	}
+	
+	
+	/**
+	 * Acquires the lock with the default number of attempts and backoff.
+	 * 
+	 * @see #acquire(int, long)
+	 */
+	public boolean acquire() throws IOException
+	{
+		return acquire(DEFAULT_ATTEMPTS, DEFAULT_BACKOFF);
+	}
+	
+	
+	/**
+	 * Acquires the lock. If another process holds it, the attempt is repeated
+	 * after the backoff, which is doubled after every failed attempt. If the
+	 * stamped owner is no longer alive, the lock is tried again right away,
+	 * since its holder is about to stamp it or the system is releasing it.
+	 * 
+	 * @param attempts
+	 *            The maximum number of attempts.
+	 * @param backoff
+	 *            The time in milliseconds to wait after the first failed
+	 *            attempt.
+	 * @return {@code true} if the lock is held by this process.
+	 * @throws IOException
+	 *             If the lock file could not be created or the lock directory
+	 *             belongs to another user.
+	 */
+	public synchronized boolean acquire(int attempts, long backoff) throws IOException
+	{
+		if(isHeld())
+			return true;
+		
+		secureDirectory(file.getAbsoluteFile().getParentFile());
+		
+		for(int attempt = 0; attempt < attempts; attempt++)
+		{
+			Boolean acquired = tryAcquire();
+			
+			if(acquired == null)
+				return false;
+			
+			if(acquired)
+				return true;
+			
+			long owner = getOwnerPID();
+			
+			/*
+			 * The stamp may be missing or outdated while a new holder has not
+			 * yet written it, so only the lock itself tells whether it is
+			 * free. The file is never deleted while locked.
+			 */
+			if(owner > 0 && !ApplicationProfiler.getProfiler().isProcessAlive(owner))
+			{
+				acquired = tryAcquire();
+				
+				if(acquired == null)
+					return false;
+				
+				if(acquired)
+					return true;
+			}
+			
+			if(attempt + 1 < attempts)
+			{
+				try
+				{
+					Thread.sleep(backoff << Math.min(attempt, 16));
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Releases the lock and deletes the lock file.
+	 */
+	public synchronized void release()
+	{
+		if(!isHeld())
+			return;
+		
+		/*
+		 * Deleted while still locked where the system allows it, so no other
+		 * launch can lock the file that is about to disappear.
+		 */
+		boolean deleted = file.delete();
+		
+		try
+		{
+			lock.release();
+			channel.close();
+		}
+		catch(IOException ignore)
+		{
+			// Nothing
+		}
+		
+		if(!deleted)
+			file.delete();
+		
+		lock = null;
+		channel = null;
+	}
+	
+	
+	public synchronized boolean isHeld()
+	{
+		return lock != null && lock.isValid();
+	}
+	
+	
+	/**
+	 * Returns the process ID stamped into the lock file.
+	 * 
+	 * @return The process ID or {@code -1} if there is no readable lock file.
+	 */
+	public synchronized long getOwnerPID()
+	{
+		/*
+		 * Closing any other descriptor of the file would release the lock on
+		 * some systems.
+		 */
+		if(isHeld())
+			return ApplicationProfiler.getProfiler().getProcessID();
+		
+		try
+		{
+			byte[] content = Files.readAllBytes(file.toPath());
+			return Long.parseLong(new String(content, StandardCharsets.US_ASCII).trim());
+		}
+		catch(IOException | NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+	
+	
+	public File getFile()
+	{
+		return file;
+	}
+	
+	
+	/**
+	 * Returns the endpoint file of the {@link SingleInstanceServer} of the
+	 * owner, next to the lock file.
+	 */
+	public File getEndpointFile()
+	{
+		return endpointFile;
+	}
+	
+	
+	/*
+	 * Returns null if the lock is held by another part of this virtual
+	 * machine, so waiting would not help.
+	 */
+	private Boolean tryAcquire() throws IOException
+	{
+		FileChannel c = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		Object key = getFileKey();
+		FileLock l;
+		
+		try
+		{
+			l = c.tryLock(LOCK_POSITION, 1, false);
+		}
+		catch(OverlappingFileLockException e)
+		{
+			c.close();
+			return null;
+		}
+		
+		if(l == null)
+		{
+			c.close();
+			return Boolean.FALSE;
+		}
+		
+		/*
+		 * Another launch may have deleted the file as stale right before it
+		 * has been opened, then the lock is held on a file nobody else sees.
+		 */
+		if(key != null && !key.equals(getFileKey()))
+		{
+			l.release();
+			c.close();
+			return Boolean.FALSE;
+		}
+		
+		long pid = ApplicationProfiler.getProfiler().getProcessID();
+		
+		c.truncate(0);
+		c.write(ByteBuffer.wrap((pid + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII)), 0);
+		c.force(false);
+		
+		channel = c;
+		lock = l;
+		return Boolean.TRUE;
+	}
+	
+	
+	/**
+	 * Creates a directory that only its owner can access, where the file
+	 * system supports it, and makes sure it belongs to the current user.
+	 * 
+	 * @throws IOException
+	 *             If the directory could not be created, is writable by others
+	 *             or belongs to another user.
+	 */
+	static void secureDirectory(File directory) throws IOException
+	{
+		Path path = directory.toPath();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+		
+		if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+		{
+			try
+			{
+				if(posix)
+					Files.createDirectory(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				else
+					Files.createDirectories(path);
+			}
+			catch(FileAlreadyExistsException e)
+			{
+				// Created by a concurrent launch, checked below
+			}
+		}
+		
+		if(!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+			throw new IOException(path + " is not a directory.");
+		
+		if(!posix)
+			return;
+		
+		if(!isOwnedByCurrentUser(directory))
+			throw new IOException(path + " is not owned by the current user.");
+		
+		Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+		
+		if(permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE))
+			throw new IOException(path + " is writable by other users.");
+		
+		// Created by an earlier version with the default permissions
+		if(!permissions.equals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE)))
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwx------"));
+	}
+	
+	
+	/**
+	 * Returns whether a file belongs to the current user. Always {@code true}
+	 * where the file system does not support Posix permissions.
+	 */
+	static boolean isOwnedByCurrentUser(File file) throws IOException
+	{
+		if(!FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+			return true;
+		
+		UserPrincipal owner = Files.getOwner(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+		return owner.getName().equals(System.getProperty("user.name"));
+	}
+	
+	
+	/*
+	 * Identifies the file currently at the path without opening it. Not
+	 * supported on every system.
+	 */
+	private Object getFileKey()
+	{
+		try
+		{
+			return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+	}
+}
@@ -39,6 +39,7 @@ import java.util.prefs.Preferences;
 import org.drost.application.interfaces.SaveAsConfiguration;
 import org.drost.application.interfaces.SaveAsData;
 import org.drost.application.interfaces.SaveAsResource;
+import org.drost.application.profiling.FlightRecorderSupport;
 import org.drost.application.utils.FileUtils;
 
 /**
@@ -795,6 +796,9 @@ public final class LocalStorage	// While the app framework uses the same name, r
 				return false;
 		}
 		
+		Object event = FlightRecorderSupport.beginStorage();
+		boolean success = false;
+		
 		FileOutputStream fos;
 		try 
 		{
@@ -804,13 +808,18 @@ public final class LocalStorage	// While the app framework uses the same name, r
 			oos.writeObject(object);
 			
 			oos.close();
+			success = true;
 		} 
 		catch (IOException e) {
 			e.printStackTrace();
-			return false;
+		}
+		finally
+		{
+			if(event != null)
+				FlightRecorderSupport.commitStorage(event, "save", filename, file.length(), success);
 		}
 		
-		return true;
+		return success;
 	}
 	
 	
@@ -834,6 +843,9 @@ public final class LocalStorage	// While the app framework uses the same name, r
 			filename = new File(currentDirectory, filename).getAbsolutePath();
 		}
 		
+		Object event = FlightRecorderSupport.beginStorage();
+		boolean success = false;
+		
 		FileInputStream fin;
 		try 
 		{
@@ -842,11 +854,17 @@ public final class LocalStorage	// While the app framework uses the same name, r
 			Object obj = ois.readObject();
 			ois.close();
 			
+			success = true;
 			return (Serializable) obj;
 		} 
 		catch (IOException | ClassNotFoundException e) {
 			e.printStackTrace();
 		}
+		finally
+		{
+			if(event != null)
+				FlightRecorderSupport.commitStorage(event, "load", filename, new File(filename).length(), success);
+		}
 		
 		return null;
 	}
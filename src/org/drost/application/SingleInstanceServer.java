@@ -0,0 +1,383 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+import org.drost.application.listeners.ActivationEvent;
+
+/**
+ * Lets a second launch of a single instance application hand its command line
+ * arguments over to the running instance instead of failing. The running
+ * instance listens on a loopback port and writes the port, its process ID and
+ * a random token into an endpoint file next to the lock file. Only processes
+ * able to read that file can activate the instance.
+ * <p>
+ * The protocol consists of a single request frame answered by a single
+ * byte:
+ * </p>
+ * 
+ * <pre>
+ * int    magic            0x52414631
+ * UTF    token
+ * int    request type     1 = activate
+ * long   process ID of the sender
+ * int    argument count
+ * UTF    argument         repeated
+ * 
+ * byte   reply            1 = accepted, 0 = rejected
+ * </pre>
+ * <p>
+ * Every accepted request is published as an {@link ActivationEvent} on the
+ * event bus of the running instance, on the thread of the server. Listeners
+ * doing more than a few milliseconds of work should be subscribed with
+ * another delivery mode.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Application#lockInstance(boolean, String[])
+ * @see InstanceLock#getEndpointFile()
+ */
+public class SingleInstanceServer
+{
+	/**
+	 * The default time in milliseconds a handoff waits for the running
+	 * instance.
+	 */
+	public static final int DEFAULT_HANDOFF_TIMEOUT = 2000;
+	
+	private static final int MAGIC = 0x52414631;
+	
+	private static final int REQUEST_ACTIVATE = 1;
+	
+	private static final int REPLY_REJECTED = 0;
+	
+	private static final int REPLY_ACCEPTED = 1;
+	
+	private static final int MAX_ARGUMENTS = 1024;
+	
+	/**
+	 * The time a connected client may take to send its request.
+	 */
+	private static final int READ_TIMEOUT = 1000;
+	
+	private final File endpointFile;
+	
+	private final ApplicationEventBus eventBus;
+	
+	private final Object eventSource;
+	
+	private ServerSocket server = null;
+	
+	private String token = null;
+	
+	
+	/**
+	 * Creates a server that is not yet listening.
+	 * 
+	 * @param endpointFile
+	 *            The file to announce the server in.
+	 * @param eventBus
+	 *            The bus to publish the activation events on.
+	 * @param eventSource
+	 *            The source of the published events, usually the
+	 *            {@link Application}.
+	 */
+	public SingleInstanceServer(File endpointFile, ApplicationEventBus eventBus, Object eventSource)
+	{
+		this.endpointFile = endpointFile;
+		this.eventBus = eventBus;
+		this.eventSource = eventSource;
+	}
+	
+	
+	/**
+	 * Binds the server to a free loopback port, writes the endpoint file and
+	 * starts accepting requests on a daemon thread. Has no effect if the
+	 * server is already running.
+	 * 
+	 * @throws IOException
+	 *             If the server could not be bound or announced.
+	 */
+	public synchronized void start() throws IOException
+	{
+		if(isRunning())
+			return;
+		
+		byte[] secret = new byte[16];
+		new SecureRandom().nextBytes(secret);
+		
+		StringBuilder sb = new StringBuilder();
+		for(byte b : secret)
+			sb.append(String.format("%02x", b & 0xff));
+		
+		final ServerSocket socket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+		
+		try
+		{
+			writeEndpoint(sb.toString(), socket.getLocalPort());
+		}
+		catch(IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+		
+		server = socket;
+		token = sb.toString();
+		
+		Thread acceptor = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				accept(socket);
+			}
+		}, "Single-Instance-Server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	
+	/**
+	 * Stops accepting requests and deletes the endpoint file.
+	 */
+	public synchronized void stop()
+	{
+		if(!isRunning())
+			return;
+		
+		try
+		{
+			server.close();
+		}
+		catch(IOException ignore)
+		{
+			// Nothing
+		}
+		
+		server = null;
+		endpointFile.delete();
+	}
+	
+	
+	public synchronized boolean isRunning()
+	{
+		return server != null;
+	}
+	
+	
+	/**
+	 * Hands the arguments over to the instance announced in the endpoint
+	 * file. An endpoint file left behind by a process that is no longer alive
+	 * is deleted, one that belongs to another user is ignored.
+	 * 
+	 * @param endpointFile
+	 *            The endpoint file of the running instance.
+	 * @param arguments
+	 *            The command line arguments to hand over.
+	 * @param timeout
+	 *            The time in milliseconds to wait for the running instance.
+	 * @return {@code true} if the running instance has accepted the
+	 *         arguments.
+	 */
+	public static boolean handOff(File endpointFile, String[] arguments, int timeout)
+	{
+		Properties endpoint = new Properties();
+		
+		try (InputStream in = new FileInputStream(endpointFile))
+		{
+			// Planted by another user, who must not receive the arguments
+			if(!InstanceLock.isOwnedByCurrentUser(endpointFile))
+				return false;
+			
+			endpoint.load(in);
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+		
+		long pid;
+		int port;
+		String token = endpoint.getProperty("token");
+		
+		try
+		{
+			pid = Long.parseLong(endpoint.getProperty("pid"));
+			port = Integer.parseInt(endpoint.getProperty("port"));
+		}
+		catch(NumberFormatException e)
+		{
+			return false;
+		}
+		
+		ApplicationProfiler profiler = ApplicationProfiler.getProfiler();
+		
+		if(token == null || pid == profiler.getProcessID())
+			return false;
+		
+		try (Socket socket = new Socket())
+		{
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), timeout);
+			socket.setSoTimeout(timeout);
+			socket.setTcpNoDelay(true);
+			
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(MAGIC);
+			out.writeUTF(token);
+			out.writeInt(REQUEST_ACTIVATE);
+			out.writeLong(profiler.getProcessID());
+			out.writeInt(arguments.length);
+			for(String argument : arguments)
+				out.writeUTF(argument);
+			out.flush();
+			
+			return socket.getInputStream().read() == REPLY_ACCEPTED;
+		}
+		catch(IOException e)
+		{
+			if(!profiler.isProcessAlive(pid))
+				endpointFile.delete();
+			
+			return false;
+		}
+	}
+	
+	
+	private void writeEndpoint(String token, int port) throws IOException
+	{
+		Properties endpoint = new Properties();
+		endpoint.setProperty("pid", String.valueOf(ApplicationProfiler.getProfiler().getProcessID()));
+		endpoint.setProperty("port", String.valueOf(port));
+		endpoint.setProperty("token", token);
+		
+		File parent = endpointFile.getAbsoluteFile().getParentFile();
+		if(!parent.exists())
+			parent.mkdirs();
+		
+		// Written completely before it becomes visible to other launches
+		File temp = new File(parent, endpointFile.getName() + ".tmp");
+		temp.delete();
+		
+		// The token must only be readable by the owner, from the start
+		if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+			Files.createFile(temp.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		
+		try (OutputStream out = new FileOutputStream(temp))
+		{
+			endpoint.store(out, null);
+		}
+		
+		// Elsewhere restricted as far as the file system allows
+		temp.setReadable(false, false);
+		temp.setReadable(true, true);
+		
+		endpointFile.delete();
+		if(!temp.renameTo(endpointFile))
+			throw new IOException("Could not write " + endpointFile);
+	}
+	
+	
+	/*
+	 * Requests are tiny, so they are handled on the accepting thread one
+	 * after the other.
+	 */
+	private void accept(ServerSocket socket)
+	{
+		while(!socket.isClosed())
+		{
+			try (Socket client = socket.accept())
+			{
+				client.setSoTimeout(READ_TIMEOUT);
+				handle(client);
+			}
+			catch(SocketException e)
+			{
+				// Closed by stop()
+			}
+			catch(IOException e)
+			{
+				// A broken request
+			}
+		}
+	}
+	
+	
+	private void handle(Socket client) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+		OutputStream out = client.getOutputStream();
+		
+		String expected;
+		synchronized(this)
+		{
+			expected = token;
+		}
+		
+		if(in.readInt() != MAGIC || !MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8)))
+		{
+			out.write(REPLY_REJECTED);
+			return;
+		}
+		
+		int type = in.readInt();
+		long pid = in.readLong();
+		int count = in.readInt();
+		
+		if(type != REQUEST_ACTIVATE || count < 0 || count > MAX_ARGUMENTS)
+		{
+			out.write(REPLY_REJECTED);
+			return;
+		}
+		
+		String[] arguments = new String[count];
+		for(int i = 0; i < count; i++)
+			arguments[i] = in.readUTF();
+		
+		out.write(REPLY_ACCEPTED);
+		out.flush();
+		
+		eventBus.publish(new ActivationEvent(eventSource, arguments, pid));
+	}
+}
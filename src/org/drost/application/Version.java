@@ -0,0 +1,621 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A version number as used by semantic versioning and by the Java runtime.
+ * A version consists of any number of numeric components separated by dots,
+ * an optional pre-release after a hyphen and optional build information
+ * after a plus sign:
+ * 
+ * <pre>
+ * 1.10.2
+ * 2.0.0-rc.1+20160412
+ * 17.0.2+8
+ * 1.8.0_292
+ * </pre>
+ * <p>
+ * Versions are compared component by component, missing components count
+ * as zero, so {@code 1.10} is higher than {@code 1.9} and {@code 1.0} equals
+ * {@code 1.0.0}. A pre-release is lower than the release itself and its
+ * identifiers are compared according to semantic versioning. The build
+ * information is kept but ignored in comparisons and {@link #equals(Object)}.
+ * </p>
+ * <p>
+ * The text is parsed in a single pass. Parsed instances are cached, as
+ * versions are mostly parsed from the same few strings over and over again.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Range
+ */
+public final class Version implements Comparable<Version>, Serializable
+{
+	private static final long serialVersionUID = 1L;
+	
+	private static final int MAX_CACHE_SIZE = 256;
+	
+	private static final ConcurrentHashMap<String, Version> cache = new ConcurrentHashMap<>();
+	
+	private final int[] components;
+	
+	private final String preRelease;
+	
+	private final String build;
+	
+	private final String text;
+	
+	
+	private Version(int[] components, String preRelease, String build, String text)
+	{
+		this.components = components;
+		this.preRelease = preRelease;
+		this.build = build;
+		this.text = text;
+	}
+	
+	
+	/**
+	 * Parses a version. A leading {@code v} is skipped and an underscore is
+	 * accepted as separator of components like a dot.
+	 * 
+	 * @param text
+	 *            The version, e.g. {@code 1.2.3-beta+7}.
+	 * @return The parsed version.
+	 * @throws IllegalArgumentException
+	 *             If the text is not a version.
+	 */
+	public static Version parse(String text)
+	{
+		if(text == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		Version version = cache.get(text);
+		
+		if(version == null)
+		{
+			version = parse(text, false);
+			
+			if(cache.size() >= MAX_CACHE_SIZE)
+				cache.clear();
+			
+			cache.put(text, version);
+		}
+		return version;
+	}
+	
+	
+	/**
+	 * Parses a version of the Java runtime, e.g. the {@code java.version}
+	 * property. Versions before Java 9 are numbered {@code 1.x}, their leading
+	 * {@code 1} is dropped, so {@code 1.8.0_292} becomes {@code 8.0.292} and
+	 * compares lower than {@code 9} or {@code 17.0.2}.
+	 * 
+	 * @param text
+	 *            The version of the runtime.
+	 * @return The parsed version.
+	 * @throws IllegalArgumentException
+	 *             If the text is not a version.
+	 */
+	public static Version parseJava(String text)
+	{
+		if(text == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		return parse(text, true);
+	}
+	
+	
+	/**
+	 * Parses a version, returning {@code null} instead of throwing an
+	 * exception.
+	 * 
+	 * @param text
+	 *            The version or {@code null}.
+	 * @return The parsed version or {@code null} if the text is not a version.
+	 */
+	public static Version tryParse(String text)
+	{
+		try
+		{
+			return text == null ? null : parse(text);
+		}
+		catch(IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+	
+	
+	private static Version parse(String text, boolean java)
+	{
+		String s = text.trim();
+		int length = s.length();
+		int i = 0;
+		
+		if(i < length && (s.charAt(i) == 'v' || s.charAt(i) == 'V'))
+			i++;
+		
+		int[] components = new int[4];
+		int count = 0;
+		
+		while(true)
+		{
+			if(i >= length || !isDigit(s.charAt(i)))
+				throw invalid(text);
+			
+			long value = 0;
+			
+			while(i < length && isDigit(s.charAt(i)))
+			{
+				value = value * 10 + (s.charAt(i++) - '0');
+				
+				if(value > Integer.MAX_VALUE)
+					throw invalid(text);
+			}
+			
+			if(count == components.length)
+				components = Arrays.copyOf(components, count * 2);
+			
+			components[count++] = (int) value;
+			
+			if(i < length && (s.charAt(i) == '.' || s.charAt(i) == '_'))
+			{
+				i++;
+				continue;
+			}
+			break;
+		}
+		
+		String preRelease = null;
+		String build = null;
+		
+		if(i < length && s.charAt(i) == '-')
+		{
+			int start = ++i;
+			
+			while(i < length && s.charAt(i) != '+')
+			{
+				if(!isIdentifierChar(s.charAt(i++)))
+					throw invalid(text);
+			}
+			
+			if(i == start)
+				throw invalid(text);
+			
+			preRelease = s.substring(start, i);
+		}
+		
+		if(i < length && s.charAt(i) == '+')
+		{
+			int start = ++i;
+			
+			while(i < length)
+			{
+				if(!isIdentifierChar(s.charAt(i++)))
+					throw invalid(text);
+			}
+			
+			if(i == start)
+				throw invalid(text);
+			
+			build = s.substring(start);
+		}
+		
+		if(i != length)
+			throw invalid(text);
+		
+		int first = 0;
+		
+		// Legacy numbering 1.2 up to 1.8
+		if(java && count > 1 && components[0] == 1 && components[1] <= 8)
+			first = 1;
+		
+		if(first > 0 || count < components.length)
+			components = Arrays.copyOfRange(components, first, count);
+		
+		return new Version(components, preRelease, build, s);
+	}
+	
+	
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+	
+	
+	private static boolean isIdentifierChar(char c)
+	{
+		return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '.' || c == '-';
+	}
+	
+	
+	private static IllegalArgumentException invalid(String text)
+	{
+		return new IllegalArgumentException("Invalid version: " + text);
+	}
+	
+	
+	/**
+	 * Returns a numeric component, zero if the version has less components.
+	 * 
+	 * @param index
+	 *            The index of the component, {@code 0} for the major version.
+	 */
+	public int getComponent(int index)
+	{
+		return index < components.length ? components[index] : 0;
+	}
+	
+	
+	/**
+	 * Returns the number of numeric components as given in the text.
+	 */
+	public int getComponentCount()
+	{
+		return components.length;
+	}
+	
+	
+	public int getMajor()
+	{
+		return getComponent(0);
+	}
+	
+	
+	public int getMinor()
+	{
+		return getComponent(1);
+	}
+	
+	
+	public int getPatch()
+	{
+		return getComponent(2);
+	}
+	
+	
+	/**
+	 * Returns the pre-release, e.g. {@code rc.1} or {@code ea}, or
+	 * {@code null} for a release.
+	 */
+	public String getPreRelease()
+	{
+		return preRelease;
+	}
+	
+	
+	public boolean isPreRelease()
+	{
+		return preRelease != null;
+	}
+	
+	
+	/**
+	 * Returns the build information, which is ignored in comparisons, or
+	 * {@code null}.
+	 */
+	public String getBuild()
+	{
+		return build;
+	}
+	
+	
+	public boolean isNewerThan(Version other)
+	{
+		return compareTo(other) > 0;
+	}
+	
+	
+	public boolean isOlderThan(Version other)
+	{
+		return compareTo(other) < 0;
+	}
+	
+	
+	@Override
+	public int compareTo(Version other)
+	{
+		int count = Math.max(components.length, other.components.length);
+		
+		for(int i = 0; i < count; i++)
+		{
+			int c = Integer.compare(getComponent(i), other.getComponent(i));
+			if(c != 0)
+				return c;
+		}
+		
+		if(preRelease == null)
+			return other.preRelease == null ? 0 : 1;
+		if(other.preRelease == null)
+			return -1;
+		
+		return comparePreRelease(preRelease, other.preRelease);
+	}
+	
+	
+	/**
+	 * Compares the dot separated identifiers of two pre-releases without
+	 * splitting them. Numeric identifiers are compared numerically and are
+	 * lower than alphanumeric ones, a shorter list of identifiers is lower.
+	 */
+	private static int comparePreRelease(String a, String b)
+	{
+		int i = 0;
+		int j = 0;
+		
+		while(i < a.length() && j < b.length())
+		{
+			int endA = a.indexOf('.', i);
+			int endB = b.indexOf('.', j);
+			
+			if(endA < 0)
+				endA = a.length();
+			if(endB < 0)
+				endB = b.length();
+			
+			boolean numericA = isNumeric(a, i, endA);
+			boolean numericB = isNumeric(b, j, endB);
+			int c;
+			
+			if(numericA && numericB)
+			{
+				// Without leading zeros the longer number is the higher one
+				int startA = skipZeros(a, i, endA);
+				int startB = skipZeros(b, j, endB);
+				
+				c = Integer.compare(endA - startA, endB - startB);
+				
+				for(int k = 0; c == 0 && k < endA - startA; k++)
+					c = Character.compare(a.charAt(startA + k), b.charAt(startB + k));
+			}
+			else if(numericA != numericB)
+			{
+				c = numericA ? -1 : 1;
+			}
+			else
+			{
+				c = 0;
+				
+				for(int k = 0; c == 0 && k < Math.min(endA - i, endB - j); k++)
+					c = Character.compare(a.charAt(i + k), b.charAt(j + k));
+				
+				if(c == 0)
+					c = Integer.compare(endA - i, endB - j);
+			}
+			
+			if(c != 0)
+				return c;
+			
+			i = endA + 1;
+			j = endB + 1;
+		}
+		
+		return Integer.compare(a.length() - i, b.length() - j);
+	}
+	
+	
+	private static boolean isNumeric(String s, int start, int end)
+	{
+		if(start == end)
+			return false;
+		
+		for(int i = start; i < end; i++)
+		{
+			if(!isDigit(s.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+	
+	
+	private static int skipZeros(String s, int start, int end)
+	{
+		while(start < end - 1 && s.charAt(start) == '0')
+			start++;
+		return start;
+	}
+	
+	
+	/**
+	 * Returns whether the other version is equal according to
+	 * {@link #compareTo(Version)}, the build information is ignored.
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		return obj instanceof Version && compareTo((Version) obj) == 0;
+	}
+	
+	
+	@Override
+	public int hashCode()
+	{
+		int last = components.length;
+		
+		// Trailing zeros do not make a difference
+		while(last > 0 && components[last - 1] == 0)
+			last--;
+		
+		int hash = 1;
+		for(int i = 0; i < last; i++)
+			hash = 31 * hash + components[i];
+		
+		// Equal pre-releases may differ in leading zeros, only their presence counts
+		return preRelease == null ? hash : hash + 1;
+	}
+	
+	
+	/**
+	 * Returns the version as given to {@link #parse(String)}.
+	 */
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+	
+	
+	/**
+	 * A range of versions, e.g. the versions an update can be applied to.
+	 * Ranges are written in interval notation, a square bracket includes the
+	 * bound and a parenthesis excludes it, a missing bound is unlimited:
+	 * 
+	 * <pre>
+	 * [1.2,2.0)   from 1.2 up to but excluding 2.0
+	 * [1.8,)      1.8 or higher
+	 * (,3.0]      up to 3.0
+	 * 1.8         1.8 or higher
+	 * </pre>
+	 * 
+	 * @see Version#parse(String)
+	 */
+	public static final class Range implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final Version lower;
+		
+		private final boolean lowerInclusive;
+		
+		private final Version upper;
+		
+		private final boolean upperInclusive;
+		
+		
+		public Range(Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive)
+		{
+			if(lower != null && upper != null && lower.compareTo(upper) > 0)
+				throw new IllegalArgumentException("The lower bound " + lower + " exceeds the upper bound " + upper + ".");
+			
+			this.lower = lower;
+			this.lowerInclusive = lowerInclusive;
+			this.upper = upper;
+			this.upperInclusive = upperInclusive;
+		}
+		
+		
+		/**
+		 * Parses a range in interval notation or a single version, which is
+		 * the lower bound of the range.
+		 * 
+		 * @param text
+		 *            The range, e.g. {@code [1.2,2.0)}.
+		 * @return The parsed range.
+		 * @throws IllegalArgumentException
+		 *             If the text is not a range.
+		 */
+		public static Range parse(String text)
+		{
+			if(text == null)
+				throw new IllegalArgumentException("Null argument.");
+			
+			String s = text.trim();
+			
+			if(s.isEmpty())
+				throw new IllegalArgumentException("Invalid range: " + text);
+			
+			char open = s.charAt(0);
+			
+			if(open != '[' && open != '(')
+				return atLeast(Version.parse(s));
+			
+			char close = s.charAt(s.length() - 1);
+			int comma = s.indexOf(',');
+			
+			if((close != ']' && close != ')') || comma < 0)
+				throw new IllegalArgumentException("Invalid range: " + text);
+			
+			String lower = s.substring(1, comma).trim();
+			String upper = s.substring(comma + 1, s.length() - 1).trim();
+			
+			return new Range(lower.isEmpty() ? null : Version.parse(lower), open == '[',
+					upper.isEmpty() ? null : Version.parse(upper), close == ']');
+		}
+		
+		
+		public static Range atLeast(Version version)
+		{
+			return new Range(version, true, null, false);
+		}
+		
+		
+		public boolean contains(Version version)
+		{
+			if(lower != null)
+			{
+				int c = version.compareTo(lower);
+				if(c < 0 || (c == 0 && !lowerInclusive))
+					return false;
+			}
+			
+			if(upper != null)
+			{
+				int c = version.compareTo(upper);
+				if(c > 0 || (c == 0 && !upperInclusive))
+					return false;
+			}
+			return true;
+		}
+		
+		
+		/**
+		 * Returns the lower bound or {@code null} if unlimited.
+		 */
+		public Version getLower()
+		{
+			return lower;
+		}
+		
+		
+		/**
+		 * Returns the upper bound or {@code null} if unlimited.
+		 */
+		public Version getUpper()
+		{
+			return upper;
+		}
+		
+		
+		public boolean isLowerInclusive()
+		{
+			return lowerInclusive;
+		}
+		
+		
+		public boolean isUpperInclusive()
+		{
+			return upperInclusive;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return (lowerInclusive ? "[" : "(") + (lower == null ? "" : lower) + "," + (upper == null ? "" : upper) + (upperInclusive ? "]" : ")");
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.profiling.EventDispatchMonitor;
+import org.drost.application.profiling.EventDispatchStall;
+
+/**
+ * Handles the event dispatch thread being blocked for longer than the stall
+ * threshold of the {@link EventDispatchMonitor}. Registering this handler
+ * installs the monitor of the {@link ApplicationProfiler} if necessary.
+ * <p>
+ * The {@link #handle(ConflictInfo)} method is invoked on the watchdog thread
+ * while the event dispatch thread is still blocked, so implementations must
+ * not wait for the event dispatch thread.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictHandler
+ * @see ApplicationProfiler#getEventDispatchMonitor()
+ */
+@SuppressWarnings("serial")
+public abstract class AbstractEventDispatchStallHandler implements ConflictHandler<EventDispatchStall>
+{
+	boolean registered = false;
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void register( )
+	{
+		if(isRegistered())
+			return;
+		
+		ConflictManager.getConflictManager( ).addHandler( ConflictType.EVENT_DISPATCH_STALL, this );
+		
+		registered = true;
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unregister( )
+	{
+		ConflictManager.getConflictManager( ).removeHandler( ConflictType.EVENT_DISPATCH_STALL, this );
+		
+		registered = false;
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isRegistered()
+	{
+		return registered;
+	}
+	
+	
+	/**
+	 * Sets the time after which the event dispatch thread is considered to be
+	 * blocked.
+	 * 
+	 * @param millis
+	 *            The threshold in milliseconds.
+	 *            
+	 * @see EventDispatchMonitor#setStallThreshold(long)
+	 */
+	public void setStallThreshold(long millis)
+	{
+		ApplicationProfiler.getProfiler( ).getEventDispatchMonitor( ).setStallThreshold( millis );
+	}
+}
@@ -26,6 +26,12 @@ package org.drost.application.conflict;
  * is no need to call this method directly.
  * 
  * <p>
+ * Several exception handlers may be registered, they are invoked in the order
+ * of their registration. The exceptions pass the {@link ExceptionPipeline}, so
+ * {@link #handle(ConflictInfo)} is invoked on a dedicated thread, only for
+ * the first of repeated exceptions and at a limited rate.
+ * </p>
+ * <p>
  * This class implements the {@link ConflictHandler} interface. The
  * generic class parameter is defined by the {@link Throwable} class type.
  * </p>
@@ -49,25 +55,7 @@ public abstract class AbstractExceptionHandler implements ConflictHandler<Throwa
 		if(isRegistered())
 			return;
 		
-		/*
-		 * Handle uncaught exceptions by informing the applications exception
-		 * handler.
-		 */
-		Thread.setDefaultUncaughtExceptionHandler( new Thread.UncaughtExceptionHandler( )
-		{
-			@Override
-			public void uncaughtException( Thread t, Throwable e )
-			{
-				handle( new ConflictInfo<Throwable>( e, t ) );
-			}
-		} );
-		
-		for(AbstractExceptionHandler eh : ConflictManager.getConflictManager( ).getExceptionHandlers( ))
-		{
-			eh.unregister( );
-		}
-		
-		ConflictManager.getConflictManager( ).getExceptionHandlers( ).add( this );
+		ConflictManager.getConflictManager( ).addHandler( ConflictType.EXCEPTION, this );
 		
 		registered = true;
 	}
@@ -79,9 +67,7 @@ public abstract class AbstractExceptionHandler implements ConflictHandler<Throwa
 	@Override
 	public void unregister( )
 	{
-		Thread.setDefaultUncaughtExceptionHandler( null );
-
-//		ConflictManager.getConflictManager( ).getExceptionHandlers( ).remove( this );
+		ConflictManager.getConflictManager( ).removeHandler( ConflictType.EXCEPTION, this );
 		
 		registered = false;
 	}
@@ -95,4 +81,33 @@ public abstract class AbstractExceptionHandler implements ConflictHandler<Throwa
 	{
 		return registered;
 	}
+	
+	
+	/**
+	 * Passes an exception that has been caught but should be handled like an
+	 * uncaught one.
+	 * 
+	 * @param e
+	 *            The exception.
+	 * @return {@code false} if this handler is not registered or the
+	 *         exception has been dropped.
+	 */
+	public boolean report( Throwable e )
+	{
+		return isRegistered( ) && getPipeline( ).submit( Thread.currentThread( ), e );
+	}
+	
+	
+	/**
+	 * Returns the pipeline feeding all exception handlers, e.g. to adjust the
+	 * rate limit or to read the aggregated reports.
+	 * 
+	 * @return The pipeline.
+	 * 
+	 * @see ConflictManager#getExceptionPipeline()
+	 */
+	public ExceptionPipeline getPipeline( )
+	{
+		return ConflictManager.getConflictManager( ).getExceptionPipeline( );
+	}
 }
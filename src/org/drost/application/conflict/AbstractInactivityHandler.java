@@ -19,20 +19,22 @@
  */
 package org.drost.application.conflict;
 
-import java.awt.AWTEvent;
-import java.awt.Toolkit;
-import java.awt.event.AWTEventListener;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-
-import javax.swing.Timer;
-
 import org.drost.application.Application;
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.listeners.IdleEvent;
+import org.drost.application.listeners.IdleListener;
+import org.drost.application.profiling.ActivityMonitor;
 
 /**
  * Handles a certain state when the user seems to be inactive. This is
  * always a suggestion and is done by listening to the mouse or keyboard
  * inputs.
+ * <p>
+ * The inputs are tracked by the {@link ActivityMonitor} of the
+ * {@link ApplicationProfiler}, which is installed with the first registered
+ * handler. The {@link ConflictInfo} passed to {@link #handle(ConflictInfo)}
+ * has the {@link IdleEvent} as its source.
+ * </p>
  * 
  * @author kimschorat
  * @since 1.0
@@ -47,17 +49,21 @@ public abstract class AbstractInactivityHandler implements ConflictHandler<Objec
 	
 	int inactiveIntervaleMinutes = 60;
 	
-	Timer inactiveTimer = new Timer(0, new ActionListener() {
-
+	private final IdleListener idleListener = new IdleListener()
+	{
 		@Override
-		public void actionPerformed(ActionEvent e) 
+		public void userIdle(IdleEvent e)
 		{
 			inactive = true;
-			handle(new ConflictInfo<Object>(e.getSource( ), Thread.currentThread(), System.currentTimeMillis( )));
+			ConflictManager.dispatch(AbstractInactivityHandler.this, new ConflictInfo<Object>(e, Thread.currentThread(), e.getWhen( )));
 		}
-	});
-	
-	private AWTEventListener inactivityListener = null;
+		
+		@Override
+		public void userActive(IdleEvent e)
+		{
+			inactive = false;
+		}
+	};
 	
 	/**
 	 * Indicates that the user is inactive. This is determined by checking the
@@ -85,48 +91,14 @@ public abstract class AbstractInactivityHandler implements ConflictHandler<Objec
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void register( )
+	public synchronized void register( )
 	{
 		if(isRegistered())
 			return;
 		
-		/*
-		 * Adds a global mouse and keyboard event listener to the EDT. This is
-		 * used to determine the users inactivity after no event has been fired
-		 * for a certain time.
-		 */
-		long eventMask = AWTEvent.MOUSE_EVENT_MASK + AWTEvent.MOUSE_MOTION_EVENT_MASK + AWTEvent.MOUSE_WHEEL_EVENT_MASK
-				+ AWTEvent.KEY_EVENT_MASK;
-		
-		inactivityListener = new AWTEventListener( )
-		{
-			public void eventDispatched( AWTEvent e )
-			{
-				// While the timer is not running the user has not made any
-				// interaction or the user is inactive.
-				if ( !inactiveTimer.isRunning( ) )
-				{
-					initializeTimer( );
-				}
+		getActivityMonitor( ).addIdleListener( idleListener, 60000L * inactiveIntervaleMinutes );
 
-				if ( inactiveTimer.isRunning( ) )
-					inactiveTimer.restart( );
-			}
-
-			private void initializeTimer( )
-			{
-				inactive = false;
-				inactiveTimer.setInitialDelay( 60000 * inactiveIntervaleMinutes );
-				inactiveTimer.setRepeats( false );
-				inactiveTimer.start( );
-			}
-
-		}; 
-		
-
-		Toolkit.getDefaultToolkit( ).addAWTEventListener( inactivityListener, eventMask );
-
-		ConflictManager.getConflictManager( ).getInactivityHandlers( ).add( this );
+		ConflictManager.getConflictManager( ).addHandler( ConflictType.INACTIVITY, this );
 		
 		registered = true;
 	}
@@ -136,12 +108,13 @@ public abstract class AbstractInactivityHandler implements ConflictHandler<Objec
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void unregister( )
+	public synchronized void unregister( )
 	{
-		Toolkit.getDefaultToolkit( ).removeAWTEventListener( inactivityListener );
+		getActivityMonitor( ).removeIdleListener( idleListener );
 
-//		ConflictManager.getConflictManager( ).getInactivityHandlers( ).add( this );
+		ConflictManager.getConflictManager( ).removeHandler( ConflictType.INACTIVITY, this );
 		
+		inactive = false;
 		registered = false;
 	}
 	
@@ -167,14 +140,11 @@ public abstract class AbstractInactivityHandler implements ConflictHandler<Objec
 	{
 		inactiveIntervaleMinutes = minutes;
 		
-		int millis = minutes * 60000;
-		inactiveTimer.setInitialDelay(millis);
-		inactiveTimer.setDelay(millis);
-		
-		if(inactiveTimer.isRunning())
+		if(isRegistered())
 		{
-			System.out.println("timer was still running");
-			inactiveTimer.restart();
+			ActivityMonitor monitor = getActivityMonitor( );
+			monitor.removeIdleListener( idleListener );
+			monitor.addIdleListener( idleListener, 60000L * minutes );
 			inactive = false;
 		}
 	}
@@ -202,7 +172,11 @@ public abstract class AbstractInactivityHandler implements ConflictHandler<Objec
 	{
 		return inactive;
 	}
-
 	
 	
-}
\ No newline at end of file
+	private static ActivityMonitor getActivityMonitor( )
+	{
+		return ApplicationProfiler.getProfiler( ).getActivityMonitor( );
+	}
+	
+}
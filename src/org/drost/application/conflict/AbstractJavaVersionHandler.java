@@ -25,6 +25,7 @@ import java.net.URI;
 import org.drost.application.Application;
 import org.drost.application.ApplicationProfiler;
 import org.drost.application.RuntimeEnvironmentUtils;
+import org.drost.application.Version;
 import org.drost.application.listeners.ApplicationAdapter;
 import org.drost.application.listeners.ApplicationEvent;
 
@@ -32,32 +33,16 @@ import org.drost.application.listeners.ApplicationEvent;
  * @author kimschorat
  *
  */
-public abstract class AbstractJavaVersionHandler implements ConflictHandler<Double>
+public abstract class AbstractJavaVersionHandler implements ConflictHandler<Version>
 {
 	/**
-	 * Stores the minimum required java version to run properly. Since this is a
-	 * <code>double</code> value and not every java version consists of numeric
-	 * symbols it needs to get parsed.
-	 * <p>
-	 * <b>Parsing the required java version number</b>
-	 * <p>
-	 * First of all take a look at the java version releases. The version mostly
-	 * consists out of a major and a minor version. For example the version
-	 * {@code 1.4.2_12} is set to the minimum required version where
-	 * {@code 1.4.2} is the major version and {@code _12} is the minor
-	 * reversion. The string gets parsed as follows:
-	 * 
-	 * <pre>
-	 * 	1.4.2_12 -> 1.4212
-	 * </pre>
-	 * </p>
-	 * To parse the version string to a proper and comparable value refer to
-	 * {@code parseJavaVersion(String)}.
-	 * </p>
+	 * Stores the minimum required java version to run properly. Both the
+	 * legacy numbering like {@code 1.4.2_12} and the current one like
+	 * {@code 17.0.2} are accepted, see {@link Version#parseJava(String)}.
 	 * 
 	 * @see #parseJavaVersion(String)
 	 */
-	public double minimumRequiredJavaVersion = 1.0;
+	public Version minimumRequiredJavaVersion = Version.parseJava("1.0");
 	
 	
 	private boolean registered = false;
@@ -82,17 +67,12 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 			{
 				if( !isValidJavaVersion() )
 				{
-					handle(new ConflictInfo<Double>(parseJavaVersion(ApplicationProfiler.CURRENT_JAVA_VERSION), Thread.currentThread()));
+					ConflictManager.dispatch(AbstractJavaVersionHandler.this, new ConflictInfo<Version>(parseJavaVersion(ApplicationProfiler.CURRENT_JAVA_VERSION), Thread.currentThread()));
 				}
 			}
 		};
 		
-		for( AbstractJavaVersionHandler vh : ConflictManager.getConflictManager( ).getJavaVersionHandlers( ) )
-		{
-			vh.unregister( );
-		}
-		
-		ConflictManager.getConflictManager( ).getJavaVersionHandlers( ).add( this );
+		ConflictManager.getConflictManager( ).addHandler( ConflictType.JAVA_VERSION, this );
 		
 		Application.get( ).addApplicationListener( adapter );
 		
@@ -110,6 +90,8 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 		
 		Application.get( ).removeApplicationListener( adapter );
 		
+		ConflictManager.getConflictManager( ).removeHandler( ConflictType.JAVA_VERSION, this );
+		
 		registered = false;
 	}
 
@@ -126,47 +108,25 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 
 	/**
 	 * <p>
-	 * Parses the java version string to proper decimal value to compare with
-	 * the required minimum version. For example the version {@code 1.4.2_12} is
+	 * Parses the java version string to a version comparable with the
+	 * required minimum version. For example the version {@code 1.4.2_12} is
 	 * given as the argument where {@code 1.4.2} is the major version and
-	 * {@code _12} is the minor reversion. This method will sequentially remove
-	 * all non numeric symbols from the string except for the first decimal
-	 * place appearance.
-	 * <p>
-	 * Accordingly the version {@code 1.4.2_12} will result in {@code 1.4212}
-	 * where the second dot symbol and the underline symbol is removed. While
-	 * the major version number has a higher priority than the revision,
-	 * {@code 1.3126} is lower than {@code 1.4212}.
-	 * </p>
+	 * {@code _12} is the update. The leading {@code 1} of versions before
+	 * Java 9 is dropped, so {@code 1.8.0_292} is lower than {@code 17.0.2}.
 	 * </p>
 	 * 
 	 * @param version
 	 *            The java version formatted as string.
-	 * @return The version with all non numeric characters removed
+	 * @return The parsed version.
+	 * @throws IllegalArgumentException
+	 *             If the string is not a version.
 	 * 
 	 * @see #minimumRequiredJavaVersion
-	 * @see SysUtils#CURRENT_JAVA_VERSION
+	 * @see ApplicationProfiler#CURRENT_JAVA_VERSION
 	 */
-	public double parseJavaVersion(String version)
+	public Version parseJavaVersion(String version)
 	{
-		boolean foundDecimalPlace = false;
-		
-		for(int i = 0; i < version.length(); i++)
-		{
-			int c = ((int)version.charAt(i));
-			
-			if( c < 48 || c > 57 )
-			{
-				if( c == 46 && !foundDecimalPlace)
-				{
-					foundDecimalPlace = true;
-					continue;
-				}
-				version = version.substring(0, i) + version.substring(i+1);
-			}			
-		}
-		
-		return Double.parseDouble(version);
+		return Version.parseJava(version);
 	}
 	
 //	/**
@@ -191,11 +151,11 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 	
 	/**
 	 * 
-	 * @return
+	 * @return Whether the running java version meets the required minimum.
 	 */
 	protected boolean isValidJavaVersion()
 	{
-		return (parseJavaVersion(ApplicationProfiler.CURRENT_JAVA_VERSION) < minimumRequiredJavaVersion);
+		return !parseJavaVersion(ApplicationProfiler.CURRENT_JAVA_VERSION).isOlderThan(minimumRequiredJavaVersion);
 	}
 	
 
@@ -203,7 +163,7 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 	 * Returns the minimum required java version to run this application.
 	 * @return The minimum required java version needed.
 	 */
-	public double getMinimumRequiredJavaVersion() {
+	public Version getMinimumRequiredJavaVersion() {
 		return minimumRequiredJavaVersion;
 	}
 
@@ -214,8 +174,20 @@ public abstract class AbstractJavaVersionHandler implements ConflictHandler<Doub
 	 * @param minimumRequiredJavaVersion Set the lowest java version needed 
 	 * to run this application
 	 */
-	public void setMinimumRequiredJavaVersion(double minimumRequiredJavaVersion) {
+	public void setMinimumRequiredJavaVersion(Version minimumRequiredJavaVersion) {
 		this.minimumRequiredJavaVersion = minimumRequiredJavaVersion;
 	}
+	
+	
+	/**
+	 * Sets the minimum required java version to run this application.
+	 * 
+	 * @param minimumRequiredJavaVersion Set the lowest java version needed 
+	 * to run this application, e.g. {@code 1.8} or {@code 11}
+	 * @throws IllegalArgumentException If the string is not a version.
+	 */
+	public void setMinimumRequiredJavaVersion(String minimumRequiredJavaVersion) {
+		this.minimumRequiredJavaVersion = parseJavaVersion(minimumRequiredJavaVersion);
+	}
 
 }
@@ -19,57 +19,43 @@
  */
 package org.drost.application.conflict;
 
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryNotificationInfo;
 import java.lang.management.MemoryPoolMXBean;
-import java.lang.management.MemoryType;
 
-import javax.management.ListenerNotFoundException;
-import javax.management.Notification;
-import javax.management.NotificationEmitter;
-import javax.management.NotificationListener;
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.listeners.MemoryPressureListener;
+import org.drost.application.profiling.MemoryPressure;
+import org.drost.application.profiling.MemoryPressureMonitor;
 
 /**
+ * Handles the heap running out of memory. Registering this handler installs
+ * the {@link MemoryPressureMonitor} of the {@link ApplicationProfiler} if
+ * necessary. The {@link #handle(ConflictInfo)} method is invoked whenever the
+ * pressure rises to {@link MemoryPressure#CRITICAL}, passing the fullest heap
+ * pool.
+ * <p>
+ * Whenever the pressure rises, the {@link MemoryReclaimRegistry} is asked to
+ * release memory first.
+ * </p>
+ * <p>
+ * Code that only needs to shed memory, e.g. caches, should subscribe to the
+ * monitor by a {@link MemoryPressureListener} instead.
+ * </p>
+ * 
  * @author kimschorat
  *
+ * @see ApplicationProfiler#getMemoryPressureMonitor()
  */
 public abstract class AbstractMemoryExhaustedHandler implements ConflictHandler<MemoryPoolMXBean>
 {
 	boolean registered = false;
 	
-	private MemoryPoolMXBean memoryPool = null;
-	
-	private NotificationListener listener = null;
-	
 	@Override
 	public void register( )
 	{
 		if(isRegistered())
 			return;
 		
-		MemoryMXBean m = ManagementFactory.getMemoryMXBean( );
-		
-		listener = new NotificationListener( )
-		{
-			@Override
-			public void handleNotification( Notification n, Object o )
-			{
-				if( n.getType( ).equals( MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED ) )
-				{
-					AbstractMemoryExhaustedHandler.this.handle( new ConflictInfo<MemoryPoolMXBean>(getMemoryPool(), Thread.currentThread( ), n.getTimeStamp( )) );
-				}
-			}
-		};
-		
-		( (NotificationEmitter) m ).addNotificationListener( listener, null, null );
-
-		for( AbstractMemoryExhaustedHandler mh : ConflictManager.getConflictManager( ).getMemoryExhaustedHandlers( ) )
-		{
-			mh.unregister( );
-		}
-
-		ConflictManager.getConflictManager( ).getMemoryExhaustedHandlers( ).add( this );
+		ConflictManager.getConflictManager( ).addHandler( ConflictType.MEMORY_EXHAUSTED, this );
 		
 		registered = true;
 	}
@@ -78,15 +64,7 @@ public abstract class AbstractMemoryExhaustedHandler implements ConflictHandler<
 	@Override
 	public void unregister( )
 	{
-		MemoryMXBean m = ManagementFactory.getMemoryMXBean( );
-		try
-		{
-			( (NotificationEmitter) m ).removeNotificationListener( listener );
-		}
-		catch ( ListenerNotFoundException e )
-		{
-
-		}
+		ConflictManager.getConflictManager( ).removeHandler( ConflictType.MEMORY_EXHAUSTED, this );
 		
 		registered = false;
 	}
@@ -98,36 +76,26 @@ public abstract class AbstractMemoryExhaustedHandler implements ConflictHandler<
 	}
 	
 	
+	/**
+	 * Sets the used fraction of a heap pool after a garbage collection at
+	 * which this handler is invoked. The warning threshold of the monitor is
+	 * lowered to the same value if it is above.
+	 * 
+	 * @param percent
+	 *            The fraction between {@code 0.0} exclusive and {@code 1.0}
+	 *            exclusive.
+	 * 
+	 * @see MemoryPressureMonitor#setThresholds(double, double)
+	 */
 	public void setPercentageThreshold( double percent )
 	{
-		if (percent >= 0.0 && percent < 1.0) 
+		if (percent > 0.0 && percent < 1.0) 
 		{
-			long threshold = getMemoryPool().getUsage().getMax();
-	        threshold *= (long) percent;
-	        getMemoryPool().setUsageThreshold(threshold);
+			MemoryPressureMonitor monitor = ApplicationProfiler.getProfiler( ).getMemoryPressureMonitor( );
+			monitor.setThresholds( Math.min( monitor.getWarningThreshold( ), percent ), percent );
         }
 		else
 			throw new IllegalArgumentException("Value out of range");
 	}
-	
-	
-	private MemoryPoolMXBean getMemoryPool( )
-	{
-		if(memoryPool == null)
-		{
-			for( MemoryPoolMXBean m : ManagementFactory.getMemoryPoolMXBeans( ) )
-			{
-				if( m.isUsageThresholdSupported( ) && m.getType( ) == MemoryType.HEAP )
-				{
-					memoryPool = m;
-					break;
-				}
-			}
-			
-			if(memoryPool == null)
-				throw new IllegalStateException("Unable to find a MemoryPoolMXBean supporting thresholds.");
-		}
-		return memoryPool;
-	}
 
 }
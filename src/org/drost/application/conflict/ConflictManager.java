@@ -19,10 +19,35 @@
  */
 package org.drost.application.conflict;
 
-import java.util.ArrayList;
+import java.lang.management.MemoryPoolMXBean;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.Version;
+import org.drost.application.listeners.MemoryPressureEvent;
+import org.drost.application.listeners.MemoryPressureListener;
+import org.drost.application.profiling.EventDispatchStall;
+import org.drost.application.profiling.FlightRecorderSupport;
+import org.drost.application.profiling.MemoryPressure;
 
 /**
+ * Keeps an ordered {@link HandlerChain} for every {@link ConflictType}. Several
+ * handlers of the same type can be registered at once, e.g. one logging the
+ * conflict, one counting it and one informing the user, and are invoked in
+ * the order of their registration.
+ * <p>
+ * The chains are immutable. Registering a handler replaces the chain of its
+ * type while holding the lock of this manager, dispatching a conflict only
+ * reads the current chain, so conflicts are dispatched without locking and
+ * without scanning any handlers of other types.
+ * </p>
+ * <p>
+ * A {@link ConflictSource} detecting the conflicts of a type is activated
+ * with the first handler of that type and deactivated with the last one.
+ * </p>
+ * 
  * @author kimschorat
  *
  */
@@ -30,16 +55,91 @@ public class ConflictManager
 {
 	private static ConflictManager instance = null;
 	
-	private List<AbstractExceptionHandler> exceptionHandlers = new ArrayList<AbstractExceptionHandler>();
+	private final ConcurrentMap<ConflictType<?>, HandlerChain<?>> chains = new ConcurrentHashMap<ConflictType<?>, HandlerChain<?>>();
 	
-	private List<AbstractInactivityHandler> inactivityHandlers = new ArrayList<AbstractInactivityHandler>();
+	private final ConcurrentMap<ConflictType<?>, ConflictSource> sources = new ConcurrentHashMap<ConflictType<?>, ConflictSource>();
 	
-	private List<AbstractMemoryExhaustedHandler> lowMemoryHandlers = new ArrayList<AbstractMemoryExhaustedHandler>();
+	private final MemoryReclaimRegistry memoryReclaimRegistry = new MemoryReclaimRegistry();
 	
-	private List<AbstractJavaVersionHandler> javaVersionHandler = new ArrayList<AbstractJavaVersionHandler>();
+	private final ExceptionPipeline exceptionPipeline = new ExceptionPipeline(this);
+	
+	private final IdleScheduler idleScheduler = new IdleScheduler();
 	
 	// Hidden
-	private ConflictManager() {}
+	private ConflictManager()
+	{
+		setConflictSource(ConflictType.EXCEPTION, new ConflictSource()
+		{
+			@Override
+			public void activate()
+			{
+				exceptionPipeline.start();
+				
+				/*
+				 * Handle uncaught exceptions by informing the applications
+				 * exception handlers.
+				 */
+				Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+				{
+					@Override
+					public void uncaughtException(Thread t, Throwable e)
+					{
+						exceptionPipeline.submit(t, e);
+					}
+				});
+			}
+			
+			@Override
+			public void deactivate()
+			{
+				Thread.setDefaultUncaughtExceptionHandler(null);
+				exceptionPipeline.stop();
+			}
+		});
+		
+		setConflictSource(ConflictType.MEMORY_EXHAUSTED, new ConflictSource()
+		{
+			private final MemoryPressureListener listener = new MemoryPressureListener()
+			{
+				@Override
+				public void memoryPressureChanged(MemoryPressureEvent e)
+				{
+					if(e.isRising())
+						memoryReclaimRegistry.reclaim(e.getLevel());
+					
+					if(e.getLevel() == MemoryPressure.CRITICAL)
+						dispatch(ConflictType.MEMORY_EXHAUSTED, new ConflictInfo<MemoryPoolMXBean>(e.getMemoryPool(), Thread.currentThread(), e.getWhen()));
+				}
+			};
+			
+			@Override
+			public void activate()
+			{
+				ApplicationProfiler.getProfiler().getMemoryPressureMonitor().addMemoryPressureListener(listener);
+			}
+			
+			@Override
+			public void deactivate()
+			{
+				ApplicationProfiler.getProfiler().getMemoryPressureMonitor().removeMemoryPressureListener(listener);
+			}
+		});
+		
+		setConflictSource(ConflictType.EVENT_DISPATCH_STALL, new ConflictSource()
+		{
+			@Override
+			public void activate()
+			{
+				ApplicationProfiler.getProfiler().getEventDispatchMonitor().install();
+			}
+			
+			@Override
+			public void deactivate()
+			{
+				// The monitor keeps measuring the latency
+			}
+		});
+	}
 	
 	/**
 	 * 
@@ -56,69 +156,279 @@ public class ConflictManager
 	}
 	
 	
+	/**
+	 * Passes the conflict to the handler. All handler invocations of the
+	 * framework go through this method so they can be recorded by the
+	 * profiler.
+	 * 
+	 * @param handler
+	 *            The handler to be invoked.
+	 * @param info
+	 *            The conflict.
+	 */
+	public static <T> void dispatch(ConflictHandler<T> handler, ConflictInfo<T> info)
+	{
+		Object event = FlightRecorderSupport.beginConflict();
+		try
+		{
+			handler.handle(info);
+		}
+		finally
+		{
+			FlightRecorderSupport.commitConflict(event, handler, info.getSoure());
+		}
+	}
+	
+	
+	/**
+	 * Passes the conflict to all handlers of the type.
+	 * 
+	 * @param type
+	 *            The type of the conflict.
+	 * @param info
+	 *            The conflict.
+	 * 
+	 * @see HandlerChain#dispatch(ConflictInfo)
+	 */
+	public <T> void dispatch(ConflictType<T> type, ConflictInfo<T> info)
+	{
+		getChain(type).dispatch(info);
+	}
+	
+	
+	/**
+	 * Returns the current chain of the type. The returned chain does not
+	 * change, handlers registered later are only contained in chains
+	 * returned later.
+	 * 
+	 * @param type
+	 *            The conflict type.
+	 * @return The chain, empty if no handler is registered.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> HandlerChain<T> getChain(ConflictType<T> type)
+	{
+		HandlerChain<?> chain = chains.get(type);
+		return chain != null ? (HandlerChain<T>) chain : new HandlerChain<T>(type);
+	}
+	
+	
+	/**
+	 * Appends the handler to the chain of the type and activates the source
+	 * of the type if it is the first handler.
+	 * 
+	 * @param type
+	 *            The conflict type.
+	 * @param handler
+	 *            The handler.
+	 * @return Whether the handler has been added, {@code false} if it was
+	 *         already registered.
+	 */
+	public synchronized <T> boolean addHandler(ConflictType<T> type, ConflictHandler<T> handler)
+	{
+		if(handler == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		HandlerChain<T> chain = getChain(type);
+		HandlerChain<T> next = chain.with(handler);
+		if(next == chain)
+			return false;
+		
+		chains.put(type, next);
+		
+		ConflictSource source = sources.get(type);
+		if(chain.isEmpty() && source != null)
+			source.activate();
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Removes the handler from the chain of the type and deactivates the
+	 * source of the type if it was the last handler.
+	 * 
+	 * @return Whether the handler has been removed.
+	 */
+	public synchronized <T> boolean removeHandler(ConflictType<T> type, ConflictHandler<T> handler)
+	{
+		HandlerChain<T> chain = getChain(type);
+		HandlerChain<T> next = chain.without(handler);
+		if(next == chain)
+			return false;
+		
+		chains.put(type, next);
+		
+		ConflictSource source = sources.get(type);
+		if(next.isEmpty() && source != null)
+			source.deactivate();
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Deactivates the sources of all conflict types, removes all handlers and
+	 * stops the background threads of this manager, e.g. before the
+	 * application is relaunched in the same virtual machine. The first
+	 * handler added afterwards activates its source again.
+	 */
+	public synchronized void shutdown()
+	{
+		for(ConflictType<?> type : sources.keySet())
+		{
+			if(!getChain(type).isEmpty())
+				sources.get(type).deactivate();
+		}
+		chains.clear();
+		
+		idleScheduler.shutdown();
+		exceptionPipeline.stop();
+	}
+	
+	
+	/**
+	 * Returns the handlers of the type in the order they are invoked.
+	 * 
+	 * @return An unmodifiable snapshot.
+	 */
+	public <T> List<ConflictHandler<T>> getHandlers(ConflictType<T> type)
+	{
+		return getChain(type).getHandlers();
+	}
+	
+	
+	/**
+	 * Sets the source detecting the conflicts of the type. A previous source
+	 * is deactivated and the new one is activated if handlers are registered.
+	 * 
+	 * @param type
+	 *            The conflict type.
+	 * @param source
+	 *            The source or {@code null} to remove it.
+	 */
+	public synchronized void setConflictSource(ConflictType<?> type, ConflictSource source)
+	{
+		boolean active = !getChain(type).isEmpty();
+		
+		ConflictSource previous = source == null ? sources.remove(type) : sources.put(type, source);
+		
+		if(active && previous != null)
+			previous.deactivate();
+		if(active && source != null)
+			source.activate();
+	}
+	
 	
-	public List<AbstractInactivityHandler> getInactivityHandlers()
+	/**
+	 * Returns the pipeline passing uncaught exceptions to the handlers of
+	 * {@link ConflictType#EXCEPTION}.
+	 * 
+	 * @return The pipeline.
+	 */
+	public ExceptionPipeline getExceptionPipeline()
 	{
-		return inactivityHandlers;
+		return exceptionPipeline;
 	}
 	
-	public List<AbstractExceptionHandler> getExceptionHandlers()
+	
+	/**
+	 * Returns the registry of the memory released when the heap gets tight.
+	 * 
+	 * @return The registry.
+	 */
+	public MemoryReclaimRegistry getMemoryReclaimRegistry()
 	{
-		return exceptionHandlers;
+		return memoryReclaimRegistry;
 	}
 	
+	
+	/**
+	 * Returns the scheduler of the work deferred until the user is idle.
+	 * 
+	 * @return The idle scheduler.
+	 */
+	public IdleScheduler getIdleScheduler()
+	{
+		return idleScheduler;
+	}
+	
+	
+	
+	public List<ConflictHandler<Object>> getInactivityHandlers()
+	{
+		return getHandlers(ConflictType.INACTIVITY);
+	}
+	
+	public List<ConflictHandler<Throwable>> getExceptionHandlers()
+	{
+		return getHandlers(ConflictType.EXCEPTION);
+	}
+	
+	/**
+	 * @deprecated Several handlers can be registered at once, use
+	 *             {@link #getExceptionHandlers()}.
+	 */
+	@Deprecated
 	public AbstractExceptionHandler getCurrentExceptionHandler()
 	{
-		for(AbstractExceptionHandler eh : getExceptionHandlers( ))
+		for(ConflictHandler<Throwable> eh : getExceptionHandlers( ))
 		{
-			if(eh.isRegistered( ))
-				return eh;
+			if(eh instanceof AbstractExceptionHandler)
+				return (AbstractExceptionHandler) eh;
 		}
 		
 		return null;
 	}
 	
-	public List<AbstractMemoryExhaustedHandler> getMemoryExhaustedHandlers()
+	public List<ConflictHandler<MemoryPoolMXBean>> getMemoryExhaustedHandlers()
 	{
-		return lowMemoryHandlers;
+		return getHandlers(ConflictType.MEMORY_EXHAUSTED);
 	}
 	
+	/**
+	 * @deprecated Several handlers can be registered at once, use
+	 *             {@link #getMemoryExhaustedHandlers()}.
+	 */
+	@Deprecated
 	public AbstractMemoryExhaustedHandler getCurrentMemoryExhaustedHandler()
 	{
-		for(AbstractMemoryExhaustedHandler eh : getMemoryExhaustedHandlers( ))
+		for(ConflictHandler<MemoryPoolMXBean> eh : getMemoryExhaustedHandlers( ))
 		{
-			if(eh.isRegistered( ))
-				return eh;
+			if(eh instanceof AbstractMemoryExhaustedHandler)
+				return (AbstractMemoryExhaustedHandler) eh;
 		}
 		
 		return null;
 	}
 	
 	
-	public List<AbstractJavaVersionHandler> getJavaVersionHandlers()
+	public List<ConflictHandler<Version>> getJavaVersionHandlers()
 	{
-		return javaVersionHandler;
+		return getHandlers(ConflictType.JAVA_VERSION);
 	}
 	
+	/**
+	 * @deprecated Several handlers can be registered at once, use
+	 *             {@link #getJavaVersionHandlers()}.
+	 */
+	@Deprecated
 	public AbstractJavaVersionHandler getCurrentJavaVersionHandlers()
 	{
-		for(AbstractJavaVersionHandler eh : getJavaVersionHandlers( ))
+		for(ConflictHandler<Version> eh : getJavaVersionHandlers( ))
 		{
-			if(eh.isRegistered( ))
-				return eh;
+			if(eh instanceof AbstractJavaVersionHandler)
+				return (AbstractJavaVersionHandler) eh;
 		}
 		
 		return null;
 	}
 	
 	
-	
-	
-	
-	
-	
-	
-	
+	public List<ConflictHandler<EventDispatchStall>> getEventDispatchStallHandlers()
+	{
+		return getHandlers(ConflictType.EVENT_DISPATCH_STALL);
+	}
 	
 	
 	
@@ -0,0 +1,46 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+/**
+ * Detects the conflicts of one {@link ConflictType} and reports them to the
+ * {@link ConflictManager}. A source is only active while at least one handler
+ * is registered for its type, so no resources are spent on conflicts nobody
+ * handles.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictManager#setConflictSource(ConflictType, ConflictSource)
+ */
+public interface ConflictSource
+{
+	/**
+	 * Starts detecting conflicts. Called when the first handler of the type
+	 * has been added.
+	 */
+	public void activate();
+	
+	/**
+	 * Stops detecting conflicts. Called when the last handler of the type has
+	 * been removed.
+	 */
+	public void deactivate();
+}
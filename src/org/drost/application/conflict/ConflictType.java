@@ -0,0 +1,106 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.lang.management.MemoryPoolMXBean;
+
+import org.drost.application.Version;
+import org.drost.application.profiling.EventDispatchStall;
+
+/**
+ * Identifies a kind of conflict and the type of its source. Every type owns
+ * one {@link HandlerChain} at the {@link ConflictManager}. Types are compared
+ * by identity, applications may define their own types besides the
+ * predefined ones.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ *
+ * @param <T>
+ *            The source type of the {@link ConflictInfo}.
+ */
+public final class ConflictType<T>
+{
+	/**
+	 * Exceptions not caught by the application.
+	 */
+	public static final ConflictType<Throwable> EXCEPTION = new ConflictType<Throwable>("exception", Throwable.class);
+	
+	/**
+	 * The user has not interacted with the application for a while.
+	 */
+	public static final ConflictType<Object> INACTIVITY = new ConflictType<Object>("inactivity", Object.class);
+	
+	/**
+	 * The heap is about to run out of memory.
+	 */
+	public static final ConflictType<MemoryPoolMXBean> MEMORY_EXHAUSTED = new ConflictType<MemoryPoolMXBean>("memory-exhausted", MemoryPoolMXBean.class);
+	
+	/**
+	 * The running Java version is below the required one.
+	 */
+	public static final ConflictType<Version> JAVA_VERSION = new ConflictType<Version>("java-version", Version.class);
+	
+	/**
+	 * The event dispatch thread has been blocked.
+	 */
+	public static final ConflictType<EventDispatchStall> EVENT_DISPATCH_STALL = new ConflictType<EventDispatchStall>("event-dispatch-stall", EventDispatchStall.class);
+	
+	private final String name;
+	
+	private final Class<T> sourceType;
+	
+	
+	/**
+	 * Creates a new conflict type.
+	 * 
+	 * @param name
+	 *            The name, e.g. {@code "server-disconnect"}.
+	 * @param sourceType
+	 *            The type of the conflict source.
+	 */
+	public ConflictType(String name, Class<T> sourceType)
+	{
+		if(name == null || sourceType == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.name = name;
+		this.sourceType = sourceType;
+	}
+	
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	
+	public Class<T> getSourceType()
+	{
+		return sourceType;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
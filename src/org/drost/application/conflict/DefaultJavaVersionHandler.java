@@ -21,6 +21,7 @@ package org.drost.application.conflict;
 
 import org.drost.application.ApplicationProfiler;
 import org.drost.application.RuntimeEnvironmentUtils;
+import org.drost.application.Version;
 
 /**
  * @author kimschorat
@@ -29,7 +30,7 @@ import org.drost.application.RuntimeEnvironmentUtils;
 public class DefaultJavaVersionHandler extends AbstractJavaVersionHandler
 {
 	@Override
-	public void handle( ConflictInfo<Double> info )
+	public void handle( ConflictInfo<Version> info )
 	{
 		throw new RuntimeException("\nYour java version " + ApplicationProfiler.CURRENT_JAVA_VERSION 
 				+ " is too low. Please install " + minimumRequiredJavaVersion 
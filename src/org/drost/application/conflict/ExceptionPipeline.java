@@ -0,0 +1,605 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.awt.AWTEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.drost.application.Application;
+import org.drost.application.LocalStorage;
+import org.drost.application.interfaces.SaveAsData;
+import org.drost.application.ui.HookedEventQueue;
+
+/**
+ * Decouples the handling of uncaught exceptions from the failing threads. A
+ * failing thread only appends the exception to a bounded, lock-free queue and
+ * returns, a dedicated handler thread then
+ * <ul>
+ * <li>aggregates the exceptions by their stack signature into
+ * {@link ExceptionReport}s,</li>
+ * <li>invokes the handlers only for the first occurrence of a signature
+ * within the deduplication window,</li>
+ * <li>limits the handler invocations by a token bucket and</li>
+ * <li>appends the reports to the crash report file of the local storage in
+ * batches.</li>
+ * </ul>
+ * <p>
+ * So a failure repeating in a tight loop, e.g. a component throwing on every
+ * repaint, neither floods the handlers nor slows down the application. While
+ * started, exceptions thrown on the event dispatch thread are caught by a
+ * hook of the {@link HookedEventQueue}, which also saves restarting the event
+ * dispatch thread after every failure.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictManager#getExceptionPipeline()
+ */
+public class ExceptionPipeline
+{
+	/**
+	 * The default number of exceptions queued at most. Further exceptions
+	 * are dropped until the handler thread catches up.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+	
+	/**
+	 * The default number of handler invocations per second.
+	 */
+	public static final double DEFAULT_RATE = 5.0;
+	
+	/**
+	 * The default number of handler invocations allowed in a burst.
+	 */
+	public static final int DEFAULT_BURST = 10;
+	
+	/**
+	 * The default time in milliseconds duplicates of a signature are not
+	 * handled.
+	 */
+	public static final long DEFAULT_DEDUPLICATION_WINDOW = 60000;
+	
+	/**
+	 * The default time in milliseconds between two writes to the storage.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+	
+	/**
+	 * The default file, relative to the local storage, the reports are
+	 * appended to.
+	 */
+	public static final String DEFAULT_FILENAME = SaveAsData.path + "crash-reports.log";
+	
+	/**
+	 * The number of signatures kept at most. Beyond, the reports that have
+	 * not occurred for the longest time are evicted.
+	 */
+	public static final int MAX_REPORTS = 1024;
+	
+	/**
+	 * The number of stack frames making up the signature.
+	 */
+	private static final int SIGNATURE_DEPTH = 8;
+	
+	private final ConflictManager manager;
+	
+	private final ConcurrentLinkedQueue<Failure> queue = new ConcurrentLinkedQueue<Failure>();
+	
+	private final AtomicInteger queued = new AtomicInteger();
+	
+	private final LongAdder dropped = new LongAdder();
+	
+	private final ConcurrentMap<String, ExceptionReport> reports = new ConcurrentHashMap<String, ExceptionReport>();
+	
+	/**
+	 * The reports changed since the last flush. Only accessed by the handler
+	 * thread.
+	 */
+	private final Set<ExceptionReport> pending = new LinkedHashSet<ExceptionReport>();
+	
+	private volatile int capacity = DEFAULT_CAPACITY;
+	
+	private volatile double rate = DEFAULT_RATE;
+	
+	private volatile int burst = DEFAULT_BURST;
+	
+	private volatile long deduplicationWindow = DEFAULT_DEDUPLICATION_WINDOW;
+	
+	private volatile long flushInterval = DEFAULT_FLUSH_INTERVAL;
+	
+	private volatile LocalStorage storage = null;
+	
+	private volatile String filename = DEFAULT_FILENAME;
+	
+	private volatile boolean running = false;
+	
+	private Thread worker = null;
+	
+	private CatchingHook eventQueueHook = null;
+	
+	/*
+	 * The token bucket and the flush time, only accessed by the handler
+	 * thread.
+	 */
+	private double tokens = DEFAULT_BURST;
+	
+	private long lastRefill = System.nanoTime();
+	
+	private long lastFlush = System.currentTimeMillis();
+	
+	
+	/*
+	 * Created by the conflict manager, which starts the pipeline with the
+	 * first exception handler.
+	 */
+	ExceptionPipeline(ConflictManager manager)
+	{
+		this.manager = manager;
+	}
+	
+	
+	/**
+	 * Starts the handler thread and catches the exceptions of the event
+	 * dispatch thread. Has no effect if already started.
+	 */
+	public synchronized void start()
+	{
+		if(running)
+			return;
+		
+		running = true;
+		
+		worker = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				process();
+			}
+		}, "Exception-Handler");
+		worker.setDaemon(true);
+		worker.start();
+		
+		eventQueueHook = new CatchingHook();
+		HookedEventQueue.addHook(eventQueueHook);
+	}
+	
+	
+	/**
+	 * Stops the handler thread after it has processed the queued exceptions
+	 * and written all pending reports.
+	 */
+	public synchronized void stop()
+	{
+		if(!running)
+			return;
+		
+		running = false;
+		
+		HookedEventQueue.removeHook(eventQueueHook);
+		eventQueueHook = null;
+		
+		LockSupport.unpark(worker);
+		try
+		{
+			worker.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		worker = null;
+	}
+	
+	
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	
+	/**
+	 * Queues an exception. Never blocks, so it is safe to call from any
+	 * thread, including the failing one.
+	 * 
+	 * @param thread
+	 *            The thread the exception has been thrown on.
+	 * @param e
+	 *            The exception.
+	 * @return {@code false} if the pipeline is not running or the queue is
+	 *         full and the exception has been dropped.
+	 */
+	public boolean submit(Thread thread, Throwable e)
+	{
+		if(!running || e == null)
+			return false;
+		
+		if(queued.incrementAndGet() > capacity)
+		{
+			queued.decrementAndGet();
+			dropped.increment();
+			return false;
+		}
+		
+		queue.offer(new Failure(thread, e, System.currentTimeMillis()));
+		
+		Thread w = worker;
+		if(w != null)
+			LockSupport.unpark(w);
+		
+		return true;
+	}
+	
+	
+	private void process()
+	{
+		while(running || !queue.isEmpty())
+		{
+			Failure f = queue.poll();
+			if(f == null)
+			{
+				flush(false);
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushInterval));
+				continue;
+			}
+			
+			queued.decrementAndGet();
+			
+			try
+			{
+				handle(f);
+			}
+			catch(Throwable t)
+			{
+				// A failing handler must not stop the pipeline
+				t.printStackTrace();
+			}
+			
+			flush(false);
+		}
+		
+		flush(true);
+	}
+	
+	
+	private void handle(Failure f)
+	{
+		String key = signatureOf(f.exception);
+		
+		ExceptionReport report = reports.get(key);
+		if(report == null)
+		{
+			if(reports.size() >= MAX_REPORTS)
+				evict(f.when);
+			
+			report = new ExceptionReport(key, f.exception, f.thread, f.when);
+			reports.put(key, report);
+		}
+		else
+		{
+			report.occurred(f.thread, f.when);
+		}
+		pending.add(report);
+		
+		boolean duplicate = report.lastHandled != 0 && f.when - report.lastHandled < deduplicationWindow;
+		if(duplicate || !acquireToken())
+		{
+			report.suppressed();
+			return;
+		}
+		
+		report.lastHandled = f.when;
+		manager.dispatch(ConflictType.EXCEPTION, new ConflictInfo<Throwable>(f.exception, f.thread, f.when));
+	}
+	
+	
+	/*
+	 * Removes the reports outside of the deduplication window, or the least
+	 * recent quarter if that is not enough, so the scan is rarely repeated.
+	 */
+	private void evict(long now)
+	{
+		List<ExceptionReport> all = new ArrayList<ExceptionReport>(reports.values());
+		
+		Collections.sort(all, new Comparator<ExceptionReport>()
+		{
+			@Override
+			public int compare(ExceptionReport a, ExceptionReport b)
+			{
+				return Long.compare(a.getLastOccurrence(), b.getLastOccurrence());
+			}
+		});
+		
+		int target = MAX_REPORTS * 3 / 4;
+		
+		for(int i = 0; i < all.size(); i++)
+		{
+			ExceptionReport r = all.get(i);
+			
+			if(all.size() - i <= target && now - r.getLastOccurrence() < deduplicationWindow)
+				break;
+			
+			reports.remove(r.key, r);
+		}
+	}
+	
+	
+	private boolean acquireToken()
+	{
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rate);
+		lastRefill = now;
+		
+		if(tokens < 1.0)
+			return false;
+		
+		tokens -= 1.0;
+		return true;
+	}
+	
+	
+	/*
+	 * Builds the signature from the exception types and the top frames of
+	 * the stack, so messages containing variable data do not matter. The
+	 * whole text is the key, a hash of it could merge unrelated exceptions.
+	 */
+	private static String signatureOf(Throwable e)
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		Throwable t = e;
+		for(int depth = 0; t != null && depth < 4; depth++, t = t.getCause())
+		{
+			sb.append(t.getClass().getName()).append('@');
+			
+			StackTraceElement[] stack = t.getStackTrace();
+			for(int i = 0; i < stack.length && i < SIGNATURE_DEPTH; i++)
+				sb.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName())
+						.append(':').append(stack[i].getLineNumber()).append(';');
+		}
+		
+		return sb.toString();
+	}
+	
+	
+	/*
+	 * Appends the pending reports, the first time with the whole stack trace
+	 * and later only the updated counts.
+	 */
+	private void flush(boolean force)
+	{
+		long now = System.currentTimeMillis();
+		if(pending.isEmpty() || (!force && now - lastFlush < flushInterval))
+			return;
+		
+		lastFlush = now;
+		
+		LocalStorage s = storage;
+		if(s == null && Application.running())
+			s = Application.get().getLocalStorage();
+		
+		if(s == null)
+		{
+			pending.clear();
+			return;
+		}
+		
+		File file = new File(filename);
+		if(!file.isAbsolute())
+			file = new File(s.getDirectory(), filename);
+		
+		if(!file.getParentFile().exists() && !s.createDirectories(file.getParent()))
+			return;
+		
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		
+		try(Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+		{
+			for(ExceptionReport r : pending)
+			{
+				out.write(format.format(new Date(r.getLastOccurrence())));
+				out.write(' ');
+				out.write(r.toString());
+				out.write(System.lineSeparator());
+				
+				if(!r.persisted)
+				{
+					out.write(r.getStackTrace());
+					r.persisted = true;
+				}
+			}
+			pending.clear();
+		}
+		catch(IOException e)
+		{
+			// Retried with the next flush
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Returns the reports of the signatures seen so far, at most
+	 * {@value #MAX_REPORTS} of the most recent ones.
+	 */
+	public List<ExceptionReport> getReports()
+	{
+		return Collections.unmodifiableList(new ArrayList<ExceptionReport>(reports.values()));
+	}
+	
+	
+	/**
+	 * Returns the number of exceptions dropped because the queue was full.
+	 */
+	public long getDroppedCount()
+	{
+		return dropped.sum();
+	}
+	
+	
+	/**
+	 * Sets the number of exceptions queued at most.
+	 */
+	public void setCapacity(int capacity)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1.");
+		
+		this.capacity = capacity;
+	}
+	
+	
+	/**
+	 * Sets the token bucket limiting the handler invocations.
+	 * 
+	 * @param rate
+	 *            The sustained invocations per second.
+	 * @param burst
+	 *            The invocations allowed at once after a quiet period.
+	 */
+	public void setRateLimit(double rate, int burst)
+	{
+		if(rate <= 0 || burst < 1)
+			throw new IllegalArgumentException("Value out of range");
+		
+		this.rate = rate;
+		this.burst = burst;
+	}
+	
+	
+	/**
+	 * Sets the time duplicates of an already handled signature are only
+	 * counted.
+	 * 
+	 * @param millis
+	 *            The window in milliseconds, {@code 0} to handle every
+	 *            occurrence.
+	 */
+	public void setDeduplicationWindow(long millis)
+	{
+		if(millis < 0)
+			throw new IllegalArgumentException("Value out of range");
+		
+		this.deduplicationWindow = millis;
+	}
+	
+	
+	/**
+	 * Sets the time between two writes to the storage.
+	 */
+	public void setFlushInterval(long millis)
+	{
+		if(millis < 1)
+			throw new IllegalArgumentException("Interval must be at least 1 ms.");
+		
+		this.flushInterval = millis;
+	}
+	
+	
+	/**
+	 * Sets the storage and file the reports are appended to. By default the
+	 * storage of the running {@link Application} is used, without one the
+	 * reports are only kept in memory.
+	 * 
+	 * @param storage
+	 *            The storage or {@code null} for the default.
+	 * @param filename
+	 *            The file relative to the storage directory or absolute.
+	 */
+	public void setStorage(LocalStorage storage, String filename)
+	{
+		if(filename == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.storage = storage;
+		this.filename = filename;
+	}
+	
+	
+	private static class Failure
+	{
+		final Thread thread;
+		
+		final Throwable exception;
+		
+		final long when;
+		
+		Failure(Thread thread, Throwable exception, long when)
+		{
+			this.thread = thread;
+			this.exception = exception;
+			this.when = when;
+		}
+	}
+	
+	
+	/**
+	 * Catches the exceptions of the event dispatch thread so it keeps
+	 * running.
+	 */
+	private class CatchingHook implements HookedEventQueue.Hook
+	{
+		@Override
+		public void dispatch(AWTEvent event, HookedEventQueue.Chain chain)
+		{
+			try
+			{
+				chain.proceed(event);
+			}
+			catch(ThreadDeath e)
+			{
+				throw e;
+			}
+			catch(VirtualMachineError e)
+			{
+				// Reported, but the virtual machine cannot be trusted anymore
+				submit(Thread.currentThread(), e);
+				throw e;
+			}
+			catch(RuntimeException | Error e)
+			{
+				// Counted as dropped if the queue is full
+				submit(Thread.currentThread(), e);
+			}
+		}
+	}
+}
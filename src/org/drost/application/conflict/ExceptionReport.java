@@ -0,0 +1,193 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+
+/**
+ * Aggregates all occurrences of exceptions sharing the same stack signature,
+ * i.e. the same type thrown from the same code location.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ExceptionPipeline#getReports()
+ */
+@SuppressWarnings("serial")
+public class ExceptionReport implements Serializable
+{
+	private final String signature;
+	
+	/**
+	 * The whole stack signature the pipeline aggregates by, the short
+	 * identifier may collide.
+	 */
+	final transient String key;
+	
+	private final String type;
+	
+	private final String message;
+	
+	private final String stackTrace;
+	
+	private final long firstOccurrence;
+	
+	private volatile long lastOccurrence;
+	
+	private volatile String threadName;
+	
+	private volatile long count = 1;
+	
+	private volatile long suppressedCount = 0;
+	
+	/**
+	 * The time the handler has been invoked for this signature the last
+	 * time.
+	 */
+	transient long lastHandled = 0;
+	
+	/**
+	 * Whether the stack trace has been written to the storage.
+	 */
+	transient boolean persisted = false;
+	
+	
+	ExceptionReport(String key, Throwable e, Thread thread, long when)
+	{
+		StringWriter trace = new StringWriter();
+		e.printStackTrace(new PrintWriter(trace));
+		
+		this.key = key;
+		this.signature = String.format("%08x", key.hashCode());
+		this.type = e.getClass().getName();
+		this.message = e.getMessage();
+		this.stackTrace = trace.toString();
+		this.firstOccurrence = when;
+		this.lastOccurrence = when;
+		this.threadName = thread == null ? null : thread.getName();
+	}
+	
+	
+	/*
+	 * Only called by the handler thread of the pipeline.
+	 */
+	void occurred(Thread thread, long when)
+	{
+		count++;
+		lastOccurrence = when;
+		threadName = thread == null ? null : thread.getName();
+	}
+	
+	
+	/*
+	 * Only called by the handler thread of the pipeline.
+	 */
+	void suppressed()
+	{
+		suppressedCount++;
+	}
+	
+	
+	/**
+	 * Returns a short hexadecimal identifier of the stack signature, which
+	 * is meant for display and is not necessarily unique.
+	 */
+	public String getSignature()
+	{
+		return signature;
+	}
+	
+	
+	/**
+	 * Returns the class name of the first exception.
+	 */
+	public String getType()
+	{
+		return type;
+	}
+	
+	
+	/**
+	 * Returns the message of the first exception.
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+	
+	
+	/**
+	 * Returns the printed stack trace of the first exception.
+	 */
+	public String getStackTrace()
+	{
+		return stackTrace;
+	}
+	
+	
+	/**
+	 * Returns the number of occurrences.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the number of occurrences the handler has not been invoked for,
+	 * either as duplicates or due to the rate limit.
+	 */
+	public long getSuppressedCount()
+	{
+		return suppressedCount;
+	}
+	
+	
+	public long getFirstOccurrence()
+	{
+		return firstOccurrence;
+	}
+	
+	
+	public long getLastOccurrence()
+	{
+		return lastOccurrence;
+	}
+	
+	
+	/**
+	 * Returns the name of the thread of the last occurrence.
+	 */
+	public String getThreadName()
+	{
+		return threadName;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return type + " [" + signature + "] count=" + count + " suppressed=" + suppressedCount
+				+ " thread=" + threadName + (message == null ? "" : " message=" + message);
+	}
+}
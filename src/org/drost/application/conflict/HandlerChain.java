@@ -0,0 +1,163 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, ordered sequence of handlers of one {@link ConflictType}.
+ * Adding or removing a handler creates a new chain, so a chain can be
+ * dispatched without locking while handlers are being registered on other
+ * threads.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ *
+ * @param <T>
+ *            The source type of the {@link ConflictInfo}.
+ * 
+ * @see ConflictManager#getChain(ConflictType)
+ */
+public final class HandlerChain<T>
+{
+	private final ConflictType<T> type;
+	
+	private final ConflictHandler<T>[] handlers;
+	
+	
+	HandlerChain(ConflictType<T> type)
+	{
+		this(type, HandlerChain.<T>newArray(0));
+	}
+	
+	
+	private HandlerChain(ConflictType<T> type, ConflictHandler<T>[] handlers)
+	{
+		this.type = type;
+		this.handlers = handlers;
+	}
+	
+	
+	/*
+	 * Returns a chain with the handler appended or this chain if it already
+	 * contains the handler.
+	 */
+	HandlerChain<T> with(ConflictHandler<T> handler)
+	{
+		if(contains(handler))
+			return this;
+		
+		ConflictHandler<T>[] copy = Arrays.copyOf(handlers, handlers.length + 1);
+		copy[handlers.length] = handler;
+		return new HandlerChain<T>(type, copy);
+	}
+	
+	
+	/*
+	 * Returns a chain without the handler or this chain if it does not
+	 * contain the handler.
+	 */
+	HandlerChain<T> without(ConflictHandler<T> handler)
+	{
+		for(int i = 0; i < handlers.length; i++)
+		{
+			if(handlers[i] == handler)
+			{
+				ConflictHandler<T>[] copy = newArray(handlers.length - 1);
+				System.arraycopy(handlers, 0, copy, 0, i);
+				System.arraycopy(handlers, i + 1, copy, i, copy.length - i);
+				return new HandlerChain<T>(type, copy);
+			}
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Passes the conflict to every handler in order. A handler throwing an
+	 * exception does not keep the following handlers from being invoked.
+	 * 
+	 * @param info
+	 *            The conflict.
+	 */
+	public void dispatch(ConflictInfo<T> info)
+	{
+		for(ConflictHandler<T> handler : handlers)
+		{
+			try
+			{
+				ConflictManager.dispatch(handler, info);
+			}
+			catch(RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	
+	public ConflictType<T> getType()
+	{
+		return type;
+	}
+	
+	
+	/**
+	 * Returns the handlers in the order they are invoked.
+	 * 
+	 * @return An unmodifiable list.
+	 */
+	public List<ConflictHandler<T>> getHandlers()
+	{
+		return Collections.unmodifiableList(Arrays.asList(handlers));
+	}
+	
+	
+	public boolean contains(ConflictHandler<?> handler)
+	{
+		for(ConflictHandler<T> h : handlers)
+		{
+			if(h == handler)
+				return true;
+		}
+		return false;
+	}
+	
+	
+	public boolean isEmpty()
+	{
+		return handlers.length == 0;
+	}
+	
+	
+	public int size()
+	{
+		return handlers.length;
+	}
+	
+	
+	@SuppressWarnings("unchecked")
+	private static <T> ConflictHandler<T>[] newArray(int length)
+	{
+		return (ConflictHandler<T>[]) new ConflictHandler<?>[length];
+	}
+}
@@ -0,0 +1,391 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.listeners.IdleEvent;
+import org.drost.application.listeners.IdleListener;
+
+/**
+ * Runs deferrable {@link IdleTask}s only while the user is idle, so the
+ * foreground latency is never affected by them. The idle state is taken from
+ * the {@link org.drost.application.profiling.ActivityMonitor}, which is
+ * installed with the first submitted task.
+ * <p>
+ * Once the user has been idle for the idle threshold, the pending tasks are
+ * executed one after the other on a single background thread of minimum
+ * priority, the highest priority first and the cheapest first among tasks of
+ * equal priority. On the first user input the running task is asked to
+ * yield, tasks that return unfinished are continued in the next idle period.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictManager#getIdleScheduler()
+ */
+public class IdleScheduler
+{
+	/**
+	 * The default time in milliseconds without user input before tasks are
+	 * executed.
+	 */
+	public static final long DEFAULT_IDLE_THRESHOLD = 30000;
+	
+	private final PriorityQueue<Handle> pending = new PriorityQueue<Handle>();
+	
+	private final AtomicLong sequence = new AtomicLong();
+	
+	private final IdleListener idleListener = new IdleListener()
+	{
+		@Override
+		public void userIdle(IdleEvent e)
+		{
+			idle = true;
+			drain();
+		}
+		
+		@Override
+		public void userActive(IdleEvent e)
+		{
+			idle = false;
+			
+			Handle task = running;
+			if(task != null)
+				task.yieldRequested = true;
+		}
+	};
+	
+	private volatile boolean idle = false;
+	
+	private volatile Handle running = null;
+	
+	private long idleThreshold = DEFAULT_IDLE_THRESHOLD;
+	
+	private ExecutorService executor = null;
+	
+	
+	/**
+	 * Queues a task for the next idle period and starts the scheduler if
+	 * necessary. If the user is already idle the task is started right away.
+	 * 
+	 * @param name
+	 *            The name of the task, used for diagnostics.
+	 * @param priority
+	 *            Tasks with higher values are executed first.
+	 * @param estimatedCost
+	 *            The estimated running time in milliseconds, cheaper tasks
+	 *            are executed first among tasks of equal priority.
+	 * @param task
+	 *            The task.
+	 * @return The handle to cancel the task.
+	 */
+	public Handle submit(String name, int priority, long estimatedCost, IdleTask task)
+	{
+		if(name == null || task == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		Handle handle = new Handle(name, priority, Math.max(0, estimatedCost), sequence.getAndIncrement(), task);
+		
+		synchronized(this)
+		{
+			start();
+			pending.add(handle);
+		}
+		
+		if(idle)
+			drain();
+		
+		return handle;
+	}
+	
+	
+	/**
+	 * Sets the time without user input before tasks are executed.
+	 * 
+	 * @param millis
+	 *            The threshold in milliseconds.
+	 */
+	public synchronized void setIdleThreshold(long millis)
+	{
+		if(millis < 1)
+			throw new IllegalArgumentException("The idle threshold must be positive: " + millis);
+		
+		idleThreshold = millis;
+		
+		if(executor != null)
+		{
+			ApplicationProfiler.getProfiler( ).getActivityMonitor( ).removeIdleListener(idleListener);
+			ApplicationProfiler.getProfiler( ).getActivityMonitor( ).addIdleListener(idleListener, millis);
+		}
+	}
+	
+	
+	public synchronized long getIdleThreshold()
+	{
+		return idleThreshold;
+	}
+	
+	
+	/**
+	 * Returns the number of tasks waiting for an idle period, not counting
+	 * the running one and those that returned unfinished during the current
+	 * idle period.
+	 */
+	public synchronized int getPendingCount()
+	{
+		return pending.size();
+	}
+	
+	
+	/**
+	 * Returns whether the user is idle, so tasks are being executed.
+	 */
+	public boolean isIdle()
+	{
+		return idle;
+	}
+	
+	
+	/**
+	 * Stops the scheduler. The running task is asked to yield, the pending
+	 * tasks are kept until the next task is submitted.
+	 */
+	public synchronized void shutdown()
+	{
+		if(executor == null)
+			return;
+		
+		ApplicationProfiler.getProfiler( ).getActivityMonitor( ).removeIdleListener(idleListener);
+		idle = false;
+		
+		Handle task = running;
+		if(task != null)
+			task.yieldRequested = true;
+		
+		executor.shutdown();
+		executor = null;
+	}
+	
+	
+	private synchronized void start()
+	{
+		if(executor != null)
+			return;
+		
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Idle-Scheduler");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+		
+		ApplicationProfiler.getProfiler( ).getActivityMonitor( ).addIdleListener(idleListener, idleThreshold);
+	}
+	
+	
+	private synchronized void drain()
+	{
+		if(executor == null)
+			return;
+		
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				/*
+				 * Unfinished tasks are put aside until the drain ends, so a
+				 * task returning early while the user is still idle is not
+				 * polled again right away.
+				 */
+				List<Handle> unfinished = new ArrayList<Handle>();
+				
+				try
+				{
+					while(idle)
+					{
+						Handle task;
+						synchronized(IdleScheduler.this)
+						{
+							task = pending.poll();
+						}
+						
+						if(task == null)
+							return;
+						
+						if(!execute(task))
+							unfinished.add(task);
+					}
+				}
+				finally
+				{
+					synchronized(IdleScheduler.this)
+					{
+						pending.addAll(unfinished);
+					}
+				}
+			}
+		});
+	}
+	
+	
+	/*
+	 * Called on the background thread. Returns false if the task has to be
+	 * continued.
+	 */
+	private boolean execute(Handle task)
+	{
+		running = task;
+		task.yieldRequested = !idle;
+		
+		boolean finished = true;
+		try
+		{
+			if(!task.cancelled)
+				finished = task.task.run(task);
+		}
+		catch(Exception e)
+		{
+			if(!ConflictManager.getConflictManager( ).getExceptionPipeline( ).submit(Thread.currentThread( ), e))
+				e.printStackTrace();
+		}
+		finally
+		{
+			running = null;
+		}
+		
+		if(finished || task.cancelled)
+		{
+			task.done = true;
+			return true;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * A submitted task, passed to the task as its {@link IdleTask.Context}.
+	 */
+	public static final class Handle implements IdleTask.Context, Comparable<Handle>
+	{
+		final String name;
+		
+		final int priority;
+		
+		final long estimatedCost;
+		
+		final long sequence;
+		
+		final IdleTask task;
+		
+		volatile boolean yieldRequested = false;
+		
+		volatile boolean cancelled = false;
+		
+		volatile boolean done = false;
+		
+		Handle(String name, int priority, long estimatedCost, long sequence, IdleTask task)
+		{
+			this.name = name;
+			this.priority = priority;
+			this.estimatedCost = estimatedCost;
+			this.sequence = sequence;
+			this.task = task;
+		}
+		
+		
+		/**
+		 * Cancels the task. A running task is asked to yield and is not
+		 * continued afterwards.
+		 */
+		public void cancel()
+		{
+			cancelled = true;
+		}
+		
+		@Override
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+		
+		@Override
+		public boolean shouldYield()
+		{
+			return yieldRequested || cancelled;
+		}
+		
+		/**
+		 * Returns whether the task has finished, failed or has been
+		 * cancelled.
+		 */
+		public boolean isDone()
+		{
+			return done || cancelled;
+		}
+		
+		public String getName()
+		{
+			return name;
+		}
+		
+		public int getPriority()
+		{
+			return priority;
+		}
+		
+		public long getEstimatedCost()
+		{
+			return estimatedCost;
+		}
+		
+		@Override
+		public int compareTo(Handle other)
+		{
+			if(priority != other.priority)
+				return priority > other.priority ? -1 : 1;
+			
+			if(estimatedCost != other.estimatedCost)
+				return estimatedCost < other.estimatedCost ? -1 : 1;
+			
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+}
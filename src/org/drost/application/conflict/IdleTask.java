@@ -0,0 +1,70 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+/**
+ * Deferrable work executed by the {@link IdleScheduler} while the user is
+ * idle, e.g. compacting a cache, cleaning up the storage or prefetching data.
+ * <p>
+ * Tasks are interrupted cooperatively: a long running task should check
+ * {@link Context#shouldYield()} regularly and return {@code false} as soon as
+ * it is {@code true}. The task is then continued with another invocation of
+ * {@link #run(Context)} in the next idle period, so it has to keep its
+ * progress itself.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see IdleScheduler#submit(String, int, long, IdleTask)
+ */
+public interface IdleTask
+{
+	/**
+	 * Performs the work on the background thread of the scheduler.
+	 * 
+	 * @param context
+	 *            Tells the task when to stop.
+	 * @return {@code true} if the task has finished, {@code false} if it has
+	 *         yielded and wants to be continued.
+	 * @throws Exception
+	 *             If the task fails, it is not continued.
+	 */
+	public boolean run(Context context) throws Exception;
+	
+	
+	/**
+	 * The state of a single invocation of an {@link IdleTask}.
+	 */
+	public interface Context
+	{
+		/**
+		 * Returns whether the task should return as soon as possible, either
+		 * because the user is active again or the task has been cancelled.
+		 */
+		public boolean shouldYield();
+		
+		/**
+		 * Returns whether the task has been cancelled and will not be
+		 * continued.
+		 */
+		public boolean isCancelled();
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.profiling.MemoryPressure;
+
+/**
+ * Holds the {@link MemoryReclaimable} participants of the application. When
+ * the memory pressure rises, the registered
+ * {@link AbstractMemoryExhaustedHandler} lets this registry reclaim memory
+ * before the handler itself is invoked.
+ * <p>
+ * The participants are asked in ascending order of their priority until the
+ * released bytes are expected to bring the heap below the target usage. The
+ * bytes released by every participant are counted in the
+ * {@value #RECLAIMED_COUNTER} counter of the metric registry, tagged with the
+ * name of the participant.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictManager#getMemoryReclaimRegistry()
+ */
+public class MemoryReclaimRegistry
+{
+	/**
+	 * The default used fraction of the heap to reach by reclaiming memory.
+	 */
+	public static final double DEFAULT_TARGET_USAGE = 0.6;
+	
+	/**
+	 * The name of the counter of the reclaimed bytes.
+	 */
+	public static final String RECLAIMED_COUNTER = "memory.reclaimed";
+	
+	private final List<Participant> participants = new ArrayList<Participant>();
+	
+	private volatile double targetUsage = DEFAULT_TARGET_USAGE;
+	
+	
+	/**
+	 * Registers a participant. A participant registered twice is moved to the
+	 * new priority.
+	 * 
+	 * @param name
+	 *            The name used to report the reclaimed bytes.
+	 * @param priority
+	 *            Participants with lower values are reclaimed first, so
+	 *            memory that is cheap to recreate should use low values.
+	 * @param reclaimable
+	 *            The participant.
+	 */
+	public synchronized void register(String name, int priority, MemoryReclaimable reclaimable)
+	{
+		if(name == null || reclaimable == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		unregister(reclaimable);
+		
+		int index = 0;
+		while(index < participants.size() && participants.get(index).priority <= priority)
+			index++;
+		
+		participants.add(index, new Participant(name, priority, reclaimable));
+	}
+	
+	
+	/**
+	 * Removes the participant.
+	 * 
+	 * @return Whether the participant has been registered.
+	 */
+	public synchronized boolean unregister(MemoryReclaimable reclaimable)
+	{
+		for(int i = 0; i < participants.size(); i++)
+		{
+			if(participants.get(i).reclaimable == reclaimable)
+			{
+				participants.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Sets the used fraction of the heap after a garbage collection that
+	 * reclaiming aims for.
+	 * 
+	 * @param targetUsage
+	 *            The fraction between {@code 0.0} and {@code 1.0} exclusive.
+	 */
+	public void setTargetUsage(double targetUsage)
+	{
+		if(targetUsage <= 0.0 || targetUsage >= 1.0)
+			throw new IllegalArgumentException("Value out of range");
+		
+		this.targetUsage = targetUsage;
+	}
+	
+	
+	public double getTargetUsage()
+	{
+		return targetUsage;
+	}
+	
+	
+	/**
+	 * Reclaims memory from the participants in priority order until the
+	 * released bytes cover the excess above the target usage. Exceptions
+	 * thrown by a participant are printed and the next one is asked.
+	 * 
+	 * @param level
+	 *            The current memory pressure, passed to the participants.
+	 * @return The estimated bytes released.
+	 */
+	public long reclaim(MemoryPressure level)
+	{
+		if(level == MemoryPressure.NORMAL)
+			return 0;
+		
+		long excess = ApplicationProfiler.getProfiler( ).getMemoryPressureMonitor( ).getExcessBytes( targetUsage );
+		
+		List<Participant> snapshot;
+		synchronized(this)
+		{
+			snapshot = new ArrayList<Participant>(participants);
+		}
+		
+		long released = 0;
+		for(Participant p : snapshot)
+		{
+			if(released >= excess)
+				break;
+			
+			if(p.reclaimable.getEstimatedSize() <= 0)
+				continue;
+			
+			try
+			{
+				long bytes = Math.max(0, p.reclaimable.reclaim(level));
+				
+				p.reclaimed.addAndGet(bytes);
+				ApplicationProfiler.getProfiler( ).getMetricRegistry( ).counter(RECLAIMED_COUNTER, "participant", p.name).add(bytes);
+				released += bytes;
+			}
+			catch(RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		
+		return released;
+	}
+	
+	
+	/**
+	 * Returns the sum of the estimated sizes of all participants.
+	 */
+	public synchronized long getEstimatedSize()
+	{
+		long size = 0;
+		for(Participant p : participants)
+			size += p.reclaimable.getEstimatedSize();
+		
+		return size;
+	}
+	
+	
+	/**
+	 * Returns the total bytes released by the participant of that name.
+	 */
+	public synchronized long getReclaimedBytes(String name)
+	{
+		for(Participant p : participants)
+		{
+			if(p.name.equals(name))
+				return p.reclaimed.get();
+		}
+		return 0;
+	}
+	
+	
+	private static class Participant
+	{
+		final String name;
+		
+		final int priority;
+		
+		final MemoryReclaimable reclaimable;
+		
+		final AtomicLong reclaimed = new AtomicLong();
+		
+		Participant(String name, int priority, MemoryReclaimable reclaimable)
+		{
+			this.name = name;
+			this.priority = priority;
+			this.reclaimable = reclaimable;
+		}
+	}
+}
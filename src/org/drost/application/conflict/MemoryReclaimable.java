@@ -0,0 +1,59 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.conflict;
+
+import org.drost.application.profiling.MemoryPressure;
+
+/**
+ * Memory held by a component that can be released on demand and recreated
+ * later, e.g. a cache of rendered images. Implementations are registered at
+ * the {@link MemoryReclaimRegistry} and asked to release memory when the heap
+ * gets tight.
+ * <p>
+ * Both methods are called on a monitoring thread, implementations must be
+ * thread-safe.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ConflictManager#getMemoryReclaimRegistry()
+ */
+public interface MemoryReclaimable
+{
+	/**
+	 * Returns an estimate of the bytes that could be released. The estimate
+	 * does not need to be exact but should be cheap to compute.
+	 * 
+	 * @return The estimated size in bytes.
+	 */
+	public long getEstimatedSize();
+	
+	/**
+	 * Releases memory. At {@link MemoryPressure#WARNING} memory that is cheap
+	 * to recreate should be released, at {@link MemoryPressure#CRITICAL}
+	 * everything that is not strictly required.
+	 * 
+	 * @param level
+	 *            The current memory pressure.
+	 * @return The estimated bytes released.
+	 */
+	public long reclaim(MemoryPressure level);
+}
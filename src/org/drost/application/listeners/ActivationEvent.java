@@ -0,0 +1,43 @@
+package org.drost.application.listeners;
+
+/**
+ * Published on the event bus of the running instance when another launch of
+ * the application has handed over its command line arguments.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.SingleInstanceServer
+ */
+@SuppressWarnings( "serial" )
+public class ActivationEvent extends ApplicationEvent
+{
+	/**
+	 * The command line arguments of the other launch.
+	 */
+	final String[] arguments;
+	
+	/**
+	 * The process ID of the other launch.
+	 */
+	final long processID;
+	
+	public ActivationEvent(Object source, String[] arguments, long processID)
+	{
+		super(source, APPLICATION_ACTIVATED);
+		
+		this.arguments = arguments.clone( );
+		this.processID = processID;
+	}
+	
+	
+	public String[] getArguments( )
+	{
+		return arguments.clone( );
+	}
+	
+	public long getProcessID( )
+	{
+		return processID;
+	}
+}
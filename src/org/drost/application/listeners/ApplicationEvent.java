@@ -18,6 +18,33 @@ public class ApplicationEvent extends EventObject implements Serializable, Compa
 	
 	public static final int APPLICATION_RESTARTED = 0x20;
 	
+	/**
+	 * Another launch of the application has been handed over to the running
+	 * instance.
+	 */
+	public static final int APPLICATION_ACTIVATED = 0x40;
+	
+	/**
+	 * A newer version of the application is available.
+	 */
+	public static final int APPLICATION_UPDATE_AVAILABLE = 0x80;
+	
+	/**
+	 * The look and feel of the application has been changed.
+	 */
+	public static final int APPLICATION_LOOK_AND_FEEL_CHANGED = 0x100;
+	
+	/**
+	 * The first type available to events defined by the application. Types
+	 * are bit masks, so further types are shifted to the left of this one.
+	 */
+	public static final int APPLICATION_FIRST_USER_TYPE = 0x10000;
+	
+	/**
+	 * The mask matching all event types.
+	 */
+	public static final int ALL_EVENTS_MASK = 0xFFFFFFFF;
+	
 	/**
 	 * The time when the event has been created in milliseconds.
 	 */
@@ -0,0 +1,24 @@
+package org.drost.application.listeners;
+
+import java.util.EventListener;
+
+/**
+ * Receives every {@link ApplicationEvent} matching the event mask it has been
+ * subscribed with, including event types unknown to the
+ * {@link ApplicationListener}.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationEventBus#subscribe(ApplicationEventListener, int, org.drost.application.ApplicationEventBus.DeliveryMode, int, long)
+ */
+public interface ApplicationEventListener extends EventListener
+{
+	/**
+	 * Invoked on the thread chosen by the delivery mode of the subscription.
+	 * 
+	 * @param e
+	 *            The event.
+	 */
+	public void applicationEvent(ApplicationEvent e);
+}
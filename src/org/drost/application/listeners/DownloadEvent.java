@@ -0,0 +1,88 @@
+package org.drost.application.listeners;
+
+import java.util.EventObject;
+
+@SuppressWarnings( "serial" )
+public class DownloadEvent extends EventObject
+{
+	/**
+	 * The time when the event has been created in milliseconds.
+	 */
+	final long when;
+	
+	/**
+	 * The number of bytes on disk, including those of a resumed download.
+	 */
+	final long bytesReceived;
+	
+	/**
+	 * The size of the file or {@code -1} if unknown.
+	 */
+	final long totalBytes;
+	
+	/**
+	 * The smoothed throughput in bytes per second.
+	 */
+	final double throughput;
+	
+	public DownloadEvent(Object source, long bytesReceived, long totalBytes, double throughput)
+	{
+		super(source);
+		
+		this.bytesReceived = bytesReceived;
+		this.totalBytes = totalBytes;
+		this.throughput = throughput;
+		
+		this.when = System.currentTimeMillis( );
+	}
+	
+	
+	public long getWhen( )
+	{
+		return when;
+	}
+	
+	
+	public long getBytesReceived( )
+	{
+		return bytesReceived;
+	}
+	
+	
+	public long getTotalBytes( )
+	{
+		return totalBytes;
+	}
+	
+	
+	public double getThroughput( )
+	{
+		return throughput;
+	}
+	
+	
+	/**
+	 * Returns the completed fraction between 0 and 1, or {@code -1} if the
+	 * size of the file is unknown.
+	 */
+	public double getFraction( )
+	{
+		if(totalBytes <= 0)
+			return -1;
+		
+		return Math.min(1.0, (double) bytesReceived / totalBytes);
+	}
+	
+	
+	/**
+	 * Returns the estimated remaining time in milliseconds, or {@code -1} if
+	 * it cannot be estimated.
+	 */
+	public long getRemainingTime( )
+	{
+		if(totalBytes <= 0 || throughput <= 0)
+			return -1;
+		
+		return (long) ((totalBytes - bytesReceived) * 1000 / throughput);
+	}
+}
@@ -0,0 +1,32 @@
+package org.drost.application.listeners;
+
+import java.util.EventListener;
+
+/**
+ * Informed about the progress of a download.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.update.UpdateDownloader
+ */
+public interface DownloadListener extends EventListener
+{
+	/**
+	 * Invoked on a download thread a few times per second while bytes are
+	 * received, and once when the download has completed.
+	 * 
+	 * @param e
+	 *            The event describing the progress.
+	 */
+	public void downloadProgress(DownloadEvent e);
+	
+	/**
+	 * Invoked on a download thread once the file has been downloaded and
+	 * verified.
+	 * 
+	 * @param e
+	 *            The event describing the completed download.
+	 */
+	public void downloadCompleted(DownloadEvent e);
+}
@@ -0,0 +1,68 @@
+package org.drost.application.listeners;
+
+import java.awt.Window;
+import java.util.EventObject;
+
+@SuppressWarnings( "serial" )
+public class IdleEvent extends EventObject
+{
+	/**
+	 * The time when the event has been created in milliseconds.
+	 */
+	final long when;
+	
+	/**
+	 * The idle threshold of the informed listener in milliseconds.
+	 */
+	final long threshold;
+	
+	/**
+	 * The time since the last user input in milliseconds.
+	 */
+	final long idleTime;
+	
+	/**
+	 * The window that received the last user input before the idle state.
+	 */
+	final transient Window window;
+	
+	public IdleEvent(Object source, long threshold, long idleTime, Window window)
+	{
+		super(source);
+		
+		this.threshold = threshold;
+		this.idleTime = idleTime;
+		this.window = window;
+		
+		this.when = System.currentTimeMillis( );
+	}
+	
+	
+	public long getThreshold( )
+	{
+		return threshold;
+	}
+	
+	/**
+	 * Returns the time in milliseconds the user has been idle. When the user
+	 * has become active again this is the duration of the whole idle state.
+	 */
+	public long getIdleTime( )
+	{
+		return idleTime;
+	}
+	
+	/**
+	 * Returns the window that received the last user input before the idle
+	 * state, or {@code null} if no input has been received yet.
+	 */
+	public Window getWindow( )
+	{
+		return window;
+	}
+	
+	public long getWhen( )
+	{
+		return when;
+	}
+}
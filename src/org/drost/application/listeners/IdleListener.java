@@ -0,0 +1,35 @@
+package org.drost.application.listeners;
+
+import java.util.EventListener;
+
+/**
+ * Informed when the user has been idle for a certain time and when the user
+ * becomes active again. Every listener is registered with its own idle
+ * threshold, so e.g. dimming the screen, locking the application and saving
+ * the documents can be done after different times.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.profiling.ActivityMonitor#addIdleListener(IdleListener, long)
+ */
+public interface IdleListener extends EventListener
+{
+	/**
+	 * Invoked on the event dispatch thread once no user input has been
+	 * received for the threshold of this listener.
+	 * 
+	 * @param e
+	 *            The event describing the idle state.
+	 */
+	public void userIdle(IdleEvent e);
+	
+	/**
+	 * Invoked on the event dispatch thread on the first user input after
+	 * {@link #userIdle(IdleEvent)} has been invoked.
+	 * 
+	 * @param e
+	 *            The event describing the idle state that has ended.
+	 */
+	public void userActive(IdleEvent e);
+}
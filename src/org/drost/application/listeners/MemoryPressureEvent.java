@@ -0,0 +1,80 @@
+package org.drost.application.listeners;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.util.EventObject;
+
+import org.drost.application.profiling.MemoryPressure;
+
+@SuppressWarnings( "serial" )
+public class MemoryPressureEvent extends EventObject
+{
+	/**
+	 * The time when the event has been created in milliseconds.
+	 */
+	final long when;
+	
+	final MemoryPressure previousLevel;
+	
+	final MemoryPressure level;
+	
+	/**
+	 * The fullest memory pool.
+	 */
+	final transient MemoryPoolMXBean memoryPool;
+	
+	/**
+	 * The used fraction of the fullest memory pool after the last garbage
+	 * collection.
+	 */
+	final double usage;
+	
+	public MemoryPressureEvent(Object source, MemoryPressure previousLevel, MemoryPressure level, MemoryPoolMXBean memoryPool, double usage)
+	{
+		super(source);
+		
+		this.previousLevel = previousLevel;
+		this.level = level;
+		this.memoryPool = memoryPool;
+		this.usage = usage;
+		
+		this.when = System.currentTimeMillis( );
+	}
+	
+	
+	public MemoryPressure getPreviousLevel( )
+	{
+		return previousLevel;
+	}
+	
+	public MemoryPressure getLevel( )
+	{
+		return level;
+	}
+	
+	/**
+	 * Returns whether the pressure has increased.
+	 */
+	public boolean isRising( )
+	{
+		return level.compareTo( previousLevel ) > 0;
+	}
+	
+	public MemoryPoolMXBean getMemoryPool( )
+	{
+		return memoryPool;
+	}
+	
+	/**
+	 * Returns the used fraction of the fullest heap pool after the last
+	 * garbage collection, between {@code 0.0} and {@code 1.0}.
+	 */
+	public double getUsage( )
+	{
+		return usage;
+	}
+	
+	public long getWhen( )
+	{
+		return when;
+	}
+}
@@ -0,0 +1,24 @@
+package org.drost.application.listeners;
+
+import java.util.EventListener;
+
+/**
+ * Informed whenever the memory pressure level changes. Caches and buffers
+ * subscribe to shed memory before the heap runs out.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.profiling.MemoryPressureMonitor#addMemoryPressureListener(MemoryPressureListener)
+ */
+public interface MemoryPressureListener extends EventListener
+{
+	/**
+	 * Invoked on a monitoring thread after the level has changed.
+	 * Implementations must be thread-safe and should return quickly.
+	 * 
+	 * @param e
+	 *            The event describing the change.
+	 */
+	public void memoryPressureChanged(MemoryPressureEvent e);
+}
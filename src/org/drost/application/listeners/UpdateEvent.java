@@ -0,0 +1,31 @@
+package org.drost.application.listeners;
+
+import org.drost.application.update.UpdateInfo;
+
+/**
+ * Published on the event bus when the update checker has found a version
+ * newer than the running one.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.update.UpdateChecker
+ */
+@SuppressWarnings( "serial" )
+public class UpdateEvent extends ApplicationEvent
+{
+	final transient UpdateInfo updateInfo;
+	
+	public UpdateEvent(Object source, UpdateInfo updateInfo)
+	{
+		super(source, APPLICATION_UPDATE_AVAILABLE);
+		
+		this.updateInfo = updateInfo;
+	}
+	
+	
+	public UpdateInfo getUpdateInfo( )
+	{
+		return updateInfo;
+	}
+}
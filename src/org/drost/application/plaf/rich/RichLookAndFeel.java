@@ -42,6 +42,8 @@ import javax.swing.plaf.metal.MetalLookAndFeel;
 import javax.swing.plaf.nimbus.NimbusLookAndFeel;
 import javax.swing.plaf.synth.SynthLookAndFeel;
 
+import org.drost.application.profiling.FlightRecorderSupport;
+
 /**
  * The Rich Look and Feel class, short RLAF.
  * <p>
@@ -428,6 +430,10 @@ public final class RichLookAndFeel extends NimbusLookAndFeel implements Serializ
 			"PopupMenu[Disabled].backgroundPainter", new RichPopupMenuPainter(),	
 			
 		};
+		
+		if( FlightRecorderSupport.isAvailable( ) )
+			SampledPainter.wrap( uiDefaults );
+		
 		table.putDefaults( uiDefaults );
 	}
 	
@@ -0,0 +1,81 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.plaf.rich;
+
+import java.awt.Graphics2D;
+
+import javax.swing.Painter;
+
+import org.drost.application.profiling.FlightRecorderSupport;
+
+/**
+ * Decorates a painter of the {@link RichLookAndFeel} to record sampled paint
+ * events with the Java Flight Recorder. The look and feel only installs this
+ * decorator while Flight Recorder is available.
+ * 
+ * @author Yannick Drost
+ * 
+ * @see FlightRecorderSupport#beginPaint()
+ */
+class SampledPainter<T> implements Painter<T>
+{
+	private final Painter<T> painter;
+	
+	
+	SampledPainter( Painter<T> painter )
+	{
+		this.painter = painter;
+	}
+	
+	
+	/* (non-Javadoc)
+	 * @see javax.swing.Painter#paint(java.awt.Graphics2D, java.lang.Object, int, int)
+	 */
+	@Override
+	public void paint( Graphics2D g, T object, int width, int height )
+	{
+		Object event = FlightRecorderSupport.beginPaint( );
+		try
+		{
+			painter.paint( g, object, width, height );
+		}
+		finally
+		{
+			FlightRecorderSupport.commitPaint( event, painter, width, height );
+		}
+	}
+	
+	
+	/**
+	 * Wraps all painters of the key/value pairs.
+	 * 
+	 * @param keyValueList
+	 *            The defaults as passed to {@code UIDefaults#putDefaults}.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static void wrap( Object[] keyValueList )
+	{
+		for( int i = 1; i < keyValueList.length; i += 2 )
+		{
+			if( keyValueList[i] instanceof Painter )
+				keyValueList[i] = new SampledPainter( (Painter) keyValueList[i] );
+		}
+	}
+}
@@ -0,0 +1,386 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.drost.application.listeners.IdleEvent;
+import org.drost.application.listeners.IdleListener;
+
+/**
+ * Tracks the time of the last user input to detect when the user is idle.
+ * Once installed, a global listener for mouse and keyboard events stores the
+ * time of every input into a single field. No timer is restarted per event,
+ * instead a coarse Swing timer checks the idle time periodically and informs
+ * the idle listeners whose threshold has been exceeded.
+ * <p>
+ * Every idle listener has its own threshold, so several reactions, e.g.
+ * dimming, locking and saving, can be triggered after different times. The
+ * listeners are informed on the event dispatch thread, idle states are
+ * detected with the precision of the check interval while the end of an idle
+ * state is detected with the first user input.
+ * </p>
+ * <p>
+ * The activity is tracked per window as well. The window receiving the input
+ * is only resolved when the input comes from another component than the
+ * previous one.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#getActivityMonitor()
+ * @see org.drost.application.conflict.AbstractInactivityHandler
+ */
+public class ActivityMonitor
+{
+	/**
+	 * The default time between two idle checks in milliseconds.
+	 */
+	public static final int DEFAULT_CHECK_INTERVAL = 1000;
+	
+	private static final long EVENT_MASK = AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK
+			| AWTEvent.MOUSE_WHEEL_EVENT_MASK | AWTEvent.KEY_EVENT_MASK;
+	
+	/**
+	 * The {@link System#nanoTime()} of the last user input.
+	 */
+	private volatile long lastActivity = System.nanoTime();
+	
+	/**
+	 * Set once a threshold has been exceeded, so the input listener only has
+	 * to inform the listeners on the first input after an idle state.
+	 */
+	private volatile boolean idle = false;
+	
+	/**
+	 * The source of the last input, only accessed on the event dispatch
+	 * thread.
+	 */
+	private Object lastSource = null;
+	
+	private volatile Window lastWindow = null;
+	
+	/**
+	 * The time of the last input of every window except the last active one.
+	 */
+	private final Map<Window, Long> windowActivity = Collections.synchronizedMap(new WeakHashMap<Window, Long>());
+	
+	private final List<IdleThreshold> thresholds = new CopyOnWriteArrayList<IdleThreshold>();
+	
+	private final AWTEventListener inputListener = new AWTEventListener()
+	{
+		@Override
+		public void eventDispatched(AWTEvent e)
+		{
+			long now = System.nanoTime();
+			
+			if(idle)
+				resume(now);
+			
+			if(e.getSource() != lastSource)
+				sourceChanged(e.getSource());
+			
+			lastActivity = now;
+		}
+	};
+	
+	private final Timer timer = new Timer(DEFAULT_CHECK_INTERVAL, new ActionListener()
+	{
+		@Override
+		public void actionPerformed(ActionEvent e)
+		{
+			check();
+		}
+	});
+	
+	private boolean installed = false;
+	
+	
+	/**
+	 * Adds the global input listener and starts the periodic check. Has no
+	 * effect if the monitor is already installed.
+	 */
+	public synchronized void install()
+	{
+		if(installed)
+			return;
+		
+		lastActivity = System.nanoTime();
+		
+		Toolkit.getDefaultToolkit().addAWTEventListener(inputListener, EVENT_MASK);
+		timer.start();
+		
+		installed = true;
+	}
+	
+	
+	/**
+	 * Removes the global input listener and stops the periodic check. The
+	 * idle listeners are kept.
+	 */
+	public synchronized void uninstall()
+	{
+		if(!installed)
+			return;
+		
+		timer.stop();
+		Toolkit.getDefaultToolkit().removeAWTEventListener(inputListener);
+		
+		lastSource = null;
+		lastWindow = null;
+		windowActivity.clear();
+		
+		installed = false;
+	}
+	
+	
+	public synchronized boolean isInstalled()
+	{
+		return installed;
+	}
+	
+	
+	/**
+	 * Sets the time between two idle checks, which is the precision idle
+	 * states are detected with.
+	 * 
+	 * @param millis
+	 *            The interval in milliseconds.
+	 */
+	public void setCheckInterval(int millis)
+	{
+		if(millis < 1)
+			throw new IllegalArgumentException("The check interval must be positive: " + millis);
+		
+		timer.setInitialDelay(millis);
+		timer.setDelay(millis);
+	}
+	
+	
+	public int getCheckInterval()
+	{
+		return timer.getDelay();
+	}
+	
+	
+	/**
+	 * Returns the time since the last user input in milliseconds, or since
+	 * the installation of this monitor if no input has been received yet.
+	 * 
+	 * @return The idle time in milliseconds.
+	 */
+	public long getIdleTime()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+	}
+	
+	
+	/**
+	 * Returns the time since the last user input into the given window.
+	 * 
+	 * @param window
+	 *            The window.
+	 * @return The idle time in milliseconds or {@code -1} if the window has
+	 *         not received any input yet.
+	 */
+	public long getIdleTime(Window window)
+	{
+		if(window == lastWindow)
+			return getIdleTime();
+		
+		Long time = windowActivity.get(window);
+		
+		if(time == null)
+			return -1;
+		
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time.longValue());
+	}
+	
+	
+	/**
+	 * Returns the window that received the last user input.
+	 * 
+	 * @return The window or {@code null} if no input has been received yet.
+	 */
+	public Window getLastActiveWindow()
+	{
+		return lastWindow;
+	}
+	
+	
+	/**
+	 * Returns whether the threshold of at least one idle listener has been
+	 * exceeded since the last user input.
+	 * 
+	 * @return Whether the user is idle.
+	 */
+	public boolean isIdle()
+	{
+		return idle;
+	}
+	
+	
+	/**
+	 * Adds a listener informed once the user has been idle for the given
+	 * time and installs the monitor if necessary. A listener may be added
+	 * several times with different thresholds.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 * @param millis
+	 *            The idle threshold in milliseconds.
+	 */
+	public void addIdleListener(IdleListener listener, long millis)
+	{
+		if(listener == null)
+			return;
+		
+		if(millis < 1)
+			throw new IllegalArgumentException("The idle threshold must be positive: " + millis);
+		
+		thresholds.add(new IdleThreshold(listener, millis));
+		
+		install();
+	}
+	
+	
+	/**
+	 * Removes the listener with all its thresholds.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void removeIdleListener(IdleListener listener)
+	{
+		for(IdleThreshold threshold : thresholds)
+		{
+			if(threshold.listener == listener)
+				thresholds.remove(threshold);
+		}
+	}
+	
+	
+	/*
+	 * Called on the event dispatch thread whenever the input comes from
+	 * another component, which is rare compared to the number of inputs.
+	 */
+	private void sourceChanged(Object source)
+	{
+		lastSource = source;
+		
+		Window window = null;
+		
+		if(source instanceof Window)
+			window = (Window) source;
+		else if(source instanceof Component)
+			window = SwingUtilities.getWindowAncestor((Component) source);
+		
+		if(window == lastWindow)
+			return;
+		
+		if(lastWindow != null)
+			windowActivity.put(lastWindow, Long.valueOf(lastActivity));
+		
+		if(window != null)
+			windowActivity.remove(window);
+		
+		lastWindow = window;
+	}
+	
+	
+	/*
+	 * Called by the timer on the event dispatch thread.
+	 */
+	private void check()
+	{
+		long idleNanos = System.nanoTime() - lastActivity;
+		
+		for(IdleThreshold threshold : thresholds)
+		{
+			if(threshold.idle || idleNanos < threshold.nanos)
+				continue;
+			
+			threshold.idle = true;
+			idle = true;
+			
+			threshold.listener.userIdle(new IdleEvent(this, threshold.millis, TimeUnit.NANOSECONDS.toMillis(idleNanos), lastWindow));
+		}
+	}
+	
+	
+	/*
+	 * Called on the first input after an idle state, before the time of the
+	 * input is stored.
+	 */
+	private void resume(long now)
+	{
+		idle = false;
+		
+		long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - lastActivity);
+		
+		for(IdleThreshold threshold : thresholds)
+		{
+			if(!threshold.idle)
+				continue;
+			
+			threshold.idle = false;
+			
+			threshold.listener.userActive(new IdleEvent(this, threshold.millis, idleMillis, lastWindow));
+		}
+	}
+	
+	
+	private static final class IdleThreshold
+	{
+		final IdleListener listener;
+		
+		final long millis;
+		
+		final long nanos;
+		
+		/**
+		 * Only accessed on the event dispatch thread.
+		 */
+		boolean idle = false;
+		
+		IdleThreshold(IdleListener listener, long millis)
+		{
+			this.listener = listener;
+			this.millis = millis;
+			this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		}
+	}
+}
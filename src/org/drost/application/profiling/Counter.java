@@ -0,0 +1,52 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count, e.g. the number of processed requests.
+ * Incrementing is striped across threads by a {@link LongAdder}, so hot paths
+ * updated from many threads do not contend.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see MetricRegistry#counter(String, String...)
+ */
+public class Counter
+{
+	private final LongAdder count = new LongAdder();
+	
+	public void increment()
+	{
+		count.increment();
+	}
+	
+	public void add(long n)
+	{
+		count.add(n);
+	}
+	
+	public long getCount()
+	{
+		return count.sum();
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.awt.AWTEvent;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.drost.application.conflict.ConflictHandler;
+import org.drost.application.conflict.ConflictInfo;
+import org.drost.application.conflict.ConflictManager;
+import org.drost.application.conflict.ConflictType;
+import org.drost.application.ui.HookedEventQueue;
+
+/**
+ * Measures the health of the event dispatch thread. Once installed, a hook of
+ * the {@link HookedEventQueue} times every dispatched event and records the
+ * time into a {@link LatencyHistogram}.
+ * <p>
+ * A watchdog thread periodically checks whether the current event has been
+ * dispatched for longer than the stall threshold. In that case the stack of
+ * the event dispatch thread is captured while it is still stuck and all
+ * registered stall handlers are informed on the watchdog thread. Every event
+ * is reported at most once.
+ * </p>
+ * <p>
+ * Time spent in nested event loops, e.g. while a modal dialog is shown, is
+ * not accounted to the event that opened the dialog.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#getEventDispatchMonitor()
+ * @see org.drost.application.conflict.AbstractEventDispatchStallHandler
+ */
+public class EventDispatchMonitor
+{
+	/**
+	 * The default stall threshold in milliseconds.
+	 */
+	public static final long DEFAULT_STALL_THRESHOLD = 500;
+	
+	/**
+	 * The dispatch times of all events in nanoseconds.
+	 */
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	private final LongAdder stallCount = new LongAdder();
+	
+	private volatile long stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STALL_THRESHOLD);
+	
+	private MonitoringHook hook = null;
+	
+	private ScheduledExecutorService watchdog = null;
+	
+	private ScheduledFuture<?> watchdogTask = null;
+	
+	
+	/**
+	 * Adds the timing hook to the event queue and starts the watchdog. Has no
+	 * effect if the monitor is already installed.
+	 */
+	public synchronized void install()
+	{
+		if(isInstalled())
+			return;
+		
+		hook = new MonitoringHook();
+		HookedEventQueue.addHook(hook);
+		
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "EDT-Watchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduleWatchdog();
+	}
+	
+	
+	/**
+	 * Removes the timing hook and stops the watchdog. The recorded
+	 * latencies are kept.
+	 */
+	public synchronized void uninstall()
+	{
+		if(!isInstalled())
+			return;
+		
+		watchdog.shutdownNow();
+		watchdog = null;
+		watchdogTask = null;
+		
+		HookedEventQueue.removeHook(hook);
+		hook = null;
+	}
+	
+	
+	public synchronized boolean isInstalled()
+	{
+		return hook != null;
+	}
+	
+	
+	/**
+	 * Sets the time after which a dispatched event is considered a stall.
+	 * 
+	 * @param millis
+	 *            The threshold in milliseconds.
+	 */
+	public synchronized void setStallThreshold(long millis)
+	{
+		if(millis < 1)
+			throw new IllegalArgumentException("Threshold must be at least 1 ms.");
+		
+		stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		
+		if(isInstalled())
+		{
+			watchdogTask.cancel(false);
+			scheduleWatchdog();
+		}
+	}
+	
+	
+	public long getStallThreshold()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(stallThresholdNanos);
+	}
+	
+	
+	/**
+	 * Returns the histogram of the dispatch times in nanoseconds.
+	 */
+	public LatencyHistogram getLatencyHistogram()
+	{
+		return latency;
+	}
+	
+	
+	/**
+	 * Returns the number of detected stalls.
+	 */
+	public long getStallCount()
+	{
+		return stallCount.sum();
+	}
+	
+	
+	/**
+	 * Adds a handler that gets informed about every detected stall. The
+	 * handlers are kept in the {@link ConflictType#EVENT_DISPATCH_STALL} chain
+	 * of the {@link ConflictManager}, adding the first one installs this
+	 * monitor.
+	 * 
+	 * @param handler
+	 *            The handler.
+	 */
+	public void addStallHandler(ConflictHandler<EventDispatchStall> handler)
+	{
+		ConflictManager.getConflictManager().addHandler(ConflictType.EVENT_DISPATCH_STALL, handler);
+	}
+	
+	
+	public void removeStallHandler(ConflictHandler<EventDispatchStall> handler)
+	{
+		ConflictManager.getConflictManager().removeHandler(ConflictType.EVENT_DISPATCH_STALL, handler);
+	}
+	
+	
+	private void scheduleWatchdog()
+	{
+		long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), stallThresholdNanos / 4);
+		
+		watchdogTask = watchdog.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				check();
+			}
+		}, period, period, TimeUnit.NANOSECONDS);
+	}
+	
+	
+	/*
+	 * Runs on the watchdog thread.
+	 */
+	private void check()
+	{
+		MonitoringHook q = hook;
+		if(q == null)
+			return;
+		
+		long sequence = q.sequence;
+		long start = q.dispatchStart;
+		Thread thread = q.dispatchThread;
+		
+		if(start == 0 || thread == null || sequence == q.reportedSequence)
+			return;
+		
+		long duration = System.nanoTime() - start;
+		if(duration < stallThresholdNanos)
+			return;
+		
+		StackTraceElement[] stack = thread.getStackTrace();
+		
+		// The event might have finished while the stack has been captured
+		if(sequence != q.sequence)
+			return;
+		
+		q.reportedSequence = sequence;
+		stallCount.increment();
+		
+		EventDispatchStall stall = new EventDispatchStall(String.valueOf(q.dispatchEvent), thread.getName(),
+				TimeUnit.NANOSECONDS.toMillis(duration), stack);
+		
+		ConflictManager.getConflictManager().dispatch(ConflictType.EVENT_DISPATCH_STALL, new ConflictInfo<EventDispatchStall>(stall, thread));
+	}
+	
+	
+	/**
+	 * Times each dispatched event. The fields read by the watchdog are
+	 * volatile, all others are only accessed on the event dispatch thread.
+	 */
+	private class MonitoringHook implements HookedEventQueue.Hook
+	{
+		volatile long dispatchStart = 0;
+		
+		volatile long sequence = 0;
+		
+		volatile long reportedSequence = -1;
+		
+		volatile Thread dispatchThread = null;
+		
+		volatile AWTEvent dispatchEvent = null;
+		
+		/**
+		 * The time spent in nested dispatches of the current level.
+		 */
+		private long nestedNanos = 0;
+		
+		private int depth = 0;
+		
+		@Override
+		public void dispatch(AWTEvent event, HookedEventQueue.Chain chain)
+		{
+			AWTEvent outerEvent = dispatchEvent;
+			long outerNested = nestedNanos;
+			long start = System.nanoTime();
+			
+			nestedNanos = 0;
+			depth++;
+			dispatchThread = Thread.currentThread();
+			dispatchEvent = event;
+			sequence++;
+			dispatchStart = start;
+			
+			try
+			{
+				chain.proceed(event);
+			}
+			finally
+			{
+				long end = System.nanoTime();
+				latency.record(end - start - nestedNanos);
+				
+				depth--;
+				nestedNanos = outerNested + (end - start);
+				dispatchEvent = outerEvent;
+				
+				// The outer event continues with a new sequence so it can be
+				// reported separately from the time before the nested loop.
+				sequence++;
+				dispatchStart = depth > 0 ? end : 0;
+			}
+		}
+	}
+}
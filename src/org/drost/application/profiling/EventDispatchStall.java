@@ -0,0 +1,90 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.Serializable;
+
+/**
+ * Describes an event that has been blocking the event dispatch thread for
+ * longer than the stall threshold of the {@link EventDispatchMonitor}. The
+ * stack trace is captured while the event dispatch thread is still stuck.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+@SuppressWarnings("serial")
+public class EventDispatchStall implements Serializable
+{
+	private final String event;
+	
+	private final String threadName;
+	
+	private final long durationMillis;
+	
+	private final StackTraceElement[] stackTrace;
+	
+	public EventDispatchStall(String event, String threadName, long durationMillis, StackTraceElement[] stackTrace)
+	{
+		this.event = event;
+		this.threadName = threadName;
+		this.durationMillis = durationMillis;
+		this.stackTrace = stackTrace;
+	}
+	
+	/**
+	 * Returns a description of the event being dispatched.
+	 */
+	public String getEvent() {
+		return event;
+	}
+	
+	public String getThreadName() {
+		return threadName;
+	}
+	
+	/**
+	 * Returns the time the event has been dispatched so far when the stall
+	 * was detected.
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+	
+	/**
+	 * Returns the stack of the event dispatch thread at the time the stall
+	 * was detected.
+	 */
+	public StackTraceElement[] getStackTrace() {
+		return stackTrace.clone();
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("Event dispatch thread \"").append(threadName).append("\" blocked for ")
+			.append(durationMillis).append(" ms by ").append(event);
+		
+		for(StackTraceElement e : stackTrace)
+			sb.append(System.lineSeparator()).append("\tat ").append(e);
+		
+		return sb.toString();
+	}
+}
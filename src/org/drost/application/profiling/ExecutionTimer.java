@@ -0,0 +1,124 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the duration of an operation and records it into a
+ * {@link LatencyHistogram} in nanoseconds. The number of recorded durations
+ * serves as the throughput of the operation.
+ * 
+ * <pre>
+ * ExecutionTimer timer = registry.timer( "search.time", "feature", "index" );
+ * long start = timer.start( );
+ * try { ... } finally { timer.stop( start ); }
+ * </pre>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see MetricRegistry#timer(String, String...)
+ */
+public class ExecutionTimer
+{
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	
+	/**
+	 * Returns the current time stamp to be passed to {@link #stop(long)}.
+	 */
+	public long start()
+	{
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Records the time elapsed since the given time stamp.
+	 * 
+	 * @param startNanos
+	 *            The value returned by {@link #start()}.
+	 * @return The elapsed time in nanoseconds.
+	 */
+	public long stop(long startNanos)
+	{
+		long duration = System.nanoTime() - startNanos;
+		histogram.record(duration);
+		return duration;
+	}
+	
+	/**
+	 * Records a duration measured elsewhere.
+	 * 
+	 * @param duration
+	 *            The duration.
+	 * @param unit
+	 *            The unit of the duration.
+	 */
+	public void record(long duration, TimeUnit unit)
+	{
+		histogram.record(unit.toNanos(duration));
+	}
+	
+	/**
+	 * Runs and times the runnable.
+	 */
+	public void time(Runnable runnable)
+	{
+		long start = start();
+		try
+		{
+			runnable.run();
+		}
+		finally
+		{
+			stop(start);
+		}
+	}
+	
+	/**
+	 * Calls and times the callable.
+	 */
+	public <T> T time(Callable<T> callable) throws Exception
+	{
+		long start = start();
+		try
+		{
+			return callable.call();
+		}
+		finally
+		{
+			stop(start);
+		}
+	}
+	
+	public long getCount()
+	{
+		return histogram.getCount();
+	}
+	
+	/**
+	 * Returns the recorded durations in nanoseconds.
+	 */
+	public LatencyHistogram getHistogram()
+	{
+		return histogram;
+	}
+}
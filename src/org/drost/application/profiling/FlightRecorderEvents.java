@@ -0,0 +1,316 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Contains all references to the {@code jdk.jfr} API. This class is only
+ * loaded by {@link FlightRecorderSupport} after it has verified that the API
+ * is available, so the framework still runs on JVMs without Flight Recorder.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+final class FlightRecorderEvents
+{
+	private static final String CATEGORY = "Rich Application Framework";
+	
+	// Hidden
+	private FlightRecorderEvents() { }
+	
+	
+	@Name("org.drost.application.Lifecycle")
+	@Label("Application Lifecycle")
+	@Description("A lifecycle transition of the application")
+	@Category({ CATEGORY, "Application" })
+	@StackTrace(false)
+	static final class LifecycleEvent extends Event
+	{
+		@Label("Application")
+		String application;
+		
+		@Label("Transition")
+		String transition;
+	}
+	
+	
+	@Name("org.drost.application.Storage")
+	@Label("Local Storage I/O")
+	@Description("An object saved to or loaded from the local storage")
+	@Category({ CATEGORY, "Storage" })
+	static final class StorageEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		
+		@Label("Path")
+		String path;
+		
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		
+		@Label("Success")
+		boolean success;
+	}
+	
+	
+	@Name("org.drost.application.Persistence")
+	@Label("UI Persistence")
+	@Description("The state of a component tree stored or restored")
+	@Category({ CATEGORY, "Session" })
+	static final class PersistenceEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		
+		@Label("Component")
+		String component;
+	}
+	
+	
+	@Name("org.drost.application.Paint")
+	@Label("Painter Paint")
+	@Description("A sampled paint call of a look and feel painter")
+	@Category({ CATEGORY, "Look and Feel" })
+	@StackTrace(false)
+	static final class PaintEvent extends Event
+	{
+		@Label("Painter")
+		String painter;
+		
+		@Label("Width")
+		int width;
+		
+		@Label("Height")
+		int height;
+	}
+	
+	
+	@Name("org.drost.application.LookAndFeel")
+	@Label("Look and Feel Installation")
+	@Description("A look and feel installed and applied to all windows")
+	@Category({ CATEGORY, "Look and Feel" })
+	static final class LookAndFeelEvent extends Event
+	{
+		@Label("Look and Feel")
+		String lookAndFeel;
+		
+		@Label("Windows")
+		int windows;
+	}
+	
+	
+	@Name("org.drost.application.Conflict")
+	@Label("Conflict Handler")
+	@Description("A conflict handler invocation")
+	@Category({ CATEGORY, "Conflict" })
+	static final class ConflictEvent extends Event
+	{
+		@Label("Handler")
+		String handler;
+		
+		@Label("Source")
+		String source;
+	}
+	
+	
+	static boolean isAvailable()
+	{
+		return FlightRecorder.isAvailable();
+	}
+	
+	
+	/*
+	 * Loading the first event class initializes large parts of the recorder,
+	 * so events are only created once a recording has been started.
+	 */
+	static boolean isInitialized()
+	{
+		return FlightRecorder.isInitialized();
+	}
+	
+	
+	static void commitLifecycle(String application, String transition)
+	{
+		LifecycleEvent e = new LifecycleEvent();
+		if(e.shouldCommit())
+		{
+			e.application = application;
+			e.transition = transition;
+			e.commit();
+		}
+	}
+	
+	
+	static Object beginStorage()
+	{
+		return begin(new StorageEvent());
+	}
+	
+	
+	static void commitStorage(Object event, String operation, String path, long bytes, boolean success)
+	{
+		StorageEvent e = (StorageEvent) event;
+		e.end();
+		if(e.shouldCommit())
+		{
+			e.operation = operation;
+			e.path = path;
+			e.bytes = bytes;
+			e.success = success;
+			e.commit();
+		}
+	}
+	
+	
+	static Object beginPersistence()
+	{
+		return begin(new PersistenceEvent());
+	}
+	
+	
+	static void commitPersistence(Object event, String operation, String component)
+	{
+		PersistenceEvent e = (PersistenceEvent) event;
+		e.end();
+		if(e.shouldCommit())
+		{
+			e.operation = operation;
+			e.component = component;
+			e.commit();
+		}
+	}
+	
+	
+	static Object beginPaint()
+	{
+		return begin(new PaintEvent());
+	}
+	
+	
+	static void commitPaint(Object event, String painter, int width, int height)
+	{
+		PaintEvent e = (PaintEvent) event;
+		e.end();
+		if(e.shouldCommit())
+		{
+			e.painter = painter;
+			e.width = width;
+			e.height = height;
+			e.commit();
+		}
+	}
+	
+	
+	static Object beginLookAndFeel()
+	{
+		return begin(new LookAndFeelEvent());
+	}
+	
+	
+	static void commitLookAndFeel(Object event, String lookAndFeel, int windows)
+	{
+		LookAndFeelEvent e = (LookAndFeelEvent) event;
+		e.end();
+		if(e.shouldCommit())
+		{
+			e.lookAndFeel = lookAndFeel;
+			e.windows = windows;
+			e.commit();
+		}
+	}
+	
+	
+	static Object beginConflict()
+	{
+		return begin(new ConflictEvent());
+	}
+	
+	
+	static void commitConflict(Object event, String handler, String source)
+	{
+		ConflictEvent e = (ConflictEvent) event;
+		e.end();
+		if(e.shouldCommit())
+		{
+			e.handler = handler;
+			e.source = source;
+			e.commit();
+		}
+	}
+	
+	
+	/*
+	 * Returns null for disabled event types so the callers skip the commit.
+	 */
+	private static Object begin(Event e)
+	{
+		if(!e.isEnabled())
+			return null;
+		
+		e.begin();
+		return e;
+	}
+	
+	
+	static Object startRecording(String name, String configuration) throws IOException
+	{
+		try
+		{
+			Recording recording = new Recording(Configuration.getConfiguration(configuration));
+			recording.setName(name);
+			recording.setToDisk(true);
+			recording.start();
+			return recording;
+		}
+		catch(ParseException e)
+		{
+			throw new IOException("Invalid recording configuration " + configuration, e);
+		}
+	}
+	
+	
+	static void dumpRecording(Object recording, java.nio.file.Path file) throws IOException
+	{
+		((Recording) recording).dump(file);
+	}
+	
+	
+	static void stopRecording(Object recording)
+	{
+		Recording r = (Recording) recording;
+		r.stop();
+		r.close();
+	}
+}
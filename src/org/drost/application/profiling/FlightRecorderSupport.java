@@ -0,0 +1,311 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Emits the custom Java Flight Recorder events of the framework and controls
+ * recordings. Every method is a no-op while Flight Recorder is not available
+ * on the running JVM or no recording has been started yet, so call sites do
+ * not need to check the availability.
+ * <p>
+ * Events spanning a duration are emitted in two steps. The {@code begin}
+ * method returns a token or {@code null} if the event type is disabled and
+ * the associated {@code commit} method completes the event:
+ * </p>
+ * 
+ * <pre>
+ * Object event = FlightRecorderSupport.beginStorage( );
+ * ... 
+ * FlightRecorderSupport.commitStorage( event, "save", path, bytes, true );
+ * </pre>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#startRecording()
+ */
+public final class FlightRecorderSupport
+{
+	/**
+	 * The default number of paint calls of which one is recorded.
+	 */
+	public static final int DEFAULT_PAINT_SAMPLING_INTERVAL = 64;
+	
+	private static final boolean available = detect();
+	
+	private static volatile int paintSamplingInterval = DEFAULT_PAINT_SAMPLING_INTERVAL;
+	
+	/**
+	 * Counts the paint calls for sampling. Painting happens on the event
+	 * dispatch thread, so a lost update only shifts the next sample.
+	 */
+	private static int paintCount = 0;
+	
+	private static Object recording = null;
+	
+	// Hidden
+	private FlightRecorderSupport() { }
+	
+	
+	private static boolean detect()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.FlightRecorder");
+			return FlightRecorderEvents.isAvailable();
+		}
+		catch(ClassNotFoundException | LinkageError e)
+		{
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Returns whether Flight Recorder is available on this JVM.
+	 */
+	public static boolean isAvailable()
+	{
+		return available;
+	}
+	
+	
+	/*
+	 * Events are skipped until the recorder has been initialized by a
+	 * recording, either started by the application or from the outside,
+	 * because loading the event classes is expensive.
+	 */
+	private static boolean isActive()
+	{
+		return available && FlightRecorderEvents.isInitialized();
+	}
+	
+	
+	/**
+	 * Records a lifecycle transition of the application, e.g.
+	 * {@code "LAUNCHED"}.
+	 */
+	public static void commitLifecycle(String application, String transition)
+	{
+		if(isActive())
+			FlightRecorderEvents.commitLifecycle(application, transition);
+	}
+	
+	
+	public static Object beginStorage()
+	{
+		return isActive() ? FlightRecorderEvents.beginStorage() : null;
+	}
+	
+	
+	/**
+	 * Records an I/O operation of the local storage.
+	 * 
+	 * @param event
+	 *            The token returned by {@link #beginStorage()}.
+	 * @param operation
+	 *            Either {@code "save"} or {@code "load"}.
+	 * @param path
+	 *            The absolute file path.
+	 * @param bytes
+	 *            The size of the file.
+	 * @param success
+	 *            Whether the operation succeeded.
+	 */
+	public static void commitStorage(Object event, String operation, String path, long bytes, boolean success)
+	{
+		if(event != null)
+			FlightRecorderEvents.commitStorage(event, operation, path, bytes, success);
+	}
+	
+	
+	public static Object beginPersistence()
+	{
+		return isActive() ? FlightRecorderEvents.beginPersistence() : null;
+	}
+	
+	
+	/**
+	 * Records storing or restoring the state of a component tree.
+	 * 
+	 * @param event
+	 *            The token returned by {@link #beginPersistence()}.
+	 * @param operation
+	 *            Either {@code "store"} or {@code "restore"}.
+	 * @param component
+	 *            The name of the root component.
+	 */
+	public static void commitPersistence(Object event, String operation, String component)
+	{
+		if(event != null)
+			FlightRecorderEvents.commitPersistence(event, operation, component);
+	}
+	
+	
+	/**
+	 * Begins a paint event for one of every
+	 * {@link #setPaintSamplingInterval(int) n} calls and returns {@code null}
+	 * for all others.
+	 */
+	public static Object beginPaint()
+	{
+		if(!available || ++paintCount < paintSamplingInterval || !FlightRecorderEvents.isInitialized())
+			return null;
+		
+		paintCount = 0;
+		return FlightRecorderEvents.beginPaint();
+	}
+	
+	
+	public static void commitPaint(Object event, Object painter, int width, int height)
+	{
+		if(event != null)
+			FlightRecorderEvents.commitPaint(event, painter.getClass().getName(), width, height);
+	}
+	
+	
+	/**
+	 * Sets how many paint calls pass for one recorded paint event. Painters
+	 * are called very frequently, recording each call would distort the
+	 * measurement.
+	 * 
+	 * @param interval
+	 *            {@code 1} to record every call.
+	 */
+	public static void setPaintSamplingInterval(int interval)
+	{
+		if(interval < 1)
+			throw new IllegalArgumentException("Interval must be at least 1.");
+		
+		paintSamplingInterval = interval;
+	}
+	
+	
+	public static int getPaintSamplingInterval()
+	{
+		return paintSamplingInterval;
+	}
+	
+	
+	public static Object beginLookAndFeel()
+	{
+		return isActive() ? FlightRecorderEvents.beginLookAndFeel() : null;
+	}
+	
+	
+	public static void commitLookAndFeel(Object event, String lookAndFeel, int windows)
+	{
+		if(event != null)
+			FlightRecorderEvents.commitLookAndFeel(event, lookAndFeel, windows);
+	}
+	
+	
+	public static Object beginConflict()
+	{
+		return isActive() ? FlightRecorderEvents.beginConflict() : null;
+	}
+	
+	
+	/**
+	 * Records the invocation of a conflict handler.
+	 * 
+	 * @param event
+	 *            The token returned by {@link #beginConflict()}.
+	 * @param handler
+	 *            The invoked handler.
+	 * @param source
+	 *            The source of the conflict.
+	 */
+	public static void commitConflict(Object event, Object handler, Object source)
+	{
+		if(event != null)
+			FlightRecorderEvents.commitConflict(event, handler.getClass().getName(),
+					source == null ? null : source.getClass().getName());
+	}
+	
+	
+	/**
+	 * Starts a recording with the given JDK configuration, either
+	 * {@code "default"} for continuous recordings or {@code "profile"} for
+	 * more details at a higher overhead.
+	 * 
+	 * @throws IllegalStateException
+	 *             If Flight Recorder is not available or a recording has
+	 *             already been started.
+	 * @throws IOException
+	 *             If the configuration cannot be read.
+	 */
+	public static synchronized void startRecording(String name, String configuration) throws IOException
+	{
+		if(!available)
+			throw new IllegalStateException("Java Flight Recorder is not available on this JVM.");
+		
+		if(recording != null)
+			throw new IllegalStateException("A recording has already been started.");
+		
+		recording = FlightRecorderEvents.startRecording(name, configuration);
+	}
+	
+	
+	public static synchronized boolean isRecording()
+	{
+		return recording != null;
+	}
+	
+	
+	/**
+	 * Writes the data recorded so far to the file. The recording continues.
+	 * 
+	 * @throws IllegalStateException
+	 *             If no recording has been started.
+	 */
+	public static synchronized void dumpRecording(File file) throws IOException
+	{
+		if(recording == null)
+			throw new IllegalStateException("No recording has been started.");
+		
+		FlightRecorderEvents.dumpRecording(recording, file.toPath());
+	}
+	
+	
+	/**
+	 * Stops the recording after writing its data to the file. Passing
+	 * {@code null} discards the data.
+	 */
+	public static synchronized void stopRecording(File file) throws IOException
+	{
+		if(recording == null)
+			return;
+		
+		try
+		{
+			if(file != null)
+				FlightRecorderEvents.dumpRecording(recording, file.toPath());
+		}
+		finally
+		{
+			FlightRecorderEvents.stopRecording(recording);
+			recording = null;
+		}
+	}
+}
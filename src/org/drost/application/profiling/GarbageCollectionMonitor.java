@@ -0,0 +1,507 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * Collects garbage collection and allocation telemetry. Once installed, a
+ * listener is added to every {@link GarbageCollectorMXBean} which records
+ * <ul>
+ * <li>the pause times into the {@value #PAUSE_HISTOGRAM} histogram of the
+ * {@link MetricRegistry},</li>
+ * <li>the bytes promoted into the old generation by minor collections
+ * and</li>
+ * <li>the occupancy of every memory pool after the last collection.</li>
+ * </ul>
+ * <p>
+ * Additionally the bytes allocated by every thread are sampled periodically
+ * to derive the allocation rate of the application. The amount allocated by
+ * a single feature can be measured with
+ * {@link #getCurrentThreadAllocatedBytes()} before and after running it.
+ * </p>
+ * <p>
+ * The notifications and the allocation counters are extensions of the
+ * HotSpot and OpenJ9 JVMs. On other JVMs the monitor installs without
+ * effect.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#getGarbageCollectionMonitor()
+ */
+public class GarbageCollectionMonitor
+{
+	/**
+	 * The name of the histogram of all pause times in nanoseconds.
+	 */
+	public static final String PAUSE_HISTOGRAM = "gc.pause";
+	
+	/**
+	 * The default period in milliseconds the thread allocations are sampled
+	 * with.
+	 */
+	public static final long DEFAULT_SAMPLING_PERIOD = 1000;
+	
+	private final MetricRegistry registry;
+	
+	private final LatencyHistogram pauses;
+	
+	private final LongAdder pauseTime = new LongAdder();
+	
+	private final LongAdder concurrentCycles = new LongAdder();
+	
+	private final LongAdder promoted = new LongAdder();
+	
+	private final LongAdder allocated = new LongAdder();
+	
+	private final ConcurrentMap<String, Long> occupancy = new ConcurrentHashMap<String, Long>();
+	
+	private final Map<Long, Long> threadAllocations = new HashMap<Long, Long>();
+	
+	private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+	
+	private final NotificationListener listener = new NotificationListener()
+	{
+		@Override
+		public void handleNotification(Notification n, Object handback)
+		{
+			if(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType()))
+				record(GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()));
+		}
+	};
+	
+	private volatile long installTime = 0;
+	
+	private volatile double allocationRate = 0;
+	
+	private long lastSampleTime = 0;
+	
+	private ScheduledExecutorService sampler = null;
+	
+	
+	/**
+	 * Creates a monitor recording into the registry.
+	 * 
+	 * @param registry
+	 *            The registry holding the pause histogram and the gauges.
+	 */
+	public GarbageCollectionMonitor(MetricRegistry registry)
+	{
+		this.registry = registry;
+		this.pauses = registry.histogram(PAUSE_HISTOGRAM);
+	}
+	
+	
+	/**
+	 * Starts listening to the collectors and sampling the allocations every
+	 * {@value #DEFAULT_SAMPLING_PERIOD} milliseconds. Has no effect if the
+	 * monitor is already installed.
+	 */
+	public void install()
+	{
+		install(DEFAULT_SAMPLING_PERIOD);
+	}
+	
+	
+	/**
+	 * Starts listening to the collectors and sampling the allocations.
+	 * 
+	 * @param samplingPeriod
+	 *            The period in milliseconds between two allocation samples.
+	 */
+	public synchronized void install(long samplingPeriod)
+	{
+		if(isInstalled())
+			return;
+		
+		if(samplingPeriod < 1)
+			throw new IllegalArgumentException("Period must be at least 1 ms.");
+		
+		installTime = System.nanoTime();
+		
+		if(isNotificationSupported())
+		{
+			for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			{
+				if(gc instanceof NotificationEmitter)
+				{
+					((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+					emitters.add((NotificationEmitter) gc);
+				}
+			}
+		}
+		
+		if(isAllocationSupported())
+		{
+			sampleAllocations();
+			
+			sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Allocation-Sampler");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			sampler.scheduleAtFixedRate(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					sampleAllocations();
+				}
+			}, samplingPeriod, samplingPeriod, TimeUnit.MILLISECONDS);
+		}
+		
+		registry.gauge(new Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return getPauseTimeRatio();
+			}
+		}, "gc.pause.ratio");
+		registry.gauge(new Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return getPromotionRate();
+			}
+		}, "gc.promotion.rate");
+		registry.gauge(new Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return getAllocationRate();
+			}
+		}, "gc.allocation.rate");
+	}
+	
+	
+	/**
+	 * Stops listening and sampling. The collected data is kept.
+	 */
+	public synchronized void uninstall()
+	{
+		if(!isInstalled())
+			return;
+		
+		for(NotificationEmitter emitter : emitters)
+		{
+			try
+			{
+				emitter.removeNotificationListener(listener);
+			}
+			catch(javax.management.ListenerNotFoundException e)
+			{
+				// Already removed
+			}
+		}
+		emitters.clear();
+		
+		if(sampler != null)
+		{
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		
+		registry.remove("gc.pause.ratio");
+		registry.remove("gc.promotion.rate");
+		registry.remove("gc.allocation.rate");
+		
+		installTime = 0;
+	}
+	
+	
+	public synchronized boolean isInstalled()
+	{
+		return installTime != 0;
+	}
+	
+	
+	/**
+	 * Returns whether the JVM emits garbage collection notifications.
+	 */
+	public static boolean isNotificationSupported()
+	{
+		try
+		{
+			Class.forName("com.sun.management.GarbageCollectionNotificationInfo");
+			return true;
+		}
+		catch(ClassNotFoundException | LinkageError e)
+		{
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Returns whether the JVM counts the bytes allocated per thread.
+	 */
+	public static boolean isAllocationSupported()
+	{
+		try
+		{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			return bean instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+		}
+		catch(LinkageError e)
+		{
+			return false;
+		}
+	}
+	
+	
+	/*
+	 * Called on a JMX notification thread. Collectors running mostly
+	 * concurrently, like "ZGC Cycles" or "G1 Concurrent GC", report the
+	 * duration of a whole cycle which is no pause.
+	 */
+	private void record(GarbageCollectionNotificationInfo info)
+	{
+		GcInfo gc = info.getGcInfo();
+		String name = info.getGcName();
+		
+		if(name.contains("Cycles") || name.contains("Concurrent GC"))
+		{
+			concurrentCycles.increment();
+		}
+		else
+		{
+			long nanos = TimeUnit.MILLISECONDS.toNanos(gc.getDuration());
+			pauses.record(nanos);
+			registry.histogram(PAUSE_HISTOGRAM, "collector", name).record(nanos);
+			pauseTime.add(nanos);
+		}
+		
+		Map<String, MemoryUsage> before = gc.getMemoryUsageBeforeGc();
+		Map<String, MemoryUsage> after = gc.getMemoryUsageAfterGc();
+		
+		boolean minor = info.getGcAction().contains("minor");
+		for(Map.Entry<String, MemoryUsage> e : after.entrySet())
+		{
+			String pool = e.getKey();
+			long used = e.getValue().getUsed();
+			occupancy.put(pool, used);
+			
+			if(minor && isOldGeneration(pool) && before.containsKey(pool))
+			{
+				long growth = used - before.get(pool).getUsed();
+				if(growth > 0)
+					promoted.add(growth);
+			}
+		}
+	}
+	
+	
+	private static boolean isOldGeneration(String pool)
+	{
+		return pool.contains("Old") || pool.contains("Tenured");
+	}
+	
+	
+	private synchronized void sampleAllocations()
+	{
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		
+		long[] ids = bean.getAllThreadIds();
+		long[] bytes = bean.getThreadAllocatedBytes(ids);
+		long now = System.nanoTime();
+		
+		long delta = 0;
+		Map<Long, Long> current = new HashMap<Long, Long>(ids.length * 2);
+		for(int i = 0; i < ids.length; i++)
+		{
+			if(bytes[i] < 0)
+				continue;
+			
+			Long previous = threadAllocations.get(ids[i]);
+			
+			// Threads started since the last sample count from zero
+			delta += bytes[i] - (previous == null ? 0 : previous);
+			current.put(ids[i], bytes[i]);
+		}
+		
+		// Drops terminated threads
+		threadAllocations.clear();
+		threadAllocations.putAll(current);
+		
+		if(lastSampleTime != 0)
+		{
+			allocated.add(delta);
+			allocationRate = delta / ((now - lastSampleTime) / 1e9);
+		}
+		lastSampleTime = now;
+	}
+	
+	
+	/**
+	 * Returns the histogram of all pause times in nanoseconds. Histograms
+	 * per collector are registered under the same name tagged with
+	 * {@code collector}.
+	 */
+	public LatencyHistogram getPauseHistogram()
+	{
+		return pauses;
+	}
+	
+	
+	/**
+	 * Returns the total pause time in milliseconds since the monitor has been
+	 * installed.
+	 */
+	public long getTotalPauseTime()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(pauseTime.sum());
+	}
+	
+	
+	/**
+	 * Returns the fraction of time spent in pauses since the monitor has been
+	 * installed, e.g. {@code 0.02} for 2%.
+	 */
+	public double getPauseTimeRatio()
+	{
+		long elapsed = System.nanoTime() - installTime;
+		return installTime == 0 || elapsed <= 0 ? 0 : (double) pauseTime.sum() / elapsed;
+	}
+	
+	
+	/**
+	 * Returns the number of completed concurrent cycles.
+	 */
+	public long getConcurrentCycleCount()
+	{
+		return concurrentCycles.sum();
+	}
+	
+	
+	/**
+	 * Returns the bytes promoted into the old generation by minor
+	 * collections. Collectors without generations never promote.
+	 */
+	public long getPromotedBytes()
+	{
+		return promoted.sum();
+	}
+	
+	
+	/**
+	 * Returns the average promotion rate in bytes per second since the
+	 * monitor has been installed.
+	 */
+	public double getPromotionRate()
+	{
+		long elapsed = System.nanoTime() - installTime;
+		return installTime == 0 || elapsed <= 0 ? 0 : promoted.sum() / (elapsed / 1e9);
+	}
+	
+	
+	/**
+	 * Returns the used bytes of every memory pool after the last collection
+	 * affecting it.
+	 * 
+	 * @return An unmodifiable map of pool names to used bytes.
+	 */
+	public Map<String, Long> getOccupancyAfterGC()
+	{
+		return Collections.unmodifiableMap(new HashMap<String, Long>(occupancy));
+	}
+	
+	
+	/**
+	 * Returns the bytes allocated by all threads between the first and the
+	 * last sample.
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocated.sum();
+	}
+	
+	
+	/**
+	 * Returns the allocation rate in bytes per second measured by the last
+	 * sample.
+	 */
+	public double getAllocationRate()
+	{
+		return allocationRate;
+	}
+	
+	
+	/**
+	 * Returns the total bytes allocated by the thread so far.
+	 * 
+	 * @return The bytes or {@code -1} if not supported or the thread is not
+	 *         alive.
+	 */
+	public static long getAllocatedBytes(Thread thread)
+	{
+		if(!isAllocationSupported())
+			return -1;
+		
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(thread.getId());
+	}
+	
+	
+	/**
+	 * Returns the total bytes allocated by the current thread so far. Taking
+	 * the difference of two calls yields the allocations of the code in
+	 * between.
+	 * 
+	 * @return The bytes or {@code -1} if not supported.
+	 */
+	public static long getCurrentThreadAllocatedBytes()
+	{
+		return getAllocatedBytes(Thread.currentThread());
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+/**
+ * A metric whose value is read on demand, e.g. the size of a cache. The value
+ * is only computed when a snapshot is taken, so implementations may be
+ * moderately expensive but must be thread-safe.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see MetricRegistry#gauge(Gauge, String, String...)
+ */
+public interface Gauge
+{
+	/**
+	 * Returns the current value of this gauge.
+	 * 
+	 * @return The current value.
+	 */
+	public double getValue();
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative {@code long} values with a bounded relative
+ * error, similar to an HdrHistogram. Values are counted in log-linear
+ * buckets: each power of two is split into {@value #SUB_BUCKET_COUNT} linear
+ * sub buckets, so any recorded value is reported with an error below 1.6%
+ * regardless of its magnitude.
+ * <p>
+ * Recording is lock-free and wait-free, it only increments an entry of an
+ * {@link AtomicLongArray}. Reading percentiles while other threads are
+ * recording is safe, the result reflects a consistent enough view for
+ * monitoring purposes.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 6;
+	
+	/**
+	 * The number of linear sub buckets per power of two.
+	 */
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	
+	private final LongAdder totalCount = new LongAdder();
+	
+	private final LongAdder totalSum = new LongAdder();
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	
+	/**
+	 * Records a single value. Negative values are recorded as {@code 0}.
+	 * 
+	 * @param value
+	 *            The value to record.
+	 */
+	public void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		
+		counts.incrementAndGet(indexOf(value));
+		totalCount.increment();
+		totalSum.add(value);
+		
+		long current;
+		while(value > (current = max.get()))
+		{
+			if(max.compareAndSet(current, value))
+				break;
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of recorded values.
+	 */
+	public long getCount()
+	{
+		return totalCount.sum();
+	}
+	
+	
+	/**
+	 * Returns the largest recorded value.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	
+	/**
+	 * Returns the arithmetic mean of all recorded values or {@code 0} if
+	 * nothing has been recorded yet.
+	 */
+	public double getMean()
+	{
+		long count = totalCount.sum();
+		return count == 0 ? 0 : totalSum.sum() / (double) count;
+	}
+	
+	
+	/**
+	 * Returns the value below which the given percentage of all recorded
+	 * values fall, e.g. {@code 99.0} for the 99th percentile.
+	 * 
+	 * @param percentile
+	 *            The percentile between {@code 0.0} and {@code 100.0}.
+	 * @return The upper bound of the bucket containing the percentile.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(percentile < 0.0 || percentile > 100.0)
+			throw new IllegalArgumentException("Percentile " + percentile + " out of range. Must be between 0.0 and 100.0.");
+		
+		long[] snapshot = new long[BUCKET_COUNT];
+		long count = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		
+		if(count == 0)
+			return 0;
+		
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += snapshot[i];
+			if(seen >= target)
+				return Math.min(highestValueAt(i), getMax());
+		}
+		
+		return getMax();
+	}
+	
+	
+	/**
+	 * Discards all recorded values.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			counts.set(i, 0);
+		
+		totalCount.reset();
+		totalSum.reset();
+		max.set(0);
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "count=" + getCount() + " mean=" + (long) getMean() + " p50=" + getValueAtPercentile(50)
+				+ " p99=" + getValueAtPercentile(99) + " max=" + getMax();
+	}
+	
+	
+	/*
+	 * Values below SUB_BUCKET_COUNT are counted exactly. Larger values are
+	 * reduced to their SUB_BUCKET_BITS + 1 most significant bits.
+	 */
+	static int indexOf(long value)
+	{
+		if(value < SUB_BUCKET_COUNT)
+			return (int) value;
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		
+		return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + sub;
+	}
+	
+	
+	static long highestValueAt(int index)
+	{
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+		
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+		long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,414 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.drost.application.listeners.MemoryPressureEvent;
+import org.drost.application.listeners.MemoryPressureListener;
+
+/**
+ * Detects memory pressure from the heap usage remaining after garbage
+ * collections. Unlike the plain usage, which includes garbage not yet
+ * collected, the usage after a collection only grows with memory that is
+ * actually retained.
+ * <p>
+ * The collection usage threshold of every heap pool, except the eden and
+ * survivor spaces of generational collectors, is set to the warning
+ * threshold, so the JVM notifies the monitor without any polling while the
+ * pressure is {@link MemoryPressure#NORMAL normal}. While the pressure is
+ * elevated, the pools are checked periodically to detect further changes.
+ * </p>
+ * <p>
+ * A level is only left once the usage has dropped below its threshold by the
+ * hysteresis, so listeners are not flooded while the usage oscillates around
+ * a threshold.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#getMemoryPressureMonitor()
+ * @see org.drost.application.conflict.AbstractMemoryExhaustedHandler
+ */
+public class MemoryPressureMonitor
+{
+	/**
+	 * The default used fraction of a heap pool to enter the
+	 * {@link MemoryPressure#WARNING} level.
+	 */
+	public static final double DEFAULT_WARNING_THRESHOLD = 0.75;
+	
+	/**
+	 * The default used fraction of a heap pool to enter the
+	 * {@link MemoryPressure#CRITICAL} level.
+	 */
+	public static final double DEFAULT_CRITICAL_THRESHOLD = 0.9;
+	
+	/**
+	 * The default fraction the usage must drop below a threshold to leave a
+	 * level.
+	 */
+	public static final double DEFAULT_HYSTERESIS = 0.05;
+	
+	/**
+	 * The period in milliseconds the pools are checked with while the
+	 * pressure is elevated.
+	 */
+	public static final long POLL_PERIOD = 1000;
+	
+	private final List<MemoryPressureListener> listeners = new CopyOnWriteArrayList<MemoryPressureListener>();
+	
+	private final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+	
+	private final NotificationListener notificationListener = new NotificationListener()
+	{
+		@Override
+		public void handleNotification(Notification n, Object handback)
+		{
+			if(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()))
+				evaluate();
+		}
+	};
+	
+	private double warningThreshold = DEFAULT_WARNING_THRESHOLD;
+	
+	private double criticalThreshold = DEFAULT_CRITICAL_THRESHOLD;
+	
+	private double hysteresis = DEFAULT_HYSTERESIS;
+	
+	private volatile MemoryPressure level = MemoryPressure.NORMAL;
+	
+	private ScheduledExecutorService poller = null;
+	
+	private ScheduledFuture<?> pollTask = null;
+	
+	
+	/**
+	 * Sets the collection usage thresholds of all heap pools and starts
+	 * listening. Has no effect if the monitor is already installed.
+	 */
+	public synchronized void install()
+	{
+		if(isInstalled())
+			return;
+		
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+					&& pool.getUsage().getMax() > 0 && !isYoungGeneration(pool))
+				pools.add(pool);
+		}
+		
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Memory-Pressure");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		applyThresholds();
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(notificationListener, null, null);
+		
+		// The heap may already be under pressure
+		evaluate();
+	}
+	
+	
+	/**
+	 * Stops listening and resets the collection usage thresholds. The level
+	 * returns to {@link MemoryPressure#NORMAL} without informing the
+	 * listeners.
+	 */
+	public synchronized void uninstall()
+	{
+		if(!isInstalled())
+			return;
+		
+		try
+		{
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(notificationListener);
+		}
+		catch(ListenerNotFoundException e)
+		{
+			// Already removed
+		}
+		
+		for(MemoryPoolMXBean pool : pools)
+			pool.setCollectionUsageThreshold(0);
+		pools.clear();
+		
+		poller.shutdownNow();
+		poller = null;
+		pollTask = null;
+		
+		level = MemoryPressure.NORMAL;
+	}
+	
+	
+	public synchronized boolean isInstalled()
+	{
+		return poller != null;
+	}
+	
+	
+	/**
+	 * Sets the used fractions of a heap pool after a garbage collection to
+	 * enter the warning and the critical level.
+	 * 
+	 * @param warning
+	 *            The warning threshold, e.g. {@code 0.75}.
+	 * @param critical
+	 *            The critical threshold, at least the warning threshold and
+	 *            below {@code 1.0}.
+	 */
+	public synchronized void setThresholds(double warning, double critical)
+	{
+		if(!(warning > 0.0 && warning <= critical && critical < 1.0))
+			throw new IllegalArgumentException("Thresholds out of range.");
+		
+		warningThreshold = warning;
+		criticalThreshold = critical;
+		
+		if(isInstalled())
+		{
+			applyThresholds();
+			evaluate();
+		}
+	}
+	
+	
+	public synchronized double getWarningThreshold()
+	{
+		return warningThreshold;
+	}
+	
+	
+	public synchronized double getCriticalThreshold()
+	{
+		return criticalThreshold;
+	}
+	
+	
+	/**
+	 * Sets how far the usage must drop below a threshold to leave its level.
+	 * 
+	 * @param hysteresis
+	 *            The fraction, e.g. {@code 0.05}, or {@code 0.0} to leave a
+	 *            level as soon as the usage drops below the threshold.
+	 */
+	public synchronized void setHysteresis(double hysteresis)
+	{
+		if(hysteresis < 0.0 || hysteresis >= 1.0)
+			throw new IllegalArgumentException("Value out of range");
+		
+		this.hysteresis = hysteresis;
+	}
+	
+	
+	public synchronized double getHysteresis()
+	{
+		return hysteresis;
+	}
+	
+	
+	/**
+	 * Returns the current level of memory pressure.
+	 */
+	public MemoryPressure getLevel()
+	{
+		return level;
+	}
+	
+	
+	/**
+	 * Returns how many bytes need to be released so that every heap pool is
+	 * filled at most to the given fraction after the next garbage collection.
+	 * Works whether the monitor is installed or not.
+	 * 
+	 * @param targetUsage
+	 *            The used fraction to reach, e.g. {@code 0.6}.
+	 * @return The excess bytes summed over all pools.
+	 */
+	public long getExcessBytes(double targetUsage)
+	{
+		long excess = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() || isYoungGeneration(pool))
+				continue;
+			
+			MemoryUsage u = pool.getCollectionUsage();
+			long max = pool.getUsage().getMax();
+			if(u != null && max > 0)
+				excess += Math.max(0, u.getUsed() - (long) (max * targetUsage));
+		}
+		return excess;
+	}
+	
+	
+	/**
+	 * Adds a listener informed about every level change and installs the
+	 * monitor if necessary.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void addMemoryPressureListener(MemoryPressureListener listener)
+	{
+		if(listener != null && !listeners.contains(listener))
+			listeners.add(listener);
+		
+		install();
+	}
+	
+	
+	public void removeMemoryPressureListener(MemoryPressureListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	
+	/*
+	 * A survivor space is regularly full after a collection and an eden space
+	 * is always empty, neither tells anything about retained memory.
+	 */
+	private static boolean isYoungGeneration(MemoryPoolMXBean pool)
+	{
+		String name = pool.getName();
+		return name.contains("Eden") || name.contains("Survivor");
+	}
+	
+	
+	private void applyThresholds()
+	{
+		for(MemoryPoolMXBean pool : pools)
+			pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * warningThreshold));
+	}
+	
+	
+	/*
+	 * Called on the JMX notification thread, the poller or the thread
+	 * changing the configuration.
+	 */
+	private synchronized void evaluate()
+	{
+		if(!isInstalled())
+			return;
+		
+		MemoryPoolMXBean fullest = null;
+		double usage = 0.0;
+		for(MemoryPoolMXBean pool : pools)
+		{
+			MemoryUsage u = pool.getCollectionUsage();
+			long max = pool.getUsage().getMax();
+			if(u == null || max <= 0)
+				continue;
+			
+			double ratio = (double) u.getUsed() / max;
+			if(fullest == null || ratio > usage)
+			{
+				fullest = pool;
+				usage = ratio;
+			}
+		}
+		
+		MemoryPressure previous = level;
+		MemoryPressure next;
+		if(usage >= criticalThreshold
+				|| (previous == MemoryPressure.CRITICAL && usage >= criticalThreshold - hysteresis))
+			next = MemoryPressure.CRITICAL;
+		else if(usage >= warningThreshold
+				|| (previous != MemoryPressure.NORMAL && usage >= warningThreshold - hysteresis))
+			next = MemoryPressure.WARNING;
+		else
+			next = MemoryPressure.NORMAL;
+		
+		if(next == previous)
+			return;
+		
+		level = next;
+		
+		if(next == MemoryPressure.NORMAL)
+		{
+			pollTask.cancel(false);
+			pollTask = null;
+		}
+		else if(pollTask == null)
+		{
+			pollTask = poller.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					evaluate();
+				}
+			}, POLL_PERIOD, POLL_PERIOD, TimeUnit.MILLISECONDS);
+		}
+		
+		// Inform on the single poller thread to keep the order of changes
+		final MemoryPressureEvent event = new MemoryPressureEvent(this, previous, next, fullest, usage);
+		poller.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fireMemoryPressureChanged(event);
+			}
+		});
+	}
+	
+	
+	private void fireMemoryPressureChanged(MemoryPressureEvent e)
+	{
+		for(MemoryPressureListener l : listeners)
+		{
+			try
+			{
+				l.memoryPressureChanged(e);
+			}
+			catch(RuntimeException ex)
+			{
+				ex.printStackTrace();
+			}
+		}
+	}
+}
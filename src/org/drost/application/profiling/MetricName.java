@@ -0,0 +1,148 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifies a metric by its name and an optional set of tags. Tags are
+ * key-value pairs that distinguish metrics of the same name, e.g. the same
+ * timer for different features. Two names are equal when their names and
+ * tags are equal, regardless of the order the tags were given.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+@SuppressWarnings("serial")
+public final class MetricName implements Serializable, Comparable<MetricName>
+{
+	private final String name;
+	
+	/**
+	 * The tags sorted by key, stored as alternating keys and values.
+	 */
+	private final String[] tags;
+	
+	private final int hash;
+	
+	/**
+	 * Creates a metric name.
+	 * 
+	 * @param name
+	 *            The name of the metric.
+	 * @param tags
+	 *            Alternating tag keys and values, e.g.
+	 *            {@code "feature", "search", "source", "cache"}.
+	 * @throws IllegalArgumentException
+	 *             If the name is empty or the tags are not given in pairs.
+	 */
+	public MetricName(String name, String... tags)
+	{
+		if(name == null || name.isEmpty())
+			throw new IllegalArgumentException("The metric name cannot be null or empty.");
+		
+		if(tags != null && tags.length % 2 != 0)
+			throw new IllegalArgumentException("Tags must be given as key-value pairs.");
+		
+		Map<String, String> sorted = new TreeMap<String, String>();
+		if(tags != null)
+		{
+			for(int i = 0; i < tags.length; i += 2)
+			{
+				if(tags[i] == null || tags[i + 1] == null)
+					throw new IllegalArgumentException("Tag keys and values cannot be null.");
+				sorted.put(tags[i], tags[i + 1]);
+			}
+		}
+		
+		this.name = name;
+		this.tags = new String[sorted.size() * 2];
+		int i = 0;
+		for(Map.Entry<String, String> e : sorted.entrySet())
+		{
+			this.tags[i++] = e.getKey();
+			this.tags[i++] = e.getValue();
+		}
+		
+		this.hash = 31 * name.hashCode() + Arrays.hashCode(this.tags);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the tags sorted by their keys.
+	 */
+	public Map<String, String> getTags()
+	{
+		Map<String, String> map = new TreeMap<String, String>();
+		for(int i = 0; i < tags.length; i += 2)
+			map.put(tags[i], tags[i + 1]);
+		return map;
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this == o)
+			return true;
+		if(!(o instanceof MetricName))
+			return false;
+		
+		MetricName other = (MetricName) o;
+		return hash == other.hash && name.equals(other.name) && Arrays.equals(tags, other.tags);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+	
+	@Override
+	public int compareTo(MetricName o)
+	{
+		return toString().compareTo(o.toString());
+	}
+	
+	/**
+	 * Returns the name followed by the tags, e.g.
+	 * {@code search.time{feature=index}}.
+	 */
+	@Override
+	public String toString()
+	{
+		if(tags.length == 0)
+			return name;
+		
+		StringBuilder sb = new StringBuilder(name).append('{');
+		for(int i = 0; i < tags.length; i += 2)
+		{
+			if(i > 0)
+				sb.append(',');
+			sb.append(tags[i]).append('=').append(tags[i + 1]);
+		}
+		return sb.append('}').toString();
+	}
+}
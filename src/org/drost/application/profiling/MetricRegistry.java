@@ -0,0 +1,213 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds all named metrics of the application. Metrics are created on first
+ * access and returned by every further access with the same name and tags,
+ * so the registry may be queried from anywhere in the code. Hot paths should
+ * nevertheless keep a reference to the metric to skip the lookup.
+ * 
+ * <pre>
+ * MetricRegistry registry = ApplicationProfiler.getProfiler( ).getMetricRegistry( );
+ * Counter hits = registry.counter( "cache.hits", "cache", "thumbnails" );
+ * hits.increment( );
+ * </pre>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#getMetricRegistry()
+ */
+public class MetricRegistry
+{
+	private final ConcurrentMap<MetricName, Object> metrics = new ConcurrentHashMap<MetricName, Object>();
+	
+	
+	/**
+	 * Returns the counter of the given name and tags, creating it if
+	 * necessary.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If a metric of another type has been registered by that
+	 *             name.
+	 */
+	public Counter counter(String name, String... tags)
+	{
+		return getOrCreate(new MetricName(name, tags), Counter.class);
+	}
+	
+	
+	/**
+	 * Returns the timer of the given name and tags, creating it if
+	 * necessary.
+	 */
+	public ExecutionTimer timer(String name, String... tags)
+	{
+		return getOrCreate(new MetricName(name, tags), ExecutionTimer.class);
+	}
+	
+	
+	/**
+	 * Returns the histogram of the given name and tags, creating it if
+	 * necessary.
+	 */
+	public LatencyHistogram histogram(String name, String... tags)
+	{
+		return getOrCreate(new MetricName(name, tags), LatencyHistogram.class);
+	}
+	
+	
+	/**
+	 * Registers the gauge under the given name and tags. A previously
+	 * registered gauge of the same name is replaced.
+	 * 
+	 * @return The gauge.
+	 */
+	public Gauge gauge(Gauge gauge, String name, String... tags)
+	{
+		if(gauge == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		MetricName key = new MetricName(name, tags);
+		
+		// A metric of another type is never replaced, not even for a moment
+		while(true)
+		{
+			Object previous = metrics.putIfAbsent(key, gauge);
+			
+			if(previous == null)
+				return gauge;
+			
+			if(!(previous instanceof Gauge))
+				throw new IllegalArgumentException("The metric " + key + " is not a gauge.");
+			
+			if(metrics.replace(key, previous, gauge))
+				return gauge;
+		}
+	}
+	
+	
+	/**
+	 * Removes the metric of the given name and tags.
+	 * 
+	 * @return Whether a metric has been removed.
+	 */
+	public boolean remove(String name, String... tags)
+	{
+		return metrics.remove(new MetricName(name, tags)) != null;
+	}
+	
+	
+	/**
+	 * Returns the names of all registered metrics.
+	 */
+	public List<MetricName> getNames()
+	{
+		List<MetricName> names = new ArrayList<MetricName>(metrics.keySet());
+		Collections.sort(names);
+		return names;
+	}
+	
+	
+	/**
+	 * Takes a snapshot of all registered metrics, sorted by their names. The
+	 * metrics keep recording while the snapshot is taken, so values of
+	 * different metrics are not guaranteed to be taken at the same instant.
+	 * 
+	 * @return The values of all metrics.
+	 */
+	public List<MetricSnapshot> snapshot()
+	{
+		long now = System.currentTimeMillis();
+		List<MetricSnapshot> snapshots = new ArrayList<MetricSnapshot>(metrics.size());
+		
+		for(Map.Entry<MetricName, Object> e : metrics.entrySet())
+		{
+			Object metric = e.getValue();
+			
+			if(metric instanceof Counter)
+				snapshots.add(new MetricSnapshot(e.getKey(), MetricSnapshot.Type.COUNTER, now, ((Counter) metric).getCount(), 0));
+			else if(metric instanceof Gauge)
+				snapshots.add(new MetricSnapshot(e.getKey(), MetricSnapshot.Type.GAUGE, now, 0, readGauge((Gauge) metric)));
+			else if(metric instanceof ExecutionTimer)
+				snapshots.add(new MetricSnapshot(e.getKey(), MetricSnapshot.Type.TIMER, now, ((ExecutionTimer) metric).getHistogram()));
+			else if(metric instanceof LatencyHistogram)
+				snapshots.add(new MetricSnapshot(e.getKey(), MetricSnapshot.Type.HISTOGRAM, now, (LatencyHistogram) metric));
+		}
+		
+		Collections.sort(snapshots, new java.util.Comparator<MetricSnapshot>()
+		{
+			@Override
+			public int compare(MetricSnapshot a, MetricSnapshot b)
+			{
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		
+		return snapshots;
+	}
+	
+	
+	private static double readGauge(Gauge gauge)
+	{
+		try
+		{
+			return gauge.getValue();
+		}
+		catch(RuntimeException e)
+		{
+			return Double.NaN;
+		}
+	}
+	
+	
+	private <T> T getOrCreate(MetricName name, Class<T> type)
+	{
+		Object metric = metrics.get(name);
+		
+		if(metric == null)
+		{
+			try
+			{
+				Object created = type.getDeclaredConstructor().newInstance();
+				metric = metrics.putIfAbsent(name, created);
+				if(metric == null)
+					metric = created;
+			}
+			catch(ReflectiveOperationException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		if(!type.isInstance(metric))
+			throw new IllegalArgumentException("The metric " + name + " is not of type " + type.getSimpleName() + ".");
+		
+		return type.cast(metric);
+	}
+}
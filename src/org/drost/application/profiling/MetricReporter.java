@@ -0,0 +1,220 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.drost.application.LocalStorage;
+import org.drost.application.interfaces.SaveAsData;
+
+/**
+ * Periodically appends a snapshot of a {@link MetricRegistry} to a text file
+ * in the {@link LocalStorage}. Besides the absolute values each line of a
+ * counter, timer or histogram contains the rate per second since the previous
+ * report, so the file shows the throughput over time.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see org.drost.application.ApplicationProfiler#startMetricReporter(LocalStorage, long, TimeUnit)
+ */
+public class MetricReporter
+{
+	/**
+	 * The default name of the report file within the data directory of the
+	 * storage.
+	 */
+	public static final String DEFAULT_FILENAME = "metrics.log";
+	
+	private final MetricRegistry registry;
+	
+	private final LocalStorage storage;
+	
+	private final String filename;
+	
+	private final Map<MetricName, Long> previousCounts = new HashMap<MetricName, Long>();
+	
+	private long previousReport = System.currentTimeMillis();
+	
+	private ScheduledExecutorService scheduler = null;
+	
+	
+	public MetricReporter(MetricRegistry registry, LocalStorage storage)
+	{
+		this(registry, storage, SaveAsData.path + DEFAULT_FILENAME);
+	}
+	
+	
+	/**
+	 * Creates a reporter.
+	 * 
+	 * @param registry
+	 *            The registry to report.
+	 * @param storage
+	 *            The storage to write to.
+	 * @param filename
+	 *            The file relative to the storage directory.
+	 */
+	public MetricReporter(MetricRegistry registry, LocalStorage storage, String filename)
+	{
+		if(registry == null || storage == null || filename == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.registry = registry;
+		this.storage = storage;
+		this.filename = filename;
+	}
+	
+	
+	/**
+	 * Starts reporting at the given period on a daemon thread.
+	 */
+	public synchronized void start(long period, TimeUnit unit)
+	{
+		if(scheduler != null)
+			throw new IllegalStateException("The reporter has already been started.");
+		
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Metric-Reporter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		scheduler.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					report();
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}, period, period, unit);
+	}
+	
+	
+	/**
+	 * Stops reporting and writes a final report.
+	 */
+	public synchronized void stop()
+	{
+		if(scheduler == null)
+			return;
+		
+		scheduler.shutdownNow();
+		scheduler = null;
+		
+		try
+		{
+			report();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	public synchronized boolean isRunning()
+	{
+		return scheduler != null;
+	}
+	
+	
+	/**
+	 * Returns the file the reports are appended to.
+	 */
+	public File getFile()
+	{
+		File file = new File(filename);
+		return file.isAbsolute() ? file : new File(storage.getDirectory(), filename);
+	}
+	
+	
+	/**
+	 * Appends a snapshot of all metrics to the report file.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public synchronized void report() throws IOException
+	{
+		List<MetricSnapshot> snapshots = registry.snapshot();
+		if(snapshots.isEmpty())
+			return;
+		
+		long now = System.currentTimeMillis();
+		double seconds = Math.max(1, now - previousReport) / 1000.0;
+		previousReport = now;
+		
+		File file = getFile();
+		if(!file.getParentFile().exists() && !storage.createDirectories(file.getParent()))
+			throw new IOException("Could not create the directory " + file.getParent());
+		
+		String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(now));
+		
+		try(Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+		{
+			for(MetricSnapshot s : snapshots)
+			{
+				out.write(time);
+				out.write(' ');
+				out.write(s.getType().name());
+				out.write(' ');
+				out.write(s.toString());
+				
+				if(s.getType() != MetricSnapshot.Type.GAUGE)
+				{
+					Long previous = previousCounts.put(s.getName(), s.getCount());
+					long delta = s.getCount() - (previous == null ? 0 : previous);
+					out.write(String.format(Locale.ROOT, " rate=%.2f/s", delta / seconds));
+				}
+				
+				out.write(System.lineSeparator());
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.profiling;
+
+import java.io.Serializable;
+
+/**
+ * An immutable copy of the values of a single metric taken by
+ * {@link MetricRegistry#snapshot()}. Values that do not apply to the type of
+ * the metric are {@code 0}. Timer values are in nanoseconds.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+@SuppressWarnings("serial")
+public final class MetricSnapshot implements Serializable
+{
+	/**
+	 * The kinds of metrics held by the registry.
+	 */
+	public enum Type
+	{
+		COUNTER, GAUGE, TIMER, HISTOGRAM
+	}
+	
+	private final MetricName name;
+	
+	private final Type type;
+	
+	private final long timestamp;
+	
+	private final long count;
+	
+	private final double value;
+	
+	private final double mean;
+	
+	private final long p50;
+	
+	private final long p95;
+	
+	private final long p99;
+	
+	private final long max;
+	
+	MetricSnapshot(MetricName name, Type type, long timestamp, long count, double value)
+	{
+		this(name, type, timestamp, count, value, 0, 0, 0, 0, 0);
+	}
+	
+	MetricSnapshot(MetricName name, Type type, long timestamp, LatencyHistogram histogram)
+	{
+		this(name, type, timestamp, histogram.getCount(), 0, histogram.getMean(), histogram.getValueAtPercentile(50),
+				histogram.getValueAtPercentile(95), histogram.getValueAtPercentile(99), histogram.getMax());
+	}
+	
+	private MetricSnapshot(MetricName name, Type type, long timestamp, long count, double value, double mean, long p50, long p95, long p99, long max)
+	{
+		this.name = name;
+		this.type = type;
+		this.timestamp = timestamp;
+		this.count = count;
+		this.value = value;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p95 = p95;
+		this.p99 = p99;
+		this.max = max;
+	}
+	
+	public MetricName getName() {
+		return name;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the time the snapshot has been taken in milliseconds.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Returns the count of a counter or the number of recorded values of a
+	 * timer or histogram.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns the value of a gauge.
+	 */
+	public double getValue() {
+		return value;
+	}
+	
+	public double getMean() {
+		return mean;
+	}
+	
+	public long getMedian() {
+		return p50;
+	}
+	
+	public long get95thPercentile() {
+		return p95;
+	}
+	
+	public long get99thPercentile() {
+		return p99;
+	}
+	
+	public long getMax() {
+		return max;
+	}
+	
+	@Override
+	public String toString()
+	{
+		switch(type)
+		{
+			case COUNTER:
+				return name + " count=" + count;
+			case GAUGE:
+				return name + " value=" + value;
+			default:
+				return name + " count=" + count + " mean=" + (long) mean + " p50=" + p50 + " p95=" + p95
+						+ " p99=" + p99 + " max=" + max;
+		}
+	}
+}
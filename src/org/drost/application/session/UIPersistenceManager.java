@@ -51,6 +51,7 @@ import javax.swing.JTabbedPane;
 
 import org.drost.application.Application;
 import org.drost.application.LocalStorage;
+import org.drost.application.profiling.FlightRecorderSupport;
 import org.drost.application.utils.FileUtils;
 
 /**
@@ -672,6 +673,8 @@ public class UIPersistenceManager
 	{
 		if(!isNull(c))
 		{
+			Object event = FlightRecorderSupport.beginPersistence();
+			
 			// fetch component states/properties
 			Map<String, Object> stateMap = iterateComponentHierarchy(Collections.singletonList(c), null, GET_VIEW_STATE);
 			
@@ -680,6 +683,8 @@ public class UIPersistenceManager
 			
 			// write to file 
 			write(stateMap, getComponentName(c));
+			
+			FlightRecorderSupport.commitPersistence(event, "store", getComponentName(c));
 		}
 	}
 	
@@ -733,6 +738,8 @@ public class UIPersistenceManager
 //			if( !storage.containsFile(storage.getDirectoryFor(this.getClass()), getComponentName(c)) )
 //				return;
 			
+			Object event = FlightRecorderSupport.beginPersistence();
+			
 			// read from file
 			Map<String, Object> stateMap = read( getComponentName(c) );
 			
@@ -742,6 +749,8 @@ public class UIPersistenceManager
 			// fetch component states/properties
 			if(!isNull(stateMap))
 				iterateComponentHierarchy(Collections.singletonList(c), stateMap, SET_VIEW_STATE);
+			
+			FlightRecorderSupport.commitPersistence(event, "restore", getComponentName(c));
 		}
 	}
 	
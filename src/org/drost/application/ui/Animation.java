@@ -0,0 +1,315 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.ui;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Window;
+
+/**
+ * A time based transition of a single property of a target object. The
+ * animation itself does not own a thread, it is driven by the shared pulse of
+ * the {@link Animator} that calls {@link #update(float)} on the event dispatch
+ * thread for every frame.
+ * <p>
+ * Only one animation per target and property is running at the same time.
+ * Starting another one for the same pair cancels the previous one.
+ * </p>
+ * 
+ * <pre>
+ * Animation a = Animation.location( window, new Point( 100, 100 ), 300 );
+ * a.setEasing( Easing.EASE_OUT );
+ * a.setCallback( new Animation.Callback( ) {
+ * 	public void finished( Animation a, boolean canceled ) { ... }
+ * } );
+ * a.start( );
+ * </pre>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Animator
+ */
+public abstract class Animation
+{
+	/**
+	 * Gets notified when an animation has ended. The callback is invoked on
+	 * the event dispatch thread.
+	 */
+	public interface Callback
+	{
+		/**
+		 * Invoked after the animation has ended.
+		 * 
+		 * @param animation
+		 *            The animation that ended.
+		 * @param canceled
+		 *            {@code true} if the animation has been canceled before
+		 *            reaching its end value.
+		 */
+		public void finished(Animation animation, boolean canceled);
+	}
+	
+	private final Object target;
+	
+	private final String property;
+	
+	private final long durationMillis;
+	
+	private Easing easing = Easing.EASE_IN_OUT;
+	
+	private Callback callback = null;
+	
+	/**
+	 * The time stamp of the first frame, set by the {@code Animator}.
+	 */
+	long startNanos = -1;
+	
+	volatile boolean running = false;
+	
+	
+	/**
+	 * Creates an animation of the given target property.
+	 * 
+	 * @param target
+	 *            The animated object.
+	 * @param property
+	 *            The name of the animated property.
+	 * @param durationMillis
+	 *            The duration in milliseconds.
+	 */
+	protected Animation(Object target, String property, long durationMillis)
+	{
+		if(target == null || property == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		if(durationMillis < 0)
+			throw new IllegalArgumentException("Duration " + durationMillis + " must not be negative.");
+		
+		this.target = target;
+		this.property = property;
+		this.durationMillis = durationMillis;
+	}
+	
+	
+	/**
+	 * Invoked once on the event dispatch thread before the first frame. Use
+	 * this to read the start value of the property.
+	 */
+	protected void begin()
+	{
+		
+	}
+	
+	
+	/**
+	 * Applies the property value for the current frame.
+	 * 
+	 * @param fraction
+	 *            The eased progress between {@code 0.0} and {@code 1.0}.
+	 */
+	protected abstract void update(float fraction);
+	
+	
+	/**
+	 * Invoked once on the event dispatch thread after the last frame or when
+	 * the animation has been canceled.
+	 * 
+	 * @param canceled
+	 *            Whether the animation has been canceled.
+	 */
+	protected void end(boolean canceled)
+	{
+		
+	}
+	
+	
+	/**
+	 * Starts this animation on the shared {@link Animator}.
+	 * 
+	 * @return This animation.
+	 */
+	public Animation start()
+	{
+		Animator.getAnimator().start(this);
+		return this;
+	}
+	
+	
+	/**
+	 * Stops this animation. The property keeps its current value.
+	 */
+	public void cancel()
+	{
+		Animator.getAnimator().cancel(this);
+	}
+	
+	
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	public Object getTarget() {
+		return target;
+	}
+	
+	public String getProperty() {
+		return property;
+	}
+	
+	public long getDuration() {
+		return durationMillis;
+	}
+	
+	public Easing getEasing() {
+		return easing;
+	}
+	
+	public Animation setEasing(Easing easing) {
+		this.easing = easing == null ? Easing.LINEAR : easing;
+		return this;
+	}
+	
+	public Callback getCallback() {
+		return callback;
+	}
+	
+	public Animation setCallback(Callback callback) {
+		this.callback = callback;
+		return this;
+	}
+	
+	
+	
+	
+	/**
+	 * Creates an animation that moves the window from its current location to
+	 * the given location.
+	 * 
+	 * @param window
+	 *            The window to move.
+	 * @param to
+	 *            The target location.
+	 * @param durationMillis
+	 *            The duration in milliseconds.
+	 * @return The animation, not yet started.
+	 */
+	public static Animation location(final Window window, final Point to, long durationMillis)
+	{
+		return new Animation(window, "location", durationMillis)
+		{
+			private Point from;
+			
+			@Override
+			protected void begin()
+			{
+				from = window.getLocation();
+			}
+			
+			@Override
+			protected void update(float fraction)
+			{
+				window.setLocation(interpolate(from.x, to.x, fraction), interpolate(from.y, to.y, fraction));
+			}
+		};
+	}
+	
+	
+	/**
+	 * Creates an animation that changes the bounds of the window from the
+	 * current bounds to the given bounds.
+	 * 
+	 * @param window
+	 *            The window to move and resize.
+	 * @param to
+	 *            The target bounds.
+	 * @param durationMillis
+	 *            The duration in milliseconds.
+	 * @return The animation, not yet started.
+	 */
+	public static Animation bounds(final Window window, final Rectangle to, long durationMillis)
+	{
+		return new Animation(window, "bounds", durationMillis)
+		{
+			private Rectangle from;
+			
+			@Override
+			protected void begin()
+			{
+				from = window.getBounds();
+			}
+			
+			@Override
+			protected void update(float fraction)
+			{
+				window.setBounds(interpolate(from.x, to.x, fraction), interpolate(from.y, to.y, fraction),
+						interpolate(from.width, to.width, fraction), interpolate(from.height, to.height, fraction));
+			}
+		};
+	}
+	
+	
+	/**
+	 * Creates an animation that changes the opacity of the window from the
+	 * current opacity to the given value. The window needs to support
+	 * translucency, see {@link GUI#isOpacitySupported(Window)}.
+	 * 
+	 * @param window
+	 *            The window to fade.
+	 * @param to
+	 *            The target opacity between {@code 0.0} and {@code 1.0}.
+	 * @param durationMillis
+	 *            The duration in milliseconds.
+	 * @return The animation, not yet started.
+	 */
+	public static Animation opacity(final Window window, final float to, long durationMillis)
+	{
+		if(to < 0f || to > 1f)
+			throw new IllegalArgumentException("Value "+to+" out of range. Must be between 0.0 and 1.0.");
+		
+		return new Animation(window, "opacity", durationMillis)
+		{
+			private float from;
+			
+			@Override
+			protected void begin()
+			{
+				from = window.getOpacity();
+			}
+			
+			@Override
+			protected void update(float fraction)
+			{
+				window.setOpacity(Math.max(0f, Math.min(1f, from + (to - from) * fraction)));
+			}
+		};
+	}
+	
+	
+	/**
+	 * Returns the value between {@code from} and {@code to} for the given
+	 * progress.
+	 */
+	protected static int interpolate(int from, int to, float fraction)
+	{
+		return Math.round(from + (to - from) * fraction);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Drives all running {@link Animation}s by one shared pulse. The pulse is a
+ * single {@link Timer} that is only running while there is at least one
+ * animation, so any number of windows can be animated at the same time
+ * without blocking the event dispatch thread or creating additional threads.
+ * <p>
+ * All animation callbacks are invoked on the event dispatch thread. The
+ * methods of this class may be called from any thread.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Animation
+ */
+public final class Animator
+{
+	/**
+	 * The default delay between two frames in milliseconds, roughly 60
+	 * frames per second.
+	 */
+	public static final int DEFAULT_FRAME_DELAY = 16;
+	
+	private static final Animator instance = new Animator();
+	
+	/**
+	 * The running animations. Only accessed on the event dispatch thread.
+	 */
+	private final List<Animation> animations = new ArrayList<Animation>();
+	
+	private final Timer pulse;
+	
+	// Hidden
+	private Animator()
+	{
+		pulse = new Timer(DEFAULT_FRAME_DELAY, new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				tick(System.nanoTime());
+			}
+		});
+		pulse.setCoalesce(true);
+		pulse.setInitialDelay(0);
+	}
+	
+	
+	/**
+	 * Returns the shared animator.
+	 * 
+	 * @return The animator singleton.
+	 */
+	public static Animator getAnimator()
+	{
+		return instance;
+	}
+	
+	
+	/**
+	 * Starts the animation with the next pulse. A running animation of the
+	 * same target and property is canceled first.
+	 * 
+	 * @param animation
+	 *            The animation to start.
+	 */
+	public void start(final Animation animation)
+	{
+		runOnEDT(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(animation.running)
+					return;
+				
+				for(Animation a : animations.toArray(new Animation[animations.size()]))
+				{
+					if(a.getTarget() == animation.getTarget() && a.getProperty().equals(animation.getProperty()))
+						stop(a, true);
+				}
+				
+				animation.startNanos = -1;
+				animation.running = true;
+				animation.begin();
+				animations.add(animation);
+				
+				if(!pulse.isRunning())
+					pulse.start();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Cancels the animation. The animated property keeps its current value.
+	 * 
+	 * @param animation
+	 *            The animation to cancel.
+	 */
+	public void cancel(final Animation animation)
+	{
+		runOnEDT(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(animation.running)
+					stop(animation, true);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Cancels all running animations of the given target.
+	 * 
+	 * @param target
+	 *            The animated object.
+	 */
+	public void cancelAll(final Object target)
+	{
+		runOnEDT(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for(Animation a : animations.toArray(new Animation[animations.size()]))
+				{
+					if(a.getTarget() == target)
+						stop(a, true);
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Sets the delay between two frames.
+	 * 
+	 * @param millis
+	 *            The delay in milliseconds.
+	 */
+	public void setFrameDelay(int millis)
+	{
+		if(millis < 1)
+			throw new IllegalArgumentException("Frame delay must be at least 1 ms.");
+		
+		pulse.setDelay(millis);
+	}
+	
+	
+	public int getFrameDelay()
+	{
+		return pulse.getDelay();
+	}
+	
+	
+	/**
+	 * Returns the number of running animations. Only reliable when called
+	 * on the event dispatch thread.
+	 */
+	public int getAnimationCount()
+	{
+		return animations.size();
+	}
+	
+	
+	/*
+	 * Advances every running animation to the given time. Animations
+	 * started or canceled by a callback during this frame are handled with
+	 * the next pulse.
+	 */
+	private void tick(long now)
+	{
+		for(Animation a : animations.toArray(new Animation[animations.size()]))
+		{
+			if(!a.running)
+				continue;
+			
+			if(a.startNanos < 0)
+				a.startNanos = now;
+			
+			long elapsedMillis = (now - a.startNanos) / 1000000L;
+			float fraction = a.getDuration() == 0 ? 1f : Math.min(1f, elapsedMillis / (float) a.getDuration());
+			
+			try
+			{
+				a.update(a.getEasing().ease(fraction));
+			}
+			catch(RuntimeException e)
+			{
+				stop(a, true);
+				throw e;
+			}
+			
+			if(fraction >= 1f)
+				stop(a, false);
+		}
+		
+		if(animations.isEmpty())
+			pulse.stop();
+	}
+	
+	
+	private void stop(Animation animation, boolean canceled)
+	{
+		animations.remove(animation);
+		animation.running = false;
+		
+		try
+		{
+			animation.end(canceled);
+		}
+		finally
+		{
+			if(animation.getCallback() != null)
+				animation.getCallback().finished(animation, canceled);
+		}
+	}
+	
+	
+	private static void runOnEDT(Runnable runnable)
+	{
+		if (SwingUtilities.isEventDispatchThread()) 
+		{
+	        runnable.run();
+	    } 
+		else 
+		{
+	        SwingUtilities.invokeLater(runnable);
+	    }
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.ui;
+
+/**
+ * Maps the linear progress of an {@link Animation} to the progress of the
+ * animated property. Both values range from {@code 0.0} to {@code 1.0}.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see Animation#setEasing(Easing)
+ */
+public interface Easing
+{
+	/**
+	 * Progresses at a constant speed.
+	 */
+	public static final Easing LINEAR = new Easing()
+	{
+		@Override
+		public float ease(float fraction)
+		{
+			return fraction;
+		}
+	};
+	
+	/**
+	 * Starts slowly and accelerates towards the end.
+	 */
+	public static final Easing EASE_IN = new Easing()
+	{
+		@Override
+		public float ease(float fraction)
+		{
+			return fraction * fraction * fraction;
+		}
+	};
+	
+	/**
+	 * Starts fast and decelerates towards the end.
+	 */
+	public static final Easing EASE_OUT = new Easing()
+	{
+		@Override
+		public float ease(float fraction)
+		{
+			float f = 1f - fraction;
+			return 1f - f * f * f;
+		}
+	};
+	
+	/**
+	 * Accelerates in the first half and decelerates in the second half.
+	 */
+	public static final Easing EASE_IN_OUT = new Easing()
+	{
+		@Override
+		public float ease(float fraction)
+		{
+			if(fraction < 0.5f)
+				return 4f * fraction * fraction * fraction;
+			
+			float f = -2f * fraction + 2f;
+			return 1f - f * f * f / 2f;
+		}
+	};
+	
+	/**
+	 * Returns the eased progress for the linear progress.
+	 * 
+	 * @param fraction
+	 *            The elapsed fraction of the animation duration between
+	 *            {@code 0.0} and {@code 1.0}.
+	 * @return The progress of the animated property.
+	 */
+	public float ease(float fraction);
+}
@@ -33,13 +33,20 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.swing.FocusManager;
+import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.LookAndFeel;
+import javax.swing.RepaintManager;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
@@ -47,7 +54,9 @@ import javax.swing.UnsupportedLookAndFeelException;
 import org.drost.application.Application;
 import org.drost.application.adapter.EdgeSnapAdapter;
 import org.drost.application.adapter.KeyControlAdapter;
+import org.drost.application.listeners.ApplicationEvent;
 import org.drost.application.plaf.rich.RichLookAndFeel;
+import org.drost.application.profiling.FlightRecorderSupport;
 import org.drost.application.session.UIPersistenceManager;
 
 /**
@@ -482,6 +491,8 @@ public class GUI
 				@Override
 				public void run( )
 				{
+					Object event = FlightRecorderSupport.beginLookAndFeel( );
+					
 					try
 					{
 						UIManager.setLookAndFeel( qualifiedName );
@@ -491,11 +502,17 @@ public class GUI
 					{
 						e.printStackTrace( );
 					}
-					for( int i = 0; i < JFrame.getWindows( ).length; i++ )
+					Window[] windows = JFrame.getWindows( );
+					for( int i = 0; i < windows.length; i++ )
 					{
-						Window w = JFrame.getWindows( )[i];
+						Window w = windows[i];
 						SwingUtilities.updateComponentTreeUI( w );
 					}
+					
+					FlightRecorderSupport.commitLookAndFeel( event, qualifiedName, windows.length );
+					
+					if( Application.running( ) )
+						Application.get( ).getEventBus( ).publish( new ApplicationEvent( Application.get( ), ApplicationEvent.APPLICATION_LOOK_AND_FEEL_CHANGED ) );
 				}
 
 			} );
@@ -533,37 +550,211 @@ public class GUI
 	
 	/**
 	 * Traverse the component tree and whether enables or disables the
-	 * component. While a component is the {@code Container} instance it
-	 * recursively calls this method on all children components. Performs a
-	 * depth first search to traverse the component tree.
+	 * component and all of its descendants. The tree is traversed
+	 * iteratively so even deeply nested trees cannot overflow the stack.
+	 * <p>
+	 * When called on the event dispatch thread the repaint requests of the
+	 * single components are suspended while traversing and replaced by one
+	 * revalidation and repaint of the top-level container.
+	 * </p>
 	 * 
 	 * @param comp
 	 *            The component to whether enable or not.
 	 * @param enabled
 	 *            {@code true} to enable this component and all components
 	 *            contained within, otherwise {@code false}.
+	 *            
+	 * @see #setEnabled(Component, boolean, boolean)
 	 */
 	public static void setEnabled(Component comp, boolean enabled) 
 	{
-		comp.setEnabled(enabled);
+		setEnabled(comp, enabled, false);
+	}
+	
+	
+	/**
+	 * Enables or disables the component tree like
+	 * {@link #setEnabled(Component, boolean)} and optionally remembers the
+	 * previous state of every component. Pass the returned map to
+	 * {@link #restoreEnabled(Map)} to undo the change, e.g. to leave an edit
+	 * mode without enabling components that have been disabled before.
+	 * 
+	 * @param comp
+	 *            The root of the component tree.
+	 * @param enabled
+	 *            The new state of all components.
+	 * @param remember
+	 *            Whether to return the previous states.
+	 * @return The previous enabled state of every component or {@code null}
+	 *         if {@code remember} is {@code false}.
+	 */
+	public static Map<Component, Boolean> setEnabled(Component comp, final boolean enabled, boolean remember)
+	{
+		if(comp == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		final Map<Component, Boolean> previous = remember ? new IdentityHashMap<Component, Boolean>() : null;
+		final List<Component> components = collectComponents(comp);
 		
-		if(comp instanceof Container)
+		updateBatched(comp, new Runnable()
 		{
-			for(int i = 0; i < ((Container) comp).getComponentCount(); i++)
+			@Override
+			public void run()
 			{
-				Component child = ((Container) comp).getComponent(i);
-				if(child instanceof Container && ((Container) child).getComponentCount() > 0)
+				for(Component c : components)
 				{
-					setEnabled(child, enabled);
+					if(previous != null)
+						previous.put(c, c.isEnabled());
+					
+					if(c.isEnabled() != enabled)
+						c.setEnabled(enabled);
 				}
-				else
+			}
+		});
+		
+		return previous;
+	}
+	
+	
+	/**
+	 * Restores the enabled states previously returned by
+	 * {@link #setEnabled(Component, boolean, boolean)}.
+	 * 
+	 * @param states
+	 *            The enabled state of each component.
+	 */
+	public static void restoreEnabled(final Map<Component, Boolean> states)
+	{
+		if(states == null || states.isEmpty())
+			return;
+		
+		// Batched per window, so each of them is validated and repainted once
+		Map<Component, List<Map.Entry<Component, Boolean>>> roots = new IdentityHashMap<Component, List<Map.Entry<Component, Boolean>>>();
+		for(Map.Entry<Component, Boolean> e : states.entrySet())
+		{
+			Component root = getTopLevel(e.getKey());
+			List<Map.Entry<Component, Boolean>> entries = roots.get(root);
+			
+			if(entries == null)
+			{
+				entries = new ArrayList<Map.Entry<Component, Boolean>>();
+				roots.put(root, entries);
+			}
+			entries.add(e);
+		}
+		
+		for(Map.Entry<Component, List<Map.Entry<Component, Boolean>>> root : roots.entrySet())
+		{
+			final List<Map.Entry<Component, Boolean>> entries = root.getValue();
+			
+			updateBatched(root.getKey(), new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					child.setEnabled(enabled);
+					for(Map.Entry<Component, Boolean> e : entries)
+					{
+						if(e.getKey().isEnabled() != e.getValue())
+							e.getKey().setEnabled(e.getValue());
+					}
 				}
+			});
+		}
+	}
+	
+	
+	/*
+	 * Returns the component and all of its descendants in depth first order.
+	 */
+	private static List<Component> collectComponents(Component root)
+	{
+		List<Component> components = new ArrayList<Component>();
+		ArrayDeque<Component> stack = new ArrayDeque<Component>();
+		stack.push(root);
+		
+		while(!stack.isEmpty())
+		{
+			Component c = stack.pop();
+			components.add(c);
+			
+			if(c instanceof Container)
+			{
+				Component[] children = ((Container) c).getComponents();
+				for(int i = children.length - 1; i >= 0; i--)
+					stack.push(children[i]);
 			}
 		}
+		
+		return components;
+	}
+	
+	
+	private static Component getTopLevel(Component c)
+	{
+		Component root = SwingUtilities.getRoot(c);
+		return root != null ? root : c;
+	}
+	
+	
+	/*
+	 * Runs the update while the repaint manager ignores all repaint and
+	 * revalidation requests, then revalidates and repaints the top-level
+	 * container once. Off the EDT the update is simply run.
+	 */
+	private static void updateBatched(Component comp, Runnable update)
+	{
+		if(!SwingUtilities.isEventDispatchThread())
+		{
+			update.run();
+			return;
+		}
+		
+		RepaintManager current = RepaintManager.currentManager(comp);
+		
+		if(current instanceof SuspendedRepaintManager)
+		{
+			// Already batched by an enclosing call
+			update.run();
+			return;
+		}
+		
+		RepaintManager.setCurrentManager(new SuspendedRepaintManager());
+		try
+		{
+			update.run();
+		}
+		finally
+		{
+			RepaintManager.setCurrentManager(current);
+		}
+		
+		Component root = getTopLevel(comp);
+		root.invalidate();
+		root.validate();
+		root.repaint();
 	}
 	
+	
+	/**
+	 * A repaint manager that discards all requests. Installed while a batch
+	 * of component changes is applied.
+	 */
+	private static class SuspendedRepaintManager extends RepaintManager
+	{
+		@Override
+		public void addDirtyRegion(JComponent c, int x, int y, int w, int h) { }
+		
+		@Override
+		public void addDirtyRegion(Window window, int x, int y, int w, int h) { }
+		
+		@Override
+		public void addInvalidComponent(JComponent invalidComponent) { }
+		
+		@Override
+		public void markCompletelyDirty(JComponent aComponent) { }
+	}
+	
+	
 	public Window getActiveWindow()
 	{
 		return FocusManager.getCurrentManager().getActiveWindow();
@@ -832,68 +1023,160 @@ public class GUI
 	}
 	
 	
-	public void shake(Window view)
+	public Animation shake(Window view)
 	{
-		this.shake( view, 200 );
+		return this.shake( view, 200 );
 	}
 	
 	
-	public void shake(Window view, long millis)
+	/**
+	 * Shakes the window horizontally for the given time. The shake is driven
+	 * by the shared {@link Animator} and does not block the calling thread.
+	 * Once the animation has ended or has been canceled the window is moved
+	 * back to its original location.
+	 * 
+	 * @param view
+	 *            The window to shake.
+	 * @param millis
+	 *            The duration in milliseconds.
+	 * @return The running animation.
+	 */
+	public Animation shake(final Window view, long millis)
 	{
-		final long startMillis = System.currentTimeMillis( );
-		int posX = view.getLocation( ).x;
-		int posY = view.getLocation( ).y;
-		
-		final int DELAY = 5;
 		final double CYCLE = 50;
 		final int DISTANCE = 10;
 		final double PI2 = Math.PI * 2;
 		
-		double angle;
-		int newPosX = 0;
-		long elapsedMillis = 0;
-		
-		while(elapsedMillis < millis)
+		Animation shake = new Animation( view, "location", millis )
 		{
-			elapsedMillis = System.currentTimeMillis( ) - startMillis;
+			private int posX;
+			private int posY;
 			
-			if(elapsedMillis % DELAY == 0)
+			@Override
+			protected void begin( )
 			{
-				angle = (elapsedMillis % CYCLE) / CYCLE * PI2;
-				newPosX = (int) ((Math.sin( angle ) * DISTANCE) + posX);
+				posX = view.getLocation( ).x;
+				posY = view.getLocation( ).y;
+			}
+			
+			@Override
+			protected void update( float fraction )
+			{
+				double elapsedMillis = fraction * getDuration( );
+				double angle = (elapsedMillis % CYCLE) / CYCLE * PI2;
+				int newPosX = (int) ((Math.sin( angle ) * DISTANCE) + posX);
 				
-				// Perform this on another thread to provide accessibility to the window
 				view.setLocation( newPosX, posY );
 			}
-		}
+			
+			@Override
+			protected void end( boolean canceled )
+			{
+				view.setLocation( posX, posY );
+				view.repaint( );
+			}
+		};
 		
-		view.setLocation( posX, posY );
-		view.repaint( );
+		return shake.setEasing( Easing.LINEAR ).start( );
 	}
 	
 	
-	@Deprecated
-	public void windowFadeOut(Frame view)
+	/**
+	 * Returns whether the opacity of the window can be changed. Besides the
+	 * support of the graphics device this requires frames and dialogs to be
+	 * undecorated.
+	 * 
+	 * @param view
+	 *            The window.
+	 * @return {@code true} if {@link Window#setOpacity(float)} can be used.
+	 */
+	public boolean isOpacitySupported(Window view)
+	{
+		if( view instanceof Frame && !( (Frame) view ).isUndecorated( ) )
+			return false;
+		
+		if( view instanceof Dialog && !( (Dialog) view ).isUndecorated( ) )
+			return false;
+		
+		GraphicsDevice gd = view.getGraphicsConfiguration( ).getDevice( );
+		return gd.isWindowTranslucencySupported( GraphicsDevice.WindowTranslucency.TRANSLUCENT );
+	}
+	
+	
+	public Animation windowFadeOut(Window view)
 	{
-		this.windowFadeOut( view, 500 );
+		return this.windowFadeOut( view, 500 );
 	}
 	
-	@Deprecated
-	public void windowFadeOut(Frame view, long millis)
+	/**
+	 * Fades the window out and hides it afterwards. The opacity is restored
+	 * once the window is hidden, so it appears opaque when shown again. While
+	 * the window does not support translucency it is hidden immediately and
+	 * {@code null} is returned.
+	 * 
+	 * @param view
+	 *            The window to hide.
+	 * @param millis
+	 *            The duration in milliseconds.
+	 * @return The running animation or {@code null}.
+	 * 
+	 * @see #isOpacitySupported(Window)
+	 */
+	public Animation windowFadeOut(final Window view, long millis)
 	{
-		// TODO	Due to the Java7 undecorated frame bug
+		if( !isOpacitySupported( view ) )
+		{
+			view.setVisible( false );
+			return null;
+		}
+		
+		return Animation.opacity( view, 0f, millis ).setCallback( new Animation.Callback( )
+		{
+			@Override
+			public void finished( Animation animation, boolean canceled )
+			{
+				if( !canceled )
+				{
+					view.setVisible( false );
+					view.setOpacity( 1f );
+				}
+			}
+		} ).start( );
 	}
 	
-	@Deprecated
-	public void windowFadeIn(Window view)
+	public Animation windowFadeIn(Window view)
 	{
-		this.windowFadeIn( view, 500 );
+		return this.windowFadeIn( view, 500 );
 	}
 	
-	@Deprecated
-	public void windowFadeIn(Window view, long millis)
+	/**
+	 * Shows the window fully transparent and fades it in. While the window
+	 * does not support translucency it is shown immediately and {@code null}
+	 * is returned.
+	 * 
+	 * @param view
+	 *            The window to show.
+	 * @param millis
+	 *            The duration in milliseconds.
+	 * @return The running animation or {@code null}.
+	 * 
+	 * @see #isOpacitySupported(Window)
+	 */
+	public Animation windowFadeIn(Window view, long millis)
 	{
-		// TODO Due to the Java7 undecorated frame bug
+		if( !isOpacitySupported( view ) )
+		{
+			view.setVisible( true );
+			return null;
+		}
+		
+		if( !view.isVisible( ) )
+		{
+			view.setOpacity( 0f );
+			view.setVisible( true );
+		}
+		
+		return Animation.opacity( view, 1f, millis ).start( );
 	}
 	
 	
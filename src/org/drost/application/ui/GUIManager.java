@@ -31,7 +31,10 @@ import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
+import org.drost.application.Application;
+import org.drost.application.listeners.ApplicationEvent;
 import org.drost.application.plaf.rich.RichLookAndFeel;
+import org.drost.application.profiling.FlightRecorderSupport;
 
 /**
  * Responsible for all GUI instances and their behavior and their interaction.
@@ -196,6 +199,8 @@ public class GUIManager
 				@Override
 				public void run( )
 				{
+					Object event = FlightRecorderSupport.beginLookAndFeel( );
+					
 					try
 					{
 						UIManager.setLookAndFeel( qualifiedName );
@@ -205,11 +210,17 @@ public class GUIManager
 					{
 						e.printStackTrace( );
 					}
-					for( int i = 0; i < JFrame.getWindows( ).length; i++ )
+					Window[] windows = JFrame.getWindows( );
+					for( int i = 0; i < windows.length; i++ )
 					{
-						Window w = JFrame.getWindows( )[i];
+						Window w = windows[i];
 						SwingUtilities.updateComponentTreeUI( w );
 					}
+					
+					FlightRecorderSupport.commitLookAndFeel( event, qualifiedName, windows.length );
+					
+					if( Application.running( ) )
+						Application.get( ).getEventBus( ).publish( new ApplicationEvent( Application.get( ), ApplicationEvent.APPLICATION_LOOK_AND_FEEL_CHANGED ) );
 				}
 
 			} );
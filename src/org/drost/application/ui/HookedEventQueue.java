@@ -0,0 +1,194 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.ui;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.Arrays;
+
+/**
+ * The event queue of the framework. It is pushed onto the system event queue
+ * once, when the first hook is added, and stays there until it is
+ * {@link #uninstall() uninstalled}. Every dispatched event
+ * passes the registered hooks in the order they have been added, each of them
+ * continues the dispatch by {@link Chain#proceed(AWTEvent)}.
+ * <p>
+ * Hooks are added and removed here instead of pushing an own queue per
+ * feature, since only the top queue dispatches the events and popping a
+ * queue always removes the top one.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ */
+public final class HookedEventQueue extends EventQueue
+{
+	/**
+	 * Takes part in the dispatch of every event.
+	 */
+	public static interface Hook
+	{
+		/**
+		 * Dispatches an event on the event dispatch thread.
+		 * 
+		 * @param event
+		 *            The event.
+		 * @param chain
+		 *            The remaining hooks and the actual dispatch, must be
+		 *            proceeded unless the event is consumed.
+		 */
+		public void dispatch(AWTEvent event, Chain chain);
+	}
+	
+	
+	/**
+	 * The remaining part of a dispatch.
+	 */
+	public static interface Chain
+	{
+		public void proceed(AWTEvent event);
+	}
+	
+	
+	private static HookedEventQueue instance = null;
+	
+	private static Hook[] hooks = new Hook[0];
+	
+	/**
+	 * The first link of the current hooks, rebuilt when they change so the
+	 * dispatch allocates nothing.
+	 */
+	private volatile Chain head;
+	
+	
+	private HookedEventQueue()
+	{
+		link();
+	}
+	
+	
+	/**
+	 * Adds a hook behind the present ones. The queue is pushed with the first
+	 * hook.
+	 * 
+	 * @param hook
+	 *            The hook.
+	 */
+	public static synchronized void addHook(Hook hook)
+	{
+		if(hook == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		if(instance == null)
+		{
+			instance = new HookedEventQueue();
+			Toolkit.getDefaultToolkit().getSystemEventQueue().push(instance);
+		}
+		
+		hooks = Arrays.copyOf(hooks, hooks.length + 1);
+		hooks[hooks.length - 1] = hook;
+		instance.link();
+	}
+	
+	
+	/**
+	 * Removes a hook wherever it is placed. The queue stays installed until
+	 * it is {@link #uninstall() uninstalled}.
+	 * 
+	 * @param hook
+	 *            The hook.
+	 * @return {@code true} if the hook has been added before.
+	 */
+	public static synchronized boolean removeHook(Hook hook)
+	{
+		for(int i = 0; i < hooks.length; i++)
+		{
+			if(hooks[i] == hook)
+			{
+				Hook[] remaining = new Hook[hooks.length - 1];
+				System.arraycopy(hooks, 0, remaining, 0, i);
+				System.arraycopy(hooks, i + 1, remaining, i, remaining.length - i);
+				
+				hooks = remaining;
+				instance.link();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Pops the queue once no hooks remain, so it does not keep the classes
+	 * of the framework reachable after a warm restart. A queue pushed later
+	 * must have been popped before, as popping always removes the top queue.
+	 * 
+	 * @return {@code true} if the queue has been popped.
+	 */
+	public static synchronized boolean uninstall()
+	{
+		if(instance == null || hooks.length > 0)
+			return false;
+		
+		instance.pop();
+		instance = null;
+		return true;
+	}
+	
+	
+	@Override
+	protected void dispatchEvent(AWTEvent event)
+	{
+		head.proceed(event);
+	}
+	
+	
+	/**
+	 * Builds the chain from the last hook to the first.
+	 */
+	private void link()
+	{
+		Chain chain = new Chain()
+		{
+			@Override
+			public void proceed(AWTEvent event)
+			{
+				HookedEventQueue.super.dispatchEvent(event);
+			}
+		};
+		
+		for(int i = hooks.length - 1; i >= 0; i--)
+		{
+			final Hook hook = hooks[i];
+			final Chain next = chain;
+			
+			chain = new Chain()
+			{
+				@Override
+				public void proceed(AWTEvent event)
+				{
+					hook.dispatch(event, next);
+				}
+			};
+		}
+		head = chain;
+	}
+}
@@ -25,15 +25,59 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JDialog;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 
+import org.drost.application.conflict.ConflictManager;
+import org.drost.application.conflict.MemoryReclaimable;
+import org.drost.application.profiling.MemoryPressure;
+import org.drost.application.utils.GraphicsUtils;
+
 /**
+ * Displays a splash window while the application resources are initialized in
+ * the background.
+ * <p>
+ * Resources are registered as named {@link Task}s by
+ * {@link #addTask(String, int, Callable, String...)}. Each task may depend on
+ * other tasks and is started as soon as all of its dependencies have
+ * completed, so independent tasks run in parallel on a bounded thread pool.
+ * The progress of this worker reflects the summed weight of all finished
+ * tasks and every finished task is published to {@link #process(List)} on the
+ * event dispatch thread.
+ * </p>
+ * 
+ * <pre>
+ * SplashScreen splash = new SplashScreen( image ) {
+ * 	public void onClosing( ) { gui.getMainWindow( ).setVisible( true ); }
+ * };
+ * splash.addTask( "fonts", 1, loadFonts );
+ * splash.addTask( "icons", 3, loadIcons );
+ * splash.addTask( "index", 5, buildIndex, "fonts", "icons" );
+ * splash.startResourceInitiation( );
+ * </pre>
  * 
  * @author kimschorat
  *
@@ -44,12 +88,38 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 		
 	private JDialog dialog = null;
 	
+	/**
+	 * The registered initialization tasks mapped by their names. The insertion
+	 * order is kept to start independent tasks in the order they were added.
+	 */
+	private final Map<String, Task> tasks = new LinkedHashMap<String, Task>();
+	
+	/**
+	 * The maximum number of tasks that are executed at the same time.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The summed weight of all tasks that are not pending anymore.
+	 */
+	private final AtomicLong finishedWeight = new AtomicLong();
+	
+	private long totalWeight = 0;
+	
+	/**
+	 * The pane painting the splash image or {@code null} if a component is
+	 * shown.
+	 */
+	private ImagePane imagePane = null;
+	
 	public SplashScreen(Image splashScreen)
 	{
 		image = toBufferedImage(splashScreen);
-		ImagePane imagePanel = new ImagePane(image);
+		imagePane = new ImagePane(image);
 		
-		init(imagePanel);
+		ConflictManager.getConflictManager().getMemoryReclaimRegistry().register("splash.images", 0, imagePane);
+		
+		init(imagePane);
 	}
 	
 	
@@ -63,12 +133,14 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 	{
 		dialog = new JDialog();
 		
+		Dimension size = image != null ? new Dimension(image.getWidth(), image.getHeight()) : splashScreen.getPreferredSize();
+		
 		dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
         dialog.setUndecorated(true);
         dialog.setBackground(new Color(0, 0, 0, 0));
         dialog.setAlwaysOnTop(false);
-        dialog.setPreferredSize(new Dimension(image.getWidth(null), image.getHeight(null)));
-        dialog.setSize(new Dimension(image.getWidth(null), image.getHeight(null)));
+        dialog.setPreferredSize(size);
+        dialog.setSize(size);
         dialog.setLocationRelativeTo(null);    
 		
 		dialog.getContentPane().setLayout(new BorderLayout());		
@@ -111,26 +183,96 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 	
 	
 	/**
+	 * Paints the splash image stretched to the size of the panel. The scaled
+	 * image is created once per panel size and device scale and reused for
+	 * every following paint, the source image is never modified. The scaled
+	 * images are released when the heap gets tight.
 	 * 
 	 * @author kimschorat
 	 *
 	 */
-	private class ImagePane extends JPanel
+	private class ImagePane extends JPanel implements MemoryReclaimable
 	{
-		private Image image = null;
+		/**
+		 * The number of scaled images kept at the same time. A few entries
+		 * are enough to switch between screens with different scale factors
+		 * without rescaling.
+		 */
+		private static final int CACHE_SIZE = 4;
+		
+		private BufferedImage image = null;
+		
+		/**
+		 * The estimated bytes of the scaled images in the cache.
+		 */
+		private volatile long cacheSize = 0;
 		
-		public ImagePane(Image image)
+		/**
+		 * Maps the device pixel size to the scaled image. Only accessed on the
+		 * event dispatch thread.
+		 */
+		private final Map<Dimension, BufferedImage> cache = new LinkedHashMap<Dimension, BufferedImage>(CACHE_SIZE, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Dimension, BufferedImage> eldest)
+			{
+				if(size() > CACHE_SIZE)
+				{
+					if(eldest.getValue() != image)
+					{
+						cacheSize -= sizeOf(eldest.getValue());
+						eldest.getValue().flush();
+					}
+					return true;
+				}
+				return false;
+			}
+		};
+		
+		public ImagePane(BufferedImage image)
 		{
 			this.image = image;
+			setOpaque(false);
+		}
+		
+		@Override
+		public Dimension getPreferredSize()
+		{
+			if(isPreferredSizeSet() || image == null)
+				return super.getPreferredSize();
+			
+			return new Dimension(image.getWidth(), image.getHeight());
 		}
 		
 		@Override
 		protected void paintComponent(Graphics g)
 		{
-			if(getWidth() != 0 && getHeight() != 0)
-				image = image.getScaledInstance( getWidth(), getHeight(), Image.SCALE_SMOOTH );
+			if(image == null || getWidth() == 0 || getHeight() == 0)
+				return;
+			
+			// Scale to device pixels so the image stays sharp on HiDPI screens
+			AffineTransform transform = ((Graphics2D) g).getTransform();
+			int width = (int) Math.ceil(getWidth() * transform.getScaleX());
+			int height = (int) Math.ceil(getHeight() * transform.getScaleY());
+			
+			if(width <= 0 || height <= 0)
+				return;
+			
+			Dimension key = new Dimension(width, height);
+			BufferedImage scaled = cache.get(key);
+			
+			if(scaled == null)
+			{
+				GraphicsConfiguration gc = getGraphicsConfiguration();
+				scaled = (width == image.getWidth() && height == image.getHeight())
+						? image : GraphicsUtils.getScaledImage(image, width, height, gc);
+				cache.put(key, scaled);
+				
+				if(scaled != image)
+					cacheSize += sizeOf(scaled);
+			}
 			
-			g.drawImage(image, 0, 0, null);
+			g.drawImage(scaled, 0, 0, getWidth(), getHeight(), null);
 		}
 
 		public Image getImage() {
@@ -138,9 +280,54 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 		}
 
 		public void setImage(Image image) {
-			this.image = image;
+			this.image = image == null ? null : toBufferedImage(image);
+			clearCache();
 			repaint();
 		}
+		
+		/*
+		 * Must be called on the event dispatch thread.
+		 */
+		private void clearCache()
+		{
+			for(BufferedImage scaled : cache.values())
+			{
+				if(scaled != image)
+					scaled.flush();
+			}
+			cache.clear();
+			cacheSize = 0;
+		}
+		
+		@Override
+		public long getEstimatedSize()
+		{
+			return cacheSize;
+		}
+		
+		/**
+		 * Clears the cache on the event dispatch thread, the images are
+		 * scaled again on the next paint.
+		 */
+		@Override
+		public long reclaim(MemoryPressure level)
+		{
+			long size = cacheSize;
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					clearCache();
+				}
+			});
+			return size;
+		}
+		
+		private long sizeOf(BufferedImage image)
+		{
+			return 4L * image.getWidth() * image.getHeight();
+		}
 	}
 	
 	
@@ -158,9 +345,42 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 	{
 		dialog.dispose();
 		
+		if(imagePane != null)
+			ConflictManager.getConflictManager().getMemoryReclaimRegistry().unregister(imagePane);
+		
+		try
+		{
+			get();
+		}
+		catch(ExecutionException e)
+		{
+			onFailure(e.getCause());
+		}
+		catch(InterruptedException | CancellationException e)
+		{
+			// Closed on purpose
+		}
+		
 		onClosing();
 	}
 	
+	
+	/**
+	 * Invoked on the event dispatch thread if the initialization has failed,
+	 * e.g. because the task graph contains a cycle or an unknown dependency,
+	 * right before {@link #onClosing()}. By default the failure is passed to
+	 * the exception pipeline of the {@link ConflictManager}, or printed if it
+	 * is not running.
+	 * 
+	 * @param cause
+	 *            The failure of the initialization.
+	 */
+	protected void onFailure(Throwable cause)
+	{
+		if(!ConflictManager.getConflictManager().getExceptionPipeline().submit(Thread.currentThread(), cause))
+			cause.printStackTrace();
+	}
+	
 	/**
 	 * Invoked when the <code>doInBackground</code> method has completed
 	 * calculations. Override this method to implement a closing behavior.
@@ -169,10 +389,462 @@ public abstract class SplashScreen extends SwingWorker<Object, Object>
 	
 	
 	/**
+	 * Starts the initialization in the background. Calling this more than
+	 * once has no effect.
 	 * 
+	 * @see #doInBackground()
 	 */
 	public void startResourceInitiation()
 	{
 		this.execute();
 	}
+	
+	
+	/**
+	 * Runs all registered tasks and waits for them to finish. Subclasses that
+	 * override this method may call {@link #runTasks()} to still execute the
+	 * registered tasks.
+	 * 
+	 * @return Always {@code null}.
+	 */
+	@Override
+	protected Object doInBackground() throws Exception
+	{
+		runTasks();
+		return null;
+	}
+	
+	
+	/**
+	 * Forwards finished tasks to {@link #onTaskFinished(Task)} on the event
+	 * dispatch thread.
+	 */
+	@Override
+	protected void process(List<Object> chunks)
+	{
+		for(Object chunk : chunks)
+		{
+			if(chunk instanceof Task)
+				onTaskFinished((Task) chunk);
+		}
+	}
+	
+	
+	/**
+	 * Invoked on the event dispatch thread whenever a task has been
+	 * completed, failed or skipped. Override this method to display the
+	 * progress on the splash screen. The overall progress is available by
+	 * {@link #getProgress()}.
+	 * 
+	 * @param task
+	 *            The finished task.
+	 */
+	protected void onTaskFinished(Task task)
+	{
+		
+	}
+	
+	
+	/**
+	 * Registers a named initialization task. The task is started after all
+	 * tasks named by {@code dependencies} have completed successfully. If one
+	 * of the dependencies fails the task is skipped.
+	 * 
+	 * @param name
+	 *            The unique name of the task.
+	 * @param weight
+	 *            The share of this task in the overall progress.
+	 * @param callable
+	 *            The work to be done in the background.
+	 * @param dependencies
+	 *            The names of the tasks that need to complete first.
+	 * @return The registered task.
+	 * @throws IllegalArgumentException
+	 *             If the name is already taken or the weight is negative.
+	 * @throws IllegalStateException
+	 *             If the initialization has already been started.
+	 */
+	public synchronized Task addTask(String name, int weight, Callable<?> callable, String... dependencies)
+	{
+		if(getState() != StateValue.PENDING)
+			throw new IllegalStateException("Cannot add a task after the initialization has been started.");
+		
+		if(name == null || callable == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		if(weight < 0)
+			throw new IllegalArgumentException("Weight " + weight + " must not be negative.");
+		
+		if(tasks.containsKey(name))
+			throw new IllegalArgumentException("A task named " + name + " has already been added.");
+		
+		Task task = new Task(name, weight, callable, dependencies);
+		tasks.put(name, task);
+		
+		return task;
+	}
+	
+	
+	/**
+	 * Registers a named initialization task that does not return any result.
+	 * 
+	 * @see #addTask(String, int, Callable, String...)
+	 */
+	public Task addTask(String name, int weight, Runnable runnable, String... dependencies)
+	{
+		if(runnable == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		return addTask(name, weight, Executors.callable(runnable), dependencies);
+	}
+	
+	
+	/**
+	 * Returns all registered tasks in the order they were added.
+	 * 
+	 * @return An unmodifiable list of the tasks.
+	 */
+	public synchronized List<Task> getTasks()
+	{
+		return Collections.unmodifiableList(new ArrayList<Task>(tasks.values()));
+	}
+	
+	
+	/**
+	 * Returns the registered task with the given name or {@code null}.
+	 * 
+	 * @param name
+	 *            The name of the task.
+	 * @return The task.
+	 */
+	public synchronized Task getTask(String name)
+	{
+		return tasks.get(name);
+	}
+	
+	
+	/**
+	 * Sets the maximum number of tasks executed at the same time. Defaults
+	 * to the number of available processors.
+	 * 
+	 * @param parallelism
+	 *            The maximum number of concurrent tasks.
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		
+		this.parallelism = parallelism;
+	}
+	
+	
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+	
+	
+	/**
+	 * Executes the task graph and blocks until every task has either been
+	 * completed, failed or skipped. Failures do not abort the initialization,
+	 * they are stored in the failed {@link Task} and its dependent tasks are
+	 * skipped.
+	 * 
+	 * @throws IllegalStateException
+	 *             If a dependency is unknown or the tasks depend on each
+	 *             other in a cycle.
+	 * @throws InterruptedException
+	 *             If this worker is cancelled while waiting.
+	 */
+	protected void runTasks() throws InterruptedException
+	{
+		final List<Task> graph;
+		
+		synchronized(this)
+		{
+			graph = new ArrayList<Task>(tasks.values());
+			
+			for(Task task : graph)
+			{
+				for(String name : task.dependencies)
+				{
+					Task dependency = tasks.get(name);
+					if(dependency == null)
+						throw new IllegalStateException("Task " + task.name + " depends on the unknown task " + name + ".");
+					
+					dependency.dependents.add(task);
+				}
+				task.pendingDependencies.set(task.dependencies.length);
+				totalWeight += task.weight;
+			}
+		}
+		
+		checkForCycles(graph);
+		
+		if(graph.isEmpty())
+		{
+			setProgress(100);
+			return;
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(graph.size());
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, graph.size()), createThreadFactory());
+		
+		try
+		{
+			for(Task task : graph)
+			{
+				if(task.dependencies.length == 0)
+					submit(executor, task, latch);
+			}
+			
+			latch.await();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	
+	/*
+	 * Submits the task and schedules its dependents as soon as it has
+	 * finished.
+	 */
+	private void submit(final ExecutorService executor, final Task task, final CountDownLatch latch)
+	{
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				task.run();
+				finish(executor, task, latch);
+			}
+		});
+	}
+	
+	
+	private void finish(ExecutorService executor, Task task, CountDownLatch latch)
+	{
+		long weight = finishedWeight.addAndGet(task.weight);
+		setProgress(totalWeight == 0 ? 100 : (int) (weight * 100 / totalWeight));
+		publish(task);
+		latch.countDown();
+		
+		for(Task dependent : task.dependents)
+		{
+			if(task.state != Task.State.COMPLETED)
+			{
+				if(dependent.skip(task))
+					finish(executor, dependent, latch);
+			}
+			else if(dependent.pendingDependencies.decrementAndGet() == 0 && dependent.state == Task.State.PENDING)
+			{
+				submit(executor, dependent, latch);
+			}
+		}
+	}
+	
+	
+	/*
+	 * Performs a topological sort by Kahn's algorithm. If not every task has
+	 * been visited the remaining ones form at least one cycle.
+	 */
+	private static void checkForCycles(List<Task> graph)
+	{
+		Map<Task, Integer> inDegree = new LinkedHashMap<Task, Integer>();
+		List<Task> ready = new ArrayList<Task>();
+		
+		for(Task task : graph)
+		{
+			inDegree.put(task, task.dependencies.length);
+			if(task.dependencies.length == 0)
+				ready.add(task);
+		}
+		
+		int visited = 0;
+		while(!ready.isEmpty())
+		{
+			Task task = ready.remove(ready.size() - 1);
+			visited++;
+			
+			for(Task dependent : task.dependents)
+			{
+				int degree = inDegree.get(dependent) - 1;
+				inDegree.put(dependent, degree);
+				if(degree == 0)
+					ready.add(dependent);
+			}
+		}
+		
+		if(visited != graph.size())
+			throw new IllegalStateException("The initialization tasks contain a cyclic dependency.");
+	}
+	
+	
+	/*
+	 * Uses virtual threads when running on a JVM that supports them,
+	 * otherwise daemon platform threads.
+	 */
+	private static ThreadFactory createThreadFactory()
+	{
+		try
+		{
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method name = builder.getClass().getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "splash-init-", 0L);
+			Method factory = builder.getClass().getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		}
+		catch(ReflectiveOperationException | SecurityException | IllegalArgumentException unsupported)
+		{
+			final AtomicInteger count = new AtomicInteger();
+			return new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "splash-init-" + count.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			};
+		}
+	}
+	
+	
+	/**
+	 * A named unit of work that is executed while the splash screen is shown.
+	 * After the initialization has finished each task holds its final state,
+	 * the time spent and the failure if there was any.
+	 * 
+	 * @author kimschorat
+	 *
+	 */
+	public static final class Task
+	{
+		/**
+		 * The states a task passes through.
+		 */
+		public enum State
+		{
+			PENDING, RUNNING, COMPLETED, FAILED, SKIPPED
+		}
+		
+		private final String name;
+		
+		private final int weight;
+		
+		private final Callable<?> callable;
+		
+		private final String[] dependencies;
+		
+		private final List<Task> dependents = new ArrayList<Task>();
+		
+		private final AtomicInteger pendingDependencies = new AtomicInteger();
+		
+		private volatile State state = State.PENDING;
+		
+		private volatile Object result = null;
+		
+		private volatile Throwable failure = null;
+		
+		private volatile long startNanos = 0;
+		
+		private volatile long durationNanos = 0;
+		
+		private Task(String name, int weight, Callable<?> callable, String[] dependencies)
+		{
+			this.name = name;
+			this.weight = weight;
+			this.callable = callable;
+			this.dependencies = dependencies == null ? new String[0] : dependencies.clone();
+		}
+		
+		private void run()
+		{
+			state = State.RUNNING;
+			startNanos = System.nanoTime();
+			try
+			{
+				result = callable.call();
+				state = State.COMPLETED;
+			}
+			catch(Throwable t)
+			{
+				failure = t;
+				state = State.FAILED;
+			}
+			finally
+			{
+				durationNanos = System.nanoTime() - startNanos;
+			}
+		}
+		
+		/*
+		 * Marks this task as skipped. Returns false if it has already been
+		 * skipped by another failed dependency.
+		 */
+		private synchronized boolean skip(Task cause)
+		{
+			if(state != State.PENDING)
+				return false;
+			
+			failure = new IllegalStateException("Skipped because the task " + cause.name + " did not complete.", cause.failure);
+			state = State.SKIPPED;
+			return true;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public int getWeight() {
+			return weight;
+		}
+		
+		public String[] getDependencies() {
+			return dependencies.clone();
+		}
+		
+		public State getState() {
+			return state;
+		}
+		
+		/**
+		 * Returns the value returned by the task or {@code null} if it has not
+		 * completed.
+		 */
+		public Object getResult() {
+			return result;
+		}
+		
+		/**
+		 * Returns the exception thrown by the task or the reason it has been
+		 * skipped. Returns {@code null} if the task has not failed.
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+		
+		/**
+		 * Returns the time the task has been running in milliseconds.
+		 */
+		public long getDurationMillis() {
+			return durationNanos / 1000000L;
+		}
+		
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return name + " [" + state + ", " + getDurationMillis() + " ms]";
+		}
+	}
 }
@@ -0,0 +1,340 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates and applies per-entry deltas between two versions of a jar file,
+ * so an update only transfers the entries that have changed.
+ * <p>
+ * A delta is a zip file. Its first entry {@value #INDEX} lists the entries
+ * of the new jar in their order, each either copied from the installed jar,
+ * identified by its CRC-32, or contained in the delta below
+ * {@value #DATA}. The delta is applied in a single streaming pass, the new
+ * jar is written entry by entry while its digest is computed.
+ * </p>
+ * <p>
+ * Because entries are compressed again, the new jar is not byte-identical
+ * to the published one. It is verified against the {@link #digest(File)
+ * content digest} of the published jar instead, which covers the names and
+ * the uncompressed contents of all entries.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateManager#downloadUpdate(org.drost.application.listeners.DownloadListener)
+ */
+public final class JarDelta
+{
+	/**
+	 * The name of the index entry of a delta.
+	 */
+	public static final String INDEX = "META-INF/DELTA";
+	
+	/**
+	 * The directory of the contained entries of a delta.
+	 */
+	public static final String DATA = "data/";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	
+	private JarDelta()
+	{
+	}
+	
+	
+	/**
+	 * Creates the delta turning one jar into another. Entries with the same
+	 * name, size and CRC-32 are copied, all others are contained.
+	 * 
+	 * @param oldJar
+	 *            The installed version.
+	 * @param newJar
+	 *            The published version.
+	 * @param delta
+	 *            The delta to create.
+	 * @throws IOException
+	 *             If a file could not be read or written.
+	 */
+	public static void create(File oldJar, File newJar, File delta) throws IOException
+	{
+		try (ZipFile base = new ZipFile(oldJar); ZipFile target = new ZipFile(newJar))
+		{
+			Properties index = new Properties();
+			List<ZipEntry> contained = new ArrayList<>();
+			int count = 0;
+			
+			for(Enumeration<? extends ZipEntry> e = target.entries(); e.hasMoreElements(); count++)
+			{
+				ZipEntry entry = e.nextElement();
+				ZipEntry old = base.getEntry(entry.getName());
+				
+				if(old != null && old.getSize() == entry.getSize() && old.getCrc() == entry.getCrc())
+				{
+					index.setProperty("entry." + count, "c " + Long.toHexString(entry.getCrc()) + " " + entry.getName());
+				}
+				else
+				{
+					index.setProperty("entry." + count, "a 0 " + entry.getName());
+					contained.add(entry);
+				}
+			}
+			
+			index.setProperty("entries", String.valueOf(count));
+			index.setProperty("target", digest(newJar));
+			
+			try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(delta)))
+			{
+				out.putNextEntry(new ZipEntry(INDEX));
+				index.store(out, null);
+				out.closeEntry();
+				
+				for(ZipEntry entry : contained)
+				{
+					ZipEntry copy = new ZipEntry(DATA + entry.getName());
+					copy.setTime(entry.getTime());
+					out.putNextEntry(copy);
+					
+					try (InputStream in = target.getInputStream(entry))
+					{
+						copy(in, out, null);
+					}
+					out.closeEntry();
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Applies a delta to the installed jar. The delta is read as a stream,
+	 * the new jar is only moved to the target once its digest matches.
+	 * 
+	 * @param oldJar
+	 *            The installed version.
+	 * @param delta
+	 *            The delta created from the installed version.
+	 * @param target
+	 *            The new jar to create, replaced if it exists.
+	 * @throws IOException
+	 *             If the delta does not belong to the installed jar, or the
+	 *             new jar does not match the published one.
+	 */
+	public static void apply(File oldJar, File delta, File target) throws IOException
+	{
+		File temp = new File(target.getPath() + ".tmp");
+		
+		try (ZipFile base = new ZipFile(oldJar);
+				ZipInputStream in = new ZipInputStream(Files.newInputStream(delta.toPath()));
+				ZipOutputStream out = new ZipOutputStream(new FileOutputStream(temp)))
+		{
+			ZipEntry next = in.getNextEntry();
+			
+			if(next == null || !INDEX.equals(next.getName()))
+				throw new IOException(delta + " is not a delta.");
+			
+			Properties index = new Properties();
+			index.load(new ByteArrayInputStream(readAll(in)));
+			
+			MessageDigest digest = newDigest();
+			int count = Integer.parseInt(index.getProperty("entries"));
+			
+			next = in.getNextEntry();
+			
+			for(int i = 0; i < count; i++)
+			{
+				String[] values = index.getProperty("entry." + i).split(" ", 3);
+				String name = values[2];
+				InputStream source;
+				ZipEntry entry = new ZipEntry(name);
+				
+				if("c".equals(values[0]))
+				{
+					ZipEntry old = base.getEntry(name);
+					
+					if(old == null || old.getCrc() != Long.parseLong(values[1], 16))
+						throw new IOException("The delta does not belong to " + oldJar + ", " + name + " differs.");
+					
+					entry.setTime(old.getTime());
+					source = base.getInputStream(old);
+				}
+				else
+				{
+					if(next == null || !next.getName().equals(DATA + name))
+						throw new IOException("The delta does not contain " + name + ".");
+					
+					entry.setTime(next.getTime());
+					source = in;
+				}
+				
+				out.putNextEntry(entry);
+				update(digest, name);
+				
+				long size = copy(source, out, digest);
+				digest.update(longToBytes(size));
+				out.closeEntry();
+				
+				if(source == in)
+					next = in.getNextEntry();
+				else
+					source.close();
+			}
+			
+			String expected = index.getProperty("target");
+			String actual = toHex(digest.digest());
+			
+			if(!actual.equals(expected))
+				throw new IOException("The patched jar does not match the published one: " + actual + " instead of " + expected + ".");
+		}
+		catch(IOException | RuntimeException e)
+		{
+			temp.delete();
+			
+			if(e instanceof RuntimeException)
+				throw new IOException("Invalid delta " + delta, e);
+			throw e;
+		}
+		
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	
+	/**
+	 * Returns the content digest of a jar. It is the SHA-256 of the names and
+	 * the uncompressed contents of all entries in their order, so it does not
+	 * depend on the compression.
+	 * 
+	 * @param jar
+	 *            The jar file.
+	 * @return The digest in hexadecimal digits.
+	 * @throws IOException
+	 *             If the jar could not be read.
+	 */
+	public static String digest(File jar) throws IOException
+	{
+		MessageDigest digest = newDigest();
+		
+		try (ZipFile zip = new ZipFile(jar))
+		{
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+			{
+				ZipEntry entry = e.nextElement();
+				update(digest, entry.getName());
+				
+				try (InputStream in = zip.getInputStream(entry))
+				{
+					digest.update(longToBytes(copy(in, null, digest)));
+				}
+			}
+		}
+		
+		return toHex(digest.digest());
+	}
+	
+	
+	/**
+	 * Adds the name of an entry to the digest, followed by a separator.
+	 */
+	private static void update(MessageDigest digest, String name)
+	{
+		digest.update(name.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+	
+	
+	private static long copy(InputStream in, OutputStream out, MessageDigest digest) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long size = 0;
+		int n;
+		
+		while((n = in.read(buffer)) != -1)
+		{
+			if(out != null)
+				out.write(buffer, 0, n);
+			if(digest != null)
+				digest.update(buffer, 0, n);
+			
+			size += n;
+		}
+		return size;
+	}
+	
+	
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copy(in, out, null);
+		return out.toByteArray();
+	}
+	
+	
+	private static byte[] longToBytes(long value)
+	{
+		byte[] bytes = new byte[8];
+		for(int i = 7; i >= 0; i--, value >>>= 8)
+			bytes[i] = (byte) value;
+		return bytes;
+	}
+	
+	
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(byte b : bytes)
+			sb.append(String.format("%02x", b & 0xFF));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,399 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads the release history page by page. The history consists of the
+ * entries {@code <channel>.history.<version>} of an {@link UpdateManifest},
+ * newest first:
+ * 
+ * <pre>
+ * stable.history.2.1.0=&lt;b&gt;Faster startup&lt;/b&gt;&lt;br&gt;Fixed printing
+ * stable.history.2.0.0=...
+ * </pre>
+ * <p>
+ * The document is read as a stream, every call of {@link #next(int)}
+ * reads only as far as needed for the requested entries, so years of
+ * history are neither downloaded nor held in memory up front. If the
+ * connection has been closed in between, e.g. by a server timeout, the
+ * document is opened again and the entries read before are skipped.
+ * </p>
+ * <p>
+ * A document in the former format has a single entry, the content of its
+ * {@code [history]} tag.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateManager#openReleaseHistory()
+ */
+public class ReleaseHistory implements Closeable
+{
+	public static final int DEFAULT_PAGE_SIZE = 20;
+	
+	private final String address;
+	
+	private final String prefix;
+	
+	private BufferedReader reader = null;
+	
+	/**
+	 * The entry of a document in the former format, read at once.
+	 */
+	private Entry legacy = null;
+	
+	/**
+	 * The number of entries returned so far.
+	 */
+	private int consumed = 0;
+	
+	private boolean exhausted = false;
+	
+	/**
+	 * Whether the format of the open document has been checked.
+	 */
+	private boolean prepared = false;
+	
+	
+	/**
+	 * Creates a history read from the given address on the first call of
+	 * {@link #next(int)}.
+	 * 
+	 * @param address
+	 *            The address of the document.
+	 * @param channel
+	 *            The release channel.
+	 */
+	public ReleaseHistory(String address, String channel)
+	{
+		if(address == null || channel == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.address = address;
+		this.prefix = channel + ".history.";
+	}
+	
+	
+	/**
+	 * Creates a history read from a document that is already available, e.g.
+	 * from a cache.
+	 * 
+	 * @param reader
+	 *            The document, closed by {@link #close()}.
+	 * @param channel
+	 *            The release channel.
+	 */
+	public ReleaseHistory(Reader reader, String channel)
+	{
+		if(reader == null || channel == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.address = null;
+		this.prefix = channel + ".history.";
+		this.reader = new BufferedReader(reader);
+	}
+	
+	
+	/**
+	 * Reads the next entries, blocking until they have been received.
+	 * 
+	 * @param max
+	 *            The maximum number of entries.
+	 * @return The entries, empty if there are no more.
+	 * @throws IOException
+	 *             If the document could not be read.
+	 */
+	public synchronized List<Entry> next(int max) throws IOException
+	{
+		if(exhausted)
+			return Collections.emptyList();
+		
+		try
+		{
+			return read(max);
+		}
+		catch(IOException e)
+		{
+			if(address == null || reader == null)
+				throw e;
+			
+			// Reconnect, e.g. after the server has closed an idle connection
+			closeReader();
+			return read(max);
+		}
+	}
+	
+	
+	/**
+	 * Returns whether further entries may follow.
+	 */
+	public synchronized boolean hasMore()
+	{
+		return !exhausted;
+	}
+	
+	
+	@Override
+	public synchronized void close()
+	{
+		exhausted = true;
+		closeReader();
+	}
+	
+	
+	private List<Entry> read(int max) throws IOException
+	{
+		if(reader == null)
+			open();
+		
+		if(!prepared)
+			prepare();
+		
+		List<Entry> page = new ArrayList<>();
+		
+		if(legacy != null)
+		{
+			if(consumed == 0 && max > 0)
+				page.add(legacy);
+			
+			consumed += page.size();
+			close();
+			return page;
+		}
+		
+		while(page.size() < max)
+		{
+			String line = readLogicalLine();
+			
+			if(line == null)
+			{
+				close();
+				break;
+			}
+			
+			Entry entry = parse(line);
+			
+			if(entry != null)
+				page.add(entry);
+		}
+		
+		// Only counted once returned, a page failing halfway is read again
+		consumed += page.size();
+		return page;
+	}
+	
+	
+	private void open() throws IOException
+	{
+		URLConnection connection = new URL(address).openConnection();
+		connection.setConnectTimeout(UpdateChecker.DEFAULT_CONNECT_TIMEOUT);
+		connection.setReadTimeout(UpdateChecker.DEFAULT_READ_TIMEOUT);
+		
+		reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+		prepared = false;
+	}
+	
+	
+	/**
+	 * Checks the format of the open document and skips the entries returned
+	 * before.
+	 */
+	private void prepare() throws IOException
+	{
+		prepared = true;
+		
+		if(!UpdateManifest.isManifest(reader))
+		{
+			String document = UpdateManifest.readAll(reader);
+			String history = UpdateInfo.getTagged(document, "history");
+			
+			if(history != null)
+				legacy = new Entry(UpdateInfo.getTagged(document, "version"), history);
+			return;
+		}
+		
+		for(int skipped = 0; skipped < consumed;)
+		{
+			String line = readLogicalLine();
+			
+			if(line == null)
+				break;
+			if(parse(line) != null)
+				skipped++;
+		}
+	}
+	
+	
+	/**
+	 * Reads a line joined with its continuation lines as in a properties
+	 * file.
+	 */
+	private String readLogicalLine() throws IOException
+	{
+		String line = reader.readLine();
+		
+		if(line == null || isComment(line))
+			return line;
+		
+		StringBuilder sb = null;
+		
+		while(isContinued(line))
+		{
+			if(sb == null)
+				sb = new StringBuilder();
+			
+			sb.append(line, 0, line.length() - 1);
+			
+			String next = reader.readLine();
+			
+			if(next == null)
+				return sb.toString();
+			
+			int i = 0;
+			while(i < next.length() && Character.isWhitespace(next.charAt(i)))
+				i++;
+			
+			line = next.substring(i);
+		}
+		
+		return sb == null ? line : sb.append(line).toString();
+	}
+	
+	
+	private static boolean isComment(String line)
+	{
+		for(int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			
+			if(!Character.isWhitespace(c))
+				return c == '#' || c == '!';
+		}
+		return true;
+	}
+	
+	
+	private static boolean isContinued(String line)
+	{
+		int backslashes = 0;
+		
+		for(int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--)
+			backslashes++;
+		
+		return backslashes % 2 == 1;
+	}
+	
+	
+	/**
+	 * Returns the history entry of a line of the document, or {@code null}
+	 * for any other line.
+	 */
+	private Entry parse(String line) throws IOException
+	{
+		if(isComment(line) || !line.trim().startsWith(prefix))
+			return null;
+		
+		// Properties takes care of the escapes
+		Properties properties = new Properties();
+		properties.load(new StringReader(line));
+		
+		for(String key : properties.stringPropertyNames())
+		{
+			if(key.startsWith(prefix))
+				return new Entry(key.substring(prefix.length()), properties.getProperty(key));
+		}
+		return null;
+	}
+	
+	
+	private void closeReader()
+	{
+		if(reader == null)
+			return;
+		
+		try
+		{
+			reader.close();
+		}
+		catch(IOException e)
+		{
+			// Nothing
+		}
+		reader = null;
+	}
+	
+	
+	/**
+	 * The notes of a release.
+	 */
+	public static final class Entry
+	{
+		private final String version;
+		
+		private final String notes;
+		
+		
+		public Entry(String version, String notes)
+		{
+			this.version = version;
+			this.notes = notes;
+		}
+		
+		
+		/**
+		 * Returns the version of the release or {@code null} if unknown.
+		 */
+		public String getVersion()
+		{
+			return version;
+		}
+		
+		
+		/**
+		 * Returns the notes, which may be HTML.
+		 */
+		public String getNotes()
+		{
+			return notes;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return version == null ? notes : version + ": " + notes;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * Shows the release history in pages. The first page is loaded in the
+ * background once the pane is started, further pages when the user
+ * scrolls close to the end. The list only renders the visible entries.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see ReleaseHistory
+ */
+@SuppressWarnings( "serial" )
+class ReleaseNotesPane extends JScrollPane
+{
+	/**
+	 * The remaining height in pixels below the visible area at which the
+	 * next page is loaded.
+	 */
+	private static final int PREFETCH_DISTANCE = 200;
+	
+	private static final Font NOTES_FONT = new Font("Lucida Grande", Font.PLAIN, 11);
+	
+	private final UpdateManager manager;
+	
+	private final DefaultListModel<ReleaseHistory.Entry> model = new DefaultListModel<>();
+	
+	private final JList<ReleaseHistory.Entry> list;
+	
+	private final JLabel lblHeader;
+	
+	private int pageSize = ReleaseHistory.DEFAULT_PAGE_SIZE;
+	
+	/**
+	 * Opened by the first page load, read by a single worker at a time.
+	 */
+	private volatile ReleaseHistory history = null;
+	
+	private boolean loading = false;
+	
+	private boolean finished = false;
+	
+	private boolean stopped = true;
+	
+	/**
+	 * Incremented by every start, so pages of a former start are dropped.
+	 */
+	private int generation = 0;
+	
+	
+	ReleaseNotesPane(UpdateManager manager)
+	{
+		this.manager = manager;
+		
+		list = new JList<>(model);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setCellRenderer(new EntryRenderer());
+		setViewportView(list);
+		
+		lblHeader = new JLabel("Release Notes:");
+		lblHeader.setFont(NOTES_FONT);
+		setColumnHeaderView(lblHeader);
+		
+		getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener()
+		{
+			@Override
+			public void adjustmentValueChanged(AdjustmentEvent e)
+			{
+				if(!e.getValueIsAdjusting())
+					loadIfNearEnd();
+			}
+		});
+		
+		// The heights of the wrapped notes depend on the width
+		getViewport().addComponentListener(new ComponentAdapter()
+		{
+			@Override
+			public void componentResized(ComponentEvent e)
+			{
+				list.setFixedCellHeight(10);
+				list.setFixedCellHeight(-1);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Loads the first page in the background, all former pages are removed.
+	 */
+	void start()
+	{
+		stop();
+		
+		generation++;
+		history = null;
+		model.clear();
+		loading = false;
+		finished = false;
+		stopped = false;
+		
+		loadNextPage();
+	}
+	
+	
+	/**
+	 * Closes the history, no more pages are loaded.
+	 */
+	void stop()
+	{
+		stopped = true;
+		
+		ReleaseHistory h = history;
+		if(h != null)
+			h.close();
+	}
+	
+	
+	void setPageSize(int pageSize)
+	{
+		this.pageSize = pageSize;
+	}
+	
+	
+	private void loadIfNearEnd()
+	{
+		JScrollBar bar = getVerticalScrollBar();
+		
+		if(bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - PREFETCH_DISTANCE)
+			loadNextPage();
+	}
+	
+	
+	private void loadNextPage()
+	{
+		if(loading || finished || stopped)
+			return;
+		
+		loading = true;
+		lblHeader.setText("Release Notes: loading...");
+		
+		final int started = generation;
+		
+		new SwingWorker<List<ReleaseHistory.Entry>, Void>()
+		{
+			private ReleaseHistory opened = null;
+			
+			@Override
+			protected List<ReleaseHistory.Entry> doInBackground() throws Exception
+			{
+				opened = history;
+				
+				if(opened == null)
+					opened = manager.openReleaseHistory();
+				
+				if(opened == null)
+					return Collections.emptyList();
+				
+				return opened.next(pageSize);
+			}
+			
+			@Override
+			protected void done()
+			{
+				if(stopped || started != generation)
+				{
+					// Opened while the dialog has been closed
+					if(opened != null && opened != history)
+						opened.close();
+					return;
+				}
+				
+				loading = false;
+				history = opened;
+				
+				try
+				{
+					for(ReleaseHistory.Entry entry : get())
+						model.addElement(entry);
+					
+					if(opened == null || !opened.hasMore())
+						finished = true;
+					
+					lblHeader.setText(model.isEmpty() && finished ? "No release notes available." : "Release Notes:");
+				}
+				catch(InterruptedException | ExecutionException e)
+				{
+					Throwable cause = e.getCause() != null ? e.getCause() : e;
+					lblHeader.setText("Release notes could not be loaded: " + cause.getMessage());
+					return;
+				}
+				
+				// Fill the visible area before the user scrolls
+				if(!finished)
+					loadIfNearEnd();
+			}
+		}.execute();
+	}
+	
+	
+	private class EntryRenderer extends DefaultListCellRenderer
+	{
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+				boolean cellHasFocus)
+		{
+			ReleaseHistory.Entry entry = (ReleaseHistory.Entry) value;
+			
+			String notes = entry.getNotes().trim();
+			
+			if(notes.regionMatches(true, 0, "<html>", 0, 6))
+				notes = notes.substring(6);
+			if(notes.regionMatches(true, notes.length() - 7, "</html>", 0, 7))
+				notes = notes.substring(0, notes.length() - 7);
+			
+			int width = Math.max(100, getViewport().getWidth() - 20);
+			String title = entry.getVersion() == null ? "" : "<b>" + entry.getVersion() + "</b><br>";
+			
+			super.getListCellRendererComponent(list, "<html><div style='width:" + width + "px'>" + title + notes + "</div></html>", 
+					index, isSelected, cellHasFocus);
+			
+			setFont(NOTES_FONT);
+			setBorder(new EmptyBorder(5, 5, 5, 5));
+			
+			return this;
+		}
+	}
+}
@@ -0,0 +1,606 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.drost.application.Application;
+import org.drost.application.LocalStorage;
+import org.drost.application.Version;
+import org.drost.application.listeners.UpdateEvent;
+
+/**
+ * Checks for updates in the background. The version, the download link and
+ * the release notes are fetched with a single request of the update
+ * document, never on the event dispatch thread.
+ * <p>
+ * The validators of the last response, {@code ETag} and
+ * {@code Last-Modified}, are sent with every request, so an unchanged
+ * document is answered with {@code 304 Not Modified} and taken from the
+ * cache. The cache is kept in the {@link LocalStorage} and survives restarts.
+ * The manifest is read as a stream and only the entries of the selected
+ * channel are cached, without its release history, which is fetched by the
+ * {@link ReleaseHistory} on demand.
+ * </p>
+ * <p>
+ * Periodic checks are spread by a random jitter of ten percent. A failed
+ * check is retried after an exponential backoff with random jitter, so
+ * clients do not hit a recovering server at the same time.
+ * </p>
+ * <p>
+ * Once a version newer than the current one is found, an
+ * {@link UpdateEvent} is published on the event bus of the
+ * {@link Application}, once per version.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateManager#getUpdateChecker()
+ */
+public class UpdateChecker
+{
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	
+	public static final int DEFAULT_READ_TIMEOUT = 10000;
+	
+	/**
+	 * The default time in milliseconds between two periodic checks.
+	 */
+	public static final long DEFAULT_PERIOD = TimeUnit.HOURS.toMillis(12);
+	
+	/**
+	 * The time in milliseconds to wait after the first failed check, doubled
+	 * with every further failure.
+	 */
+	public static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+	
+	public static final long MAX_BACKOFF = TimeUnit.HOURS.toMillis(2);
+	
+	/**
+	 * The file of the cache relative to the local storage.
+	 */
+	public static final String CACHE_FILE = "cache" + File.separator + "update-check.ser";
+	
+	/**
+	 * Documents in the former format are small, anything larger is rejected.
+	 */
+	private static final int MAX_DOCUMENT_SIZE = 1 << 20;
+	
+	/**
+	 * The prefix of the cached manifest entries.
+	 */
+	private static final String ENTRY_PREFIX = "entry.";
+	
+	private final String address;
+	
+	private final LocalStorage storage;
+	
+	private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	
+	private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+	
+	private volatile String currentVersion = null;
+	
+	private volatile String channel = UpdateManifest.DEFAULT_CHANNEL;
+	
+	private volatile UpdateInfo latest = null;
+	
+	private String notifiedVersion = null;
+	
+	/**
+	 * Holds the address, the channel, the validators and the manifest entries
+	 * of the channel, or the body of a document in the former format, of the
+	 * last response.
+	 */
+	private Properties cache = null;
+	
+	private ScheduledExecutorService scheduler = null;
+	
+	private ScheduledFuture<?> next = null;
+	
+	private long period = DEFAULT_PERIOD;
+	
+	private int failures = 0;
+	
+	
+	/**
+	 * Creates a checker that is not yet started.
+	 * 
+	 * @param address
+	 *            The address of the update document.
+	 * @param storage
+	 *            The storage of the cache, or {@code null} to keep it in
+	 *            memory only.
+	 */
+	public UpdateChecker(String address, LocalStorage storage)
+	{
+		if(address == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.address = address;
+		this.storage = storage;
+	}
+	
+	
+	/**
+	 * Starts checking periodically, the first check is run right away. A
+	 * running schedule is replaced.
+	 * 
+	 * @param period
+	 *            The time between two checks.
+	 * @param unit
+	 *            The unit of the period.
+	 */
+	public synchronized void start(long period, TimeUnit unit)
+	{
+		if(period <= 0)
+			throw new IllegalArgumentException("The period must be positive: " + period);
+		
+		this.period = unit.toMillis(period);
+		
+		if(next != null)
+			next.cancel(false);
+		
+		schedule(0);
+	}
+	
+	
+	/**
+	 * Stops the periodic checks. A running check is completed.
+	 */
+	public synchronized void stop()
+	{
+		if(scheduler == null)
+			return;
+		
+		scheduler.shutdown();
+		scheduler = null;
+		next = null;
+	}
+	
+	
+	/**
+	 * Checks for an update on the background thread without waiting for it.
+	 * The periodic schedule is not affected.
+	 * 
+	 * @return The result of the check.
+	 */
+	public synchronized Future<UpdateInfo> checkNow()
+	{
+		return getScheduler().submit(new Callable<UpdateInfo>()
+		{
+			@Override
+			public UpdateInfo call() throws IOException
+			{
+				return check();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Fetches the update document on the calling thread, which must not be
+	 * the event dispatch thread.
+	 * 
+	 * @return The state of the latest release.
+	 * @throws IOException
+	 *             If the document could not be fetched.
+	 */
+	public UpdateInfo check() throws IOException
+	{
+		Properties validators = getCache();
+		
+		URLConnection connection = new URL(address).openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setUseCaches(false);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		
+		boolean cached = isCached(validators);
+		
+		if(cached && connection instanceof HttpURLConnection)
+		{
+			if(validators.getProperty("etag") != null)
+				connection.setRequestProperty("If-None-Match", validators.getProperty("etag"));
+			
+			if(validators.getProperty("lastModified") != null)
+				connection.setIfModifiedSince(Long.parseLong(validators.getProperty("lastModified")));
+		}
+		
+		UpdateInfo info;
+		
+		if(connection instanceof HttpURLConnection)
+		{
+			HttpURLConnection http = (HttpURLConnection) connection;
+			int status = http.getResponseCode();
+			
+			if(status == HttpURLConnection.HTTP_NOT_MODIFIED && cached)
+			{
+				http.disconnect();
+				info = fromCache(validators, true);
+			}
+			else if(status == HttpURLConnection.HTTP_OK)
+			{
+				Properties next = new Properties();
+				
+				if(http.getHeaderField("ETag") != null)
+					next.setProperty("etag", http.getHeaderField("ETag"));
+				if(http.getLastModified() > 0)
+					next.setProperty("lastModified", String.valueOf(http.getLastModified()));
+				
+				info = read(http, next);
+				store(next);
+			}
+			else
+			{
+				http.disconnect();
+				throw new IOException("Unexpected response " + status + " from " + address);
+			}
+		}
+		else
+		{
+			info = read(connection, new Properties());
+		}
+		
+		latest = info;
+		notifyIfNewer(info);
+		
+		return info;
+	}
+	
+	
+	/**
+	 * Returns the result of the last successful check, or the cached one if
+	 * no check has succeeded yet.
+	 * 
+	 * @return The state of the latest release or {@code null} if unknown.
+	 */
+	public UpdateInfo getLatest()
+	{
+		UpdateInfo info = latest;
+		
+		if(info == null)
+		{
+			Properties cached = getCache();
+			
+			if(isCached(cached))
+			{
+				try
+				{
+					info = fromCache(cached, true);
+				}
+				catch(IOException e)
+				{
+					// Cached in an outdated format
+				}
+			}
+		}
+		
+		return info;
+	}
+	
+	
+	/**
+	 * Sets the version of the running application. An {@link UpdateEvent} is
+	 * only published for versions newer than this one.
+	 * 
+	 * @param version
+	 *            The running version or {@code null} to publish no events.
+	 */
+	public void setCurrentVersion(String version)
+	{
+		currentVersion = version;
+	}
+	
+	
+	public String getCurrentVersion()
+	{
+		return currentVersion;
+	}
+	
+	
+	/**
+	 * Sets the release channel of the update manifest.
+	 * 
+	 * @param channel
+	 *            The channel, {@value UpdateManifest#DEFAULT_CHANNEL} by
+	 *            default.
+	 */
+	public void setChannel(String channel)
+	{
+		if(channel == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.channel = channel;
+	}
+	
+	
+	public String getChannel()
+	{
+		return channel;
+	}
+	
+	
+	public void setTimeouts(int connectTimeout, int readTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+	
+	
+	public String getAddress()
+	{
+		return address;
+	}
+	
+	
+	private synchronized ScheduledExecutorService getScheduler()
+	{
+		if(scheduler == null)
+		{
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Update-Checker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return scheduler;
+	}
+	
+	
+	private synchronized void schedule(long delay)
+	{
+		next = getScheduler().schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				periodicCheck();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	private void periodicCheck()
+	{
+		long delay;
+		
+		try
+		{
+			check();
+			
+			synchronized(this)
+			{
+				failures = 0;
+				delay = (long) (period * ThreadLocalRandom.current().nextDouble(0.9, 1.1));
+			}
+		}
+		catch(IOException | RuntimeException e)
+		{
+			synchronized(this)
+			{
+				long backoff = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures, 16));
+				failures++;
+				
+				// Equal jitter, at least half of the backoff
+				delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+			}
+		}
+		
+		synchronized(this)
+		{
+			if(scheduler != null && !scheduler.isShutdown())
+				schedule(delay);
+		}
+	}
+	
+	
+	/**
+	 * Returns the cached update document in the former format or {@code null}
+	 * if there is none. Of a manifest, only the entries of the channel are
+	 * cached.
+	 */
+	String getCachedDocument()
+	{
+		Properties validators = getCache();
+		
+		return address.equals(validators.getProperty("address")) ? validators.getProperty("body") : null;
+	}
+	
+	
+	private boolean isCached(Properties cache)
+	{
+		return address.equals(cache.getProperty("address")) && channel.equals(cache.getProperty("channel"))
+				&& (cache.getProperty("body") != null || cache.getProperty(ENTRY_PREFIX + UpdateManifest.FORMAT_KEY) != null);
+	}
+	
+	
+	private UpdateInfo fromCache(Properties cache, boolean notModified) throws IOException
+	{
+		String body = cache.getProperty("body");
+		
+		try
+		{
+			if(body != null)
+				return UpdateInfo.parse(body, channel, notModified);
+			
+			Map<String, String> values = new LinkedHashMap<String, String>();
+			
+			for(String name : cache.stringPropertyNames())
+			{
+				if(name.startsWith(ENTRY_PREFIX))
+					values.put(name.substring(ENTRY_PREFIX.length()), cache.getProperty(name));
+			}
+			
+			UpdateManifest manifest = UpdateManifest.fromValues(values, channel, UpdateManifest.getPlatform());
+			return new UpdateInfo(manifest, System.currentTimeMillis(), notModified);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Invalid update document at " + address + ": " + e.getMessage(), e);
+		}
+	}
+	
+	
+	private void notifyIfNewer(UpdateInfo info)
+	{
+		String current = currentVersion;
+		String version = info.getVersion();
+		
+		if(current == null || version == null)
+			return;
+		
+		// Releases requiring a newer Java version cannot be installed
+		if(info.getManifest() != null && !info.getManifest().isSupported())
+			return;
+		
+		synchronized(this)
+		{
+			if(version.equals(notifiedVersion) || !isNewer(version, current))
+				return;
+			
+			notifiedVersion = version;
+		}
+		
+		if(Application.running())
+			Application.get().getEventBus().publish(new UpdateEvent(this, info));
+	}
+	
+	
+	/**
+	 * Compares two versions, a version that cannot be parsed is considered
+	 * newer if it differs from the current one.
+	 */
+	private static boolean isNewer(String version, String current)
+	{
+		Version v = Version.tryParse(version.trim());
+		Version c = Version.tryParse(current.trim());
+		
+		if(v == null || c == null)
+			return !version.trim().equals(current.trim());
+		
+		return v.isNewerThan(c);
+	}
+	
+	
+	/**
+	 * Reads the response while it is received. The entries of the channel of
+	 * a manifest, or the whole document in the former format, are added to
+	 * the cache.
+	 */
+	private UpdateInfo read(URLConnection connection, Properties cache) throws IOException
+	{
+		InputStream in = connection.getInputStream();
+		
+		if("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+			in = new GZIPInputStream(in);
+		
+		String channel = this.channel;
+		
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+		{
+			cache.setProperty("address", address);
+			cache.setProperty("channel", channel);
+			
+			if(UpdateManifest.isManifest(reader))
+			{
+				Map<String, String> values = UpdateManifest.filter(reader, channel);
+				UpdateManifest manifest = UpdateManifest.fromValues(values, channel, UpdateManifest.getPlatform());
+				
+				for(Map.Entry<String, String> entry : values.entrySet())
+					cache.setProperty(ENTRY_PREFIX + entry.getKey(), entry.getValue());
+				
+				return new UpdateInfo(manifest, System.currentTimeMillis(), false);
+			}
+			
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[4096];
+			int n;
+			while((n = reader.read(buffer)) != -1)
+			{
+				sb.append(buffer, 0, n);
+				
+				if(sb.length() > MAX_DOCUMENT_SIZE)
+					throw new IOException("The update document exceeds " + MAX_DOCUMENT_SIZE + " characters.");
+			}
+			
+			cache.setProperty("body", sb.toString());
+			
+			return UpdateInfo.parse(sb.toString(), channel, false);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Invalid update document at " + address + ": " + e.getMessage(), e);
+		}
+	}
+	
+	
+	private synchronized Properties getCache()
+	{
+		if(cache == null)
+		{
+			cache = new Properties();
+			
+			if(storage != null && new File(storage.getDirectory(), CACHE_FILE).exists())
+			{
+				Object stored = storage.load(CACHE_FILE);
+				
+				if(stored instanceof Properties)
+					cache = (Properties) stored;
+			}
+		}
+		return cache;
+	}
+	
+	
+	private synchronized void store(Properties next)
+	{
+		cache = next;
+		
+		if(storage != null)
+			storage.save(next, CACHE_FILE);
+	}
+}
@@ -23,15 +23,23 @@ import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JDialog;
-import javax.swing.JEditorPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
 import javax.swing.JLabel;
 import java.awt.Dimension;
 import javax.swing.border.EmptyBorder;
@@ -43,7 +51,9 @@ import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 
-import javax.swing.JScrollPane;
+import org.drost.application.Application;
+import org.drost.application.listeners.DownloadEvent;
+import org.drost.application.listeners.DownloadListener;
 
 /**
  * 
@@ -61,6 +71,23 @@ class UpdateDialog
 	
 	@SuppressWarnings("unused")
 	private Icon icon = null;
+	
+	private JButton okButton = null;
+	
+	private ReleaseNotesPane notesPane = null;
+	
+	private JPanel progressPane = null;
+	
+	private JProgressBar progressBar = null;
+	
+	private JLabel lblProgress = null;
+	
+	private volatile boolean downloading = false;
+	
+	/**
+	 * The update installed beside the running version, used after a restart.
+	 */
+	private UpdateStage.StagedUpdate staged = null;
 
 	/**
 	 * Create the application.
@@ -83,16 +110,53 @@ class UpdateDialog
 		window.setTitle("Software Update");
 		window.setBounds(100, 100, 447, 377);
 		window.setLocationRelativeTo(null);
-//		window.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		// Disposed, so closing by the title bar fires windowClosed as well
+		window.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+		// Opened is fired only once, the dialog is shown again when reused
+		window.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentShown(ComponentEvent e) {
+				notesPane.start();
+			}
+		});
+		window.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				notesPane.stop();
+				
+				// The received bytes are kept for the next attempt
+				if(downloading) manager.cancelDownload();
+			}
+		});
 				
+		JPanel southPane = new JPanel();
+		southPane.setLayout(new BorderLayout(0, 0));
+		window.getContentPane().add(southPane, BorderLayout.SOUTH);
+		{
+			progressPane = new JPanel();
+			progressPane.setBorder(new EmptyBorder(0, 84, 0, 10));
+			progressPane.setLayout(new BorderLayout(0, 0));
+			progressPane.setVisible(false);
+			southPane.add(progressPane, BorderLayout.CENTER);
+			{
+				progressBar = new JProgressBar(0, 1000);
+				progressPane.add(progressBar, BorderLayout.CENTER);
+			}
+			{
+				lblProgress = new JLabel(" ");
+				lblProgress.setFont(new Font("Lucida Grande", Font.PLAIN, 11));
+				progressPane.add(lblProgress, BorderLayout.SOUTH);
+			}
+		}
 		{
 			JPanel buttonPane = new JPanel();
 			buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
-			window.getContentPane().add(buttonPane, BorderLayout.SOUTH);
+			southPane.add(buttonPane, BorderLayout.SOUTH);
 			{
 				JButton cancelButton = new JButton("Remind Me Later");
 				cancelButton.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
+						// Cancels a running download when closed
 						UpdateDialog.this.window.dispose();
 					}
 				});
@@ -100,11 +164,14 @@ class UpdateDialog
 				buttonPane.add(cancelButton);
 			}
 			{
-				JButton okButton = new JButton("Install Update");
+				okButton = new JButton("Install Update");
 				okButton.requestFocus();
 				okButton.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						update();
+						if(staged != null)
+							Application.get().restart();
+						else
+							update();
 					}
 				});
 				okButton.setActionCommand("OK");
@@ -154,30 +221,9 @@ class UpdateDialog
 			window.getContentPane().add(panel, BorderLayout.CENTER);
 			panel.setLayout(new BorderLayout(0, 0));
 			{
-//				JScrollPane scrollPane = new JScrollPane();
-//				panel.add(scrollPane, BorderLayout.CENTER);
-//				{
-//					JTextArea textArea = new JTextArea();
-//					textArea.setLineWrap(true);
-//					textArea.setEditable(false);
-//					textArea.setText(releaseNotes);
-//					textArea.setFont(new Font("Lucida Grande", Font.PLAIN, 11));
-//					scrollPane.setViewportView(textArea);					
-//				}
-//				{
-//					JLabel lblReleaseNotes_1 = new JLabel("Release Notes:");
-//					lblReleaseNotes_1.setFont(new Font("Lucida Grande", Font.PLAIN, 11));
-//					scrollPane.setColumnHeaderView(lblReleaseNotes_1);
-//				}
-				
-				JEditorPane infoPane = new JEditorPane();
-		        infoPane.setContentType("text/html");
-		        infoPane.setEditable(false);
-		        infoPane.setText(manager.getReleaseNotes());
-
-		        JScrollPane scp = new JScrollPane();
-		        scp.setViewportView(infoPane);
-		        panel.add(scp, BorderLayout.CENTER);
+				// Loaded page by page in the background, the dialog opens at once
+				notesPane = new ReleaseNotesPane(manager);
+				panel.add(notesPane, BorderLayout.CENTER);
 			}
 			{
 				if(restartComputer)
@@ -195,10 +241,18 @@ class UpdateDialog
 	
 	
 	/**
+	 * Downloads the update in the background while showing its progress and
+	 * starts the installation once it has been verified.
+	 * <p>
+	 * Within a running application the update is staged instead, so it is
+	 * used from the next start and the dialog offers to restart right away.
+	 * </p>
+	 * <p>
 	 * VERY IMPORTANT: For all this to work when you are ready to package your
 	 * java program to distribute make sure that you include the folder updater
 	 * with the update.jar in it for this to properly work! So the final paths
 	 * should look like this:
+	 * </p>
 	 * 
 	 * <pre>
 	 * ../my_app.jar 
@@ -207,9 +261,134 @@ class UpdateDialog
 	 */
 	public void update()
     {
-		manager.update(false);
+		okButton.setEnabled(false);
+		progressBar.setIndeterminate(true);
+		lblProgress.setText("Connecting...");
+		progressPane.setVisible(true);
+		window.validate();
+		
+		new SwingWorker<Object, DownloadEvent>()
+		{
+			@Override
+			protected Object doInBackground() throws Exception
+			{
+				downloading = true;
+				
+				DownloadListener listener = new DownloadListener()
+				{
+					@Override
+					public void downloadProgress(DownloadEvent e)
+					{
+						publish(e);
+					}
+					
+					@Override
+					public void downloadCompleted(DownloadEvent e)
+					{
+					}
+				};
+				
+				try
+				{
+					if(!Application.running())
+						return manager.downloadUpdate(listener);
+					
+					try
+					{
+						return manager.stageUpdate(listener).get();
+					}
+					catch(ExecutionException e)
+					{
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+				finally
+				{
+					downloading = false;
+				}
+			}
+			
+			@Override
+			protected void process(List<DownloadEvent> chunks)
+			{
+				showProgress(chunks.get(chunks.size() - 1));
+			}
+			
+			@Override
+			protected void done()
+			{
+				try
+				{
+					Object result = get();
+					
+					if(result instanceof UpdateStage.StagedUpdate)
+					{
+						staged = (UpdateStage.StagedUpdate) result;
+						
+						progressBar.setIndeterminate(false);
+						progressBar.setValue(progressBar.getMaximum());
+						lblProgress.setText("Version " + staged.getVersion() + " is used from the next start.");
+						okButton.setText("Restart Now");
+						okButton.setEnabled(true);
+					}
+					else
+					{
+						lblProgress.setText("Starting the installation...");
+						manager.install((File) result, restartComputer);
+						
+						// Only returns if the installer could not be launched
+						lblProgress.setText("The installation could not be started.");
+						okButton.setText("Retry");
+						okButton.setEnabled(true);
+					}
+				}
+				catch(InterruptedException | ExecutionException e)
+				{
+					Throwable cause = e.getCause() != null ? e.getCause() : e;
+					
+					progressBar.setIndeterminate(false);
+					lblProgress.setText("The download has failed: " + cause.getMessage());
+					okButton.setText("Retry");
+					okButton.setEnabled(true);
+				}
+			}
+		}.execute();
     }
 	
+	
+	private void showProgress(DownloadEvent e)
+	{
+		double fraction = e.getFraction();
+		
+		progressBar.setIndeterminate(fraction < 0);
+		if(fraction >= 0)
+			progressBar.setValue((int) (fraction * 1000));
+		
+		StringBuilder text = new StringBuilder(formatBytes(e.getBytesReceived()));
+		
+		if(e.getTotalBytes() > 0)
+			text.append(" of ").append(formatBytes(e.getTotalBytes()));
+		
+		text.append(" (").append(formatBytes((long) e.getThroughput())).append("/s");
+		
+		long remaining = e.getRemainingTime() / 1000;
+		if(remaining >= 0)
+			text.append(String.format(", %d:%02d remaining", remaining / 60, remaining % 60));
+		
+		lblProgress.setText(text.append(")").toString());
+	}
+	
+	
+	private static String formatBytes(long bytes)
+	{
+		if(bytes < 1024)
+			return bytes + " B";
+		if(bytes < 1024 * 1024)
+			return String.format("%.1f KB", bytes / 1024.0);
+		
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+	
 	/**
 	 * Shows the updater window frame.
 	 * @param visible
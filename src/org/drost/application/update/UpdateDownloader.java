@@ -0,0 +1,916 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drost.application.listeners.DownloadEvent;
+import org.drost.application.listeners.DownloadListener;
+
+/**
+ * Downloads an update to disk so a broken connection does not start the
+ * download from scratch.
+ * <p>
+ * The bytes are streamed into a {@code .part} file next to the target
+ * through a {@link FileChannel}. The received ranges are recorded in a
+ * {@code .part.state} file together with the validators of the server, so
+ * an interrupted download is resumed with HTTP {@code Range} requests, in
+ * the same or a later run. {@code If-Range} makes sure the pieces belong to
+ * the same file, a file changed on the server is downloaded again.
+ * </p>
+ * <p>
+ * Servers accepting ranges get large files split into a number of ranges
+ * downloaded in parallel, each written at its own position of the file.
+ * Every range is retried a few times after a failure before the download is
+ * given up.
+ * </p>
+ * <p>
+ * If a SHA-256 checksum has been set, the completed file is verified before
+ * it is moved to the target. A file that does not match is deleted.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateManager#getDownloader()
+ */
+public class UpdateDownloader
+{
+	public static final int DEFAULT_PARALLELISM = 4;
+	
+	/**
+	 * Files smaller than this number of bytes are downloaded in a single
+	 * range.
+	 */
+	public static final long DEFAULT_PARALLEL_THRESHOLD = 8L << 20;
+	
+	/**
+	 * The number of attempts per range before the download fails.
+	 */
+	public static final int MAX_ATTEMPTS = 5;
+	
+	/**
+	 * The minimum time in milliseconds between two progress events.
+	 */
+	public static final long PROGRESS_INTERVAL = 250;
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final AtomicInteger threadNumber = new AtomicInteger(1);
+	
+	private final String address;
+	
+	private final File target;
+	
+	private final File partFile;
+	
+	private final File stateFile;
+	
+	private final List<DownloadListener> listeners = new CopyOnWriteArrayList<>();
+	
+	private volatile String checksum = null;
+	
+	private volatile int parallelism = DEFAULT_PARALLELISM;
+	
+	private volatile long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	
+	private volatile int connectTimeout = UpdateChecker.DEFAULT_CONNECT_TIMEOUT;
+	
+	private volatile int readTimeout = UpdateChecker.DEFAULT_READ_TIMEOUT;
+	
+	private volatile boolean cancelled = false;
+	
+	/**
+	 * Set when one of the parallel ranges has failed, so the others stop.
+	 */
+	private volatile boolean aborted = false;
+	
+	/**
+	 * Set when the server has answered a range request with the whole file.
+	 */
+	private volatile boolean changed = false;
+	
+	private final AtomicBoolean running = new AtomicBoolean();
+	
+	private ExecutorService executor = null;
+	
+	private final AtomicLong received = new AtomicLong();
+	
+	private volatile long totalBytes = -1;
+	
+	private Remote remote = null;
+	
+	private Segment[] segments = null;
+	
+	private long lastReport;
+	
+	private long lastReportBytes;
+	
+	private double throughput;
+	
+	
+	/**
+	 * Creates a downloader that is not yet started.
+	 * 
+	 * @param address
+	 *            The address of the file.
+	 * @param target
+	 *            The file to create, replaced if it exists.
+	 */
+	public UpdateDownloader(String address, File target)
+	{
+		if(address == null || target == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.address = address;
+		this.target = target.getAbsoluteFile();
+		this.partFile = new File(this.target.getPath() + ".part");
+		this.stateFile = new File(this.target.getPath() + ".part.state");
+	}
+	
+	
+	/**
+	 * Downloads the file on a background thread without waiting for it.
+	 * 
+	 * @return The downloaded file.
+	 */
+	public Future<File> start()
+	{
+		return getExecutor().submit(new Callable<File>()
+		{
+			@Override
+			public File call() throws IOException
+			{
+				return download();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Downloads the file on the calling thread, which must not be the event
+	 * dispatch thread. A previously interrupted download of the same file is
+	 * resumed.
+	 * 
+	 * @return The downloaded and verified file.
+	 * @throws IOException
+	 *             If the download has failed or has been cancelled, or the
+	 *             file does not match the checksum.
+	 */
+	public File download() throws IOException
+	{
+		if(!running.compareAndSet(false, true))
+			throw new IllegalStateException("The download is already running.");
+		
+		try
+		{
+			return transfer();
+		}
+		finally
+		{
+			running.set(false);
+		}
+	}
+	
+	
+	private File transfer() throws IOException
+	{
+		cancelled = false;
+		aborted = false;
+		changed = false;
+		
+		remote = probe();
+		segments = restore();
+		
+		if(segments == null)
+		{
+			discard();
+			segments = split();
+		}
+		
+		long resumed = 0;
+		for(Segment s : segments)
+			resumed += s.position - s.start;
+		
+		totalBytes = remote.length;
+		received.set(resumed);
+		
+		synchronized(received)
+		{
+			lastReport = System.nanoTime();
+			lastReportBytes = resumed;
+			throughput = 0;
+		}
+		
+		File parent = target.getParentFile();
+		if(parent != null && !parent.exists() && !parent.mkdirs())
+			throw new IOException("Could not create the directory " + parent);
+		
+		try (FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			saveState();
+			
+			if(segments.length == 1)
+				fetch(channel, segments[0]);
+			else
+				fetchParallel(channel);
+		}
+		finally
+		{
+			// Ranges of another version of the file are worthless
+			if(changed)
+				discard();
+			else
+				saveState();
+		}
+		
+		if(totalBytes < 0)
+			totalBytes = received.get();
+		
+		DownloadEvent event = new DownloadEvent(this, received.get(), totalBytes, getThroughput());
+		for(DownloadListener l : listeners)
+			l.downloadProgress(event);
+		
+		verify();
+		
+		try
+		{
+			Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		stateFile.delete();
+		
+		for(DownloadListener l : listeners)
+			l.downloadCompleted(event);
+		
+		return target;
+	}
+	
+	
+	/**
+	 * Stops a running download. The received bytes are kept, so the
+	 * download can be resumed later.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	
+	/**
+	 * Deletes the partially downloaded file, so the next download starts
+	 * from scratch.
+	 */
+	public void discard()
+	{
+		partFile.delete();
+		stateFile.delete();
+	}
+	
+	
+	/**
+	 * Sets the SHA-256 checksum the downloaded file must match.
+	 * 
+	 * @param checksum
+	 *            The checksum in hexadecimal digits or {@code null} to skip
+	 *            the verification.
+	 */
+	public void setChecksum(String checksum)
+	{
+		this.checksum = checksum == null ? null : checksum.trim();
+	}
+	
+	
+	public String getChecksum()
+	{
+		return checksum;
+	}
+	
+	
+	/**
+	 * Sets the number of ranges a large file is split into.
+	 * 
+	 * @param parallelism
+	 *            The number of ranges, {@code 1} to never split files.
+	 * @param threshold
+	 *            The size in bytes from which a file is split.
+	 */
+	public void setParallelism(int parallelism, long threshold)
+	{
+		if(parallelism < 1)
+			throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+		
+		this.parallelism = parallelism;
+		this.parallelThreshold = threshold;
+	}
+	
+	
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+	
+	
+	public void setTimeouts(int connectTimeout, int readTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+	
+	
+	public void addDownloadListener(DownloadListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	
+	public void removeDownloadListener(DownloadListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	
+	public String getAddress()
+	{
+		return address;
+	}
+	
+	
+	public File getTarget()
+	{
+		return target;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes on disk, including those of a resumed
+	 * download.
+	 */
+	public long getBytesReceived()
+	{
+		return received.get();
+	}
+	
+	
+	/**
+	 * Returns the size of the file or {@code -1} if unknown.
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+	
+	
+	/**
+	 * Returns the smoothed throughput in bytes per second.
+	 */
+	public double getThroughput()
+	{
+		synchronized(received)
+		{
+			return throughput;
+		}
+	}
+	
+	
+	/**
+	 * Asks the server for the size and the validators of the file without
+	 * downloading it.
+	 */
+	private Remote probe() throws IOException
+	{
+		Remote r = new Remote();
+		URLConnection connection = open();
+		
+		if(connection instanceof HttpURLConnection)
+		{
+			HttpURLConnection http = (HttpURLConnection) connection;
+			http.setRequestMethod("HEAD");
+			int status = http.getResponseCode();
+			
+			if(status == HttpURLConnection.HTTP_OK)
+			{
+				r.length = http.getContentLengthLong();
+				r.etag = http.getHeaderField("ETag");
+				r.lastModified = http.getLastModified();
+				r.ranges = r.length > 0 && "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges"));
+			}
+			else if(status != HttpURLConnection.HTTP_BAD_METHOD && status != HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+			{
+				http.disconnect();
+				throw new IOException("Unexpected response " + status + " from " + address);
+			}
+			http.disconnect();
+		}
+		else
+		{
+			r.length = connection.getContentLengthLong();
+			connection.getInputStream().close();
+		}
+		
+		return r;
+	}
+	
+	
+	/**
+	 * Reads the ranges of an interrupted download of the same file.
+	 * 
+	 * @return The ranges or {@code null} if the download cannot be resumed.
+	 */
+	private Segment[] restore()
+	{
+		if(!remote.ranges || !partFile.exists() || !stateFile.exists())
+			return null;
+		
+		Properties state = new Properties();
+		
+		try (InputStream in = new FileInputStream(stateFile))
+		{
+			state.load(in);
+			
+			if(!address.equals(state.getProperty("address"))
+					|| remote.length != Long.parseLong(state.getProperty("length"))
+					|| !equals(remote.etag, state.getProperty("etag"))
+					|| remote.lastModified != Long.parseLong(state.getProperty("lastModified", "0")))
+				return null;
+			
+			Segment[] restored = new Segment[Integer.parseInt(state.getProperty("segments"))];
+			
+			for(int i = 0; i < restored.length; i++)
+			{
+				String[] values = state.getProperty("segment." + i).split(",");
+				restored[i] = new Segment(Long.parseLong(values[0]), Long.parseLong(values[2]));
+				restored[i].position = Long.parseLong(values[1]);
+				
+				if(restored[i].position < restored[i].start || restored[i].position > restored[i].end + 1)
+					return null;
+			}
+			return restored;
+		}
+		catch(IOException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+	
+	
+	private Segment[] split()
+	{
+		long length = remote.length;
+		
+		if(length < 0)
+			return new Segment[] { new Segment(0, -1) };
+		
+		int count = remote.ranges && length >= parallelThreshold ? parallelism : 1;
+		long size = length / count;
+		
+		Segment[] split = new Segment[count];
+		for(int i = 0; i < count; i++)
+			split[i] = new Segment(i * size, i == count - 1 ? length - 1 : (i + 1) * size - 1);
+		
+		return split;
+	}
+	
+	
+	private void fetchParallel(final FileChannel channel) throws IOException
+	{
+		List<Future<?>> futures = new ArrayList<>();
+		
+		for(final Segment segment : segments)
+		{
+			futures.add(getExecutor().submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws IOException
+				{
+					try
+					{
+						fetch(channel, segment);
+					}
+					catch(IOException | RuntimeException e)
+					{
+						aborted = true;
+						throw e;
+					}
+					return null;
+				}
+			}));
+		}
+		
+		Throwable failure = null;
+		
+		// Wait for all ranges, so none is written after the state is saved
+		for(Future<?> f : futures)
+		{
+			try
+			{
+				f.get();
+			}
+			catch(ExecutionException e)
+			{
+				if(failure == null || failure instanceof InterruptedIOException)
+					failure = e.getCause();
+			}
+			catch(InterruptedException e)
+			{
+				cancelled = true;
+				Thread.currentThread().interrupt();
+				
+				if(failure == null)
+					failure = new InterruptedIOException("The download has been interrupted.");
+			}
+		}
+		
+		if(failure instanceof IOException)
+			throw (IOException) failure;
+		if(failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if(failure != null)
+			throw new IOException(failure);
+	}
+	
+	
+	/**
+	 * Downloads a range, retrying with a growing delay after a failure.
+	 */
+	private void fetch(FileChannel channel, Segment segment) throws IOException
+	{
+		for(int attempt = 1; ; attempt++)
+		{
+			try
+			{
+				transferRange(channel, segment);
+				return;
+			}
+			catch(IOException e)
+			{
+				if(cancelled || aborted || e instanceof ChangedException || !remote.ranges || attempt >= MAX_ATTEMPTS)
+					throw e;
+			}
+			
+			try
+			{
+				Thread.sleep(500L << attempt);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("The download has been interrupted.");
+			}
+		}
+	}
+	
+	
+	private void transferRange(FileChannel channel, Segment segment) throws IOException
+	{
+		if(segment.end >= 0 && segment.position > segment.end)
+			return;
+		
+		URLConnection connection = open();
+		boolean range = remote.ranges && (segment.position > 0 || segment.end < remote.length - 1);
+		
+		if(range)
+		{
+			connection.setRequestProperty("Range", "bytes=" + segment.position + "-" + segment.end);
+			
+			String validator = getValidator();
+			if(validator != null)
+				connection.setRequestProperty("If-Range", validator);
+		}
+		
+		if(connection instanceof HttpURLConnection)
+		{
+			HttpURLConnection http = (HttpURLConnection) connection;
+			int status = http.getResponseCode();
+			
+			if(range && status == HttpURLConnection.HTTP_OK)
+			{
+				http.disconnect();
+				changed = true;
+				throw new ChangedException("The file " + address + " has changed during the download.");
+			}
+			
+			if(status != (range ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK))
+			{
+				http.disconnect();
+				throw new IOException("Unexpected response " + status + " from " + address);
+			}
+			
+			if(range)
+			{
+				String contentRange = http.getHeaderField("Content-Range");
+				
+				if(contentRange == null || !contentRange.startsWith("bytes " + segment.position + "-"))
+				{
+					http.disconnect();
+					throw new IOException("Unexpected range " + contentRange + " from " + address);
+				}
+			}
+		}
+		
+		try (ReadableByteChannel in = Channels.newChannel(connection.getInputStream()))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			
+			while(true)
+			{
+				if(cancelled)
+					throw new InterruptedIOException("The download has been cancelled.");
+				if(aborted)
+					throw new InterruptedIOException("The download has been aborted.");
+				
+				long remaining = segment.end < 0 ? BUFFER_SIZE : segment.end - segment.position + 1;
+				
+				if(remaining <= 0)
+					break;
+				
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, remaining));
+				
+				int n = in.read(buffer);
+				
+				if(n < 0)
+					break;
+				
+				buffer.flip();
+				while(buffer.hasRemaining())
+					segment.position += channel.write(buffer, segment.position);
+				
+				progress(n);
+			}
+		}
+		
+		if(segment.end >= 0 && segment.position <= segment.end)
+			throw new EOFException("The connection to " + address + " has been closed after " + segment.position + " bytes.");
+	}
+	
+	
+	private void progress(int n)
+	{
+		long bytes = received.addAndGet(n);
+		long now = System.nanoTime();
+		DownloadEvent event;
+		
+		synchronized(received)
+		{
+			long elapsed = now - lastReport;
+			
+			if(elapsed < PROGRESS_INTERVAL * 1000000L)
+				return;
+			
+			double rate = (bytes - lastReportBytes) * 1e9 / elapsed;
+			
+			// Exponential moving average, so the estimate does not jump
+			throughput = throughput == 0 ? rate : throughput * 0.7 + rate * 0.3;
+			lastReport = now;
+			lastReportBytes = bytes;
+			
+			event = new DownloadEvent(this, bytes, totalBytes, throughput);
+		}
+		
+		saveState();
+		
+		for(DownloadListener l : listeners)
+			l.downloadProgress(event);
+	}
+	
+	
+	private void verify() throws IOException
+	{
+		String expected = checksum;
+		
+		if(expected == null)
+			return;
+		
+		MessageDigest digest;
+		
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		
+		try (FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			
+			while(channel.read(buffer) >= 0)
+			{
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		
+		StringBuilder actual = new StringBuilder();
+		for(byte b : digest.digest())
+			actual.append(String.format("%02x", b & 0xFF));
+		
+		if(!actual.toString().equalsIgnoreCase(expected))
+		{
+			discard();
+			throw new IOException("The checksum " + actual + " of " + address + " does not match " + expected + ".");
+		}
+	}
+	
+	
+	private void saveState()
+	{
+		if(!remote.ranges || changed)
+			return;
+		
+		Properties state = new Properties();
+		state.setProperty("address", address);
+		state.setProperty("length", String.valueOf(remote.length));
+		state.setProperty("lastModified", String.valueOf(remote.lastModified));
+		state.setProperty("segments", String.valueOf(segments.length));
+		
+		if(remote.etag != null)
+			state.setProperty("etag", remote.etag);
+		
+		for(int i = 0; i < segments.length; i++)
+			state.setProperty("segment." + i, segments[i].start + "," + segments[i].position + "," + segments[i].end);
+		
+		synchronized(stateFile)
+		{
+			try (OutputStream out = new FileOutputStream(stateFile))
+			{
+				state.store(out, null);
+			}
+			catch(IOException e)
+			{
+				// Only resuming is affected
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the value of the {@code If-Range} header. Weak entity tags are
+	 * not allowed there, the last modification date is used instead.
+	 */
+	private String getValidator()
+	{
+		if(remote.etag != null && !remote.etag.startsWith("W/"))
+			return remote.etag;
+		
+		if(remote.lastModified > 0)
+		{
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new Date(remote.lastModified));
+		}
+		
+		return null;
+	}
+	
+	
+	private URLConnection open() throws IOException
+	{
+		URLConnection connection = new URL(address).openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setUseCaches(false);
+		
+		// Ranges refer to the encoded bytes
+		connection.setRequestProperty("Accept-Encoding", "identity");
+		
+		return connection;
+	}
+	
+	
+	private synchronized ExecutorService getExecutor()
+	{
+		if(executor == null)
+		{
+			executor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Update-Downloader-" + threadNumber.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	
+	private static boolean equals(String a, String b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	
+	/**
+	 * The size and the validators of the file on the server.
+	 */
+	private static class Remote
+	{
+		long length = -1;
+		
+		String etag;
+		
+		long lastModified;
+		
+		boolean ranges;
+	}
+	
+	
+	/**
+	 * A range of the file, downloaded by a single connection.
+	 */
+	private static class Segment
+	{
+		final long start;
+		
+		/**
+		 * The last byte, inclusive, or {@code -1} if the size is unknown.
+		 */
+		final long end;
+		
+		/**
+		 * The next byte to receive, only written by the downloading thread.
+		 */
+		volatile long position;
+		
+		Segment(long start, long end)
+		{
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
+	}
+	
+	
+	@SuppressWarnings( "serial" )
+	private static class ChangedException extends IOException
+	{
+		ChangedException(String message)
+		{
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+/**
+ * The state of the latest release as published by the update server. All
+ * values are read from a single document, an {@link UpdateManifest} or a
+ * document containing the tags {@code [version]}, {@code [url]} and
+ * {@code [history]}, each value may be {@code null} if it is missing.
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateChecker
+ */
+public final class UpdateInfo
+{
+	private final String version;
+	
+	private final String downloadLink;
+	
+	private final String releaseNotes;
+	
+	private final long fetchedAt;
+	
+	private final boolean notModified;
+	
+	private final UpdateManifest manifest;
+	
+	
+	public UpdateInfo(String version, String downloadLink, String releaseNotes, long fetchedAt, boolean notModified)
+	{
+		this.version = version;
+		this.downloadLink = downloadLink;
+		this.releaseNotes = releaseNotes;
+		this.fetchedAt = fetchedAt;
+		this.notModified = notModified;
+		this.manifest = null;
+	}
+	
+	
+	public UpdateInfo(UpdateManifest manifest, long fetchedAt, boolean notModified)
+	{
+		this.version = manifest.getVersion();
+		this.downloadLink = manifest.getArtifact() == null ? null : manifest.getArtifact().getUrl();
+		this.releaseNotes = manifest.getReleaseNotes();
+		this.fetchedAt = fetchedAt;
+		this.notModified = notModified;
+		this.manifest = manifest;
+	}
+	
+	
+	/**
+	 * Reads the stable channel of an update document.
+	 * 
+	 * @param document
+	 *            The content of the document.
+	 * @param notModified
+	 *            Whether the document has been served from the cache.
+	 * @return The parsed values.
+	 * @throws IllegalArgumentException
+	 *             If the document is an invalid manifest.
+	 */
+	public static UpdateInfo parse(String document, boolean notModified)
+	{
+		return parse(document, UpdateManifest.DEFAULT_CHANNEL, notModified);
+	}
+	
+	
+	/**
+	 * Reads a channel of an update document.
+	 * 
+	 * @param document
+	 *            The content of the document.
+	 * @param channel
+	 *            The release channel.
+	 * @param notModified
+	 *            Whether the document has been served from the cache.
+	 * @return The parsed values.
+	 * @throws IllegalArgumentException
+	 *             If the document is an invalid manifest.
+	 */
+	public static UpdateInfo parse(String document, String channel, boolean notModified)
+	{
+		return new UpdateInfo(UpdateManifest.parse(document, channel), System.currentTimeMillis(), notModified);
+	}
+	
+	
+	static String getTagged(String document, String tag)
+	{
+		int start = document.indexOf("[" + tag + "]");
+		int end = document.indexOf("[/" + tag + "]");
+		
+		if(start < 0 || end < start)
+			return null;
+		
+		return document.substring(start + tag.length() + 2, end);
+	}
+	
+	
+	public String getVersion()
+	{
+		return version;
+	}
+	
+	public String getDownloadLink()
+	{
+		return downloadLink;
+	}
+	
+	public String getReleaseNotes()
+	{
+		return releaseNotes;
+	}
+	
+	/**
+	 * Returns the manifest the values have been read from, with the
+	 * artifacts, deltas and the minimum Java version, or {@code null} if the
+	 * values have been given directly.
+	 */
+	public UpdateManifest getManifest()
+	{
+		return manifest;
+	}
+	
+	/**
+	 * Returns the time of the check in milliseconds.
+	 */
+	public long getFetchedAt()
+	{
+		return fetchedAt;
+	}
+	
+	/**
+	 * Returns whether the server has reported the document as unchanged, so
+	 * the values have been taken from the cache.
+	 */
+	public boolean isNotModified()
+	{
+		return notModified;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "UpdateInfo[version=" + version + ", url=" + downloadLink + "]";
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.drost.application.LocalStorage;
+import org.drost.application.update.UpdateStage.StagedUpdate;
+
+/**
+ * Starts the application from its staged update, if there is one. Set this
+ * class as the {@code Main-Class} of the application jar and add the
+ * attributes {@value #ID_ATTRIBUTE} and {@value #MAIN_ATTRIBUTE}:
+ * 
+ * <pre>
+ * Main-Class: org.drost.application.update.UpdateLauncher
+ * Application-ID: my_app
+ * Application-Main-Class: com.example.Main
+ * </pre>
+ * 
+ * <p>
+ * The launcher {@link UpdateStage#activate() activates} a pending update and
+ * loads the main class from the jars of the current one instead of the
+ * installed jar, similar to
+ * {@link org.drost.application.Application#warmRestart(String...)}. The
+ * remaining class path is kept. If there is no update or it cannot be loaded
+ * the installed version is started. The attributes may also be given as the
+ * system properties {@value #ID_PROPERTY} and {@value #MAIN_PROPERTY}.
+ * </p>
+ * 
+ * @author kimschorat
+ * 
+ * @see UpdateStage
+ */
+public final class UpdateLauncher
+{
+	public static final String ID_ATTRIBUTE = "Application-ID";
+	
+	public static final String MAIN_ATTRIBUTE = "Application-Main-Class";
+	
+	public static final String ID_PROPERTY = "application.id";
+	
+	public static final String MAIN_PROPERTY = "application.main";
+	
+	
+	private UpdateLauncher()
+	{
+	}
+	
+	
+	public static void main(String[] args) throws Throwable
+	{
+		String id = System.getProperty(ID_PROPERTY);
+		String mainClassName = System.getProperty(MAIN_PROPERTY);
+		
+		if(id == null || mainClassName == null)
+		{
+			Attributes attributes = findAttributes();
+			
+			if(attributes != null)
+			{
+				if(id == null)
+					id = attributes.getValue(ID_ATTRIBUTE);
+				if(mainClassName == null)
+					mainClassName = attributes.getValue(MAIN_ATTRIBUTE);
+			}
+		}
+		
+		if(mainClassName == null)
+			throw new IllegalStateException("No main class, set the " + MAIN_ATTRIBUTE + " attribute of the manifest.");
+		
+		ClassLoader installed = UpdateLauncher.class.getClassLoader();
+		Class<?> mainClass = null;
+		
+		if(id != null)
+		{
+			try
+			{
+				StagedUpdate update = new UpdateStage(new LocalStorage(id)).activate();
+				
+				if(update != null)
+				{
+					ClassLoader loader = createClassLoader(update, installed, mainClassName);
+					mainClass = Class.forName(mainClassName, true, loader);
+					Thread.currentThread().setContextClassLoader(loader);
+				}
+			}
+			catch(IOException | ClassNotFoundException | LinkageError e)
+			{
+				System.err.println("Could not start the staged update, starting the installed version: " + e);
+			}
+		}
+		
+		if(mainClass == null)
+			mainClass = Class.forName(mainClassName, true, installed);
+		
+		Method main = mainClass.getMethod("main", String[].class);
+		
+		try
+		{
+			main.invoke(null, (Object) args);
+		}
+		catch(InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	
+	/**
+	 * Returns the main attributes of the first manifest on the class path
+	 * that names the main class.
+	 */
+	private static Attributes findAttributes() throws IOException
+	{
+		Enumeration<URL> manifests = UpdateLauncher.class.getClassLoader().getResources("META-INF/MANIFEST.MF");
+		
+		while(manifests.hasMoreElements())
+		{
+			try (InputStream in = manifests.nextElement().openStream())
+			{
+				Attributes attributes = new Manifest(in).getMainAttributes();
+				
+				if(attributes.getValue(MAIN_ATTRIBUTE) != null)
+					return attributes;
+			}
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Creates a class loader of the update jars followed by the class path
+	 * without the installed jar of the main class. It does not delegate to the
+	 * application class loader, which would load the installed classes.
+	 */
+	private static ClassLoader createClassLoader(StagedUpdate update, ClassLoader installed, String mainClassName) throws IOException
+	{
+		File installedJar = null;
+		URL resource = installed.getResource(mainClassName.replace('.', '/') + ".class");
+		
+		if(resource != null && "jar".equals(resource.getProtocol()))
+		{
+			try
+			{
+				installedJar = new File(((JarURLConnection) resource.openConnection()).getJarFileURL().toURI());
+			}
+			catch(Exception e)
+			{
+				throw new IOException("Could not locate the installed jar " + resource, e);
+			}
+		}
+		
+		List<URL> urls = new ArrayList<URL>();
+		
+		try
+		{
+			for(File file : update.getClassPath())
+				urls.add(file.toURI().toURL());
+			
+			for(String entry : System.getProperty("java.class.path", "").split(File.pathSeparator))
+			{
+				if(entry.isEmpty() || new File(entry).getAbsoluteFile().equals(installedJar))
+					continue;
+				
+				urls.add(new File(entry).toURI().toURL());
+			}
+		}
+		catch(MalformedURLException e)
+		{
+			throw new IOException("Invalid class path.", e);
+		}
+		
+		return new URLClassLoader(urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader().getParent());
+	}
+}
@@ -19,15 +19,32 @@
  */
 package org.drost.application.update;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
 
+import org.drost.application.Application;
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.Version;
+import org.drost.application.listeners.DownloadListener;
+
 /**
  *
  * @author Thomas Otero H3R3T1C
@@ -60,6 +77,38 @@ public class UpdateManager
 	 * Holds the address of the file storing the download link.
 	 */
     protected String downloadURL = null;
+    
+    /**
+     * Created with the first call of {@link #getUpdateChecker()}.
+     */
+    private UpdateChecker updateChecker = null;
+    
+    /**
+     * The version of the running application, deltas are only applied to it.
+     */
+    private volatile String currentVersion = null;
+    
+    /**
+     * The downloader of {@link #downloadUpdate(DownloadListener)}.
+     */
+    private volatile UpdateDownloader activeDownloader = null;
+    
+    private volatile boolean downloadCancelled = false;
+    
+    /**
+     * Runs {@link #stageUpdate(DownloadListener)}, created on demand.
+     */
+    private ExecutorService executor = null;
+    
+    /**
+     * Whether an update without a SHA-256 checksum is refused.
+     */
+    private volatile boolean checksumRequired = true;
+    
+    /**
+     * The release channel of the manifest.
+     */
+    private volatile String channel = UpdateManifest.DEFAULT_CHANNEL;
         
     /**
      * Creates a {@code ApplicationUpdateManager} instance and initializes the 
@@ -83,12 +132,6 @@ public class UpdateManager
     	this.downloadURL = downloadURL;
     	this.versionURL = versionURL;
     	this.historyURL = historyURL;
-    	
-    	try {
-			updateDialog = new UpdateDialog(this);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
     }
     
     /**
@@ -101,41 +144,48 @@ public class UpdateManager
     {
     	if(versionURL == null) return null;
     	
-        String data = getData(versionURL);
-        return data.substring(data.indexOf("[version]")+9,data.indexOf("[/version]"));
+        return getManifest(versionURL).getVersion();
     }
     
     
     /**
-     * Parses the version string of {@link #getLatestVersion()} to comparable 
-     * point number.
+     * Parses the version string of {@link #getLatestVersion()} to a comparable
+     * version.
      * 
      * @param version A string containing the version
-     * @return Returns a point number as a <code>double</code> value.
+     * @return Returns the parsed version.
+     * @throws IllegalArgumentException If the string is not a version.
      */
-    public double parseVersionToDouble(String version)
+    public Version parseVersion(String version)
 	{
-		boolean foundDecimalPlace = false;
-		
-		for(int i = 0; i < version.length(); i++)
-		{
-			int c = ((int)version.charAt(i));
-			
-			if( c < 48 || c > 57 )
-			{
-				if( c == 46 && !foundDecimalPlace)
-				{
-					foundDecimalPlace = true;
-					continue;
-				}
-				version = version.substring(0, i) + version.substring(i+1);
-			}			
-		}
-		
-		return Double.parseDouble(version);
+		return Version.parse(version);
 	}
     
     
+    /**
+     * Returns whether the latest version is newer than the current version and
+     * runs on the running Java version.
+     * 
+     * @return {@code true} if an update is available, {@code false} if not or
+     * if the current version is not set.
+     * @throws IOException If the latest version could not be fetched.
+     * 
+     * @see #setCurrentVersion(String)
+     */
+    public boolean isUpdateAvailable() throws IOException
+    {
+    	String current = currentVersion;
+    	
+    	if(current == null || (versionURL == null && downloadURL == null))
+    		return false;
+    	
+    	UpdateManifest manifest = getManifest(versionURL != null ? versionURL : downloadURL);
+    	Version latest = manifest.getParsedVersion();
+    	
+    	return latest != null && manifest.isSupported() && latest.isNewerThan(Version.parse(current.trim()));
+    }
+    
+    
     /**
      * 
      * @return
@@ -146,21 +196,8 @@ public class UpdateManager
     {
     	if(downloadURL == null) return null;
     	
-		URL url = new URL(downloadURL);
-
-		InputStream html = null;
-
-		html = url.openStream();
-
-		int c = 0;
-		StringBuilder buffer = new StringBuilder("");
-
-		while (c != -1) {
-			c = html.read();
-			buffer.append((char) c);
-
-		}
-		return buffer.substring(buffer.indexOf("[url]") + 5, buffer.indexOf("[/url]"));
+    	UpdateManifest.Artifact artifact = getManifest(downloadURL).getArtifact();
+		return artifact == null ? null : artifact.getUrl();
 	}
     
     
@@ -174,32 +211,455 @@ public class UpdateManager
     {
     	if(historyURL == null) return null;
     	
-        String data = getData(historyURL);
-        return data.substring(data.indexOf("[history]")+9,data.indexOf("[/history]"));
+        return getManifest(historyURL).getReleaseNotes();
     }
     
     
     
     /**
-     * Fetches the data of the given address.
+     * Opens the release history of the channel at the history address, or the
+     * version or download address if there is none. If the update checker has
+     * cached a document in the former format at that address, the history is
+     * read from the cache. The history of a manifest is never cached, it is
+     * streamed from the address.
+     * 
+     * @return The history, nothing is read before its first page is requested,
+     * or {@code null} if there is no address.
+     * 
+     * @see ReleaseHistory#next(int)
      */
-    private String getData(String address) throws IOException 
+    public ReleaseHistory openReleaseHistory()
     {
-        URL url = new URL(address);
-        
-        InputStream html = null;
-
-        html = url.openStream();
+    	String address = historyURL != null ? historyURL : versionURL != null ? versionURL : downloadURL;
+    	
+    	if(address == null)
+    		return null;
+    	
+    	synchronized(this)
+    	{
+    		String cached = updateChecker != null && updateChecker.getAddress().equals(address) 
+    				? updateChecker.getCachedDocument() : null;
+    		
+    		if(cached != null)
+    			return new ReleaseHistory(new StringReader(cached), channel);
+    	}
+    	
+    	return new ReleaseHistory(address, channel);
+    }
+    
+    
+    /**
+     * Returns the checker fetching the version, the download link and the
+     * release notes in the background. The update manifest is expected at
+     * the version address, or the download address if there is none, and has
+     * to contain all values, see {@link UpdateManifest}.
+     * 
+     * @return The checker, not yet started.
+     */
+    public synchronized UpdateChecker getUpdateChecker()
+    {
+    	if(updateChecker == null)
+    	{
+    		String address = versionURL != null ? versionURL : downloadURL;
+    		
+    		if(address == null)
+    			throw new IllegalStateException("No update address.");
+    		
+    		updateChecker = new UpdateChecker(address, Application.running() ? Application.get().getLocalStorage() : null);
+    		updateChecker.setCurrentVersion(currentVersion);
+    		updateChecker.setChannel(channel);
+    	}
+    	return updateChecker;
+    }
+    
+    
+    /**
+     * Checks for an update in the background.
+     * 
+     * @return The result of the check.
+     * 
+     * @see UpdateChecker#checkNow()
+     */
+    public Future<UpdateInfo> checkForUpdates()
+    {
+    	return getUpdateChecker().checkNow();
+    }
+    
+    
+    /**
+     * Creates a downloader of the file behind the download link. The file is
+     * verified against the SHA-256 checksum of the manifest at the download
+     * address, which is required unless {@link #setChecksumRequired(boolean)
+     * disabled}.
+     * The file is stored in the {@code downloads} directory of the local
+     * storage, so an interrupted download is resumed in a later run.
+     * 
+     * @return The downloader, not yet started.
+     * @throws IOException
+     *             If the download link could not be fetched or has no
+     *             checksum.
+     */
+    public UpdateDownloader getDownloader() throws IOException
+    {
+    	UpdateManifest.Artifact artifact = getArtifact(getManifest(getDownloadAddress()));
+    	
+    	UpdateDownloader downloader = new UpdateDownloader(artifact.getUrl(), new File(getDownloadDirectory(), getFileName(artifact)));
+    	downloader.setChecksum(getChecksum(artifact));
+    	
+    	return downloader;
+    }
+    
+    
+    /**
+     * Downloads the update on the calling thread, which must not be the event
+     * dispatch thread.
+     * <p>
+     * If the current version is set and the manifest at the download address
+     * contains a delta from it, only the delta is downloaded and applied to the
+     * installed jar, see {@link JarDelta}. If that fails for any reason but a cancellation, e.g.
+     * because the installed jar has been modified, the full update is
+     * downloaded instead.
+     * </p>
+     * <p>
+     * The download is verified against its SHA-256 checksum from the
+     * manifest. A delta without a checksum is not used, a full update without
+     * one is refused unless {@link #setChecksumRequired(boolean) disabled}.
+     * </p>
+     * 
+     * @param listener
+     *            Informed about the progress or {@code null}.
+     * @return The new jar.
+     * @throws IOException
+     *             If the update could not be downloaded, has no checksum or
+     *             has been cancelled.
+     * 
+     * @see #setCurrentVersion(String)
+     * @see #cancelDownload()
+     */
+    public File downloadUpdate(DownloadListener listener) throws IOException
+    {
+    	downloadCancelled = false;
+    	
+    	return downloadUpdate(getManifest(getDownloadAddress()), listener);
+    }
+    
+    
+    /**
+     * Downloads the update in the background and installs it beside the
+     * running version, see {@link UpdateStage}. The application keeps running
+     * and uses the update from its next start by the {@link UpdateLauncher} or
+     * from {@link Application#restart(String...)}.
+     * 
+     * @param listener
+     *            Informed about the progress of the download or {@code null}.
+     * @return The result of the staging, failing with an {@code IOException}
+     *         if the update could not be downloaded, is corrupt or has been
+     *         cancelled.
+     * 
+     * @see #cancelDownload()
+     */
+    public Future<UpdateStage.StagedUpdate> stageUpdate(final DownloadListener listener)
+    {
+    	downloadCancelled = false;
+    	
+    	return getExecutor().submit(new Callable<UpdateStage.StagedUpdate>()
+    	{
+    		@Override
+    		public UpdateStage.StagedUpdate call() throws IOException
+    		{
+    			UpdateManifest manifest = getManifest(getDownloadAddress());
+    			File file = downloadUpdate(manifest, listener);
+    			
+    			return getUpdateStage().stage(manifest.getVersion(), file);
+    		}
+    	});
+    }
+    
+    
+    /**
+     * Returns the stage of updates in the local storage of the application.
+     * 
+     * @return The stage.
+     * @throws IllegalStateException
+     *             If the application is not running.
+     */
+    public UpdateStage getUpdateStage()
+    {
+    	if(!Application.running())
+    		throw new IllegalStateException("Updates are only staged in the local storage of a running application.");
+    	
+    	return new UpdateStage(Application.get().getLocalStorage());
+    }
+    
+    
+    private File downloadUpdate(UpdateManifest manifest, DownloadListener listener) throws IOException
+    {
+    	if(!manifest.isSupported())
+    		throw new IOException("The update requires Java " + manifest.getMinimumJavaVersion() + ".");
+    	
+    	UpdateManifest.Artifact artifact = getArtifact(manifest);
+    	UpdateManifest.Artifact delta = manifest.getDelta(currentVersion);
+    	File target = new File(getDownloadDirectory(), getFileName(artifact));
+    	
+    	if(delta != null && delta.getSha256() != null)
+    	{
+    		try
+    		{
+    			File installed = new File(ApplicationProfiler.getProfiler().getAbsolutJarPath());
+    			
+    			if(installed.isFile())
+    			{
+    				UpdateDownloader downloader = new UpdateDownloader(delta.getUrl(), new File(target.getPath() + ".delta"));
+    				downloader.setChecksum(delta.getSha256());
+    				
+    				File patch = download(downloader, listener);
+    				
+    				JarDelta.apply(installed, patch, target);
+    				patch.delete();
+    				
+    				return target;
+    			}
+    		}
+    		catch(InterruptedIOException e)
+    		{
+    			throw e;
+    		}
+    		catch(IOException | ClassNotFoundException | RuntimeException e)
+    		{
+    			if(downloadCancelled)
+    				throw new InterruptedIOException("The download has been cancelled.");
+    			
+    			new File(target.getPath() + ".delta").delete();
+    			System.err.println("Delta update failed, downloading the full update: " + e);
+    		}
+    	}
+    	
+    	UpdateDownloader downloader = new UpdateDownloader(artifact.getUrl(), target);
+    	downloader.setChecksum(getChecksum(artifact));
+    	
+    	return download(downloader, listener);
+    }
+    
+    
+    /**
+     * Cancels a running {@link #downloadUpdate(DownloadListener)}. The
+     * received bytes are kept for the next attempt.
+     */
+    public void cancelDownload()
+    {
+    	downloadCancelled = true;
+    	
+    	UpdateDownloader downloader = activeDownloader;
+    	if(downloader != null)
+    		downloader.cancel();
+    }
+    
+    
+    /**
+     * Sets the version of the running application, which deltas are
+     * downloaded for. The version is also set on the update checker.
+     * 
+     * @param version
+     *            The running version or {@code null} to always download the
+     *            full update.
+     */
+    public void setCurrentVersion(String version)
+    {
+    	currentVersion = version;
+    	
+    	synchronized(this)
+    	{
+    		if(updateChecker != null)
+    			updateChecker.setCurrentVersion(version);
+    	}
+    }
+    
+    
+    public String getCurrentVersion()
+    {
+    	return currentVersion;
+    }
+    
+    
+    /**
+     * Sets the release channel updates are taken from, e.g. {@code stable} or
+     * {@code beta}. The channel is also set on the update checker.
+     * 
+     * @param channel
+     *            A channel of the update manifest.
+     * 
+     * @see UpdateManifest
+     */
+    public void setChannel(String channel)
+    {
+    	if(channel == null)
+    		throw new IllegalArgumentException("Null argument.");
+    	
+    	this.channel = channel;
+    	
+    	synchronized(this)
+    	{
+    		if(updateChecker != null)
+    			updateChecker.setChannel(channel);
+    	}
+    }
+    
+    
+    public String getChannel()
+    {
+    	return channel;
+    }
+    
+    
+    /**
+     * Sets whether updates without a SHA-256 checksum in the manifest are
+     * refused, which is the default. Only disable it for manifests that
+     * cannot carry checksums, the download is installed unverified then.
+     * 
+     * @param required
+     *            {@code false} to install unverified updates.
+     */
+    public void setChecksumRequired(boolean required)
+    {
+    	checksumRequired = required;
+    }
+    
+    
+    public boolean isChecksumRequired()
+    {
+    	return checksumRequired;
+    }
+    
+    
+    private synchronized ExecutorService getExecutor()
+    {
+    	if(executor == null)
+    	{
+    		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    		{
+    			@Override
+    			public Thread newThread(Runnable r)
+    			{
+    				Thread t = new Thread(r, "Update-Stager");
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    	}
+    	return executor;
+    }
+    
+    
+    private File download(UpdateDownloader downloader, DownloadListener listener) throws IOException
+    {
+    	if(listener != null)
+    		downloader.addDownloadListener(listener);
+    	
+    	activeDownloader = downloader;
+    	
+    	try
+    	{
+    		if(downloadCancelled)
+    			throw new InterruptedIOException("The download has been cancelled.");
+    		
+    		return downloader.download();
+    	}
+    	finally
+    	{
+    		activeDownloader = null;
+    	}
+    }
+    
+    
+    private String getDownloadAddress()
+    {
+    	if(downloadURL == null)
+    		throw new IllegalStateException("No download address.");
+    	
+    	return downloadURL;
+    }
+    
+    
+    private UpdateManifest.Artifact getArtifact(UpdateManifest manifest) throws IOException
+    {
+    	UpdateManifest.Artifact artifact = manifest.getArtifact();
+    	
+    	if(artifact == null)
+    		throw new IOException("No download for " + UpdateManifest.getPlatform() + " at " + downloadURL);
+    	
+    	return artifact;
+    }
+    
+    
+    private String getChecksum(UpdateManifest.Artifact artifact) throws IOException
+    {
+    	if(artifact.getSha256() == null && checksumRequired)
+    		throw new IOException("The update " + artifact.getUrl() + " has no SHA-256 checksum to verify it.");
+    	
+    	return artifact.getSha256();
+    }
+    
+    
+    private static String getFileName(UpdateManifest.Artifact artifact) throws IOException
+    {
+    	String name = new URL(artifact.getUrl()).getPath();
+    	name = name.substring(name.lastIndexOf('/') + 1);
+    	
+    	return name.isEmpty() ? "update.jar" : name;
+    }
+    
+    
+    private static File getDownloadDirectory()
+    {
+    	return Application.running() 
+    			? new File(Application.get().getLocalStorage().getDirectory(), "downloads")
+    			: new File(System.getProperty("java.io.tmpdir"));
+    }
+    
+    
+    /**
+     * Reads the manifest of the channel at the given address while it is
+     * downloaded.
+     */
+    private UpdateManifest getManifest(String address) throws IOException 
+    {
+        URLConnection connection = new URL(address).openConnection();
+        connection.setConnectTimeout(UpdateChecker.DEFAULT_CONNECT_TIMEOUT);
+        connection.setReadTimeout(UpdateChecker.DEFAULT_READ_TIMEOUT);
         
-        int c = 0;
-        StringBuffer buffer = new StringBuffer("");
-
-		while (c != -1) {
-			c = html.read();
-
-			buffer.append((char) c);
-		}
-        return buffer.toString();
+        try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))
+        {
+        	return UpdateManifest.read(reader, channel);
+        }
+    }
+    
+    
+    /**
+     * Downloads the update and starts the update process in an external JVM and
+     * closes the current program once the installer has been launched. The 
+     * download is run on the calling thread, which must not be the event 
+     * dispatch thread.
+     * 
+     * @param restartSystem Indicates if the operating system shall be forced to 
+     * restart after the update has finished.
+     * 
+     * @see #downloadUpdate(DownloadListener)
+     * @see #install(File, boolean)
+     * @see #stageUpdate(DownloadListener)
+     */
+    public final void update(boolean restartSystem)	// TODO This parameter is not visible or accessible to the user.
+    {
+    	File file;
+    	
+    	try {
+    		file = downloadUpdate(null);
+    	} catch (IOException ex) {
+    		ex.printStackTrace();
+    		JOptionPane.showMessageDialog(null, "Couldn't download the update: " + ex.getMessage());
+    		return;
+    	}
+    	
+    	install(file, restartSystem);
     }
     
     
@@ -208,13 +668,15 @@ public class UpdateManager
      * The update process requires some presets like the updater library. Because
      * this current JVM launches the {@link #updateInstallerFile} it is necessary to
      * get this file at the right place. 
-     * While the execution of the updater produces any errors an exception will be 
-     * thrown.
+     * If the updater could not be launched an error is shown and the program 
+     * keeps running.
      * 
+     * @param file The downloaded and verified update, handed to the installer as
+     * its download link.
      * @param restartSystem Indicates if the operating system shall be forced to 
      * restart after the update has finished.
      */
-    public final void update(boolean restartSystem)	// TODO This parameter is not visible or accessible to the user.
+    public final void install(File file, boolean restartSystem)
     {
     	
         try {
@@ -235,7 +697,7 @@ public class UpdateManager
   				  .getLocation()
   				  .getPath(), "UTF-8");
         	
-        	String jarName = new java.io.File(mainClass.getProtectionDomain()
+        	String jarName = new File(mainClass.getProtectionDomain()
   				  .getCodeSource()
   				  .getLocation()
   				  .getPath())
@@ -244,11 +706,15 @@ public class UpdateManager
         	System.out.println(jarPath);
         	System.out.println(jarName);
         	
-        	String[] run = {"java","-jar",updateInstallerFile, "startUpdate", jarPath, getDownloadLink(), String.valueOf(restartSystem)};
+        	if(!new File(updateInstallerFile).isFile())
+        		throw new FileNotFoundException(updateInstallerFile);
+        	
+        	String[] run = {"java","-jar",updateInstallerFile, "startUpdate", jarPath, file.toURI().toString(), String.valueOf(restartSystem)};
             Runtime.getRuntime().exec(run);
         } catch (Exception ex) {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(null, "Couln'd launch the updater because the file "+updateInstallerFile+" does not exist.");
+            return;
         }
         System.exit(0);
     }
@@ -270,6 +736,16 @@ public class UpdateManager
 	 */
     public void showUpdateDialog()
     {
+    	// Created on demand, so the manager can be used without a display
+    	if(updateDialog == null)
+    	{
+    		try {
+    			updateDialog = new UpdateDialog(this);
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    			return;
+    		}
+    	}
     	updateDialog.window.setVisible(true);
     }
     
@@ -0,0 +1,593 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.drost.application.ApplicationProfiler;
+import org.drost.application.Version;
+
+/**
+ * The update manifest of one release channel as published by the update
+ * server. The manifest is a properties file starting with the key
+ * {@value #FORMAT_KEY}, each channel has its own keys:
+ * 
+ * <pre>
+ * manifest.version=1
+ * channels=stable,beta
+ * 
+ * stable.version=2.1.0
+ * stable.minJava=1.8
+ * stable.notes=&lt;html&gt;...
+ * stable.artifact.default.url=https://example.com/app-2.1.0.jar
+ * stable.artifact.default.size=1843200
+ * stable.artifact.default.sha256=9f86d08...
+ * stable.artifact.windows-x64.url=https://example.com/app-2.1.0.exe
+ * stable.delta.2.0.0.url=https://example.com/app-2.0.0-2.1.0.delta
+ * stable.history.2.1.0=&lt;b&gt;Faster startup&lt;/b&gt; ...
+ * stable.history.2.0.0=...
+ * 
+ * beta.version=2.2.0-beta.1
+ * ...
+ * </pre>
+ * <p>
+ * Artifacts are chosen for the platform of the running system, looked up as
+ * {@code <os>-<arch>}, then {@code <os>} and finally {@code default}, e.g.
+ * {@code linux-x64}, {@code linux}, {@code default}. Deltas from installed
+ * versions are keyed by that version, see {@link JarDelta}. The release
+ * history lists the notes of former releases, newest first, it may as well
+ * be published in a document of its own, see {@link ReleaseHistory}.
+ * </p>
+ * <p>
+ * The manifest is read as a stream and only the keys of the requested
+ * channel are kept, without its history, so a long release history is
+ * never held in memory. Documents in the former format with the tags
+ * {@code [version]}, {@code [url]}, {@code [history]}, {@code [sha256]} and
+ * {@code [delta-<version>]} are still understood.
+ * </p>
+ * 
+ * @author kimschorat
+ * @since 1.0
+ * 
+ * @see UpdateInfo#getManifest()
+ */
+public final class UpdateManifest
+{
+	/**
+	 * The first key of a manifest, holding the version of the format.
+	 */
+	public static final String FORMAT_KEY = "manifest.version";
+	
+	public static final String DEFAULT_CHANNEL = "stable";
+	
+	public static final String DEFAULT_PLATFORM = "default";
+	
+	/**
+	 * The number of characters looked at to tell a manifest from a document
+	 * in the former format.
+	 */
+	private static final int PEEK_SIZE = 4096;
+	
+	private final String channel;
+	
+	private final List<String> channels;
+	
+	private final String version;
+	
+	private final Version minimumJavaVersion;
+	
+	private final String releaseNotes;
+	
+	private final Artifact artifact;
+	
+	private final Map<String, Artifact> deltas;
+	
+	
+	private UpdateManifest(String channel, List<String> channels, String version, Version minimumJavaVersion,
+			String releaseNotes, Artifact artifact, Map<String, Artifact> deltas)
+	{
+		this.channel = channel;
+		this.channels = channels;
+		this.version = version;
+		this.minimumJavaVersion = minimumJavaVersion;
+		this.releaseNotes = releaseNotes;
+		this.artifact = artifact;
+		this.deltas = deltas;
+	}
+	
+	
+	/**
+	 * Reads a manifest for the platform of the running system.
+	 * 
+	 * @param reader
+	 *            The manifest or a document in the former format, not closed.
+	 * @param channel
+	 *            The release channel, e.g. {@value #DEFAULT_CHANNEL}.
+	 * @return The manifest of the channel.
+	 * @throws IOException
+	 *             If the manifest could not be read or is invalid.
+	 */
+	public static UpdateManifest read(Reader reader, String channel) throws IOException
+	{
+		return read(reader, channel, getPlatform());
+	}
+	
+	
+	/**
+	 * Reads a manifest.
+	 * 
+	 * @param reader
+	 *            The manifest or a document in the former format, not closed.
+	 * @param channel
+	 *            The release channel, e.g. {@value #DEFAULT_CHANNEL}.
+	 * @param platform
+	 *            The platform of the artifact, e.g. {@code linux-x64}.
+	 * @return The manifest of the channel.
+	 * @throws IOException
+	 *             If the manifest could not be read or is invalid.
+	 */
+	public static UpdateManifest read(Reader reader, String channel, String platform) throws IOException
+	{
+		BufferedReader in = new BufferedReader(reader, PEEK_SIZE);
+		
+		if(!isManifest(in))
+			return fromTags(readAll(in), channel);
+		
+		return load(in, channel, platform);
+	}
+	
+	
+	/**
+	 * Parses a manifest for the platform of the running system.
+	 * 
+	 * @param document
+	 *            The manifest or a document in the former format.
+	 * @param channel
+	 *            The release channel.
+	 * @return The manifest of the channel.
+	 * @throws IllegalArgumentException
+	 *             If the manifest is invalid.
+	 */
+	public static UpdateManifest parse(String document, String channel)
+	{
+		try
+		{
+			return read(new StringReader(document), channel);
+		}
+		catch(IOException e)
+		{
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * Returns the platform of the running system as used for the artifacts,
+	 * e.g. {@code windows-x64}, {@code mac-arm64} or {@code linux-x64}.
+	 */
+	public static String getPlatform()
+	{
+		String os;
+		
+		if(ApplicationProfiler.isWindows())
+			os = "windows";
+		else if(ApplicationProfiler.isMac())
+			os = "mac";
+		else if(ApplicationProfiler.isLinux())
+			os = "linux";
+		else
+			os = ApplicationProfiler.OS.replaceAll("[^a-z0-9]", "");
+		
+		String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ENGLISH);
+		
+		if(arch.equals("amd64") || arch.equals("x86_64"))
+			arch = "x64";
+		else if(arch.equals("aarch64"))
+			arch = "arm64";
+		else if(arch.matches("i[3-6]86"))
+			arch = "x86";
+		
+		return os + "-" + arch;
+	}
+	
+	
+	/**
+	 * Tells whether the first key of the document is {@value #FORMAT_KEY},
+	 * skipping blank lines and comments. The reader is reset to the start of
+	 * the document.
+	 */
+	static boolean isManifest(BufferedReader in) throws IOException
+	{
+		in.mark(PEEK_SIZE);
+		
+		char[] head = new char[PEEK_SIZE];
+		int length = 0;
+		int n;
+		
+		while(length < PEEK_SIZE && (n = in.read(head, length, PEEK_SIZE - length)) != -1)
+			length += n;
+		
+		in.reset();
+		
+		int i = 0;
+		
+		while(i < length)
+		{
+			char c = head[i];
+			
+			if(c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n' || c == '\uFEFF')
+			{
+				i++;
+			}
+			else if(c == '#' || c == '!')
+			{
+				while(i < length && head[i] != '\n' && head[i] != '\r')
+					i++;
+			}
+			else
+			{
+				return length - i >= FORMAT_KEY.length() && new String(head, i, FORMAT_KEY.length()).equals(FORMAT_KEY);
+			}
+		}
+		return false;
+	}
+	
+	
+	static String readAll(Reader in) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[4096];
+		int n;
+		
+		while((n = in.read(buffer)) != -1)
+			sb.append(buffer, 0, n);
+		
+		return sb.toString();
+	}
+	
+	
+	private static UpdateManifest load(Reader reader, String channel, String platform) throws IOException
+	{
+		return fromValues(filter(reader, channel), channel, platform);
+	}
+	
+	
+	/**
+	 * Reads the entries of a manifest that belong to a channel, without its
+	 * history, and the global entries.
+	 */
+	static Map<String, String> filter(Reader reader, String channel) throws IOException
+	{
+		final String prefix = channel + ".";
+		final String history = prefix + "history.";
+		final Map<String, String> values = new LinkedHashMap<>();
+		
+		// Properties takes care of escapes and continued lines, every entry is
+		// passed to put while reading, entries of other channels and the
+		// release history are dropped
+		@SuppressWarnings( "serial" )
+		Properties filter = new Properties()
+		{
+			@Override
+			public synchronized Object put(Object key, Object value)
+			{
+				String k = (String) key;
+				
+				if((k.startsWith(prefix) && !k.startsWith(history)) || k.equals("channels") || k.equals(FORMAT_KEY))
+					values.put(k, (String) value);
+				
+				return null;
+			}
+		};
+		
+		filter.load(reader);
+		
+		return values;
+	}
+	
+	
+	/**
+	 * Creates the manifest of a channel from its {@link #filter(Reader, String)
+	 * filtered} entries.
+	 */
+	static UpdateManifest fromValues(Map<String, String> values, String channel, String platform) throws IOException
+	{
+		String prefix = channel + ".";
+		String format = values.get(FORMAT_KEY);
+		
+		try
+		{
+			if(format == null || Integer.parseInt(format.trim()) > 1)
+				throw new IOException("Unsupported manifest version " + format + ".");
+			
+			String version = trim(values.get(prefix + "version"));
+			
+			if(version == null)
+				throw new IOException("The manifest does not contain the channel " + channel + ".");
+			
+			Version.parse(version);
+			
+			String minJava = trim(values.get(prefix + "minJava"));
+			
+			Artifact artifact = null;
+			
+			for(String p : new String[] { platform, platform.split("-")[0], DEFAULT_PLATFORM })
+			{
+				artifact = getArtifact(values, prefix + "artifact." + p + ".");
+				
+				if(artifact != null)
+					break;
+			}
+			
+			Map<String, Artifact> deltas = new LinkedHashMap<>();
+			String deltaPrefix = prefix + "delta.";
+			
+			for(String key : values.keySet())
+			{
+				if(key.startsWith(deltaPrefix) && key.endsWith(".url"))
+				{
+					String from = key.substring(deltaPrefix.length(), key.length() - 4);
+					deltas.put(from, getArtifact(values, deltaPrefix + from + "."));
+				}
+			}
+			
+			return new UpdateManifest(channel, getChannels(values.get("channels"), channel), version,
+					minJava == null ? null : Version.parseJava(minJava), values.get(prefix + "notes"), artifact,
+					Collections.unmodifiableMap(deltas));
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Invalid manifest: " + e.getMessage(), e);
+		}
+	}
+	
+	
+	private static Artifact getArtifact(Map<String, String> values, String prefix)
+	{
+		String url = trim(values.get(prefix + "url"));
+		
+		if(url == null)
+			return null;
+		
+		String size = trim(values.get(prefix + "size"));
+		
+		return new Artifact(url, size == null ? -1 : Long.parseLong(size), trim(values.get(prefix + "sha256")));
+	}
+	
+	
+	private static List<String> getChannels(String value, String channel)
+	{
+		if(value == null)
+			return Collections.singletonList(channel);
+		
+		List<String> channels = new ArrayList<>(Arrays.asList(value.trim().split("\\s*,\\s*")));
+		return Collections.unmodifiableList(channels);
+	}
+	
+	
+	/**
+	 * Reads a document of the former format, which knows a single channel.
+	 */
+	private static UpdateManifest fromTags(String document, String channel)
+	{
+		String url = trim(UpdateInfo.getTagged(document, "url"));
+		Artifact artifact = url == null ? null : new Artifact(url, -1, trim(UpdateInfo.getTagged(document, "sha256")));
+		
+		Map<String, Artifact> deltas = new LinkedHashMap<>();
+		int i = 0;
+		
+		while((i = document.indexOf("[delta-", i)) >= 0)
+		{
+			int end = document.indexOf(']', i);
+			
+			if(end < 0)
+				break;
+			
+			String from = document.substring(i + 7, end);
+			String link = trim(UpdateInfo.getTagged(document, "delta-" + from));
+			
+			if(link != null)
+				deltas.put(from, new Artifact(link, -1, null));
+			
+			i = end;
+		}
+		
+		return new UpdateManifest(channel, Collections.singletonList(channel), trim(UpdateInfo.getTagged(document, "version")), 
+				null, UpdateInfo.getTagged(document, "history"), artifact, Collections.unmodifiableMap(deltas));
+	}
+	
+	
+	private static String trim(String value)
+	{
+		if(value == null)
+			return null;
+		
+		value = value.trim();
+		return value.isEmpty() ? null : value;
+	}
+	
+	
+	public String getChannel()
+	{
+		return channel;
+	}
+	
+	
+	/**
+	 * Returns the names of all channels of the manifest.
+	 */
+	public List<String> getChannels()
+	{
+		return channels;
+	}
+	
+	
+	/**
+	 * Returns the version of the release or {@code null} if unknown.
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+	
+	
+	/**
+	 * Returns the version of the release, or {@code null} if it is unknown or
+	 * cannot be parsed.
+	 */
+	public Version getParsedVersion()
+	{
+		return Version.tryParse(version);
+	}
+	
+	
+	/**
+	 * Returns the minimum Java version the release runs on or {@code null}
+	 * if there is none.
+	 */
+	public Version getMinimumJavaVersion()
+	{
+		return minimumJavaVersion;
+	}
+	
+	
+	/**
+	 * Returns whether the release runs on the running Java version.
+	 */
+	public boolean isSupported()
+	{
+		return minimumJavaVersion == null
+				|| !Version.parseJava(ApplicationProfiler.CURRENT_JAVA_VERSION).isOlderThan(minimumJavaVersion);
+	}
+	
+	
+	public String getReleaseNotes()
+	{
+		return releaseNotes;
+	}
+	
+	
+	/**
+	 * Returns the artifact for the platform or {@code null} if there is none.
+	 */
+	public Artifact getArtifact()
+	{
+		return artifact;
+	}
+	
+	
+	/**
+	 * Returns the delta from an installed version to this release.
+	 * 
+	 * @param from
+	 *            The installed version.
+	 * @return The delta or {@code null} if there is none.
+	 */
+	public Artifact getDelta(String from)
+	{
+		if(from == null)
+			return null;
+		
+		Artifact delta = deltas.get(from.trim());
+		
+		if(delta == null)
+		{
+			Version v = Version.tryParse(from.trim());
+			
+			// Keys may be written differently, e.g. 2.0 and 2.0.0
+			for(Map.Entry<String, Artifact> entry : deltas.entrySet())
+			{
+				if(v != null && v.equals(Version.tryParse(entry.getKey())))
+					return entry.getValue();
+			}
+		}
+		return delta;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "UpdateManifest[channel=" + channel + ", version=" + version + ", artifact=" + artifact + "]";
+	}
+	
+	
+	/**
+	 * A file to download, e.g. the application for one platform or a delta.
+	 */
+	public static final class Artifact
+	{
+		private final String url;
+		
+		private final long size;
+		
+		private final String sha256;
+		
+		
+		public Artifact(String url, long size, String sha256)
+		{
+			this.url = url;
+			this.size = size;
+			this.sha256 = sha256;
+		}
+		
+		
+		public String getUrl()
+		{
+			return url;
+		}
+		
+		
+		/**
+		 * Returns the size in bytes or {@code -1} if unknown.
+		 */
+		public long getSize()
+		{
+			return size;
+		}
+		
+		
+		/**
+		 * Returns the SHA-256 checksum in hexadecimal digits or {@code null}.
+		 */
+		public String getSha256()
+		{
+			return sha256;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return url;
+		}
+	}
+}
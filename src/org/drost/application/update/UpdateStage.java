@@ -0,0 +1,610 @@
+/*
+ * This file is part of the application library that simplifies common 
+ * initialization and helps setting up any java program.
+ * 
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.application.update;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.drost.application.LocalStorage;
+
+/**
+ * Installs updates side by side with the running version, so the application
+ * stays usable while an update is prepared and the switch costs one restart.
+ * <p>
+ * An update is unpacked into a directory named after its version below the
+ * {@code updates} directory of the local storage and every jar is read
+ * completely to verify it. Only then the directory gets its final name and
+ * the pointer file {@value #PENDING} is written. The pointer is switched to
+ * {@value #CURRENT} by {@link #activate()} on the next launch or restart,
+ * see {@link UpdateLauncher} and
+ * {@link org.drost.application.Application#restart(String...)}. Both files are
+ * replaced by atomic moves, so an interrupted staging leaves the installed
+ * version untouched.
+ * </p>
+ * 
+ * <pre>
+ * updates/
+ *   1.3.0/my_app.jar
+ *   1.4.0/my_app.jar
+ *   current.properties  -&gt; 1.3.0
+ *   pending.properties  -&gt; 1.4.0
+ * </pre>
+ * 
+ * @author kimschorat
+ * 
+ * @see UpdateManager#stageUpdate(org.drost.application.listeners.DownloadListener)
+ */
+public class UpdateStage
+{
+	/**
+	 * The pointer to the staged version which is used from the next start.
+	 */
+	public static final String PENDING = "pending.properties";
+	
+	/**
+	 * The pointer to the version which is used.
+	 */
+	public static final String CURRENT = "current.properties";
+	
+	/**
+	 * The name of the directory below the local storage.
+	 */
+	public static final String DIRECTORY = "updates";
+	
+	private static final String STAGING_SUFFIX = ".staging";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File directory;
+	
+	
+	/**
+	 * Creates the stage in the {@value #DIRECTORY} directory of the local
+	 * storage.
+	 * 
+	 * @param storage
+	 *            The local storage of the application.
+	 */
+	public UpdateStage(LocalStorage storage)
+	{
+		this(new File(storage.getDirectory(), DIRECTORY));
+	}
+	
+	
+	/**
+	 * Creates the stage in the given directory.
+	 * 
+	 * @param directory
+	 *            The directory holding the versions and pointer files.
+	 */
+	public UpdateStage(File directory)
+	{
+		if(directory == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		this.directory = directory;
+	}
+	
+	
+	/**
+	 * Installs a downloaded update beside the running version and marks it to
+	 * be used from the next start. A {@code .zip} file is unpacked and all jars
+	 * contained become the class path, any other file is taken as the jar
+	 * itself.
+	 * 
+	 * @param version
+	 *            The version of the update.
+	 * @param download
+	 *            The downloaded and verified file.
+	 * @return The staged update.
+	 * @throws IOException
+	 *             If the update could not be unpacked or is corrupt.
+	 */
+	public synchronized StagedUpdate stage(String version, File download) throws IOException
+	{
+		if(version == null || download == null)
+			throw new IllegalArgumentException("Null argument.");
+		
+		String name = toDirectoryName(version);
+		File target = new File(directory, name);
+		
+		StagedUpdate current = getCurrent();
+		if(current != null && current.getDirectory().equals(target))
+		{
+			// Already in use, only a different pending update is dropped
+			new File(directory, PENDING).delete();
+			return current;
+		}
+		
+		File temp = new File(directory, name + STAGING_SUFFIX);
+		delete(temp);
+		
+		if(!temp.mkdirs())
+			throw new IOException("Could not create " + temp);
+		
+		List<String> classPath = new ArrayList<String>();
+		
+		try
+		{
+			if(download.getName().toLowerCase().endsWith(".zip"))
+				unzip(download, temp, classPath);
+			else
+			{
+				Files.copy(download.toPath(), new File(temp, download.getName()).toPath());
+				classPath.add(download.getName());
+			}
+			
+			if(classPath.isEmpty())
+				throw new IOException("The update " + download.getName() + " contains no jar.");
+			
+			for(String entry : classPath)
+				verify(new File(temp, entry));
+			
+			delete(target);
+			move(temp, target);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			delete(temp);
+			throw e;
+		}
+		
+		StagedUpdate update = new StagedUpdate(version, target, classPath, System.currentTimeMillis());
+		write(update, new File(directory, PENDING));
+		
+		return update;
+	}
+	
+	
+	/**
+	 * Makes the pending update the current one and removes the versions that
+	 * are neither current nor the previous one. This must only be called before
+	 * the application classes are loaded, e.g. right before a restart.
+	 * 
+	 * @return The current update or {@code null} if the installed version is
+	 *         used.
+	 * @throws IOException
+	 *             If the pointer could not be switched.
+	 */
+	public synchronized StagedUpdate activate() throws IOException
+	{
+		File pending = new File(directory, PENDING);
+		
+		if(pending.exists())
+		{
+			StagedUpdate update = read(pending);
+			StagedUpdate previous = getCurrent();
+			
+			if(update != null)
+			{
+				move(pending, new File(directory, CURRENT));
+				clean(update, previous);
+			}
+			else
+				pending.delete();
+		}
+		return getCurrent();
+	}
+	
+	
+	/**
+	 * Drops the pending update, the installed or current version is kept.
+	 */
+	public synchronized void discard()
+	{
+		StagedUpdate pending = getPending();
+		new File(directory, PENDING).delete();
+		
+		if(pending != null && !pending.equals(getCurrent()))
+			delete(pending.getDirectory());
+	}
+	
+	
+	/**
+	 * Returns the update used from the next start.
+	 * 
+	 * @return The update or {@code null} if there is none or it is broken.
+	 */
+	public StagedUpdate getPending()
+	{
+		return read(new File(directory, PENDING));
+	}
+	
+	
+	/**
+	 * Returns the update currently used instead of the installed version.
+	 * 
+	 * @return The update or {@code null} if there is none or it is broken.
+	 */
+	public StagedUpdate getCurrent()
+	{
+		return read(new File(directory, CURRENT));
+	}
+	
+	
+	public File getDirectory()
+	{
+		return directory;
+	}
+	
+	
+	/**
+	 * Reads a pointer file. Returns {@code null} if it is missing, incomplete
+	 * or any of its jars has changed since staging.
+	 */
+	private StagedUpdate read(File pointer)
+	{
+		if(!pointer.isFile())
+			return null;
+		
+		Properties properties = new Properties();
+		
+		try (InputStream in = new FileInputStream(pointer))
+		{
+			properties.load(in);
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		
+		String version = properties.getProperty("version");
+		String name = properties.getProperty("directory");
+		
+		if(version == null || name == null || name.contains("/") || name.contains(File.separator))
+			return null;
+		
+		File target = new File(directory, name);
+		List<String> classPath = new ArrayList<String>();
+		
+		try
+		{
+			int entries = Integer.parseInt(properties.getProperty("classpath", "0"));
+			
+			for(int i = 0; i < entries; i++)
+			{
+				String entry = properties.getProperty("classpath." + i);
+				long size = Long.parseLong(properties.getProperty("classpath." + i + ".size", "-1"));
+				
+				if(entry == null || new File(target, entry).length() != size)
+					return null;
+				
+				classPath.add(entry);
+			}
+			
+			if(classPath.isEmpty())
+				return null;
+			
+			return new StagedUpdate(version, target, classPath, Long.parseLong(properties.getProperty("staged", "0")));
+		}
+		catch(NumberFormatException e)
+		{
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Writes a pointer file next to its final place and moves it there.
+	 */
+	private void write(StagedUpdate update, File pointer) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("version", update.getVersion());
+		properties.setProperty("directory", update.getDirectory().getName());
+		properties.setProperty("staged", String.valueOf(update.getStagedTime()));
+		properties.setProperty("classpath", String.valueOf(update.entries.size()));
+		
+		for(int i = 0; i < update.entries.size(); i++)
+		{
+			String entry = update.entries.get(i);
+			properties.setProperty("classpath." + i, entry);
+			properties.setProperty("classpath." + i + ".size", String.valueOf(new File(update.getDirectory(), entry).length()));
+		}
+		
+		File temp = new File(directory, pointer.getName() + ".tmp");
+		
+		try (FileOutputStream out = new FileOutputStream(temp))
+		{
+			properties.store(out, "Staged update");
+			out.getFD().sync();
+		}
+		move(temp, pointer);
+	}
+	
+	
+	/**
+	 * Removes all versions but the current and the previous one, the latter
+	 * may still be running.
+	 */
+	private void clean(StagedUpdate current, StagedUpdate previous)
+	{
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		
+		for(File file : files)
+		{
+			if(!file.isDirectory() || file.equals(current.getDirectory()))
+				continue;
+			if(previous != null && file.equals(previous.getDirectory()))
+				continue;
+			
+			delete(file);
+		}
+	}
+	
+	
+	/**
+	 * Unpacks an archive and adds the contained jars to the class path, in the
+	 * order of their paths.
+	 */
+	private static void unzip(File archive, File target, List<String> classPath) throws IOException
+	{
+		String root = target.getCanonicalPath() + File.separator;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		
+		try (ZipFile zip = new ZipFile(archive))
+		{
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+			{
+				ZipEntry entry = e.nextElement();
+				File file = new File(target, entry.getName());
+				
+				// Entries must not escape the directory
+				if(!(file.getCanonicalPath() + File.separator).startsWith(root))
+					throw new IOException("Invalid entry " + entry.getName());
+				
+				if(entry.isDirectory())
+				{
+					file.mkdirs();
+					continue;
+				}
+				
+				file.getParentFile().mkdirs();
+				
+				try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(file))
+				{
+					int n;
+					while((n = in.read(buffer)) != -1)
+						out.write(buffer, 0, n);
+				}
+				
+				if(entry.getName().toLowerCase().endsWith(".jar"))
+					classPath.add(entry.getName());
+			}
+		}
+		Collections.sort(classPath);
+	}
+	
+	
+	/**
+	 * Reads every entry of a jar and compares it with its checksum.
+	 */
+	private static void verify(File jar) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		CRC32 crc = new CRC32();
+		
+		try (ZipFile zip = new ZipFile(jar))
+		{
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+			{
+				ZipEntry entry = e.nextElement();
+				crc.reset();
+				
+				try (InputStream in = zip.getInputStream(entry))
+				{
+					int n;
+					while((n = in.read(buffer)) != -1)
+						crc.update(buffer, 0, n);
+				}
+				
+				if(entry.getCrc() != -1 && entry.getCrc() != crc.getValue())
+					throw new IOException("The entry " + entry.getName() + " of " + jar.getName() + " is corrupt.");
+			}
+		}
+	}
+	
+	
+	private static void move(File source, File target) throws IOException
+	{
+		try
+		{
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	
+	private static boolean delete(File file)
+	{
+		File[] children = file.listFiles();
+		if(children != null)
+		{
+			for(File child : children)
+				delete(child);
+		}
+		return file.delete();
+	}
+	
+	
+	/**
+	 * Replaces the characters a version may contain which are not safe in a
+	 * file name.
+	 */
+	private static String toDirectoryName(String version)
+	{
+		String name = version.trim().replaceAll("[^A-Za-z0-9._+-]", "_");
+		
+		if(name.isEmpty() || name.startsWith("."))
+			name = "_" + name;
+		
+		return name;
+	}
+	
+	
+	
+	/**
+	 * A version installed by a stage.
+	 * 
+	 * @author kimschorat
+	 */
+	public static final class StagedUpdate
+	{
+		private final String version;
+		
+		private final File directory;
+		
+		private final List<String> entries;
+		
+		private final long staged;
+		
+		
+		private StagedUpdate(String version, File directory, List<String> entries, long staged)
+		{
+			this.version = version;
+			this.directory = directory;
+			this.entries = Collections.unmodifiableList(new ArrayList<String>(entries));
+			this.staged = staged;
+		}
+		
+		
+		public String getVersion()
+		{
+			return version;
+		}
+		
+		
+		public File getDirectory()
+		{
+			return directory;
+		}
+		
+		
+		/**
+		 * @return The jars of the update.
+		 */
+		public List<File> getClassPath()
+		{
+			List<File> files = new ArrayList<File>(entries.size());
+			
+			for(String entry : entries)
+				files.add(new File(directory, entry));
+			
+			return files;
+		}
+		
+		
+		/**
+		 * Replaces the application jar in a class path with the jars of the
+		 * update. The class path is returned unchanged if it does not contain
+		 * the application jar.
+		 * 
+		 * @param classPath
+		 *            A class path separated by {@link File#pathSeparator}.
+		 * @param applicationJar
+		 *            The jar of the running application.
+		 * @return The class path to use the update.
+		 */
+		public String replaceIn(String classPath, File applicationJar)
+		{
+			StringBuilder result = new StringBuilder();
+			boolean replaced = false;
+			
+			for(String entry : classPath.split(File.pathSeparator))
+			{
+				if(entry.isEmpty())
+					continue;
+				
+				if(result.length() > 0)
+					result.append(File.pathSeparator);
+				
+				if(!replaced && new File(entry).getAbsoluteFile().equals(applicationJar.getAbsoluteFile()))
+				{
+					for(File file : getClassPath())
+					{
+						if(replaced)
+							result.append(File.pathSeparator);
+						
+						result.append(file.getPath());
+						replaced = true;
+					}
+				}
+				else
+					result.append(entry);
+			}
+			return replaced ? result.toString() : classPath;
+		}
+		
+		
+		/**
+		 * @return The time the update has been staged in milliseconds since the
+		 *         epoch.
+		 */
+		public long getStagedTime()
+		{
+			return staged;
+		}
+		
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(!(obj instanceof StagedUpdate))
+				return false;
+			
+			StagedUpdate other = (StagedUpdate) obj;
+			return version.equals(other.version) && directory.equals(other.directory);
+		}
+		
+		
+		@Override
+		public int hashCode()
+		{
+			return 31 * version.hashCode() + directory.hashCode();
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return version + " in " + directory;
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.awt.Insets;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.Window;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
@@ -87,6 +88,72 @@ public final class GraphicsUtils
 	}
 	
 	
+	/**
+	 * Scales the image to the given size in multiple steps. While downscaling
+	 * the image is halved with bilinear interpolation until the target size
+	 * is reached, which gives a result comparable to
+	 * {@code Image.SCALE_SMOOTH} at a fraction of the cost. Upscaling is done
+	 * in a single bicubic step.
+	 * <p>
+	 * The returned image is compatible to the given graphics configuration so
+	 * it can be drawn without any further conversion. Neither the source
+	 * image is modified nor cached, callers should keep the result as long as
+	 * the size does not change.
+	 * </p>
+	 * 
+	 * @param source
+	 *            The image to scale.
+	 * @param width
+	 *            The target width in pixels.
+	 * @param height
+	 *            The target height in pixels.
+	 * @param gc
+	 *            The configuration to create a compatible image for or
+	 *            {@code null} for the default screen.
+	 * @return A new image of the target size.
+	 */
+	public static BufferedImage getScaledImage(BufferedImage source, int width, int height, GraphicsConfiguration gc)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid target size " + width + "x" + height + ".");
+		
+		if(gc == null)
+			gc = getGraphicsDevice().getDefaultConfiguration();
+		
+		BufferedImage result = source;
+		int w = source.getWidth();
+		int h = source.getHeight();
+		
+		do
+		{
+			if(w > width)
+				w = Math.max(w / 2, width);
+			else
+				w = width;
+			
+			if(h > height)
+				h = Math.max(h / 2, height);
+			else
+				h = height;
+			
+			BufferedImage step = gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+			Graphics2D g2d = step.createGraphics();
+			g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, w > result.getWidth() || h > result.getHeight()
+					? RenderingHints.VALUE_INTERPOLATION_BICUBIC : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2d.drawImage(result, 0, 0, w, h, null);
+			g2d.dispose();
+			
+			if(result != source)
+				result.flush();
+			result = step;
+		}
+		while(w != width || h != height);
+		
+		return result;
+	}
+	
+	
 	// Screen and graphics device related
 	
 	public static Rectangle getSceenBounds()